@@ -0,0 +1,46 @@
+package com.turnguard.libtracker.sparql.benchmarks;
+
+import com.turnguard.libtracker.sparql.Libtracker;
+
+/**
+ * Selects the binding measured by the benchmarks.<br/>
+ * Unless -Dcom.turnguard.libtracker.sparql.binding is given (e.g. "direct" or
+ * "proxy" for the real library, see the real-library profile), the
+ * {@link InMemorySparql} stand-in is used. Must be called before
+ * {@link Libtracker} is initialized.
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public final class BenchmarkBinding {
+
+    /**
+     * system property overriding the benchmark query, %d is replaced by the number of rows
+     */
+    public static final String QUERY_PROPERTY = "com.turnguard.libtracker.sparql.benchmarks.query";
+    /**
+     * default benchmark query, its columns match the stand-in's table
+     */
+    public static final String QUERY = "SELECT ?s ?title ?count ?score ?flag ?created WHERE { ?s a nie:InformationElement . OPTIONAL { ?s nie:title ?title } } LIMIT %d";
+    /**
+     * the update sent by the update benchmarks
+     */
+    public static final String UPDATE = "INSERT OR REPLACE { <urn:bench:update> a nie:InformationElement ; nie:title \"benchmark\" }";
+
+    private BenchmarkBinding() {}
+
+    /**
+     * Selects the stand-in unless a binding has been set
+     */
+    public static void select(){
+        if(System.getProperty(Libtracker.BINDING_PROPERTY)==null){
+            System.setProperty(Libtracker.BINDING_PROPERTY, InMemorySparql.class.getName());
+        }
+    }
+
+    /**
+     * @param rows
+     * @return String the benchmark query returning at most rows rows
+     */
+    public static String query(int rows){
+        return String.format(System.getProperty(QUERY_PROPERTY, QUERY), rows);
+    }
+}
@@ -0,0 +1,92 @@
+package com.turnguard.libtracker.sparql.benchmarks;
+
+import com.turnguard.libtracker.sparql.Libtracker;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerException;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlConnection;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlCursor;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlValueType;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per cell cost of the cursor accessors, the cursor stays on its first row
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CursorBenchmark {
+
+    /**
+     * the column read, 0 is ?s (URI), 1 ?title (STRING), 2 ?count (INTEGER)
+     */
+    @Param({"0", "1", "2"})
+    public int column;
+
+    private TrackerSparqlConnection con;
+    private TrackerSparqlCursor cursor;
+    private final ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+    @Setup(Level.Trial)
+    public void setUp() throws TrackerException {
+        BenchmarkBinding.select();
+        this.con = Libtracker.getTrackerSparqlConnection();
+        this.cursor = this.con.query(BenchmarkBinding.query(1));
+        if(!this.cursor.next()){
+            throw new IllegalStateException("the benchmark query returned no rows");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        this.cursor.close();
+        this.con.close();
+    }
+
+    @Benchmark
+    public String getString(){
+        return this.cursor.getString(this.column);
+    }
+
+    @Benchmark
+    public int getStringIntoBuffer(){
+        this.buffer.clear();
+        return this.cursor.getString(this.column, this.buffer);
+    }
+
+    @Benchmark
+    public int getInteger(){
+        return this.cursor.getInteger(this.column);
+    }
+
+    @Benchmark
+    public long getLong(){
+        return this.cursor.getLong(this.column);
+    }
+
+    @Benchmark
+    public TrackerSparqlValueType getValueType(){
+        return this.cursor.getValueType(this.column);
+    }
+
+    @Benchmark
+    public boolean isBound(){
+        return this.cursor.isBound(this.column);
+    }
+}
@@ -0,0 +1,70 @@
+package com.turnguard.libtracker.sparql.benchmarks;
+
+import com.sun.jna.FromNativeContext;
+import com.sun.jna.ToNativeContext;
+import com.turnguard.libtracker.sparql.Libtracker.EnumConverter;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlValueType;
+import java.lang.reflect.Constructor;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * TrackerSparqlValueType conversions, as done by the proxy binding's
+ * TypeMapper (EnumConverter) and by the direct binding (fromIntValue).
+ * Needs neither the library nor the stand-in.
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnumConverterBenchmark {
+
+    private final EnumConverter converter = new EnumConverter();
+    private FromNativeContext fromContext;
+    private ToNativeContext toContext;
+    private int value;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ReflectiveOperationException {
+        // JNA creates the contexts itself, their constructors are package-private
+        Constructor<FromNativeContext> from = FromNativeContext.class.getDeclaredConstructor(Class.class);
+        from.setAccessible(true);
+        this.fromContext = from.newInstance(TrackerSparqlValueType.class);
+        Constructor<ToNativeContext> to = ToNativeContext.class.getDeclaredConstructor();
+        to.setAccessible(true);
+        this.toContext = to.newInstance();
+    }
+
+    private int nextValue(){
+        this.value = (this.value + 1) & 7;
+        return this.value;
+    }
+
+    @Benchmark
+    public Object fromNative(){
+        return this.converter.fromNative(this.nextValue(), this.fromContext);
+    }
+
+    @Benchmark
+    public Object toNative(){
+        return this.converter.toNative(TrackerSparqlValueType.fromIntValue(this.nextValue()), this.toContext);
+    }
+
+    @Benchmark
+    public TrackerSparqlValueType fromIntValue(){
+        return TrackerSparqlValueType.fromIntValue(this.nextValue());
+    }
+}
@@ -0,0 +1,302 @@
+package com.turnguard.libtracker.sparql.benchmarks;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+import com.sun.jna.StringArray;
+import com.sun.jna.ptr.LongByReference;
+import com.sun.jna.ptr.PointerByReference;
+import com.turnguard.libtracker.sparql.Libtracker;
+import com.turnguard.libtracker.sparql.Libtracker.GAsyncReadyCallback;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlConnection;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlCursor;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlValueType;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory stand-in for libtracker-sparql, selected with
+ * -Dcom.turnguard.libtracker.sparql.binding=com.turnguard.libtracker.sparql.benchmarks.InMemorySparql<br/>
+ * Every query returns rows of a synthetic table, as many as its LIMIT asks for
+ * (default {@link #DEFAULT_ROWS}). The table has one column of every value type:
+ * <pre>
+ * ?s       URI       urn:bench:resource:N
+ * ?title   STRING    "Resource N ..."
+ * ?count   INTEGER   N
+ * ?score   DOUBLE    N / 7.0
+ * ?flag    BOOLEAN   N is even
+ * ?created DATETIME  2014-01-01T00:00:00Z, unbound in every 8th row
+ * </pre>
+ * The string cells are allocated once as native UTF-8 strings, so that
+ * tracker_sparql_cursor_get_string costs about what it costs against the
+ * real library. Updates are counted and otherwise ignored. The
+ * TrackerSparqlStatement API is not provided.
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public class InMemorySparql implements Libtracker.Sparql {
+
+    /**
+     * system property setting the number of distinct rows, rows beyond it repeat
+     */
+    public static final String ROWS_PROPERTY = "com.turnguard.libtracker.sparql.benchmarks.rows";
+    /**
+     * number of rows returned by queries without LIMIT
+     */
+    public static final int DEFAULT_ROWS = 1000;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Pattern LIMIT = Pattern.compile("(?i)\\bLIMIT\\s+(\\d+)");
+    private static final String[] NAMES = {"s", "title", "count", "score", "flag", "created"};
+    private static final TrackerSparqlValueType[] TYPES = {
+        TrackerSparqlValueType.TRACKER_SPARQL_VALUE_TYPE_URI,
+        TrackerSparqlValueType.TRACKER_SPARQL_VALUE_TYPE_STRING,
+        TrackerSparqlValueType.TRACKER_SPARQL_VALUE_TYPE_INTEGER,
+        TrackerSparqlValueType.TRACKER_SPARQL_VALUE_TYPE_DOUBLE,
+        TrackerSparqlValueType.TRACKER_SPARQL_VALUE_TYPE_BOOLEAN,
+        TrackerSparqlValueType.TRACKER_SPARQL_VALUE_TYPE_DATETIME
+    };
+    private static final Pointer CONNECTION = Pointer.createConstant(1);
+
+    private final int tableRows;
+    private final String[][] strings;
+    private final Memory[][] natives;
+    private final long[][] lengths;
+    private final Map<Long, Cursor> cursors = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong(16);
+    private final AtomicLong updates = new AtomicLong();
+
+    public InMemorySparql() {
+        this.tableRows = Math.max(1, Integer.getInteger(ROWS_PROPERTY, DEFAULT_ROWS));
+        this.strings = new String[this.tableRows][NAMES.length];
+        this.natives = new Memory[this.tableRows][NAMES.length];
+        this.lengths = new long[this.tableRows][NAMES.length];
+        for(int row = 0; row < this.tableRows; row++){
+            this.strings[row][0] = "urn:bench:resource:" + row;
+            this.strings[row][1] = "Resource " + row + " of the in-memory stand-in, ümläutéd";
+            this.strings[row][2] = Integer.toString(row);
+            this.strings[row][3] = Double.toString(row / 7.0);
+            this.strings[row][4] = (row & 1) == 0 ? "true" : "false";
+            this.strings[row][5] = (row & 7) == 7 ? null : "2014-01-01T00:00:00Z";
+            for(int column = 0; column < NAMES.length; column++){
+                String value = this.strings[row][column];
+                if(value!=null){
+                    byte[] bytes = value.getBytes(UTF8);
+                    Memory memory = new Memory(bytes.length + 1);
+                    memory.write(0, bytes, 0, bytes.length);
+                    memory.setByte(bytes.length, (byte)0);
+                    this.natives[row][column] = memory;
+                    this.lengths[row][column] = bytes.length;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return long the number of updates received
+     */
+    public long getUpdateCount(){
+        return this.updates.get();
+    }
+
+    private Cursor cursor(TrackerSparqlCursor cursor){
+        return this.cursors.get(Pointer.nativeValue(cursor.getPointer()));
+    }
+
+    private TrackerSparqlCursor open(String query){
+        int rows = DEFAULT_ROWS;
+        Matcher limit = LIMIT.matcher(query);
+        if(limit.find()){
+            rows = Integer.parseInt(limit.group(1));
+        }
+        long id = this.ids.incrementAndGet();
+        this.cursors.put(id, new Cursor(rows));
+        return new TrackerSparqlCursor(Pointer.createConstant(id));
+    }
+
+    private boolean unbound(Cursor cursor, int column){
+        return cursor.row < 0 || cursor.row >= cursor.rows || this.strings[cursor.row % this.tableRows][column]==null;
+    }
+
+    @Override
+    public String tracker_sparql_get_uuid_urn() {
+        return "urn:uuid:" + UUID.randomUUID();
+    }
+    @Override
+    public TrackerSparqlConnection tracker_sparql_connection_get(Pointer cancellable, PointerByReference error) {
+        return new TrackerSparqlConnection(CONNECTION);
+    }
+    @Override
+    public TrackerSparqlConnection tracker_sparql_connection_get_direct(Pointer cancellable, PointerByReference error) {
+        return new TrackerSparqlConnection(CONNECTION);
+    }
+    @Override
+    public TrackerSparqlConnection tracker_sparql_connection_new(int flags, Pointer store, Pointer ontology, Pointer cancellable, PointerByReference error) {
+        return new TrackerSparqlConnection(CONNECTION);
+    }
+    @Override
+    public TrackerSparqlConnection tracker_sparql_connection_bus_new(String serviceName, String objectPath, Pointer dbusConnection, PointerByReference error) {
+        return new TrackerSparqlConnection(CONNECTION);
+    }
+    @Override
+    public Pointer tracker_sparql_get_ontology_nepomuk() {
+        return null;
+    }
+    @Override
+    public TrackerSparqlCursor tracker_sparql_connection_query(TrackerSparqlConnection con, String query, Pointer cancellable, PointerByReference error) {
+        return this.open(query);
+    }
+    @Override
+    public void tracker_sparql_connection_update(TrackerSparqlConnection con, String query, int glibPriority, Pointer cancellable, PointerByReference error) {
+        this.updates.incrementAndGet();
+    }
+    @Override
+    public Pointer tracker_sparql_connection_update_blank(TrackerSparqlConnection con, String query, int glibPriority, Pointer cancellable, PointerByReference error) {
+        // no GVariant, as if the update had no blank nodes
+        this.updates.incrementAndGet();
+        return null;
+    }
+    @Override
+    public boolean tracker_sparql_cursor_next(TrackerSparqlCursor cursor, Pointer cancellable, PointerByReference error) {
+        Cursor c = this.cursor(cursor);
+        if(c.row < c.rows){
+            c.row++;
+        }
+        return c.row < c.rows;
+    }
+    @Override
+    public void tracker_sparql_cursor_rewind(TrackerSparqlCursor cursor) {
+        this.cursor(cursor).row = -1;
+    }
+    @Override
+    public int tracker_sparql_cursor_get_n_columns(TrackerSparqlCursor cursor) {
+        return NAMES.length;
+    }
+    @Override
+    public String tracker_sparql_cursor_get_variable_name(TrackerSparqlCursor cursor, int column) {
+        return NAMES[column];
+    }
+    @Override
+    public boolean tracker_sparql_cursor_is_bound(TrackerSparqlCursor cursor, int column) {
+        return !this.unbound(this.cursor(cursor), column);
+    }
+    @Override
+    public TrackerSparqlValueType tracker_sparql_cursor_get_value_type(TrackerSparqlCursor cursor, int column) {
+        return this.unbound(this.cursor(cursor), column) ? TrackerSparqlValueType.TRACKER_SPARQL_VALUE_TYPE_UNBOUND : TYPES[column];
+    }
+    @Override
+    public String tracker_sparql_cursor_get_string(TrackerSparqlCursor cursor, int column, Long offset) {
+        Cursor c = this.cursor(cursor);
+        return this.unbound(c, column) ? null : this.natives[c.row % this.tableRows][column].getString(0);
+    }
+    @Override
+    public Pointer tracker_sparql_cursor_get_string(TrackerSparqlCursor cursor, int column, LongByReference length) {
+        Cursor c = this.cursor(cursor);
+        if(this.unbound(c, column)){
+            return null;
+        }
+        int row = c.row % this.tableRows;
+        if(length!=null){
+            length.setValue(this.lengths[row][column]);
+        }
+        return this.natives[row][column];
+    }
+    @Override
+    public long tracker_sparql_cursor_get_integer(TrackerSparqlCursor cursor, int column) {
+        Cursor c = this.cursor(cursor);
+        return this.unbound(c, column) ? 0 : c.row % this.tableRows;
+    }
+    @Override
+    public double tracker_sparql_cursor_get_double(TrackerSparqlCursor cursor, int column) {
+        Cursor c = this.cursor(cursor);
+        return this.unbound(c, column) ? 0 : (c.row % this.tableRows) / 7.0;
+    }
+    @Override
+    public boolean tracker_sparql_cursor_get_boolean(TrackerSparqlCursor cursor, int column) {
+        Cursor c = this.cursor(cursor);
+        return !this.unbound(c, column) && ((c.row % this.tableRows) & 1) == 0;
+    }
+    @Override
+    public void tracker_sparql_cursor_close(TrackerSparqlCursor cursor) {
+        this.cursors.remove(Pointer.nativeValue(cursor.getPointer()));
+    }
+    @Override
+    public TrackerSparqlCursor tracker_sparql_connection_statistics(TrackerSparqlConnection con, Pointer cancellable, PointerByReference error) {
+        return this.open("LIMIT " + NAMES.length);
+    }
+    @Override
+    public void tracker_sparql_connection_load(TrackerSparqlConnection con, Pointer file, Pointer cancellable, PointerByReference error) {
+        this.updates.incrementAndGet();
+    }
+    @Override
+    public void tracker_sparql_connection_query_async(TrackerSparqlConnection con, String query, Pointer cancellable, GAsyncReadyCallback callback, Pointer userData) {
+        callback.invoke(null, this.open(query).getPointer(), userData);
+    }
+    @Override
+    public TrackerSparqlCursor tracker_sparql_connection_query_finish(TrackerSparqlConnection con, Pointer result, PointerByReference error) {
+        return new TrackerSparqlCursor(result);
+    }
+    @Override
+    public void tracker_sparql_connection_update_async(TrackerSparqlConnection con, String query, int glibPriority, Pointer cancellable, GAsyncReadyCallback callback, Pointer userData) {
+        this.updates.incrementAndGet();
+        callback.invoke(null, null, userData);
+    }
+    @Override
+    public void tracker_sparql_connection_update_finish(TrackerSparqlConnection con, Pointer result, PointerByReference error) {
+    }
+    @Override
+    public void tracker_sparql_cursor_next_async(TrackerSparqlCursor cursor, Pointer cancellable, GAsyncReadyCallback callback, Pointer userData) {
+        boolean next = this.tracker_sparql_cursor_next(cursor, null, null);
+        callback.invoke(null, next ? Pointer.createConstant(1) : null, userData);
+    }
+    @Override
+    public boolean tracker_sparql_cursor_next_finish(TrackerSparqlCursor cursor, Pointer result, PointerByReference error) {
+        return result!=null;
+    }
+    @Override
+    public void tracker_sparql_connection_update_array_async(TrackerSparqlConnection con, StringArray sparql, int length, int glibPriority, Pointer cancellable, GAsyncReadyCallback callback, Pointer userData) {
+        this.updates.addAndGet(length);
+        callback.invoke(null, null, userData);
+    }
+    @Override
+    public Pointer tracker_sparql_connection_update_array_finish(TrackerSparqlConnection con, Pointer result, PointerByReference error) {
+        // no GPtrArray means every query succeeded
+        return null;
+    }
+    @Override
+    public Pointer tracker_sparql_connection_query_statement(TrackerSparqlConnection con, String query, Pointer cancellable, PointerByReference error) {
+        throw new UnsupportedOperationException("TrackerSparqlStatement is not provided by the stand-in");
+    }
+    @Override
+    public void tracker_sparql_statement_bind_string(Pointer statement, String name, String value) {
+        throw new UnsupportedOperationException("TrackerSparqlStatement is not provided by the stand-in");
+    }
+    @Override
+    public void tracker_sparql_statement_bind_int(Pointer statement, String name, long value) {
+        throw new UnsupportedOperationException("TrackerSparqlStatement is not provided by the stand-in");
+    }
+    @Override
+    public void tracker_sparql_statement_bind_double(Pointer statement, String name, double value) {
+        throw new UnsupportedOperationException("TrackerSparqlStatement is not provided by the stand-in");
+    }
+    @Override
+    public void tracker_sparql_statement_bind_boolean(Pointer statement, String name, boolean value) {
+        throw new UnsupportedOperationException("TrackerSparqlStatement is not provided by the stand-in");
+    }
+    @Override
+    public TrackerSparqlCursor tracker_sparql_statement_execute(Pointer statement, Pointer cancellable, PointerByReference error) {
+        throw new UnsupportedOperationException("TrackerSparqlStatement is not provided by the stand-in");
+    }
+
+    private static final class Cursor {
+        final int rows;
+        int row = -1;
+
+        Cursor(int rows) {
+            this.rows = rows;
+        }
+    }
+}
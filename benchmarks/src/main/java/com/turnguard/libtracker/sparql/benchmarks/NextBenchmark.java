@@ -0,0 +1,102 @@
+package com.turnguard.libtracker.sparql.benchmarks;
+
+import com.turnguard.libtracker.sparql.Libtracker;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerException;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlConnection;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlCursor;
+import com.turnguard.libtracker.sparql.ResultBatch;
+import com.turnguard.libtracker.sparql.TrackerRow;
+import com.turnguard.libtracker.sparql.TrackerRowIterator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Row throughput, every invocation drains a cursor of {@link #ROWS} rows
+ * reading all of its cells
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NextBenchmark {
+
+    /**
+     * rows per invocation
+     */
+    public static final int ROWS = 1000;
+
+    private TrackerSparqlConnection con;
+    private String query;
+    private final ResultBatch batch = new ResultBatch(256);
+
+    @Setup(Level.Trial)
+    public void setUp() throws TrackerException {
+        BenchmarkBinding.select();
+        this.con = Libtracker.getTrackerSparqlConnection();
+        this.query = BenchmarkBinding.query(ROWS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        this.con.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void next(Blackhole blackhole) throws TrackerException {
+        try (TrackerSparqlCursor cursor = this.con.query(this.query)) {
+            while(cursor.next()){
+                blackhole.consume(cursor);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void nextGetString(Blackhole blackhole) throws TrackerException {
+        try (TrackerSparqlCursor cursor = this.con.query(this.query)) {
+            int columns = cursor.getColumnsCount();
+            while(cursor.next()){
+                for(int column = 0; column < columns; column++){
+                    blackhole.consume(cursor.getString(column));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void fetch(Blackhole blackhole) throws TrackerException {
+        try (TrackerSparqlCursor cursor = this.con.query(this.query)) {
+            while(cursor.fetch(256, this.batch) > 0){
+                blackhole.consume(this.batch.getStringData(0));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void rows(Blackhole blackhole) throws TrackerException {
+        try (TrackerRowIterator rows = this.con.query(this.query).rows()) {
+            for(TrackerRow row : rows){
+                blackhole.consume(row.getString(0));
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.turnguard.libtracker.sparql.benchmarks;
+
+import com.turnguard.libtracker.sparql.Libtracker;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerException;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlConnection;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlCursor;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * query() and update() round trips
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+    private TrackerSparqlConnection con;
+    private String query;
+
+    @Setup(Level.Trial)
+    public void setUp() throws TrackerException {
+        BenchmarkBinding.select();
+        this.con = Libtracker.getTrackerSparqlConnection();
+        this.query = BenchmarkBinding.query(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        this.con.close();
+    }
+
+    /**
+     * query and close, no row is read
+     */
+    @Benchmark
+    public int query() throws TrackerException {
+        try (TrackerSparqlCursor cursor = this.con.query(this.query)) {
+            return cursor.getColumnsCount();
+        }
+    }
+
+    /**
+     * query, read the first row and close
+     */
+    @Benchmark
+    public String queryFirstRow() throws TrackerException {
+        try (TrackerSparqlCursor cursor = this.con.query(this.query)) {
+            return cursor.next() ? cursor.getString(0) : null;
+        }
+    }
+
+    @Benchmark
+    public void update() throws TrackerException {
+        this.con.update(BenchmarkBinding.UPDATE);
+    }
+}
@@ -0,0 +1,121 @@
+package com.turnguard.libtracker.sparql.benchmarks;
+
+import com.turnguard.libtracker.sparql.Libtracker;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerException;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlConnection;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlCursor;
+import com.turnguard.libtracker.sparql.ResultWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Export throughput, every invocation writes a cursor of {@link #ROWS} rows
+ * to a channel discarding its input. getStringCsv is the baseline formatting
+ * every cell from getString().
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultWriterBenchmark {
+
+    /**
+     * rows per invocation
+     */
+    public static final int ROWS = 1000;
+
+    @Param({"CSV", "TSV", "JSON"})
+    public String format;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private TrackerSparqlConnection con;
+    private String query;
+    private ResultWriter writer;
+    private final NullChannel channel = new NullChannel();
+
+    @Setup(Level.Trial)
+    public void setUp() throws TrackerException {
+        BenchmarkBinding.select();
+        this.con = Libtracker.getTrackerSparqlConnection();
+        this.query = BenchmarkBinding.query(ROWS);
+        this.writer = new ResultWriter(ResultWriter.Format.valueOf(this.format));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        this.con.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long write() throws TrackerException, IOException {
+        try (TrackerSparqlCursor cursor = this.con.query(this.query)) {
+            return this.writer.write(cursor, this.channel);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long getStringCsv() throws TrackerException, IOException {
+        long bytes = 0;
+        try (TrackerSparqlCursor cursor = this.con.query(this.query)) {
+            int columns = cursor.getColumnsCount();
+            StringBuilder line = new StringBuilder();
+            while(cursor.next()){
+                line.setLength(0);
+                for(int column = 0; column < columns; column++){
+                    if(column > 0){
+                        line.append(',');
+                    }
+                    String value = cursor.getString(column);
+                    if(value!=null){
+                        line.append('"').append(value.replace("\"", "\"\"")).append('"');
+                    }
+                }
+                line.append("\r\n");
+                bytes += this.channel.write(ByteBuffer.wrap(line.toString().getBytes(UTF8)));
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Consumes everything written to it
+     */
+    private static final class NullChannel implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer src){
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+        @Override
+        public boolean isOpen(){
+            return true;
+        }
+        @Override
+        public void close(){
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.turnguard.libtracker.sparql.ffm;
+
+import com.sun.jna.NativeLibrary;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.LongByReference;
+import com.sun.jna.ptr.PointerByReference;
+import com.turnguard.libtracker.sparql.Libtracker;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlCursor;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlValueType;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * libtracker-sparql binding calling the cursor functions through downcall
+ * handles of the Foreign Function &amp; Memory API.<br/>
+ * The per row and per cell functions (next, value types, strings, numbers)
+ * are the hot path of every query, they are called without JNA's argument
+ * marshalling: cursors, strings and out-parameters are passed as raw 64-bit
+ * addresses (jlong) and the GError** and glong* out-parameters live in a per
+ * thread segment of an automatic arena. The Pointer returned for a string is
+ * a new one on every call, like JNA's, pointing into the cursor's row.
+ * Everything else is inherited from {@link Libtracker.DirectSparql}, the
+ * symbols are resolved through JNA so both use the same library.<br/>
+ * Selected with <code>-Dcom.turnguard.libtracker.sparql.binding=ffm</code>,
+ * needs Java 22 or later and a 64-bit JVM (run with <code>--enable-native-access=ALL-UNNAMED</code>
+ * to avoid the restricted method warning).
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public class FfmSparql extends Libtracker.DirectSparql {
+
+    private static final Linker LINKER = Linker.nativeLinker();
+    private static final NativeLibrary LIBRARY = NativeLibrary.getInstance(Libtracker.LIBRARY);
+    /**
+     * pointers are passed as jlong, which needs 64-bit addresses
+     */
+    private static final ValueLayout.OfLong POINTER = ValueLayout.JAVA_LONG;
+
+    static {
+        if(ValueLayout.ADDRESS.byteSize()!=POINTER.byteSize()){
+            throw new IllegalStateException("the ffm binding needs a 64-bit JVM");
+        }
+    }
+
+    private static final MethodHandle NEXT = handle("tracker_sparql_cursor_next",
+            FunctionDescriptor.of(ValueLayout.JAVA_INT, POINTER, POINTER, POINTER));
+    private static final MethodHandle N_COLUMNS = handle("tracker_sparql_cursor_get_n_columns",
+            FunctionDescriptor.of(ValueLayout.JAVA_INT, POINTER));
+    private static final MethodHandle VARIABLE_NAME = handle("tracker_sparql_cursor_get_variable_name",
+            FunctionDescriptor.of(POINTER, POINTER, ValueLayout.JAVA_INT));
+    private static final MethodHandle IS_BOUND = handle("tracker_sparql_cursor_is_bound",
+            FunctionDescriptor.of(ValueLayout.JAVA_INT, POINTER, ValueLayout.JAVA_INT));
+    private static final MethodHandle VALUE_TYPE = handle("tracker_sparql_cursor_get_value_type",
+            FunctionDescriptor.of(ValueLayout.JAVA_INT, POINTER, ValueLayout.JAVA_INT));
+    private static final MethodHandle GET_STRING = handle("tracker_sparql_cursor_get_string",
+            FunctionDescriptor.of(POINTER, POINTER, ValueLayout.JAVA_INT, POINTER));
+    private static final MethodHandle GET_INTEGER = handle("tracker_sparql_cursor_get_integer",
+            FunctionDescriptor.of(ValueLayout.JAVA_LONG, POINTER, ValueLayout.JAVA_INT));
+    private static final MethodHandle GET_DOUBLE = handle("tracker_sparql_cursor_get_double",
+            FunctionDescriptor.of(ValueLayout.JAVA_DOUBLE, POINTER, ValueLayout.JAVA_INT));
+    private static final MethodHandle GET_BOOLEAN = handle("tracker_sparql_cursor_get_boolean",
+            FunctionDescriptor.of(ValueLayout.JAVA_INT, POINTER, ValueLayout.JAVA_INT));
+
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    /**
+     * Per thread out-parameters, GError* at 0 and glong at 8, sliced once
+     */
+    static final class Scratch {
+        final MemorySegment segment = Arena.ofAuto().allocate(16, 8);
+        final long error = this.segment.address();
+        final long length = this.error + 8;
+    }
+
+    private static MethodHandle handle(String name, FunctionDescriptor descriptor){
+        long address = Pointer.nativeValue(LIBRARY.getFunction(name));
+        return LINKER.downcallHandle(MemorySegment.ofAddress(address), descriptor);
+    }
+
+    private static long address(TrackerSparqlCursor cursor){
+        return address(cursor.getPointer());
+    }
+
+    private static long address(Pointer pointer){
+        return pointer==null ? 0 : Pointer.nativeValue(pointer);
+    }
+
+    /**
+     * Reads a NUL terminated UTF-8 string owned by the cursor
+     */
+    private static String string(long value){
+        return value==0 ? null : MemorySegment.ofAddress(value).reinterpret(Long.MAX_VALUE).getString(0);
+    }
+
+    private static IllegalStateException failure(String name, Throwable t){
+        return new IllegalStateException("downcall "+name+" failed", t);
+    }
+
+    @Override
+    public boolean tracker_sparql_cursor_next(TrackerSparqlCursor cursor, Pointer cancellable, PointerByReference error) {
+        Scratch scratch = SCRATCH.get();
+        scratch.segment.set(POINTER, 0, 0L);
+        int next;
+        try {
+            next = (int)NEXT.invokeExact(address(cursor), address(cancellable), scratch.error);
+        } catch(Throwable t){
+            throw failure("tracker_sparql_cursor_next", t);
+        }
+        long gerror = scratch.segment.get(POINTER, 0);
+        if(gerror!=0 && error!=null){
+            error.setValue(new Pointer(gerror));
+        }
+        return next!=0;
+    }
+
+    @Override
+    public int tracker_sparql_cursor_get_n_columns(TrackerSparqlCursor cursor) {
+        try {
+            return (int)N_COLUMNS.invokeExact(address(cursor));
+        } catch(Throwable t){
+            throw failure("tracker_sparql_cursor_get_n_columns", t);
+        }
+    }
+
+    @Override
+    public String tracker_sparql_cursor_get_variable_name(TrackerSparqlCursor cursor, int column) {
+        try {
+            return string((long)VARIABLE_NAME.invokeExact(address(cursor), column));
+        } catch(Throwable t){
+            throw failure("tracker_sparql_cursor_get_variable_name", t);
+        }
+    }
+
+    @Override
+    public boolean tracker_sparql_cursor_is_bound(TrackerSparqlCursor cursor, int column) {
+        try {
+            return (int)IS_BOUND.invokeExact(address(cursor), column)!=0;
+        } catch(Throwable t){
+            throw failure("tracker_sparql_cursor_is_bound", t);
+        }
+    }
+
+    @Override
+    public TrackerSparqlValueType tracker_sparql_cursor_get_value_type(TrackerSparqlCursor cursor, int column) {
+        int type;
+        try {
+            type = (int)VALUE_TYPE.invokeExact(address(cursor), column);
+        } catch(Throwable t){
+            throw failure("tracker_sparql_cursor_get_value_type", t);
+        }
+        return TrackerSparqlValueType.fromIntValue(type);
+    }
+
+    @Override
+    public String tracker_sparql_cursor_get_string(TrackerSparqlCursor cursor, int column, Long offset) {
+        try {
+            return string((long)GET_STRING.invokeExact(address(cursor), column, 0L));
+        } catch(Throwable t){
+            throw failure("tracker_sparql_cursor_get_string", t);
+        }
+    }
+
+    @Override
+    public Pointer tracker_sparql_cursor_get_string(TrackerSparqlCursor cursor, int column, LongByReference length) {
+        Scratch scratch = SCRATCH.get();
+        long value;
+        try {
+            value = (long)GET_STRING.invokeExact(address(cursor), column, length==null ? 0L : scratch.length);
+        } catch(Throwable t){
+            throw failure("tracker_sparql_cursor_get_string", t);
+        }
+        if(value==0){
+            return null;
+        }
+        if(length!=null){
+            length.setValue(scratch.segment.get(POINTER, 8));
+        }
+        return new Pointer(value);
+    }
+
+    @Override
+    public long tracker_sparql_cursor_get_integer(TrackerSparqlCursor cursor, int column) {
+        try {
+            return (long)GET_INTEGER.invokeExact(address(cursor), column);
+        } catch(Throwable t){
+            throw failure("tracker_sparql_cursor_get_integer", t);
+        }
+    }
+
+    @Override
+    public double tracker_sparql_cursor_get_double(TrackerSparqlCursor cursor, int column) {
+        try {
+            return (double)GET_DOUBLE.invokeExact(address(cursor), column);
+        } catch(Throwable t){
+            throw failure("tracker_sparql_cursor_get_double", t);
+        }
+    }
+
+    @Override
+    public boolean tracker_sparql_cursor_get_boolean(TrackerSparqlCursor cursor, int column) {
+        try {
+            return (int)GET_BOOLEAN.invokeExact(address(cursor), column)!=0;
+        } catch(Throwable t){
+            throw failure("tracker_sparql_cursor_get_boolean", t);
+        }
+    }
+}
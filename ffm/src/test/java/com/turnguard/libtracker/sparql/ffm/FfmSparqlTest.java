@@ -0,0 +1,25 @@
+package com.turnguard.libtracker.sparql.ffm;
+
+import com.sun.jna.Pointer;
+import java.lang.foreign.ValueLayout;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * The per thread out-parameters of the ffm binding, no libtracker-sparql needed
+ * @author turnguard
+ */
+public class FfmSparqlTest {
+
+    @Test
+    public void test_001_scratch_slots() {
+        System.out.println("test_001_scratch_slots");
+        FfmSparql.Scratch scratch = new FfmSparql.Scratch();
+        TestCase.assertEquals(scratch.segment.address(), scratch.error);
+        TestCase.assertEquals(scratch.error + 8, scratch.length);
+        new Pointer(scratch.error).setLong(0, 7L);
+        new Pointer(scratch.length).setLong(0, 42L);
+        TestCase.assertEquals(7L, scratch.segment.get(ValueLayout.JAVA_LONG, 0));
+        TestCase.assertEquals(42L, scratch.segment.get(ValueLayout.JAVA_LONG, 8));
+    }
+}
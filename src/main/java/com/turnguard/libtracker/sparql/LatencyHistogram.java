@@ -0,0 +1,126 @@
+package com.turnguard.libtracker.sparql;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in nanoseconds.<br/>
+ * Every power of two is split into 4 buckets, so percentiles are reported
+ * with an error of at most 25% (always rounded up to the bucket's upper bound),
+ * count, mean and max are exact.
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 248;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanos a duration, negative values count as 0
+     */
+    public void record(long nanos){
+        if(nanos < 0){
+            nanos = 0;
+        }
+        this.buckets.incrementAndGet(index(nanos));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(nanos);
+        long current;
+        while(nanos > (current = this.max.get()) && !this.max.compareAndSet(current, nanos)){}
+    }
+
+    static int index(long nanos){
+        if(nanos < 4){
+            return (int)nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        return (exponent - 1) * 4 + (int)((nanos >>> (exponent - 2)) & 3);
+    }
+
+    static long lowerBound(int index){
+        if(index < 4){
+            return index;
+        }
+        return (long)(4 + (index & 3)) << (index / 4 - 1);
+    }
+
+    /**
+     * @return long the number of recorded durations
+     */
+    public long getCount(){
+        return this.count.get();
+    }
+    /**
+     * @return long the mean duration in nanoseconds, 0 if nothing was recorded
+     */
+    public long getMean(){
+        long n = this.count.get();
+        return n == 0 ? 0 : this.sum.get() / n;
+    }
+    /**
+     * @return long the longest duration in nanoseconds
+     */
+    public long getMax(){
+        return this.max.get();
+    }
+    /**
+     * @return long the median in nanoseconds
+     */
+    public long getP50(){
+        return this.getPercentile(50);
+    }
+    /**
+     * @return long the 90th percentile in nanoseconds
+     */
+    public long getP90(){
+        return this.getPercentile(90);
+    }
+    /**
+     * @return long the 99th percentile in nanoseconds
+     */
+    public long getP99(){
+        return this.getPercentile(99);
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return long the upper bound of the bucket holding the percentile, in nanoseconds
+     */
+    public long getPercentile(double percentile){
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            counts[i] = this.buckets.get(i);
+            total += counts[i];
+        }
+        if(total == 0){
+            return 0;
+        }
+        long rank = Math.max(1, (long)Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            seen += counts[i];
+            if(seen >= rank){
+                long upper = i + 1 < BUCKETS ? lowerBound(i + 1) - 1 : Long.MAX_VALUE;
+                return Math.min(upper, this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    /**
+     * Clears all recorded durations
+     */
+    public void reset(){
+        for(int i = 0; i < BUCKETS; i++){
+            this.buckets.set(i, 0);
+        }
+        this.count.set(0);
+        this.sum.set(0);
+        this.max.set(0);
+    }
+}
@@ -1,20 +1,32 @@
 package com.turnguard.libtracker.sparql;
 
+import com.sun.jna.Callback;
 import com.sun.jna.DefaultTypeMapper;
 import com.sun.jna.FromNativeContext;
 import com.sun.jna.Library;
 import com.sun.jna.Native;
+import com.sun.jna.NativeLibrary;
 import com.sun.jna.Pointer;
 import com.sun.jna.PointerType;
+import com.sun.jna.StringArray;
 import com.sun.jna.Structure;
 import com.sun.jna.ToNativeContext;
 import com.sun.jna.TypeConverter;
-import com.sun.jna.TypeMapper;
+import com.sun.jna.ptr.LongByReference;
 import com.sun.jna.ptr.PointerByReference;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * <h1>GNOME Tracker - libtracker-sparql java bindings</h1>
@@ -33,6 +45,10 @@ import java.util.Map;
  * <li>Tracker ValueTypes enum</li>
  * <li>Tracker Structures</li>
  * <li>Tracker library</li>
+ * <li>Tracker library, direct mapped</li>
+ * <li>GLib main loop library</li>
+ * <li>GObject library</li>
+ * <li>Gio D-Bus library</li>
  * <li>Tracker library wrapper methods</li>
  * </ul>
  * </li>
@@ -69,12 +85,128 @@ public class Libtracker {
      * library name
      */
     public static final String LIBTRACKER_SPARQL = "tracker-sparql-1.0";    
+    /**
+     * library name of libtracker-sparql-2.0, same API as 1.0
+     */
+    public static final String LIBTRACKER_SPARQL_2 = "tracker-sparql-2.0";
+    /**
+     * library name of libtracker-sparql-3.0, which opens private stores 
+     * (tracker_sparql_connection_new) and drops the update priority
+     */
+    public static final String LIBTRACKER_SPARQL_3 = "tracker-sparql-3.0";
+    /**
+     * system property naming the library to load, e.g. "tracker-sparql-3.0". 
+     * Unset, the first of {@link #LIBTRACKER_SPARQL}, {@link #LIBTRACKER_SPARQL_2} 
+     * and {@link #LIBTRACKER_SPARQL_3} that is installed is loaded.
+     */
+    public static final String LIBRARY_PROPERTY = "com.turnguard.libtracker.sparql.library";
+    /**
+     * the service of tracker-miner-fs, connected to by {@link #getTrackerSparqlConnection()} 
+     * with libtracker-sparql-3.0 since Tracker 3 has no central store
+     */
+    public static final String MINER_FS_SERVICE = "org.freedesktop.Tracker3.Miner.Files";
+    /**
+     * system property selecting the binding: "direct" (default), "proxy", "ffm" 
+     * (see {@link #FFM_BINDING}) or the name of a class implementing {@link Sparql} 
+     * with a public no-arg constructor, e.g. an in-memory stand-in for benchmarks
+     */
+    public static final String BINDING_PROPERTY = "com.turnguard.libtracker.sparql.binding";
+    /**
+     * the binding selected by "ffm": cursor accessors called through Java's 
+     * Foreign Function &amp; Memory API, provided by the optional ffm module (Java 22+).
+     * Falls back to "direct" if the module is missing or the JVM too old.
+     */
+    public static final String FFM_BINDING = "com.turnguard.libtracker.sparql.ffm.FfmSparql";
+    /**
+     * glib library name
+     */
+    public static final String LIBGLIB = "glib-2.0";
+    /**
+     * gobject library name
+     */
+    public static final String LIBGOBJECT = "gobject-2.0";
+    /**
+     * gio library name
+     */
+    public static final String LIBGIO = "gio-2.0";
     public static final Libtracker.Sparql SPARQL;
+    public static final Libtracker.GLib GLIB;
+    public static final Libtracker.GObjectLib GOBJECT;
+    public static final Libtracker.Gio GIO;
+    /**
+     * the loaded library's name
+     */
+    public static final String LIBRARY;
+    /**
+     * the loaded library's major version: 1, 2 or 3
+     */
+    public static final int VERSION;
+    private static final boolean NATIVE_BINDING;
+    private static final String BINDING;
+    private static Boolean statementSupported;
+    private static int ioErrorQuark;
     public static final Map<String, Object> options = new HashMap<>();
     
+    /**
+     * per thread GError** out-parameter, reused by all wrapper methods
+     */
+    private static final ThreadLocal<PointerByReference> ERROR = new ThreadLocal<PointerByReference>() {
+        @Override
+        protected PointerByReference initialValue() {
+            return new PointerByReference(null);
+        }
+    };
+    /**
+     * per thread glong* out-parameter of tracker_sparql_cursor_get_string
+     */
+    private static final ThreadLocal<LongByReference> LENGTH = new ThreadLocal<LongByReference>() {
+        @Override
+        protected LongByReference initialValue() {
+            return new LongByReference();
+        }
+    };
+    
     static {
         options.put(Library.OPTION_TYPE_MAPPER, new TrackerSparqlValueTypeMapper());
-        SPARQL = (Libtracker.Sparql)Native.loadLibrary(LIBTRACKER_SPARQL, Libtracker.Sparql.class, options);
+        String library = System.getProperty(LIBRARY_PROPERTY);
+        LIBRARY = library!=null ? library : Libtracker.detectLibrary(LIBTRACKER_SPARQL, LIBTRACKER_SPARQL_2, LIBTRACKER_SPARQL_3);
+        VERSION = Libtracker.version(LIBRARY);
+        String binding = System.getProperty(BINDING_PROPERTY, "direct");
+        if("proxy".equals(binding) && VERSION >= 3){
+            // the interface declares the 1.0 signatures, update would pass its priority as cancellable
+            binding = "direct";
+        }
+        Libtracker.Sparql sparql;
+        if("proxy".equals(binding)){
+            sparql = (Libtracker.Sparql)Native.loadLibrary(LIBRARY, Libtracker.Sparql.class, options);
+            NATIVE_BINDING = true;
+        } else if("direct".equals(binding)){
+            sparql = new Libtracker.DirectSparql();
+            NATIVE_BINDING = true;
+        } else if("ffm".equals(binding)){
+            Libtracker.Sparql ffm;
+            try {
+                ffm = Libtracker.loadSparql(FFM_BINDING);
+            } catch(IllegalStateException | LinkageError e){
+                ffm = null;
+                binding = "direct";
+            }
+            sparql = ffm!=null ? ffm : new Libtracker.DirectSparql();
+            NATIVE_BINDING = true;
+        } else {
+            sparql = Libtracker.loadSparql(binding);
+            NATIVE_BINDING = sparql instanceof Libtracker.DirectSparql;
+        }
+        BINDING = binding;
+        if(Boolean.getBoolean(TrackerMetrics.METRICS_PROPERTY)){
+            SPARQL = TrackerMetrics.count(sparql);
+            TrackerMetrics.registerMBean();
+        } else {
+            SPARQL = sparql;
+        }
+        GLIB = (Libtracker.GLib)Native.loadLibrary(LIBGLIB, Libtracker.GLib.class);
+        GOBJECT = (Libtracker.GObjectLib)Native.loadLibrary(LIBGOBJECT, Libtracker.GObjectLib.class);
+        GIO = (Libtracker.Gio)Native.loadLibrary(LIBGIO, Libtracker.Gio.class);
     };
     
     /**
@@ -88,11 +220,37 @@ public class Libtracker {
                     super();
             }
     };   
+    /**
+     * Binding for: void (*GAsyncReadyCallback) (GObject *source_object, GAsyncResult *res, gpointer user_data);
+     */
+    public interface GAsyncReadyCallback extends Callback {
+        public void invoke(Pointer source, Pointer result, Pointer userData);
+    }
+    /**
+     * Binding for: gboolean (*GSourceFunc) (gpointer user_data);
+     */
+    public interface GSourceFunc extends Callback {
+        public boolean invoke(Pointer userData);
+    }
+    /**
+     * Binding for: void (*GDBusSignalCallback) (GDBusConnection *connection, const gchar *sender_name, const gchar *object_path, const gchar *interface_name, const gchar *signal_name, GVariant *parameters, gpointer user_data);
+     */
+    public interface GDBusSignalCallback extends Callback {
+        public void invoke(Pointer connection, String sender, String objectPath, String interfaceName, String signalName, Pointer parameters, Pointer userData);
+    }
     /**
      * GError class for Exception handling
      * @see <a href="http://searchcode.com/codesearch/view/11971074" target="_blank">http://searchcode.com/codesearch/view/11971074</a>
      */
     public static class GError extends Structure {
+        /**
+         * GIOErrorEnum G_IO_ERROR_CANCELLED
+         */
+        public static final int G_IO_ERROR_CANCELLED = 19;
+        /**
+         * GIOErrorEnum G_IO_ERROR_NOT_SUPPORTED
+         */
+        public static final int G_IO_ERROR_NOT_SUPPORTED = 15;
         public volatile int domain;
 	public volatile int code;
 	public volatile String message;                
@@ -118,6 +276,19 @@ public class Libtracker {
         public String getMessage(){
             return (String)readField("message");
         } 
+        /**
+         * Retrieve the GQuark of the error domain
+         * @return int the error domain
+         */
+        public int getDomain(){
+            return (Integer)readField("domain");
+        }
+        /**
+         * @return boolean true for G_IO_ERROR_CANCELLED, set by calls aborted through a GCancellable
+         */
+        public boolean isCancelled(){
+            return this.getCode()==G_IO_ERROR_CANCELLED && this.getDomain()==Libtracker.ioErrorQuark();
+        }
         public static class ByReference extends GError implements Structure.ByReference {
             public ByReference(Pointer address) {
                 super(address);
@@ -180,16 +351,58 @@ public class Libtracker {
      * Wrapper for GErrors
      */
     public static class TrackerException extends Exception {
+        /**
+         * error code of calls aborted through {@link TrackerCancellable#cancel()}
+         */
+        public static final int CANCELLED = -2;
+        /**
+         * error code of calls aborted because the deadline of their {@link TrackerCancellable} has passed
+         */
+        public static final int TIMED_OUT = -3;
         private int errorCode = -1;
         
         public TrackerException(GError error) {
             super(error.getMessage());
             this.errorCode = error.getCode();
         }
+        
+        public TrackerException(String message) {
+            super(message);
+        }
+
+        public TrackerException(String message, int errorCode) {
+            super(message);
+            this.errorCode = errorCode;
+        }
 
         public int getErrorCode() {
             return errorCode;
         }
+
+        /**
+         * @return boolean true if the call was cancelled or timed out
+         */
+        public boolean isCancelled() {
+            return errorCode==CANCELLED || errorCode==TIMED_OUT;
+        }
+        
+    };
+    /**
+     * Unchecked wrapper for TrackerExceptions thrown where checked exceptions 
+     * are not possible, e.g. from iterators
+     */
+    public static class UncheckedTrackerException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+        
+        public UncheckedTrackerException(TrackerException cause) {
+            super(cause.getMessage(), cause);
+        }
+
+        @Override
+        public synchronized TrackerException getCause() {
+            return (TrackerException)super.getCause();
+        }
         
     };
     /**
@@ -205,6 +418,8 @@ public class Libtracker {
         TRACKER_SPARQL_VALUE_TYPE_DATETIME(5),
         TRACKER_SPARQL_VALUE_TYPE_BLANK_NODE(6),
         TRACKER_SPARQL_VALUE_TYPE_BOOLEAN(7);
+        
+        private static final TrackerSparqlValueType[] VALUES = TrackerSparqlValueType.values();
                
         private int intValue;
         private TrackerSparqlValueType(int intValue){
@@ -216,34 +431,119 @@ public class Libtracker {
         }
         @Override
         public TrackerSparqlValueType getValue(int i){            
-            for(TrackerSparqlValueType type : TrackerSparqlValueType.values()){
-                if(type.ordinal()==i){
-                    return type;
-                }
+            return TrackerSparqlValueType.fromIntValue(i);
+        }
+        /**
+         * Lookup without iterating (or copying) the enum constants
+         * @param i the native TrackerSparqlValueType
+         * @return TrackerSparqlValueType
+         */
+        public static TrackerSparqlValueType fromIntValue(int i){
+            if(i<0 || i>=VALUES.length){
+                throw new IllegalArgumentException("No Enum Constants with this intValue");
             }
-            throw new IllegalArgumentException("No Enum Constants with this intValue");
+            return VALUES[i];
         }
     };
     
     /**
-     * The TrackerSparqlConnection
+     * TrackerSparqlConnectionFlags of tracker_sparql_connection_new, libtracker-sparql-3.0
+     */
+    public static final class TrackerSparqlConnectionFlags {
+        public static final int NONE = 0;
+        public static final int READONLY = 1;
+        public static final int FTS_ENABLE_STEMMER = 1 << 1;
+        public static final int FTS_ENABLE_UNACCENT = 1 << 2;
+        public static final int FTS_ENABLE_STOP_WORDS = 1 << 3;
+        public static final int FTS_IGNORE_NUMBERS = 1 << 4;
+        private TrackerSparqlConnectionFlags() {}
+    }
+    
+    /**
+     * The TrackerSparqlConnection, an opaque handle to the native GObject.<br/>
+     * Connections returned by the wrapper methods own a reference, close() 
+     * releases it, otherwise it is released once the connection is garbage 
+     * collected, see {@link NativeResources}.
      */
-    public static class TrackerSparqlConnection extends Structure {       
-	public Libtracker.GObject parent_instance;
-	public PointerByReference priv;        
+    public static class TrackerSparqlConnection extends PointerType implements AutoCloseable {
+        /**
+         * default number of prepared query templates cached per connection
+         */
+        public static final int STATEMENT_CACHE_SIZE = 64;
+        private TrackerStatementCache statements;
+        private int statementCacheSize = STATEMENT_CACHE_SIZE;
+        private volatile TrackerQueryCache queryCache;
+        private NativeResources.Ref resource;
+        private volatile long timeout = 0;
         public TrackerSparqlConnection() {}
-        public TrackerSparqlConnection(TypeMapper mapper) { super(mapper); }
-	public TrackerSparqlConnection(Libtracker.GObject parent_instance, PointerByReference priv) {
-		super();
-		this.parent_instance = parent_instance;
-		this.priv = priv;
-	}           
-	public static class ByReference extends TrackerSparqlConnection implements Structure.ByReference {};
-	public static class ByValue extends TrackerSparqlConnection implements Structure.ByValue {}; 
-        @Override
-	protected List<? > getFieldOrder() {
-		return Arrays.asList("parent_instance", "priv");
-	}        
+        public TrackerSparqlConnection(Pointer address) { super(address); }
+        /**
+         * Takes ownership of the reference returned by the library
+         * @return TrackerSparqlConnection this
+         */
+        synchronized TrackerSparqlConnection own(){
+            if(NATIVE_BINDING && this.resource==null && this.getPointer()!=null){
+                this.resource = NativeResources.object(this, this.getPointer());
+            }
+            return this;
+        }
+        /**
+         * Releases the prepared statements and the connection's reference 
+         * (g_object_unref), the connection must not be used afterwards
+         */
+        @Override
+        public void close(){
+            TrackerStatementCache cache;
+            NativeResources.Ref owned;
+            synchronized(this){
+                cache = this.statements;
+                this.statements = null;
+                owned = this.resource;
+                this.resource = null;
+                if(owned!=null){
+                    this.setPointer(null);
+                }
+            }
+            if(cache!=null){
+                cache.clear();
+            }
+            if(owned!=null){
+                owned.release();
+            }
+        }
+        /**
+         * Prepares a query with ~name parameters, the parsed template (and 
+         * native TrackerSparqlStatement where available) is cached per connection
+         * @param sparql a SPARQL 1.1 SelectQueryString with ~name parameters
+         * @return TrackerSparqlStatement
+         */
+        public TrackerSparqlStatement prepare(String sparql){
+            return new TrackerSparqlStatement(this, this.statements(), sparql);
+        }
+        /**
+         * @return TrackerStatementCache the templates prepared on this connection
+         */
+        synchronized TrackerStatementCache statements(){
+            if(this.statements==null){
+                this.statements = new TrackerStatementCache(this, this.statementCacheSize);
+            }
+            return this.statements;
+        }
+        /**
+         * Sets the number of prepared query templates cached by this connection,
+         * clears the current cache
+         * @param size
+         */
+        public synchronized void setStatementCacheSize(int size){
+            if(size < 1){
+                throw new IllegalArgumentException("size must be positive");
+            }
+            this.statementCacheSize = size;
+            if(this.statements!=null){
+                this.statements.clear();
+                this.statements = null;
+            }
+        }
         /**
          * Wrapper for library method tracker_sparql_connection_query
          * @param query a SPARQL 1.1 SelectQueryString
@@ -251,12 +551,95 @@ public class Libtracker {
          * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException
          */
         public Libtracker.TrackerSparqlCursor query(String query) throws TrackerException{
-            PointerByReference error = new PointerByReference(null);
-            Libtracker.TrackerSparqlCursor cursor = Libtracker.SPARQL.tracker_sparql_connection_query(this, query, false, error);
-            if(error.getValue()!=null){
-                throw new TrackerException(new GError(error.getValue()));
+            TrackerQueryCache cache = this.queryCache;
+            if(cache!=null){
+                return cache.query(this, query);
+            }
+            return this.queryNative(query);
+        }
+        /**
+         * Wrapper for library method tracker_sparql_connection_query, bypassing the query cache.<br/>
+         * The cursor's next() passes the same cancellable, so the query can 
+         * be aborted while its rows are read as well.
+         * @param query a SPARQL 1.1 SelectQueryString
+         * @param cancellable aborts the query and the cursor's next(), not closed by the cursor
+         * @return Libtracker.TrackerSparqlCursor
+         * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException with code TrackerException.CANCELLED or TIMED_OUT if aborted
+         */
+        public Libtracker.TrackerSparqlCursor query(String query, TrackerCancellable cancellable) throws TrackerException{
+            return this.queryNative(query, cancellable, false);
+        }
+        /**
+         * Wrapper for library method tracker_sparql_connection_query, bypassing the query cache.<br/>
+         * The timeout covers the query and reading its rows until the cursor is closed.
+         * @param query a SPARQL 1.1 SelectQueryString
+         * @param timeout
+         * @param unit
+         * @return Libtracker.TrackerSparqlCursor
+         * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException with code TrackerException.TIMED_OUT once the timeout has elapsed
+         */
+        public Libtracker.TrackerSparqlCursor query(String query, long timeout, TimeUnit unit) throws TrackerException{
+            return this.queryNative(query, new TrackerCancellable(timeout, unit), true);
+        }
+        /**
+         * Wrapper for library method tracker_sparql_connection_query, bypassing 
+         * the query cache, with the connection's timeout
+         * @param query a SPARQL 1.1 SelectQueryString
+         * @return Libtracker.TrackerSparqlCursor
+         * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException
+         */
+        Libtracker.TrackerSparqlCursor queryNative(String query) throws TrackerException{
+            return this.queryNative(query, this.deadline(), true);
+        }
+        /**
+         * @param query a SPARQL 1.1 SelectQueryString
+         * @param cancellable may be null
+         * @param owned true if the cursor closes the cancellable
+         * @return Libtracker.TrackerSparqlCursor
+         * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException
+         */
+        Libtracker.TrackerSparqlCursor queryNative(String query, TrackerCancellable cancellable, boolean owned) throws TrackerException{
+            TrackerMetrics.Trace trace = TrackerMetrics.trace(query);
+            PointerByReference error = Libtracker.error();
+            Libtracker.TrackerSparqlCursor cursor;
+            try {
+                cursor = Libtracker.SPARQL.tracker_sparql_connection_query(this, query, Libtracker.pointer(cancellable), error);
+                Libtracker.checkError(error, trace, cancellable);
+            } catch(TrackerException | RuntimeException e){
+                if(owned && cancellable!=null){
+                    cancellable.close();
+                }
+                throw e;
+            }
+            cursor.own();
+            cursor.cancellable(cancellable, owned);
+            return trace==null ? cursor : trace.opened(cursor);
+        }
+        /**
+         * Sets the timeout of every query, update and statistics call of this
+         * connection that is not given a cancellable, for queries it covers
+         * reading the rows until the cursor is closed. 0 disables the timeout (the default).
+         * @param timeout
+         * @param unit
+         */
+        public void setTimeout(long timeout, TimeUnit unit){
+            if(timeout < 0){
+                throw new IllegalArgumentException("timeout must not be negative");
             }
-            return cursor;
+            this.timeout = unit.toMillis(timeout);
+        }
+        /**
+         * @return long the timeout in milliseconds, 0 if calls do not time out
+         */
+        public long getTimeout(){
+            return this.timeout;
+        }
+        /**
+         * @return TrackerCancellable cancelled after the connection's timeout, null without timeout
+         */
+        TrackerCancellable deadline(){
+            long millis = this.timeout;
+            return millis > 0 ? new TrackerCancellable(millis, TimeUnit.MILLISECONDS) : null;
         }
         /**
          * Wrapper for library method tracker_sparql_connection_update
@@ -264,60 +647,394 @@ public class Libtracker {
          * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException 
          */
         public void update(String query) throws TrackerException {            
-            PointerByReference error = new PointerByReference(null);
-            Libtracker.SPARQL.tracker_sparql_connection_update(this, query, -100, false, error);
-            if(error.getValue()!=null){
-                throw new TrackerException(new GError(error.getValue()));
+            this.update(query, -100);
+        }
+        /**
+         * Wrapper for library method tracker_sparql_connection_update
+         * @param query a SPARQL 1.1 UpdateQueryString
+         * @param glibPriority the GLib priority, e.g. -100 (G_PRIORITY_HIGH) or 0 (G_PRIORITY_DEFAULT)
+         * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException 
+         */
+        public void update(String query, int glibPriority) throws TrackerException {            
+            TrackerCancellable cancellable = this.deadline();
+            try {
+                this.update(query, glibPriority, cancellable);
+            } finally {
+                if(cancellable!=null){
+                    cancellable.close();
+                }
+            }
+        }
+        /**
+         * Wrapper for library method tracker_sparql_connection_update
+         * @param query a SPARQL 1.1 UpdateQueryString
+         * @param glibPriority the GLib priority, e.g. -100 (G_PRIORITY_HIGH) or 0 (G_PRIORITY_DEFAULT)
+         * @param cancellable aborts the update, may be null
+         * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException with code TrackerException.CANCELLED or TIMED_OUT if aborted
+         */
+        public void update(String query, int glibPriority, TrackerCancellable cancellable) throws TrackerException {            
+            TrackerMetrics.Trace trace = TrackerMetrics.trace(query);
+            PointerByReference error = Libtracker.error();
+            try {
+                Libtracker.SPARQL.tracker_sparql_connection_update(this, query, glibPriority, Libtracker.pointer(cancellable), error);
+            } finally {
+                this.invalidateQueryCache();
+            }
+            Libtracker.checkError(error, trace, cancellable);
+            if(trace!=null){
+                trace.updated();
+            }
+        }
+        /**
+         * Wrapper for library method tracker_sparql_connection_update_blank, 
+         * the connection's timeout applies
+         * @param query a SPARQL 1.1 UpdateQueryString inserting blank nodes
+         * @return TrackerBlankNodes the urns generated for the blank nodes
+         * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException 
+         */
+        public TrackerBlankNodes updateBlank(String query) throws TrackerException {
+            TrackerCancellable cancellable = this.deadline();
+            try {
+                return this.updateBlank(query, -100, cancellable);
+            } finally {
+                if(cancellable!=null){
+                    cancellable.close();
+                }
+            }
+        }
+        /**
+         * Wrapper for library method tracker_sparql_connection_update_blank
+         * @param query a SPARQL 1.1 UpdateQueryString inserting blank nodes
+         * @param glibPriority the GLib priority, e.g. -100 (G_PRIORITY_HIGH) or 0 (G_PRIORITY_DEFAULT)
+         * @param cancellable aborts the update, may be null
+         * @return TrackerBlankNodes the urns generated for the blank nodes
+         * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException with code TrackerException.CANCELLED or TIMED_OUT if aborted
+         */
+        public TrackerBlankNodes updateBlank(String query, int glibPriority, TrackerCancellable cancellable) throws TrackerException {
+            TrackerMetrics.Trace trace = TrackerMetrics.trace(query);
+            PointerByReference error = Libtracker.error();
+            Pointer variant;
+            try {
+                variant = Libtracker.SPARQL.tracker_sparql_connection_update_blank(this, query, glibPriority, Libtracker.pointer(cancellable), error);
+            } finally {
+                this.invalidateQueryCache();
+            }
+            try {
+                Libtracker.checkError(error, trace, cancellable);
+                if(trace!=null){
+                    trace.updated();
+                }
+                return TrackerBlankNodes.parse(variant);
+            } finally {
+                if(variant!=null){
+                    Libtracker.GLIB.g_variant_unref(variant);
+                }
             }
         }
+        /**
+         * Enables caching of query() results, every update through this 
+         * connection invalidates the cache. Pass null to disable caching.
+         * @param cache
+         */
+        public void setQueryCache(TrackerQueryCache cache){
+            this.queryCache = cache;
+        }
+        /**
+         * @return TrackerQueryCache or null if query results are not cached
+         */
+        public TrackerQueryCache getQueryCache(){
+            return this.queryCache;
+        }
+        void invalidateQueryCache(){
+            TrackerQueryCache cache = this.queryCache;
+            if(cache!=null){
+                cache.invalidateAll();
+            }
+        }
+        /**
+         * Wrapper for library method tracker_sparql_connection_load, tracker-store 
+         * reads and inserts the Turtle file itself in one transaction. The 
+         * connection's timeout applies.
+         * @param file a Turtle file readable by tracker-store
+         * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException 
+         */
+        public void load(File file) throws TrackerException {
+            TrackerCancellable cancellable = this.deadline();
+            TrackerMetrics.Trace trace = TrackerMetrics.trace("tracker_sparql_connection_load " + file);
+            Pointer gfile = Libtracker.GIO.g_file_new_for_path(file.getAbsolutePath());
+            PointerByReference error = Libtracker.error();
+            try {
+                Libtracker.SPARQL.tracker_sparql_connection_load(this, gfile, Libtracker.pointer(cancellable), error);
+                Libtracker.checkError(error, trace, cancellable);
+            } finally {
+                Libtracker.GOBJECT.g_object_unref(gfile);
+                this.invalidateQueryCache();
+                if(cancellable!=null){
+                    cancellable.close();
+                }
+            }
+            if(trace!=null){
+                trace.updated();
+            }
+        }
+        /**
+         * Loads N-Triples or Turtle files with a {@link TrackerBulkLoader} and its defaults
+         * @param files
+         * @return long the number of statements loaded
+         * @throws java.io.IOException if a file cannot be read
+         * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException if a batch failed
+         * @throws InterruptedException
+         */
+        public long bulkLoad(File... files) throws IOException, TrackerException, InterruptedException {
+            return new TrackerBulkLoader(this).load(files);
+        }
         /**
          * Wrapper for library method tracker_sparql_connection_statistics
          * @return Libtracker.TrackerSparqlCursor
          * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException 
          */
         public Libtracker.TrackerSparqlCursor getStatistics() throws TrackerException{
-            PointerByReference error = new PointerByReference(null);
-            Libtracker.TrackerSparqlCursor cursor = Libtracker.SPARQL.tracker_sparql_connection_statistics(this, false, error);
-            if(error.getValue()!=null){
-                throw new TrackerException(new GError(error.getValue()));
+            TrackerMetrics.Trace trace = TrackerMetrics.trace("tracker_sparql_connection_statistics");
+            TrackerCancellable cancellable = this.deadline();
+            PointerByReference error = Libtracker.error();
+            Libtracker.TrackerSparqlCursor cursor;
+            try {
+                cursor = Libtracker.SPARQL.tracker_sparql_connection_statistics(this, Libtracker.pointer(cancellable), error);
+                Libtracker.checkError(error, trace, cancellable);
+            } finally {
+                if(cancellable!=null){
+                    cancellable.close();
+                }
+            }
+            cursor.own();
+            return trace==null ? cursor : trace.opened(cursor);
+        }
+        /**
+         * Wrapper for library methods tracker_sparql_connection_query_async and tracker_sparql_connection_query_finish,
+         * run on the {@link TrackerMainLoop}.<br/>
+         * TrackerFuture.cancel() aborts the query, the connection's timeout applies.
+         * @param query a SPARQL 1.1 SelectQueryString
+         * @return TrackerFuture of Libtracker.TrackerSparqlCursor
+         */
+        public TrackerFuture<Libtracker.TrackerSparqlCursor> queryAsync(String query){
+            TrackerCancellable cancellable = this.deadline();
+            return this.queryAsync(query, cancellable!=null ? cancellable : new TrackerCancellable(), true);
+        }
+        /**
+         * Wrapper for library methods tracker_sparql_connection_query_async and tracker_sparql_connection_query_finish,
+         * run on the {@link TrackerMainLoop}
+         * @param query a SPARQL 1.1 SelectQueryString
+         * @param cancellable aborts the query and the cursor's next(), cancelled by TrackerFuture.cancel()
+         * @return TrackerFuture of Libtracker.TrackerSparqlCursor
+         */
+        public TrackerFuture<Libtracker.TrackerSparqlCursor> queryAsync(String query, TrackerCancellable cancellable){
+            return this.queryAsync(query, cancellable, false);
+        }
+        TrackerFuture<Libtracker.TrackerSparqlCursor> queryAsync(final String query, TrackerCancellable cancellable, boolean owned){
+            final Libtracker.TrackerSparqlConnection con = this;
+            final TrackerMetrics.Trace trace = TrackerMetrics.trace(query);
+            return TrackerMainLoop.getInstance().submit(new TrackerMainLoop.AsyncCall<Libtracker.TrackerSparqlCursor>(cancellable, owned) {
+                @Override
+                protected void start(Pointer userData) {
+                    Libtracker.SPARQL.tracker_sparql_connection_query_async(con, query, this.cancellable(), TrackerMainLoop.CALLBACK, userData);
+                }
+                @Override
+                protected Libtracker.TrackerSparqlCursor finish(Pointer result, PointerByReference error) {
+                    Libtracker.TrackerSparqlCursor cursor = Libtracker.SPARQL.tracker_sparql_connection_query_finish(con, result, error);
+                    if(cursor==null){
+                        return null;
+                    }
+                    cursor.own();
+                    this.handOver(cursor);
+                    return trace==null || error.getValue()!=null ? cursor : trace.opened(cursor);
+                }
+            });
+        }
+        /**
+         * Wrapper for library methods tracker_sparql_connection_update_async and tracker_sparql_connection_update_finish,
+         * run on the {@link TrackerMainLoop}.<br/>
+         * TrackerFuture.cancel() aborts the update, the connection's timeout applies.
+         * @param query a SPARQL 1.1 UpdateQueryString
+         * @return TrackerFuture completed once the update is done
+         */
+        public TrackerFuture<Void> updateAsync(final String query){
+            final Libtracker.TrackerSparqlConnection con = this;
+            final TrackerMetrics.Trace trace = TrackerMetrics.trace(query);
+            TrackerCancellable cancellable = this.deadline();
+            return TrackerMainLoop.getInstance().submit(new TrackerMainLoop.AsyncCall<Void>(cancellable!=null ? cancellable : new TrackerCancellable(), true) {
+                @Override
+                protected void start(Pointer userData) {
+                    Libtracker.SPARQL.tracker_sparql_connection_update_async(con, query, -100, this.cancellable(), TrackerMainLoop.CALLBACK, userData);
+                }
+                @Override
+                protected Void finish(Pointer result, PointerByReference error) {
+                    Libtracker.SPARQL.tracker_sparql_connection_update_finish(con, result, error);
+                    con.invalidateQueryCache();
+                    if(trace!=null && error.getValue()==null){
+                        trace.updated();
+                    }
+                    return null;
+                }
+            });
+        }
+        /**
+         * Wrapper for library methods tracker_sparql_connection_update_array_async and tracker_sparql_connection_update_array_finish,
+         * run on the {@link TrackerMainLoop}.<br/>
+         * The future fails if the whole call fails, otherwise it holds one entry per 
+         * query, null if the query succeeded. TrackerFuture.cancel() aborts the 
+         * call, the connection's timeout applies.
+         * @param queries SPARQL 1.1 UpdateQueryStrings
+         * @param glibPriority the GLib priority
+         * @return TrackerFuture of the per query errors
+         */
+        public TrackerFuture<TrackerException[]> updateArrayAsync(final String[] queries, final int glibPriority){
+            final Libtracker.TrackerSparqlConnection con = this;
+            final StringArray sparql = new StringArray(queries);
+            long bytes = sparql.size();
+            for(String query : queries){
+                bytes += query.length() + 1;
             }
-            return cursor;            
+            final NativeResources.Ref buffer = NativeResources.memory(sparql, bytes);
+            final TrackerMetrics.Trace trace = TrackerMetrics.trace(queries.length + " updates");
+            TrackerCancellable cancellable = this.deadline();
+            return TrackerMainLoop.getInstance().submit(new TrackerMainLoop.AsyncCall<TrackerException[]>(cancellable!=null ? cancellable : new TrackerCancellable(), true) {
+                @Override
+                protected void start(Pointer userData) {
+                    Libtracker.SPARQL.tracker_sparql_connection_update_array_async(con, sparql, queries.length, glibPriority, this.cancellable(), TrackerMainLoop.CALLBACK, userData);
+                }
+                @Override
+                protected TrackerException[] finish(Pointer result, PointerByReference error) {
+                    Pointer array = Libtracker.SPARQL.tracker_sparql_connection_update_array_finish(con, result, error);
+                    con.invalidateQueryCache();
+                    if(trace!=null && error.getValue()==null){
+                        trace.updated();
+                    }
+                    TrackerException[] errors = new TrackerException[queries.length];
+                    if(array!=null){
+                        Pointer pdata = array.getPointer(0);
+                        int length = Math.min(array.getInt(Pointer.SIZE), errors.length);
+                        for(int i = 0; i < length; i++){
+                            Pointer e = pdata.getPointer((long)i * Pointer.SIZE);
+                            if(e!=null){
+                                errors[i] = new TrackerException(new GError(e));
+                            }
+                        }
+                        Libtracker.GLIB.g_ptr_array_unref(array);
+                    }
+                    // keeps the native strings reachable until tracker is done with them
+                    sparql.clear();
+                    buffer.release();
+                    return errors;
+                }
+            });
         }
         
     };
     
     /**
-     * The TrackerSparqlCursor
+     * The TrackerSparqlCursor, an opaque handle to the native GObject.<br/>
+     * Cursors returned by the wrapper methods own a reference, close() 
+     * releases it, otherwise it is released once the cursor is garbage 
+     * collected, see {@link NativeResources}.
      */
-    public static class TrackerSparqlCursor extends Structure {	
-	public Libtracker.GObject parent_instance;
-	public PointerByReference priv;        
+    public static class TrackerSparqlCursor extends PointerType implements AutoCloseable {
+        /**
+         * default number of rows fetched at a time by {@link #rows()}
+         */
+        public static final int ROWS_CHUNK_SIZE = 256;
+        private NativeResources.Ref resource;
+        private TrackerMetrics.Trace trace;
+        private volatile TrackerCancellable cancellable;
+        private boolean ownsCancellable;
         public TrackerSparqlCursor() {}
-        public TrackerSparqlCursor(TypeMapper mapper) { super(mapper); }
-	public TrackerSparqlCursor(Libtracker.GObject parent_instance, PointerByReference priv) {
-		super();
-		this.parent_instance = parent_instance;
-		this.priv = priv;
-	}        
-	public static class ByReference extends TrackerSparqlCursor implements Structure.ByReference {};
-	public static class ByValue extends TrackerSparqlCursor implements Structure.ByValue {};
-        @Override
-	protected List<? > getFieldOrder() {
-		return Arrays.asList("parent_instance", "priv");
-	}         
+        public TrackerSparqlCursor(Pointer address) { super(address); }
+        /**
+         * Takes ownership of the reference returned by the library
+         * @return TrackerSparqlCursor this
+         */
+        synchronized TrackerSparqlCursor own(){
+            if(NATIVE_BINDING && this.resource==null && this.getPointer()!=null){
+                this.resource = NativeResources.object(this, this.getPointer());
+            }
+            return this;
+        }
+        /**
+         * Attaches the trace of the query that returned this cursor
+         * @param trace
+         */
+        void trace(TrackerMetrics.Trace trace){
+            this.trace = trace;
+        }
+        /**
+         * Attaches the cancellable of the query that returned this cursor, passed to next()
+         * @param cancellable may be null
+         * @param owned true if close() closes the cancellable
+         */
+        synchronized void cancellable(TrackerCancellable cancellable, boolean owned){
+            this.cancellable = cancellable;
+            this.ownsCancellable = owned;
+        }
+        /**
+         * Aborts the query, a next() in flight or called later fails with 
+         * TrackerException.CANCELLED. Only cursors of queries given a 
+         * cancellable or a timeout can be cancelled.
+         * @return boolean false if the cursor cannot be cancelled
+         */
+        public boolean cancel(){
+            TrackerCancellable c;
+            synchronized(this){
+                c = this.cancellable;
+            }
+            if(c==null){
+                return false;
+            }
+            c.cancel();
+            return true;
+        }
+        /**
+         * @return boolean false for cursors not backed by a native TrackerSparqlCursor
+         */
+        boolean isNative(){
+            return true;
+        }
         /**
          * Wrapper for library method tracker_sparql_cursor_next
          * @return boolean 
          * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException 
          */
         public boolean next() throws TrackerException{
-            PointerByReference error = new PointerByReference(null);
-            boolean b = Libtracker.SPARQL.tracker_sparql_cursor_next(this, false, error);
-            if(error.getValue()!=null){
-                throw new TrackerException(new GError(error.getValue()));
+            PointerByReference error = Libtracker.error();
+            TrackerCancellable c = this.cancellable;
+            boolean b = Libtracker.SPARQL.tracker_sparql_cursor_next(this, Libtracker.pointer(c), error);
+            Libtracker.checkError(error, this.trace, c);
+            if(this.trace!=null){
+                this.trace.next(b);
             }
             return b; 
         }
+        /**
+         * Wrapper for library methods tracker_sparql_cursor_next_async and tracker_sparql_cursor_next_finish,
+         * run on the {@link TrackerMainLoop}
+         * @return TrackerFuture of Boolean
+         */
+        public TrackerFuture<Boolean> nextAsync(){
+            final Libtracker.TrackerSparqlCursor cursor = this;
+            return TrackerMainLoop.getInstance().submit(new TrackerMainLoop.AsyncCall<Boolean>(this.cancellable, false) {
+                @Override
+                protected void start(Pointer userData) {
+                    Libtracker.SPARQL.tracker_sparql_cursor_next_async(cursor, this.cancellable(), TrackerMainLoop.CALLBACK, userData);
+                }
+                @Override
+                protected Boolean finish(Pointer result, PointerByReference error) {
+                    boolean b = Libtracker.SPARQL.tracker_sparql_cursor_next_finish(cursor, result, error);
+                    TrackerMetrics.Trace traced = cursor.trace;
+                    if(traced!=null && error.getValue()==null){
+                        traced.next(b);
+                    }
+                    return b;
+                }
+            });
+        }
         /**
          * Wrapper for library method tracker_sparql_cursor_rewind
          */
@@ -325,10 +1042,40 @@ public class Libtracker {
             Libtracker.SPARQL.tracker_sparql_cursor_rewind(this);
         }
         /**
-         * Wrapper for library method tracker_sparql_cursor_close
+         * Wrapper for library method tracker_sparql_cursor_close, also releases 
+         * the cursor's reference (g_object_unref) and the cancellable created 
+         * for its timeout. Closing twice does nothing.
          */
+        @Override
         public void close(){
-            Libtracker.SPARQL.tracker_sparql_cursor_close(this);
+            NativeResources.Ref owned;
+            TrackerCancellable deadline = null;
+            synchronized(this){
+                if(this.getPointer()==null){
+                    return;
+                }
+                if(this.trace!=null){
+                    this.trace.finished();
+                    this.trace = null;
+                }
+                Libtracker.SPARQL.tracker_sparql_cursor_close(this);
+                owned = this.resource;
+                this.resource = null;
+                if(owned!=null){
+                    this.setPointer(null);
+                }
+                if(this.ownsCancellable){
+                    deadline = this.cancellable;
+                    this.cancellable = null;
+                    this.ownsCancellable = false;
+                }
+            }
+            if(owned!=null){
+                owned.release();
+            }
+            if(deadline!=null){
+                deadline.close();
+            }
         }
         /**
          * Wrapper for library method tracker_sparql_cursor_get_n_columns
@@ -351,16 +1098,87 @@ public class Libtracker {
          * @return String
          */
         public String getString(int column){
-            return Libtracker.SPARQL.tracker_sparql_cursor_get_string(this, column, null);
+            return Libtracker.SPARQL.tracker_sparql_cursor_get_string(this, column, (Long)null);
         }
         /**
-         * Wrapper for library method tracker_sparql_cursor_get_integer
+         * Wrapper for library method tracker_sparql_cursor_get_string, without decoding.<br/>
+         * The returned buffer is a view over the cursor's native UTF-8 string and 
+         * is only valid until the next call to next(), rewind() or close().
          * @param column
-         * @return int
+         * @return ByteBuffer read-only view, or null
          */
-        public int getInteger(int column){
-            return Libtracker.SPARQL.tracker_sparql_cursor_get_integer(this, column);
-        }
+        public ByteBuffer getStringBuffer(int column){
+            LongByReference length = Libtracker.length();
+            Pointer value = Libtracker.SPARQL.tracker_sparql_cursor_get_string(this, column, length);
+            if(value==null){
+                return null;
+            }
+            return value.getByteBuffer(0, length.getValue()).asReadOnlyBuffer();
+        }
+        /**
+         * Wrapper for library method tracker_sparql_cursor_get_string, copying 
+         * the UTF-8 bytes into the given buffer at its current position
+         * @param column
+         * @param target a reusable buffer
+         * @return int the number of bytes copied, -1 if there is no value
+         * @throws java.nio.BufferOverflowException if target has not enough space left
+         */
+        public int getString(int column, ByteBuffer target){
+            LongByReference length = Libtracker.length();
+            Pointer value = Libtracker.SPARQL.tracker_sparql_cursor_get_string(this, column, length);
+            if(value==null){
+                return -1;
+            }
+            int size = (int)length.getValue();
+            if(target.remaining() < size){
+                throw new BufferOverflowException();
+            }
+            if(target.hasArray()){
+                value.read(0, target.array(), target.arrayOffset() + target.position(), size);
+                target.position(target.position() + size);
+            } else {
+                target.put(value.getByteBuffer(0, size));
+            }
+            return size;
+        }
+        /**
+         * Length of the UTF-8 string of a column in bytes
+         * @param column
+         * @return long the number of bytes, -1 if there is no value
+         */
+        public long getStringLength(int column){
+            LongByReference length = Libtracker.length();
+            Pointer value = Libtracker.SPARQL.tracker_sparql_cursor_get_string(this, column, length);
+            return value==null ? -1 : length.getValue();
+        }
+        /**
+         * Wrapper for library method tracker_sparql_cursor_get_integer
+         * @param column
+         * @return long the gint64 value
+         */
+        public long getLong(int column){
+            return Libtracker.SPARQL.tracker_sparql_cursor_get_integer(this, column);
+        }
+        /**
+         * Wrapper for library method tracker_sparql_cursor_get_integer,
+         * values outside the int range are truncated, use getLong
+         * @param column
+         * @return int
+         */
+        public int getInteger(int column){
+            return (int)this.getLong(column);
+        }
+        /**
+         * Parses a TRACKER_SPARQL_VALUE_TYPE_DATETIME cell straight from its
+         * native UTF-8 string
+         * @param column
+         * @return TrackerDateTime, or null if there is no value
+         * @throws IllegalArgumentException if the value is not an xsd:dateTime
+         */
+        public TrackerDateTime getDateTime(int column){
+            ByteBuffer value = this.getStringBuffer(column);
+            return value==null ? null : TrackerDateTime.parse(value);
+        }
         /**
          * Wrapper for library method tracker_sparql_cursor_get_double
          * @param column
@@ -393,49 +1211,122 @@ public class Libtracker {
         public Libtracker.TrackerSparqlValueType getValueType(int column){
             return Libtracker.SPARQL.tracker_sparql_cursor_get_value_type(this, column);
         }
+        /**
+         * Advances the cursor up to maxRows rows and fills the given columnar batch
+         * @param maxRows
+         * @param batch a reusable ResultBatch
+         * @return int the number of rows fetched, 0 when the cursor is exhausted
+         * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException 
+         */
+        public int fetch(int maxRows, ResultBatch batch) throws TrackerException{
+            return batch.fill(this, maxRows);
+        }
+        /**
+         * Iterates the remaining rows in chunks of {@link #ROWS_CHUNK_SIZE}, 
+         * closing this cursor when done
+         * @return TrackerRowIterator
+         */
+        public TrackerRowIterator rows(){
+            return new TrackerRowIterator(this, ROWS_CHUNK_SIZE, null);
+        }
+        /**
+         * Iterates the remaining rows, closing this cursor when done
+         * @param chunkSize the number of rows fetched at a time
+         * @param readAhead runs a task fetching the next chunk in the background, null to fetch on the calling thread
+         * @return TrackerRowIterator
+         */
+        public TrackerRowIterator rows(int chunkSize, Executor readAhead){
+            return new TrackerRowIterator(this, chunkSize, readAhead);
+        }
     };    
     /**
      * The libtracker-sparql bindings
      */
     public interface Sparql extends Library {
         /**
-         * Return a simple urn:uuid
+         * Return a simple urn:uuid, one native call per urn, see {@link TrackerUrnGenerator} for many
          * @return String
          */
         public String tracker_sparql_get_uuid_urn();                
         /**
          * Binding for: TrackerSparqlConnection* tracker_sparql_connection_get (GCancellable* cancellable, GError** error);
-         * @param canceable
+         * @param cancellable a GCancellable or null
+         * @param error
+         * @return Libtracker.TrackerSparqlConnection
+         */
+        public Libtracker.TrackerSparqlConnection tracker_sparql_connection_get(Pointer cancellable, PointerByReference error);
+        /**
+         * Binding for: TrackerSparqlConnection* tracker_sparql_connection_get_direct (GCancellable* cancellable, GError** error);
+         * @param cancellable a GCancellable or null
+         * @param error
+         * @return Libtracker.TrackerSparqlConnection a read-only connection to the store's database
+         */
+        public Libtracker.TrackerSparqlConnection tracker_sparql_connection_get_direct(Pointer cancellable, PointerByReference error);
+        /**
+         * Binding for: TrackerSparqlConnection* tracker_sparql_connection_new (TrackerSparqlConnectionFlags flags, GFile *store, GFile *ontology, GCancellable *cancellable, GError **error);<br/>
+         * libtracker-sparql-3.0 only
+         * @param flags see {@link TrackerSparqlConnectionFlags}
+         * @param store a GFile of the database directory, null for an in-memory store
+         * @param ontology a GFile of the ontology directory
+         * @param cancellable a GCancellable or null
+         * @param error
+         * @return Libtracker.TrackerSparqlConnection a connection to a private, in-process store
+         */
+        public Libtracker.TrackerSparqlConnection tracker_sparql_connection_new(int flags, Pointer store, Pointer ontology, Pointer cancellable, PointerByReference error);
+        /**
+         * Binding for: TrackerSparqlConnection* tracker_sparql_connection_bus_new (const gchar *service_name, const gchar *object_path, GDBusConnection *dbus_connection, GError **error);<br/>
+         * libtracker-sparql-3.0 only
+         * @param serviceName the well-known name of the endpoint, e.g. {@link Libtracker#MINER_FS_SERVICE}
+         * @param objectPath null for the default
+         * @param dbusConnection a GDBusConnection, null for the session bus
          * @param error
          * @return Libtracker.TrackerSparqlConnection
          */
-        public Libtracker.TrackerSparqlConnection tracker_sparql_connection_get(boolean canceable, PointerByReference error);
+        public Libtracker.TrackerSparqlConnection tracker_sparql_connection_bus_new(String serviceName, String objectPath, Pointer dbusConnection, PointerByReference error);
+        /**
+         * Binding for: GFile * tracker_sparql_get_ontology_nepomuk (void);<br/>
+         * libtracker-sparql-3.0 only
+         * @return Pointer a new GFile of the Nepomuk ontology shipped with the library
+         */
+        public Pointer tracker_sparql_get_ontology_nepomuk();
         /**
          * Binding for: TrackerSparqlCursor* tracker_sparql_connection_query (TrackerSparqlConnection* self, const gchar* sparql, GCancellable* cancellable, GError** error);
          * @param con
          * @param query
-         * @param cancellable
+         * @param cancellable a GCancellable or null
          * @param error
          * @return Libtracker.TrackerSparqlCursor
          */
-        public Libtracker.TrackerSparqlCursor tracker_sparql_connection_query(Libtracker.TrackerSparqlConnection con, String query, boolean cancellable, PointerByReference error);
+        public Libtracker.TrackerSparqlCursor tracker_sparql_connection_query(Libtracker.TrackerSparqlConnection con, String query, Pointer cancellable, PointerByReference error);
         /**
-         * Binding for: void tracker_sparql_connection_update (TrackerSparqlConnection* self, const gchar* sparql, gint priority, GCancellable* cancellable, GError** error);
+         * Binding for: void tracker_sparql_connection_update (TrackerSparqlConnection* self, const gchar* sparql, gint priority, GCancellable* cancellable, GError** error);<br/>
+         * libtracker-sparql-3.0 has no priority, it is ignored there
          * @param con
          * @param query
          * @param glibPriority
-         * @param cancellable
+         * @param cancellable a GCancellable or null
          * @param error 
          */
-        public void tracker_sparql_connection_update(Libtracker.TrackerSparqlConnection con, String query, int glibPriority, boolean cancellable, PointerByReference error);
+        public void tracker_sparql_connection_update(Libtracker.TrackerSparqlConnection con, String query, int glibPriority, Pointer cancellable, PointerByReference error);
+        /**
+         * Binding for: GVariant* tracker_sparql_connection_update_blank (TrackerSparqlConnection* self, const gchar* sparql, gint priority, GCancellable* cancellable, GError** error);<br/>
+         * libtracker-sparql-3.0 has no priority, it is ignored there
+         * @param con
+         * @param query
+         * @param glibPriority
+         * @param cancellable a GCancellable or null
+         * @param error
+         * @return Pointer a GVariant of type aaa{ss}: per update, per solution, blank node label to generated urn
+         */
+        public Pointer tracker_sparql_connection_update_blank(Libtracker.TrackerSparqlConnection con, String query, int glibPriority, Pointer cancellable, PointerByReference error);
         /**
          * Binding for: gboolean tracker_sparql_cursor_next (TrackerSparqlCursor* self, GCancellable* cancellable, GError** error);
          * @param cursor
-         * @param canceable
+         * @param cancellable a GCancellable or null
          * @param error
          * @return boolean
          */
-        public boolean tracker_sparql_cursor_next(Libtracker.TrackerSparqlCursor cursor, boolean canceable, PointerByReference error);
+        public boolean tracker_sparql_cursor_next(Libtracker.TrackerSparqlCursor cursor, Pointer cancellable, PointerByReference error);
         /**
          * Binding for: void tracker_sparql_cursor_rewind (TrackerSparqlCursor* self);
          * @param cursor 
@@ -476,13 +1367,21 @@ public class Libtracker {
          * @return String
          */
         public String tracker_sparql_cursor_get_string(Libtracker.TrackerSparqlCursor cursor, int column, Long offset);
+        /**
+         * Binding for: const gchar* tracker_sparql_cursor_get_string (TrackerSparqlCursor* self, gint column, glong* length);
+         * @param cursor
+         * @param column
+         * @param length receives the length of the UTF-8 string in bytes
+         * @return Pointer the native string, owned by the cursor
+         */
+        public Pointer tracker_sparql_cursor_get_string(Libtracker.TrackerSparqlCursor cursor, int column, LongByReference length);
         /**
          * Binding for: gint64 tracker_sparql_cursor_get_integer (TrackerSparqlCursor* self, gint column);
          * @param cursor
          * @param column
-         * @return int
+         * @return long
          */
-        public int tracker_sparql_cursor_get_integer(Libtracker.TrackerSparqlCursor cursor, int column);
+        public long tracker_sparql_cursor_get_integer(Libtracker.TrackerSparqlCursor cursor, int column);
         /**
          * Binding for: gdouble tracker_sparql_cursor_get_double (TrackerSparqlCursor* self, gint column);
          * @param cursor
@@ -505,11 +1404,617 @@ public class Libtracker {
         /**
          * Binding for: TrackerSparqlCursor* tracker_sparql_connection_statistics (TrackerSparqlConnection* self, GCancellable* cancellable, GError** error);
          * @param con
-         * @param canceable
+         * @param cancellable a GCancellable or null
          * @param error
          * @return Libtracker.TrackerSparqlCursor
          */
-        public Libtracker.TrackerSparqlCursor tracker_sparql_connection_statistics(Libtracker.TrackerSparqlConnection con, boolean canceable, PointerByReference error);
+        public Libtracker.TrackerSparqlCursor tracker_sparql_connection_statistics(Libtracker.TrackerSparqlConnection con, Pointer cancellable, PointerByReference error);
+        /**
+         * Binding for: void tracker_sparql_connection_load (TrackerSparqlConnection* self, GFile* file, GCancellable* cancellable, GError** error);
+         * @param con
+         * @param file a GFile
+         * @param cancellable a GCancellable or null
+         * @param error 
+         */
+        public void tracker_sparql_connection_load(Libtracker.TrackerSparqlConnection con, Pointer file, Pointer cancellable, PointerByReference error);
+        /**
+         * Binding for: void tracker_sparql_connection_query_async (TrackerSparqlConnection* self, const gchar* sparql, GCancellable* cancellable, GAsyncReadyCallback _callback_, gpointer _user_data_);
+         * @param con
+         * @param query
+         * @param cancellable
+         * @param callback
+         * @param userData 
+         */
+        public void tracker_sparql_connection_query_async(Libtracker.TrackerSparqlConnection con, String query, Pointer cancellable, GAsyncReadyCallback callback, Pointer userData);
+        /**
+         * Binding for: TrackerSparqlCursor* tracker_sparql_connection_query_finish (TrackerSparqlConnection* self, GAsyncResult* _res_, GError** error);
+         * @param con
+         * @param result
+         * @param error
+         * @return Libtracker.TrackerSparqlCursor
+         */
+        public Libtracker.TrackerSparqlCursor tracker_sparql_connection_query_finish(Libtracker.TrackerSparqlConnection con, Pointer result, PointerByReference error);
+        /**
+         * Binding for: void tracker_sparql_connection_update_async (TrackerSparqlConnection* self, const gchar* sparql, gint priority, GCancellable* cancellable, GAsyncReadyCallback _callback_, gpointer _user_data_);
+         * @param con
+         * @param query
+         * @param glibPriority
+         * @param cancellable
+         * @param callback
+         * @param userData 
+         */
+        public void tracker_sparql_connection_update_async(Libtracker.TrackerSparqlConnection con, String query, int glibPriority, Pointer cancellable, GAsyncReadyCallback callback, Pointer userData);
+        /**
+         * Binding for: void tracker_sparql_connection_update_finish (TrackerSparqlConnection* self, GAsyncResult* _res_, GError** error);
+         * @param con
+         * @param result
+         * @param error 
+         */
+        public void tracker_sparql_connection_update_finish(Libtracker.TrackerSparqlConnection con, Pointer result, PointerByReference error);
+        /**
+         * Binding for: void tracker_sparql_cursor_next_async (TrackerSparqlCursor* self, GCancellable* cancellable, GAsyncReadyCallback _callback_, gpointer _user_data_);
+         * @param cursor
+         * @param cancellable
+         * @param callback
+         * @param userData 
+         */
+        public void tracker_sparql_cursor_next_async(Libtracker.TrackerSparqlCursor cursor, Pointer cancellable, GAsyncReadyCallback callback, Pointer userData);
+        /**
+         * Binding for: gboolean tracker_sparql_cursor_next_finish (TrackerSparqlCursor* self, GAsyncResult* _res_, GError** error);
+         * @param cursor
+         * @param result
+         * @param error
+         * @return boolean
+         */
+        public boolean tracker_sparql_cursor_next_finish(Libtracker.TrackerSparqlCursor cursor, Pointer result, PointerByReference error);
+        /**
+         * Binding for: void tracker_sparql_connection_update_array_async (TrackerSparqlConnection* self, gchar** sparql, int sparql_length1, gint priority, GCancellable* cancellable, GAsyncReadyCallback _callback_, gpointer _user_data_);
+         * @param con
+         * @param sparql
+         * @param length
+         * @param glibPriority
+         * @param cancellable
+         * @param callback
+         * @param userData 
+         */
+        public void tracker_sparql_connection_update_array_async(Libtracker.TrackerSparqlConnection con, StringArray sparql, int length, int glibPriority, Pointer cancellable, GAsyncReadyCallback callback, Pointer userData);
+        /**
+         * Binding for: GPtrArray* tracker_sparql_connection_update_array_finish (TrackerSparqlConnection* self, GAsyncResult* _res_, GError** error);
+         * @param con
+         * @param result
+         * @param error
+         * @return Pointer a GPtrArray of GError*, NULL for each successful query
+         */
+        public Pointer tracker_sparql_connection_update_array_finish(Libtracker.TrackerSparqlConnection con, Pointer result, PointerByReference error);
+        /**
+         * Binding for: TrackerSparqlStatement* tracker_sparql_connection_query_statement (TrackerSparqlConnection *self, const gchar *sparql, GCancellable *cancellable, GError **error);<br/>
+         * not available in libtracker-sparql-1.0, see {@link Libtracker#isStatementSupported()}
+         * @param con
+         * @param query
+         * @param cancellable
+         * @param error
+         * @return Pointer the TrackerSparqlStatement
+         */
+        public Pointer tracker_sparql_connection_query_statement(Libtracker.TrackerSparqlConnection con, String query, Pointer cancellable, PointerByReference error);
+        /**
+         * Binding for: void tracker_sparql_statement_bind_string (TrackerSparqlStatement *stmt, const gchar *name, const gchar *value);
+         * @param statement
+         * @param name
+         * @param value 
+         */
+        public void tracker_sparql_statement_bind_string(Pointer statement, String name, String value);
+        /**
+         * Binding for: void tracker_sparql_statement_bind_int (TrackerSparqlStatement *stmt, const gchar *name, gint64 value);
+         * @param statement
+         * @param name
+         * @param value 
+         */
+        public void tracker_sparql_statement_bind_int(Pointer statement, String name, long value);
+        /**
+         * Binding for: void tracker_sparql_statement_bind_double (TrackerSparqlStatement *stmt, const gchar *name, gdouble value);
+         * @param statement
+         * @param name
+         * @param value 
+         */
+        public void tracker_sparql_statement_bind_double(Pointer statement, String name, double value);
+        /**
+         * Binding for: void tracker_sparql_statement_bind_boolean (TrackerSparqlStatement *stmt, const gchar *name, gboolean value);
+         * @param statement
+         * @param name
+         * @param value 
+         */
+        public void tracker_sparql_statement_bind_boolean(Pointer statement, String name, boolean value);
+        /**
+         * Binding for: TrackerSparqlCursor* tracker_sparql_statement_execute (TrackerSparqlStatement *stmt, GCancellable *cancellable, GError **error);
+         * @param statement
+         * @param cancellable
+         * @param error
+         * @return Libtracker.TrackerSparqlCursor
+         */
+        public Libtracker.TrackerSparqlCursor tracker_sparql_statement_execute(Pointer statement, Pointer cancellable, PointerByReference error);
+    }
+    
+    /**
+     * The glib bindings needed to run a GMainLoop and to handle GErrors
+     */
+    public interface GLib extends Library {
+        /**
+         * Binding for: GMainContext * g_main_context_new (void);
+         * @return Pointer
+         */
+        public Pointer g_main_context_new();
+        /**
+         * Binding for: void g_main_context_unref (GMainContext *context);
+         * @param context 
+         */
+        public void g_main_context_unref(Pointer context);
+        /**
+         * Binding for: void g_main_context_push_thread_default (GMainContext *context);
+         * @param context 
+         */
+        public void g_main_context_push_thread_default(Pointer context);
+        /**
+         * Binding for: void g_main_context_pop_thread_default (GMainContext *context);
+         * @param context 
+         */
+        public void g_main_context_pop_thread_default(Pointer context);
+        /**
+         * Binding for: void g_main_context_invoke (GMainContext *context, GSourceFunc function, gpointer data);
+         * @param context
+         * @param function
+         * @param data 
+         */
+        public void g_main_context_invoke(Pointer context, GSourceFunc function, Pointer data);
+        /**
+         * Binding for: GMainLoop * g_main_loop_new (GMainContext *context, gboolean is_running);
+         * @param context
+         * @param isRunning
+         * @return Pointer
+         */
+        public Pointer g_main_loop_new(Pointer context, boolean isRunning);
+        /**
+         * Binding for: void g_main_loop_run (GMainLoop *loop);
+         * @param loop 
+         */
+        public void g_main_loop_run(Pointer loop);
+        /**
+         * Binding for: void g_main_loop_quit (GMainLoop *loop);
+         * @param loop 
+         */
+        public void g_main_loop_quit(Pointer loop);
+        /**
+         * Binding for: void g_main_loop_unref (GMainLoop *loop);
+         * @param loop 
+         */
+        public void g_main_loop_unref(Pointer loop);
+        /**
+         * Binding for: void g_ptr_array_unref (GPtrArray *array);
+         * @param array 
+         */
+        public void g_ptr_array_unref(Pointer array);
+        /**
+         * Binding for: void g_free (gpointer mem);
+         * @param mem 
+         */
+        public void g_free(Pointer mem);
+        /**
+         * Binding for: GQuark g_quark_from_string (const gchar *string);
+         * @param string
+         * @return int
+         */
+        public int g_quark_from_string(String string);
+        /**
+         * Binding for: GError * g_error_new_literal (GQuark domain, gint code, const gchar *message);
+         * @param domain
+         * @param code
+         * @param message
+         * @return Pointer the new GError
+         */
+        public Pointer g_error_new_literal(int domain, int code, String message);
+        /**
+         * Binding for: void g_error_free (GError *error);
+         * @param error 
+         */
+        public void g_error_free(Pointer error);
+        /**
+         * Binding for: gsize g_variant_n_children (GVariant *value);
+         * @param value
+         * @return long
+         */
+        public long g_variant_n_children(Pointer value);
+        /**
+         * Binding for: GVariant * g_variant_get_child_value (GVariant *value, gsize index_);
+         * @param value
+         * @param index
+         * @return Pointer a new reference
+         */
+        public Pointer g_variant_get_child_value(Pointer value, long index);
+        /**
+         * Binding for: const gchar * g_variant_get_string (GVariant *value, gsize *length);
+         * @param value
+         * @param length
+         * @return String
+         */
+        public String g_variant_get_string(Pointer value, Pointer length);
+        /**
+         * Binding for: gint32 g_variant_get_int32 (GVariant *value);
+         * @param value
+         * @return int
+         */
+        public int g_variant_get_int32(Pointer value);
+        /**
+         * Binding for: gconstpointer g_variant_get_fixed_array (GVariant *value, gsize *n_elements, gsize element_size);
+         * @param value an array of a fixed size type, e.g. a(iiii)
+         * @param nElements
+         * @param elementSize
+         * @return Pointer the elements, owned by value, null if there are none
+         */
+        public Pointer g_variant_get_fixed_array(Pointer value, LongByReference nElements, long elementSize);
+        /**
+         * Binding for: void g_variant_unref (GVariant *value);
+         * @param value 
+         */
+        public void g_variant_unref(Pointer value);
+    }
+    
+    /**
+     * The gio bindings needed to receive D-Bus signals
+     */
+    public interface Gio extends Library {
+        /**
+         * GBusType G_BUS_TYPE_SESSION
+         */
+        public static final int G_BUS_TYPE_SESSION = 2;
+        /**
+         * Binding for: GDBusConnection * g_bus_get_sync (GBusType bus_type, GCancellable *cancellable, GError **error);
+         * @param busType
+         * @param cancellable
+         * @param error
+         * @return Pointer the GDBusConnection
+         */
+        public Pointer g_bus_get_sync(int busType, Pointer cancellable, PointerByReference error);
+        /**
+         * Binding for: guint g_dbus_connection_signal_subscribe (GDBusConnection *connection, const gchar *sender, const gchar *interface_name, const gchar *member, const gchar *object_path, const gchar *arg0, GDBusSignalFlags flags, GDBusSignalCallback callback, gpointer user_data, GDestroyNotify user_data_free_func);
+         * @param connection
+         * @param sender
+         * @param interfaceName
+         * @param member
+         * @param objectPath
+         * @param arg0
+         * @param flags
+         * @param callback
+         * @param userData
+         * @param userDataFreeFunc
+         * @return int the subscription id
+         */
+        public int g_dbus_connection_signal_subscribe(Pointer connection, String sender, String interfaceName, String member, String objectPath, String arg0, int flags, GDBusSignalCallback callback, Pointer userData, Pointer userDataFreeFunc);
+        /**
+         * Binding for: void g_dbus_connection_signal_unsubscribe (GDBusConnection *connection, guint subscription_id);
+         * @param connection
+         * @param subscriptionId 
+         */
+        public void g_dbus_connection_signal_unsubscribe(Pointer connection, int subscriptionId);
+        /**
+         * Binding for: GCancellable * g_cancellable_new (void);
+         * @return Pointer the GCancellable
+         */
+        public Pointer g_cancellable_new();
+        /**
+         * Binding for: void g_cancellable_cancel (GCancellable *cancellable);
+         * @param cancellable 
+         */
+        public void g_cancellable_cancel(Pointer cancellable);
+        /**
+         * Binding for: GFile * g_file_new_for_path (const char *path);
+         * @param path
+         * @return Pointer the GFile
+         */
+        public Pointer g_file_new_for_path(String path);
+    }
+    
+    /**
+     * The gobject bindings
+     */
+    public interface GObjectLib extends Library {
+        /**
+         * Binding for: void g_object_unref (gpointer object);
+         * @param object 
+         */
+        public void g_object_unref(Pointer object);
+    }
+    
+    /**
+     * Direct mapped libtracker-sparql bindings.<br/>
+     * Calls are dispatched through JNA's direct mapping (Native.register) instead of 
+     * the reflective interface proxy, no TypeMapper is involved and connections 
+     * and cursors are passed as plain pointers.
+     * This is the default binding, set the system property {@link #BINDING_PROPERTY} 
+     * to "proxy" in order to use the interface mapped binding.<br/>
+     * Not final, so backends calling the library differently (see {@link #FFM_BINDING}) 
+     * can override the hot path and inherit the rest.
+     */
+    public static class DirectSparql implements Sparql {
+        
+        @Override
+        public String tracker_sparql_get_uuid_urn() {
+            Pointer urn = Functions.tracker_sparql_get_uuid_urn();
+            try {
+                return urn.getString(0);
+            } finally {
+                GLIB.g_free(urn);
+            }
+        }
+        @Override
+        public TrackerSparqlConnection tracker_sparql_connection_get(Pointer cancellable, PointerByReference error) {
+            if(VERSION >= 3){
+                return Tracker3Functions.tracker_sparql_connection_bus_new(MINER_FS_SERVICE, null, null, error);
+            }
+            return LegacyFunctions.tracker_sparql_connection_get(cancellable, error);
+        }
+        @Override
+        public TrackerSparqlConnection tracker_sparql_connection_get_direct(Pointer cancellable, PointerByReference error) {
+            if(VERSION >= 3){
+                DirectSparql.unsupported("tracker_sparql_connection_get_direct", error);
+                return null;
+            }
+            return LegacyFunctions.tracker_sparql_connection_get_direct(cancellable, error);
+        }
+        @Override
+        public TrackerSparqlConnection tracker_sparql_connection_new(int flags, Pointer store, Pointer ontology, Pointer cancellable, PointerByReference error) {
+            return Tracker3Functions.tracker_sparql_connection_new(flags, store, ontology, cancellable, error);
+        }
+        @Override
+        public TrackerSparqlConnection tracker_sparql_connection_bus_new(String serviceName, String objectPath, Pointer dbusConnection, PointerByReference error) {
+            return Tracker3Functions.tracker_sparql_connection_bus_new(serviceName, objectPath, dbusConnection, error);
+        }
+        @Override
+        public Pointer tracker_sparql_get_ontology_nepomuk() {
+            return Tracker3Functions.tracker_sparql_get_ontology_nepomuk();
+        }
+        @Override
+        public TrackerSparqlCursor tracker_sparql_connection_query(TrackerSparqlConnection con, String query, Pointer cancellable, PointerByReference error) {
+            return Functions.tracker_sparql_connection_query(con, query, cancellable, error);
+        }
+        @Override
+        public void tracker_sparql_connection_update(TrackerSparqlConnection con, String query, int glibPriority, Pointer cancellable, PointerByReference error) {
+            if(VERSION >= 3){
+                Tracker3Functions.tracker_sparql_connection_update(con, query, cancellable, error);
+            } else {
+                LegacyFunctions.tracker_sparql_connection_update(con, query, glibPriority, cancellable, error);
+            }
+        }
+        @Override
+        public Pointer tracker_sparql_connection_update_blank(TrackerSparqlConnection con, String query, int glibPriority, Pointer cancellable, PointerByReference error) {
+            if(VERSION >= 3){
+                return Tracker3Functions.tracker_sparql_connection_update_blank(con, query, cancellable, error);
+            }
+            return LegacyFunctions.tracker_sparql_connection_update_blank(con, query, glibPriority, cancellable, error);
+        }
+        @Override
+        public boolean tracker_sparql_cursor_next(TrackerSparqlCursor cursor, Pointer cancellable, PointerByReference error) {
+            return Functions.tracker_sparql_cursor_next(cursor, cancellable, error);
+        }
+        @Override
+        public void tracker_sparql_cursor_rewind(TrackerSparqlCursor cursor) {
+            Functions.tracker_sparql_cursor_rewind(cursor);
+        }
+        @Override
+        public int tracker_sparql_cursor_get_n_columns(TrackerSparqlCursor cursor) {
+            return Functions.tracker_sparql_cursor_get_n_columns(cursor);
+        }
+        @Override
+        public String tracker_sparql_cursor_get_variable_name(TrackerSparqlCursor cursor, int column) {
+            return Functions.tracker_sparql_cursor_get_variable_name(cursor, column);
+        }
+        @Override
+        public boolean tracker_sparql_cursor_is_bound(TrackerSparqlCursor cursor, int column) {
+            return Functions.tracker_sparql_cursor_is_bound(cursor, column);
+        }
+        @Override
+        public TrackerSparqlValueType tracker_sparql_cursor_get_value_type(TrackerSparqlCursor cursor, int column) {
+            return TrackerSparqlValueType.fromIntValue(Functions.tracker_sparql_cursor_get_value_type(cursor, column));
+        }
+        @Override
+        public String tracker_sparql_cursor_get_string(TrackerSparqlCursor cursor, int column, Long offset) {
+            Pointer value = Functions.tracker_sparql_cursor_get_string(cursor, column, null);
+            return value==null ? null : value.getString(0);
+        }
+        @Override
+        public Pointer tracker_sparql_cursor_get_string(TrackerSparqlCursor cursor, int column, LongByReference length) {
+            return Functions.tracker_sparql_cursor_get_string(cursor, column, length);
+        }
+        @Override
+        public long tracker_sparql_cursor_get_integer(TrackerSparqlCursor cursor, int column) {
+            return Functions.tracker_sparql_cursor_get_integer(cursor, column);
+        }
+        @Override
+        public double tracker_sparql_cursor_get_double(TrackerSparqlCursor cursor, int column) {
+            return Functions.tracker_sparql_cursor_get_double(cursor, column);
+        }
+        @Override
+        public boolean tracker_sparql_cursor_get_boolean(TrackerSparqlCursor cursor, int column) {
+            return Functions.tracker_sparql_cursor_get_boolean(cursor, column);
+        }
+        @Override
+        public void tracker_sparql_cursor_close(TrackerSparqlCursor cursor) {
+            Functions.tracker_sparql_cursor_close(cursor);
+        }
+        @Override
+        public TrackerSparqlCursor tracker_sparql_connection_statistics(TrackerSparqlConnection con, Pointer cancellable, PointerByReference error) {
+            if(VERSION >= 3){
+                DirectSparql.unsupported("tracker_sparql_connection_statistics", error);
+                return null;
+            }
+            return LegacyFunctions.tracker_sparql_connection_statistics(con, cancellable, error);
+        }
+        @Override
+        public void tracker_sparql_connection_load(TrackerSparqlConnection con, Pointer file, Pointer cancellable, PointerByReference error) {
+            if(VERSION >= 3){
+                DirectSparql.unsupported("tracker_sparql_connection_load", error);
+            } else {
+                LegacyFunctions.tracker_sparql_connection_load(con, file, cancellable, error);
+            }
+        }
+        @Override
+        public void tracker_sparql_connection_query_async(TrackerSparqlConnection con, String query, Pointer cancellable, GAsyncReadyCallback callback, Pointer userData) {
+            Functions.tracker_sparql_connection_query_async(con, query, cancellable, callback, userData);
+        }
+        @Override
+        public TrackerSparqlCursor tracker_sparql_connection_query_finish(TrackerSparqlConnection con, Pointer result, PointerByReference error) {
+            return Functions.tracker_sparql_connection_query_finish(con, result, error);
+        }
+        @Override
+        public void tracker_sparql_connection_update_async(TrackerSparqlConnection con, String query, int glibPriority, Pointer cancellable, GAsyncReadyCallback callback, Pointer userData) {
+            if(VERSION >= 3){
+                Tracker3Functions.tracker_sparql_connection_update_async(con, query, cancellable, callback, userData);
+            } else {
+                LegacyFunctions.tracker_sparql_connection_update_async(con, query, glibPriority, cancellable, callback, userData);
+            }
+        }
+        @Override
+        public void tracker_sparql_connection_update_finish(TrackerSparqlConnection con, Pointer result, PointerByReference error) {
+            Functions.tracker_sparql_connection_update_finish(con, result, error);
+        }
+        @Override
+        public void tracker_sparql_cursor_next_async(TrackerSparqlCursor cursor, Pointer cancellable, GAsyncReadyCallback callback, Pointer userData) {
+            Functions.tracker_sparql_cursor_next_async(cursor, cancellable, callback, userData);
+        }
+        @Override
+        public boolean tracker_sparql_cursor_next_finish(TrackerSparqlCursor cursor, Pointer result, PointerByReference error) {
+            return Functions.tracker_sparql_cursor_next_finish(cursor, result, error);
+        }
+        @Override
+        public void tracker_sparql_connection_update_array_async(TrackerSparqlConnection con, StringArray sparql, int length, int glibPriority, Pointer cancellable, GAsyncReadyCallback callback, Pointer userData) {
+            if(VERSION >= 3){
+                Tracker3Functions.tracker_sparql_connection_update_array_async(con, sparql, length, cancellable, callback, userData);
+            } else {
+                LegacyFunctions.tracker_sparql_connection_update_array_async(con, sparql, length, glibPriority, cancellable, callback, userData);
+            }
+        }
+        @Override
+        public Pointer tracker_sparql_connection_update_array_finish(TrackerSparqlConnection con, Pointer result, PointerByReference error) {
+            if(VERSION >= 3){
+                // all or nothing in libtracker-sparql-3.0, there are no per query errors
+                Tracker3Functions.tracker_sparql_connection_update_array_finish(con, result, error);
+                return null;
+            }
+            return LegacyFunctions.tracker_sparql_connection_update_array_finish(con, result, error);
+        }
+        @Override
+        public Pointer tracker_sparql_connection_query_statement(TrackerSparqlConnection con, String query, Pointer cancellable, PointerByReference error) {
+            return StatementFunctions.tracker_sparql_connection_query_statement(con, query, cancellable, error);
+        }
+        @Override
+        public void tracker_sparql_statement_bind_string(Pointer statement, String name, String value) {
+            StatementFunctions.tracker_sparql_statement_bind_string(statement, name, value);
+        }
+        @Override
+        public void tracker_sparql_statement_bind_int(Pointer statement, String name, long value) {
+            StatementFunctions.tracker_sparql_statement_bind_int(statement, name, value);
+        }
+        @Override
+        public void tracker_sparql_statement_bind_double(Pointer statement, String name, double value) {
+            StatementFunctions.tracker_sparql_statement_bind_double(statement, name, value);
+        }
+        @Override
+        public void tracker_sparql_statement_bind_boolean(Pointer statement, String name, boolean value) {
+            StatementFunctions.tracker_sparql_statement_bind_boolean(statement, name, value);
+        }
+        @Override
+        public TrackerSparqlCursor tracker_sparql_statement_execute(Pointer statement, Pointer cancellable, PointerByReference error) {
+            return StatementFunctions.tracker_sparql_statement_execute(statement, cancellable, error);
+        }
+        
+        /**
+         * Fails a call libtracker-sparql-3.0 has no equivalent for with G_IO_ERROR_NOT_SUPPORTED
+         * @param function
+         * @param error 
+         */
+        static void unsupported(String function, PointerByReference error){
+            if(error!=null){
+                error.setValue(GLIB.g_error_new_literal(Libtracker.ioErrorQuark(), GError.G_IO_ERROR_NOT_SUPPORTED, function + " is not available in " + LIBRARY));
+            }
+        }
+        
+        /**
+         * The native methods all versions export, registered against {@link Libtracker#LIBRARY}.<br/>
+         * GCancellable* parameters are declared as Pointer, gint64 as long.
+         */
+        static final class Functions {
+            static {
+                Native.register(Functions.class, NativeLibrary.getInstance(LIBRARY));
+            }
+            static native Pointer tracker_sparql_get_uuid_urn();
+            static native TrackerSparqlCursor tracker_sparql_connection_query(TrackerSparqlConnection con, String query, Pointer cancellable, PointerByReference error);
+            static native boolean tracker_sparql_cursor_next(TrackerSparqlCursor cursor, Pointer cancellable, PointerByReference error);
+            static native void tracker_sparql_cursor_rewind(TrackerSparqlCursor cursor);
+            static native void tracker_sparql_cursor_close(TrackerSparqlCursor cursor);
+            static native int tracker_sparql_cursor_get_n_columns(TrackerSparqlCursor cursor);
+            static native String tracker_sparql_cursor_get_variable_name(TrackerSparqlCursor cursor, int column);
+            static native boolean tracker_sparql_cursor_is_bound(TrackerSparqlCursor cursor, int column);
+            static native int tracker_sparql_cursor_get_value_type(TrackerSparqlCursor cursor, int column);
+            static native Pointer tracker_sparql_cursor_get_string(TrackerSparqlCursor cursor, int column, LongByReference length);
+            static native long tracker_sparql_cursor_get_integer(TrackerSparqlCursor cursor, int column);
+            static native double tracker_sparql_cursor_get_double(TrackerSparqlCursor cursor, int column);
+            static native boolean tracker_sparql_cursor_get_boolean(TrackerSparqlCursor cursor, int column);
+            static native void tracker_sparql_connection_query_async(TrackerSparqlConnection con, String query, Pointer cancellable, GAsyncReadyCallback callback, Pointer userData);
+            static native TrackerSparqlCursor tracker_sparql_connection_query_finish(TrackerSparqlConnection con, Pointer result, PointerByReference error);
+            static native void tracker_sparql_connection_update_finish(TrackerSparqlConnection con, Pointer result, PointerByReference error);
+            static native void tracker_sparql_cursor_next_async(TrackerSparqlCursor cursor, Pointer cancellable, GAsyncReadyCallback callback, Pointer userData);
+            static native boolean tracker_sparql_cursor_next_finish(TrackerSparqlCursor cursor, Pointer result, PointerByReference error);
+        }
+        
+        /**
+         * The natives of libtracker-sparql-1.0 and 2.0, removed or changed in 3.0
+         */
+        static final class LegacyFunctions {
+            static {
+                Native.register(LegacyFunctions.class, NativeLibrary.getInstance(LIBRARY));
+            }
+            static native TrackerSparqlConnection tracker_sparql_connection_get(Pointer cancellable, PointerByReference error);
+            static native TrackerSparqlConnection tracker_sparql_connection_get_direct(Pointer cancellable, PointerByReference error);
+            static native void tracker_sparql_connection_update(TrackerSparqlConnection con, String query, int glibPriority, Pointer cancellable, PointerByReference error);
+            static native Pointer tracker_sparql_connection_update_blank(TrackerSparqlConnection con, String query, int glibPriority, Pointer cancellable, PointerByReference error);
+            static native TrackerSparqlCursor tracker_sparql_connection_statistics(TrackerSparqlConnection con, Pointer cancellable, PointerByReference error);
+            static native void tracker_sparql_connection_load(TrackerSparqlConnection con, Pointer file, Pointer cancellable, PointerByReference error);
+            static native void tracker_sparql_connection_update_async(TrackerSparqlConnection con, String query, int glibPriority, Pointer cancellable, GAsyncReadyCallback callback, Pointer userData);
+            static native void tracker_sparql_connection_update_array_async(TrackerSparqlConnection con, Pointer sparql, int length, int glibPriority, Pointer cancellable, GAsyncReadyCallback callback, Pointer userData);
+            static native Pointer tracker_sparql_connection_update_array_finish(TrackerSparqlConnection con, Pointer result, PointerByReference error);
+        }
+        
+        /**
+         * The natives of libtracker-sparql-3.0: private stores, bus endpoints 
+         * and the updates without priority
+         */
+        static final class Tracker3Functions {
+            static {
+                Native.register(Tracker3Functions.class, NativeLibrary.getInstance(LIBRARY));
+            }
+            static native TrackerSparqlConnection tracker_sparql_connection_new(int flags, Pointer store, Pointer ontology, Pointer cancellable, PointerByReference error);
+            static native TrackerSparqlConnection tracker_sparql_connection_bus_new(String serviceName, String objectPath, Pointer dbusConnection, PointerByReference error);
+            static native Pointer tracker_sparql_get_ontology_nepomuk();
+            static native void tracker_sparql_connection_update(TrackerSparqlConnection con, String query, Pointer cancellable, PointerByReference error);
+            static native Pointer tracker_sparql_connection_update_blank(TrackerSparqlConnection con, String query, Pointer cancellable, PointerByReference error);
+            static native void tracker_sparql_connection_update_async(TrackerSparqlConnection con, String query, Pointer cancellable, GAsyncReadyCallback callback, Pointer userData);
+            static native void tracker_sparql_connection_update_array_async(TrackerSparqlConnection con, Pointer sparql, int length, Pointer cancellable, GAsyncReadyCallback callback, Pointer userData);
+            static native boolean tracker_sparql_connection_update_array_finish(TrackerSparqlConnection con, Pointer result, PointerByReference error);
+        }
+        
+        /**
+         * The TrackerSparqlStatement natives, registered on first use since 
+         * libtracker-sparql-1.0 does not export them.
+         */
+        static final class StatementFunctions {
+            static {
+                Native.register(StatementFunctions.class, NativeLibrary.getInstance(LIBRARY));
+            }
+            static native Pointer tracker_sparql_connection_query_statement(TrackerSparqlConnection con, String query, Pointer cancellable, PointerByReference error);
+            static native void tracker_sparql_statement_bind_string(Pointer statement, String name, String value);
+            static native void tracker_sparql_statement_bind_int(Pointer statement, String name, long value);
+            static native void tracker_sparql_statement_bind_double(Pointer statement, String name, double value);
+            static native void tracker_sparql_statement_bind_boolean(Pointer statement, String name, boolean value);
+            static native TrackerSparqlCursor tracker_sparql_statement_execute(Pointer statement, Pointer cancellable, PointerByReference error);
+        }
     }
     
     /**
@@ -518,11 +2023,268 @@ public class Libtracker {
      * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException 
      */
     public static Libtracker.TrackerSparqlConnection getTrackerSparqlConnection() throws TrackerException{
-        PointerByReference error = new PointerByReference(null);
-        Libtracker.TrackerSparqlConnection con = Libtracker.SPARQL.tracker_sparql_connection_get(false, error);
-        if(error.getValue()!=null){
-            throw new TrackerException(new GError(error.getValue()));
+        PointerByReference error = Libtracker.error();
+        Libtracker.TrackerSparqlConnection con = Libtracker.SPARQL.tracker_sparql_connection_get(null, error);
+        Libtracker.checkError(error);
+        return con.own();
+    }
+    /**
+     * Wrapper for library method tracker_sparql_connection_get_direct.<br/>
+     * The connection reads the store's database in-process and is read-only, 
+     * updates fail.
+     * @return Libtracker.TrackerSparqlConnection
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException 
+     */
+    public static Libtracker.TrackerSparqlConnection getTrackerSparqlDirectConnection() throws TrackerException{
+        PointerByReference error = Libtracker.error();
+        Libtracker.TrackerSparqlConnection con = Libtracker.SPARQL.tracker_sparql_connection_get_direct(null, error);
+        Libtracker.checkError(error);
+        return con.own();
+    }
+    /**
+     * Returns a connection sending queries to the direct connection and 
+     * updates to the bus connection, see {@link TrackerRoutingConnection}.
+     * If no direct connection can be opened, queries go to the bus as well.
+     * @return TrackerRoutingConnection
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException if the bus connection cannot be opened
+     */
+    public static TrackerRoutingConnection getTrackerSparqlRoutingConnection() throws TrackerException{
+        Libtracker.TrackerSparqlConnection bus = Libtracker.getTrackerSparqlConnection();
+        Libtracker.TrackerSparqlConnection direct;
+        try {
+            direct = Libtracker.getTrackerSparqlDirectConnection();
+        } catch(TrackerException e){
+            direct = null;
+        }
+        return new TrackerRoutingConnection(bus, direct);
+    }
+    /**
+     * Wrapper for library method tracker_sparql_connection_new, opens a 
+     * private store inside this process, libtracker-sparql-3.0 only.<br/>
+     * The store is not shared with tracker-miner-fs or other processes, every 
+     * call on the same directory must be made by one process at a time.
+     * Connections are thread-safe, share one rather than opening many.
+     * @param store the database directory, created if missing, null for an in-memory store
+     * @param ontology the directory of the ontology's .ontology files, null for the Nepomuk ontology
+     * @param flags see {@link TrackerSparqlConnectionFlags}
+     * @return Libtracker.TrackerSparqlConnection
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException if the store cannot be opened or the library is older than 3.0
+     */
+    public static Libtracker.TrackerSparqlConnection newTrackerSparqlConnection(File store, File ontology, int flags) throws TrackerException{
+        Libtracker.requireVersion(3, "tracker_sparql_connection_new");
+        if(store!=null){
+            store.mkdirs();
+        }
+        Pointer storeFile = store==null ? null : Libtracker.GIO.g_file_new_for_path(store.getAbsolutePath());
+        Pointer ontologyFile = ontology==null ? Libtracker.SPARQL.tracker_sparql_get_ontology_nepomuk() : Libtracker.GIO.g_file_new_for_path(ontology.getAbsolutePath());
+        PointerByReference error = Libtracker.error();
+        Libtracker.TrackerSparqlConnection con;
+        try {
+            con = Libtracker.SPARQL.tracker_sparql_connection_new(flags, storeFile, ontologyFile, null, error);
+            Libtracker.checkError(error);
+        } finally {
+            if(storeFile!=null){
+                Libtracker.GOBJECT.g_object_unref(storeFile);
+            }
+            if(ontologyFile!=null){
+                Libtracker.GOBJECT.g_object_unref(ontologyFile);
+            }
+        }
+        return con.own();
+    }
+    /**
+     * Opens a private in-memory store, see {@link #newTrackerSparqlConnection(File, File, int)}.
+     * The data is gone once the connection is closed.
+     * @param ontology the directory of the ontology's .ontology files, null for the Nepomuk ontology
+     * @return Libtracker.TrackerSparqlConnection
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException if the store cannot be opened or the library is older than 3.0
+     */
+    public static Libtracker.TrackerSparqlConnection newTrackerSparqlMemoryConnection(File ontology) throws TrackerException{
+        return Libtracker.newTrackerSparqlConnection(null, ontology, TrackerSparqlConnectionFlags.NONE);
+    }
+    /**
+     * Wrapper for library method tracker_sparql_connection_bus_new, connects 
+     * to a store exported on the session bus, libtracker-sparql-3.0 only
+     * @param serviceName the endpoint's well-known name, e.g. {@link #MINER_FS_SERVICE}
+     * @return Libtracker.TrackerSparqlConnection
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException if the endpoint cannot be reached or the library is older than 3.0
+     */
+    public static Libtracker.TrackerSparqlConnection getTrackerSparqlBusConnection(String serviceName) throws TrackerException{
+        Libtracker.requireVersion(3, "tracker_sparql_connection_bus_new");
+        PointerByReference error = Libtracker.error();
+        Libtracker.TrackerSparqlConnection con = Libtracker.SPARQL.tracker_sparql_connection_bus_new(serviceName, null, null, error);
+        Libtracker.checkError(error);
+        return con.own();
+    }
+    /**
+     * @param version the major version needed
+     * @param function the function needing it
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException if the loaded library is older
+     */
+    private static void requireVersion(int version, String function) throws TrackerException{
+        if(VERSION < version){
+            throw new TrackerException(function + " needs libtracker-sparql-" + version + ".0, loaded " + LIBRARY);
+        }
+    }
+    
+    /**
+     * Returns the first of the libraries that can be loaded
+     * @param names library names, in order of preference
+     * @return String the first library found, names[0] if none is installed
+     */
+    static String detectLibrary(String... names){
+        for(String name : names){
+            try {
+                NativeLibrary.getInstance(name);
+                return name;
+            } catch(UnsatisfiedLinkError e){
+            }
+        }
+        return names[0];
+    }
+    /**
+     * @param library a library name or path, e.g. "tracker-sparql-3.0"
+     * @return int the major version in the name, 1 if there is none
+     */
+    static int version(String library){
+        Matcher version = Pattern.compile("tracker-sparql-(\\d+)").matcher(library);
+        return version.find() ? Integer.parseInt(version.group(1)) : 1;
+    }
+    /**
+     * @return String the binding in use: "direct", "proxy", "ffm" or the name of a {@link Sparql} class
+     */
+    public static String getBinding(){
+        return BINDING;
+    }
+    
+    /**
+     * Instantiates a {@link Sparql} implementation named by {@link #BINDING_PROPERTY}
+     * @param className
+     * @return Libtracker.Sparql
+     */
+    private static Libtracker.Sparql loadSparql(String className){
+        try {
+            return (Libtracker.Sparql)Class.forName(className).getDeclaredConstructor().newInstance();
+        } catch(ClassNotFoundException | NoSuchMethodException | InstantiationException | IllegalAccessException
+                | InvocationTargetException | ClassCastException e){
+            throw new IllegalStateException("cannot load binding "+className, e);
+        }
+    }
+    /**
+     * Checks whether the loaded libtracker-sparql exports the TrackerSparqlStatement API, 
+     * always false for bindings not backed by the native library
+     * @return boolean
+     */
+    public static synchronized boolean isStatementSupported(){
+        if(statementSupported==null){
+            if(!NATIVE_BINDING){
+                statementSupported = Boolean.FALSE;
+                return false;
+            }
+            try {
+                NativeLibrary.getInstance(LIBRARY).getFunction("tracker_sparql_connection_query_statement");
+                statementSupported = Boolean.TRUE;
+            } catch(UnsatisfiedLinkError e){
+                statementSupported = Boolean.FALSE;
+            }
+        }
+        return statementSupported;
+    }
+    /**
+     * Returns this thread's GError** out-parameter, reset to NULL
+     * @return PointerByReference
+     */
+    static PointerByReference error(){
+        PointerByReference error = ERROR.get();
+        error.setValue(null);
+        return error;
+    }
+    /**
+     * Returns this thread's glong* out-parameter
+     * @return LongByReference
+     */
+    static LongByReference length(){
+        return LENGTH.get();
+    }
+    /**
+     * Throws a TrackerException if the native call has set a GError, the 
+     * GError is freed once its code and message have been copied
+     * @param error
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException 
+     */
+    static void checkError(PointerByReference error) throws TrackerException{
+        TrackerException e = Libtracker.takeError(error);
+        if(e!=null){
+            throw Libtracker.counted(e);
+        }
+    }
+    /**
+     * Frees the GError error points to, if any
+     * @param error
+     * @return TrackerException the error, with code CANCELLED for G_IO_ERROR_CANCELLED, or null
+     */
+    private static TrackerException takeError(PointerByReference error){
+        Pointer address = error.getValue();
+        if(address==null){
+            return null;
+        }
+        error.setValue(null);
+        GError gerror = new GError(address);
+        TrackerException e = gerror.isCancelled() ? new TrackerException(gerror.getMessage(), TrackerException.CANCELLED) : new TrackerException(gerror);
+        GLIB.g_error_free(address);
+        return e;
+    }
+    private static TrackerException counted(TrackerException e){
+        if(TrackerMetrics.enabled){
+            TrackerMetrics.error(e.getErrorCode());
+        }
+        return e;
+    }
+    /**
+     * Like {@link #checkError(PointerByReference)}, reporting the failure to the trace
+     * @param error
+     * @param trace the trace of the failed query or update, may be null
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException 
+     */
+    static void checkError(PointerByReference error, TrackerMetrics.Trace trace) throws TrackerException{
+        Libtracker.checkError(error, trace, null);
+    }
+    /**
+     * Like {@link #checkError(PointerByReference, TrackerMetrics.Trace)}, 
+     * reporting calls cancelled by the cancellable's deadline as TrackerException.TIMED_OUT
+     * @param error
+     * @param trace the trace of the failed query or update, may be null
+     * @param cancellable the cancellable passed to the call, may be null
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException 
+     */
+    static void checkError(PointerByReference error, TrackerMetrics.Trace trace, TrackerCancellable cancellable) throws TrackerException{
+        TrackerException e = Libtracker.takeError(error);
+        if(e==null){
+            return;
+        }
+        if(e.getErrorCode()==TrackerException.CANCELLED && cancellable!=null && cancellable.isTimedOut()){
+            e = new TrackerException("deadline exceeded: " + e.getMessage(), TrackerException.TIMED_OUT);
+        }
+        Libtracker.counted(e);
+        if(trace!=null){
+            trace.failed(e);
+        }
+        throw e;
+    }
+    /**
+     * @param cancellable may be null
+     * @return Pointer the GCancellable to pass to a native call, null if there is none
+     */
+    static Pointer pointer(TrackerCancellable cancellable){
+        return cancellable==null ? null : cancellable.getPointer();
+    }
+    /**
+     * @return int the GQuark of G_IO_ERROR, the domain of G_IO_ERROR_CANCELLED
+     */
+    static int ioErrorQuark(){
+        if(ioErrorQuark==0){
+            ioErrorQuark = GLIB.g_quark_from_string("g-io-error-quark");
         }
-        return con;
+        return ioErrorQuark;
     }
 }
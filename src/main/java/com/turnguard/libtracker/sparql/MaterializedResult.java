@@ -0,0 +1,534 @@
+package com.turnguard.libtracker.sparql;
+
+import com.turnguard.libtracker.sparql.Libtracker.TrackerException;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlCursor;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlValueType;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A cursor's rows copied into off-heap memory, for random access to any row
+ * and column from any number of threads.<br/>
+ * Every column stores a value type byte and an 8 byte value per row:
+ * integers, doubles and booleans as such, all other cells as a code into a
+ * dictionary. URIs of all columns share one dictionary, strings, dateTimes and
+ * blank nodes get one per column, so a value repeated a million times is
+ * stored once. Columns and dictionaries live in direct buffers; once the
+ * storage exceeds the spill threshold, further buffers are mapped from a
+ * temporary file. The java heap only holds the buffer references and, while
+ * the cursor is drained, the dictionaries' hash tables.
+ * <pre>
+ * try (TrackerSparqlCursor cursor = con.query("SELECT ?s ?type WHERE { ?s a ?type }");
+ *      MaterializedResult result = MaterializedResult.of(cursor)) {
+ *   for(int row = result.getRowCount() - 1; row &gt;= 0; row--){
+ *     ... result.getString(row, 1) ... result.getCode(row, 1) ...
+ *   }
+ * }
+ * </pre>
+ * The buffers are released by the garbage collector once the result is
+ * closed and unreachable, the spill file is deleted by close().
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public final class MaterializedResult implements AutoCloseable {
+
+    /**
+     * default off-heap bytes before spilling to a file
+     */
+    public static final long SPILL_THRESHOLD = 256L * 1024 * 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_ROWS = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_ROWS - 1;
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int FETCH_ROWS = 1024;
+
+    private final Storage storage;
+    private final String[] bindingNames;
+    private final Column[] columns;
+    private final Dictionary uris;
+    private int rows;
+
+    private MaterializedResult(Storage storage, String[] bindingNames) {
+        this.storage = storage;
+        this.bindingNames = bindingNames;
+        this.columns = new Column[bindingNames.length];
+        this.uris = new Dictionary(storage);
+        for(int column = 0; column < this.columns.length; column++){
+            this.columns[column] = new Column(storage);
+        }
+    }
+
+    /**
+     * Drains the cursor with the default spill threshold, the cursor is not closed
+     * @param cursor
+     * @return MaterializedResult
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException
+     * @throws IOException if the spill file cannot be written
+     */
+    public static MaterializedResult of(TrackerSparqlCursor cursor) throws TrackerException, IOException {
+        return of(cursor, SPILL_THRESHOLD, null);
+    }
+
+    /**
+     * Drains the cursor, the cursor is not closed
+     * @param cursor
+     * @param spillThreshold off-heap bytes before further storage is mapped from a file
+     * @param spillDirectory directory of the spill file, null for java.io.tmpdir
+     * @return MaterializedResult
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException
+     * @throws IOException if the spill file cannot be written
+     */
+    public static MaterializedResult of(TrackerSparqlCursor cursor, long spillThreshold, File spillDirectory) throws TrackerException, IOException {
+        int count = cursor.getColumnsCount();
+        String[] names = new String[count];
+        for(int column = 0; column < count; column++){
+            names[column] = cursor.getBindingName(column);
+        }
+        MaterializedResult result = new MaterializedResult(new Storage(spillThreshold, spillDirectory), names);
+        try {
+            ResultBatch batch = new ResultBatch(FETCH_ROWS);
+            while(cursor.fetch(FETCH_ROWS, batch) > 0){
+                result.append(batch);
+            }
+        } catch(TrackerException | IOException | RuntimeException e){
+            result.close();
+            throw e;
+        }
+        result.uris.seal();
+        for(Column column : result.columns){
+            column.seal();
+        }
+        return result;
+    }
+
+    private void append(ResultBatch batch) throws IOException {
+        int count = batch.getRowCount();
+        for(int c = 0; c < this.columns.length; c++){
+            Column column = this.columns[c];
+            byte[] types = batch.getValueTypes(c);
+            byte[] data = batch.getStringData(c);
+            int[] offsets = batch.getStringOffsets(c);
+            for(int row = 0; row < count; row++){
+                byte type = batch.isBound(row, c) ? types[row] : 0;
+                long value;
+                switch(type){
+                    case 0:
+                        value = 0;
+                        break;
+                    case 3:
+                        value = batch.getLong(row, c);
+                        break;
+                    case 4:
+                        value = Double.doubleToRawLongBits(batch.getDouble(row, c));
+                        break;
+                    case 7:
+                        value = batch.getBoolean(row, c) ? 1 : 0;
+                        break;
+                    case 1:
+                        value = this.uris.encode(data, offsets[row], offsets[row + 1] - offsets[row]);
+                        break;
+                    default:
+                        value = column.dictionary().encode(data, offsets[row], offsets[row + 1] - offsets[row]);
+                }
+                column.set(this.rows + row, type, value);
+            }
+        }
+        this.rows += count;
+    }
+
+    public int getRowCount(){
+        return this.rows;
+    }
+
+    public int getColumnsCount(){
+        return this.columns.length;
+    }
+
+    public String getBindingName(int column){
+        return this.bindingNames[column];
+    }
+
+    /**
+     * @param name a binding name
+     * @return int the column index, -1 if there is no such binding
+     */
+    public int getColumn(String name){
+        for(int column = 0; column < this.bindingNames.length; column++){
+            if(this.bindingNames[column].equals(name)){
+                return column;
+            }
+        }
+        return -1;
+    }
+
+    private void check(int row){
+        if(row < 0 || row >= this.rows){
+            throw new IndexOutOfBoundsException("row "+row+" of "+this.rows);
+        }
+    }
+
+    public TrackerSparqlValueType getValueType(int row, int column){
+        this.check(row);
+        return TrackerSparqlValueType.fromIntValue(this.columns[column].type(row));
+    }
+
+    public boolean isBound(int row, int column){
+        this.check(row);
+        return this.columns[column].type(row) != 0;
+    }
+
+    /**
+     * @param row
+     * @param column
+     * @return long, only meaningful for TRACKER_SPARQL_VALUE_TYPE_INTEGER cells
+     */
+    public long getLong(int row, int column){
+        this.check(row);
+        return this.columns[column].value(row);
+    }
+
+    /**
+     * @param row
+     * @param column
+     * @return double, only meaningful for TRACKER_SPARQL_VALUE_TYPE_DOUBLE cells
+     */
+    public double getDouble(int row, int column){
+        this.check(row);
+        return Double.longBitsToDouble(this.columns[column].value(row));
+    }
+
+    /**
+     * @param row
+     * @param column
+     * @return boolean, only meaningful for TRACKER_SPARQL_VALUE_TYPE_BOOLEAN cells
+     */
+    public boolean getBoolean(int row, int column){
+        this.check(row);
+        return this.columns[column].value(row) != 0;
+    }
+
+    /**
+     * The dictionary code of a URI, string, dateTime or blank node cell.<br/>
+     * Cells of the same column and type are equal if and only if their codes
+     * are, URI codes are comparable across columns.
+     * @param row
+     * @param column
+     * @return int the code, -1 for unbound and primitive cells
+     */
+    public int getCode(int row, int column){
+        this.check(row);
+        switch(this.columns[column].type(row)){
+            case 0:
+            case 3:
+            case 4:
+            case 7:
+                return -1;
+            default:
+                return (int)this.columns[column].value(row);
+        }
+    }
+
+    /**
+     * @param column
+     * @return int the number of distinct strings, dateTimes and blank nodes of the column
+     */
+    public int getDistinctCount(int column){
+        Dictionary dictionary = this.columns[column].dictionary;
+        return dictionary==null ? 0 : dictionary.size();
+    }
+
+    /**
+     * @return int the number of distinct URIs of all columns
+     */
+    public int getDistinctUriCount(){
+        return this.uris.size();
+    }
+
+    /**
+     * The UTF-8 bytes of a URI, string, dateTime or blank node cell, without copying
+     * @param row
+     * @param column
+     * @return ByteBuffer a read-only view, null for unbound and primitive cells
+     */
+    public ByteBuffer getStringBuffer(int row, int column){
+        int code = this.getCode(row, column);
+        if(code < 0){
+            return null;
+        }
+        return this.columns[column].type(row)==1 ? this.uris.bytes(code) : this.columns[column].dictionary.bytes(code);
+    }
+
+    /**
+     * Decodes a cell, allocates a new String
+     * @param row
+     * @param column
+     * @return String or null if the cell is unbound
+     */
+    public String getString(int row, int column){
+        this.check(row);
+        Column c = this.columns[column];
+        long value = c.value(row);
+        switch(c.type(row)){
+            case 0:
+                return null;
+            case 3:
+                return Long.toString(value);
+            case 4:
+                return Double.toString(Double.longBitsToDouble(value));
+            case 7:
+                return value != 0 ? "true" : "false";
+            default:
+                ByteBuffer bytes = this.getStringBuffer(row, column);
+                byte[] data = new byte[bytes.remaining()];
+                bytes.get(data);
+                return new String(data, UTF8);
+        }
+    }
+
+    /**
+     * @return long the bytes of off-heap and spilled storage
+     */
+    public long getStorageSize(){
+        return this.storage.allocated + this.storage.spilled;
+    }
+
+    /**
+     * @return boolean true if part of the result lives in the spill file
+     */
+    public boolean isSpilled(){
+        return this.storage.spilled > 0;
+    }
+
+    /**
+     * Drops the buffers and deletes the spill file, the result must not be used anymore
+     */
+    @Override
+    public void close(){
+        this.rows = 0;
+        this.storage.close();
+    }
+
+    /**
+     * Hands out direct buffers up to the threshold, file mapped buffers above it
+     */
+    private static final class Storage {
+        private final long threshold;
+        private final File directory;
+        private long allocated;
+        private long spilled;
+        private File file;
+        private RandomAccessFile spill;
+
+        Storage(long threshold, File directory) {
+            this.threshold = threshold;
+            this.directory = directory;
+        }
+
+        synchronized ByteBuffer allocate(int size) throws IOException {
+            ByteBuffer buffer;
+            if(this.allocated + size <= this.threshold){
+                buffer = ByteBuffer.allocateDirect(size);
+                this.allocated += size;
+            } else {
+                if(this.spill==null){
+                    this.file = File.createTempFile("libtracker-sparql-result", ".spill", this.directory);
+                    this.file.deleteOnExit();
+                    this.spill = new RandomAccessFile(this.file, "rw");
+                }
+                buffer = this.spill.getChannel().map(FileChannel.MapMode.READ_WRITE, this.spilled, size);
+                this.spilled += size;
+            }
+            return buffer.order(ByteOrder.nativeOrder());
+        }
+
+        synchronized void close(){
+            if(this.spill!=null){
+                try {
+                    this.spill.close();
+                } catch(IOException e){
+                }
+                this.file.delete();
+                this.spill = null;
+            }
+        }
+    }
+
+    /**
+     * Types and values of a column in pages of PAGE_ROWS rows:
+     * PAGE_ROWS type bytes followed by PAGE_ROWS 8 byte values
+     */
+    private static final class Column {
+        private final Storage storage;
+        private ByteBuffer[] pages = new ByteBuffer[4];
+        private Dictionary dictionary;
+
+        Column(Storage storage) {
+            this.storage = storage;
+        }
+
+        Dictionary dictionary(){
+            if(this.dictionary==null){
+                this.dictionary = new Dictionary(this.storage);
+            }
+            return this.dictionary;
+        }
+
+        void set(int row, byte type, long value) throws IOException {
+            int page = row >>> PAGE_SHIFT;
+            if(page >= this.pages.length){
+                this.pages = Arrays.copyOf(this.pages, this.pages.length << 1);
+            }
+            ByteBuffer buffer = this.pages[page];
+            if(buffer==null){
+                buffer = this.storage.allocate(PAGE_ROWS * 9);
+                this.pages[page] = buffer;
+            }
+            int offset = row & PAGE_MASK;
+            buffer.put(offset, type);
+            buffer.putLong(PAGE_ROWS + (offset << 3), value);
+        }
+
+        byte type(int row){
+            return this.pages[row >>> PAGE_SHIFT].get(row & PAGE_MASK);
+        }
+
+        long value(int row){
+            return this.pages[row >>> PAGE_SHIFT].getLong(PAGE_ROWS + ((row & PAGE_MASK) << 3));
+        }
+
+        void seal(){
+            if(this.dictionary!=null){
+                this.dictionary.seal();
+            }
+        }
+    }
+
+    /**
+     * Distinct UTF-8 values, stored off-heap in blocks of BLOCK_SIZE bytes.<br/>
+     * An off-heap index maps a code to (block, offset, length); while
+     * encoding, an open addressing table of codes and a table of their
+     * hashes find existing values without allocating.
+     */
+    private static final class Dictionary {
+        private final Storage storage;
+        private final List<ByteBuffer> blocks = new ArrayList<>();
+        private ByteBuffer[] index = new ByteBuffer[4];
+        private ByteBuffer block;
+        private int size;
+        private int[] table = new int[64];
+        private int[] hashes = new int[32];
+
+        Dictionary(Storage storage) {
+            this.storage = storage;
+            Arrays.fill(this.table, -1);
+        }
+
+        int size(){
+            return this.size;
+        }
+
+        int encode(byte[] data, int offset, int length) throws IOException {
+            int hash = 1;
+            for(int i = offset; i < offset + length; i++){
+                hash = 31 * hash + data[i];
+            }
+            hash ^= hash >>> 16;
+            int mask = this.table.length - 1;
+            for(int slot = hash & mask; ; slot = (slot + 1) & mask){
+                int code = this.table[slot];
+                if(code < 0){
+                    code = this.add(data, offset, length);
+                    this.hashes[code] = hash;
+                    this.table[slot] = code;
+                    if(this.size * 2 > this.table.length){
+                        this.rehash();
+                    }
+                    return code;
+                }
+                if(this.hashes[code]==hash && this.equals(code, data, offset, length)){
+                    return code;
+                }
+            }
+        }
+
+        private boolean equals(int code, byte[] data, int offset, int length){
+            ByteBuffer entry = this.index[code >>> PAGE_SHIFT];
+            int at = (code & PAGE_MASK) * 12;
+            if(entry.getInt(at + 8)!=length){
+                return false;
+            }
+            ByteBuffer stored = this.blocks.get(entry.getInt(at));
+            int position = entry.getInt(at + 4);
+            for(int i = 0; i < length; i++){
+                if(stored.get(position + i)!=data[offset + i]){
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int add(byte[] data, int offset, int length) throws IOException {
+            if(this.block==null || this.block.remaining() < length){
+                this.block = this.storage.allocate(Math.max(BLOCK_SIZE, length));
+                this.blocks.add(this.block);
+            }
+            int code = this.size++;
+            int page = code >>> PAGE_SHIFT;
+            if(page >= this.index.length){
+                this.index = Arrays.copyOf(this.index, this.index.length << 1);
+            }
+            if(this.index[page]==null){
+                this.index[page] = this.storage.allocate(PAGE_ROWS * 12);
+            }
+            int at = (code & PAGE_MASK) * 12;
+            this.index[page].putInt(at, this.blocks.size() - 1);
+            this.index[page].putInt(at + 4, this.block.position());
+            this.index[page].putInt(at + 8, length);
+            this.block.put(data, offset, length);
+            if(code >= this.hashes.length){
+                this.hashes = Arrays.copyOf(this.hashes, this.hashes.length << 1);
+            }
+            return code;
+        }
+
+        private void rehash(){
+            int[] table = new int[this.table.length << 1];
+            Arrays.fill(table, -1);
+            int mask = table.length - 1;
+            for(int code = 0; code < this.size; code++){
+                int slot = this.hashes[code] & mask;
+                while(table[slot] >= 0){
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = code;
+            }
+            this.table = table;
+        }
+
+        /**
+         * Drops the hash tables, the dictionary is read-only from now on
+         */
+        void seal(){
+            this.table = null;
+            this.hashes = null;
+        }
+
+        ByteBuffer bytes(int code){
+            ByteBuffer entry = this.index[code >>> PAGE_SHIFT];
+            int at = (code & PAGE_MASK) * 12;
+            ByteBuffer bytes = this.blocks.get(entry.getInt(at)).duplicate();
+            int position = entry.getInt(at + 4);
+            bytes.limit(position + entry.getInt(at + 8)).position(position);
+            return bytes.asReadOnlyBuffer();
+        }
+    }
+}
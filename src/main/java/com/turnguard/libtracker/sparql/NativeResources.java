@@ -0,0 +1,139 @@
+package com.turnguard.libtracker.sparql;
+
+import com.sun.jna.Pointer;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ownership of the native objects handed out by the bindings.<br/>
+ * Every connection, cursor and prepared statement returned by a wrapper method
+ * owns one GObject reference, and every buffer allocated for a native call is
+ * accounted with its size. close() releases them right away; whatever is not
+ * closed is released by a daemon thread ("libtracker-sparql-cleaner") once its
+ * java owner has been garbage collected, the same way java.lang.ref.Cleaner
+ * does on later JDKs.
+ * <pre>
+ * try (TrackerSparqlCursor cursor = con.query("SELECT ...")) {
+ *   ...
+ * }
+ * System.out.println(NativeResources.getObjectCount() + " objects, " + NativeResources.getCollectedCount() + " never closed");
+ * </pre>
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public final class NativeResources {
+
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+    private static final Set<Ref> REFS = Collections.newSetFromMap(new ConcurrentHashMap<Ref, Boolean>());
+    private static final AtomicLong OBJECTS = new AtomicLong();
+    private static final AtomicLong BYTES = new AtomicLong();
+    private static final AtomicLong COLLECTED = new AtomicLong();
+
+    static {
+        Thread cleaner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while(true){
+                    try {
+                        Ref ref = (Ref)QUEUE.remove();
+                        if(ref.release()){
+                            COLLECTED.incrementAndGet();
+                        }
+                    } catch(InterruptedException e){
+                        // daemon thread, keeps running
+                    } catch(RuntimeException | Error e){
+                        // a failing unref must not stop the cleaner
+                    }
+                }
+            }
+        }, "libtracker-sparql-cleaner");
+        cleaner.setDaemon(true);
+        cleaner.start();
+    }
+
+    private NativeResources() {}
+
+    /**
+     * Takes ownership of one reference to a GObject, g_object_unref is called on release
+     * @param owner the java object whose lifetime bounds the reference
+     * @param object the GObject
+     * @return Ref
+     */
+    static Ref object(Object owner, Pointer object){
+        Ref ref = new Ref(owner, Pointer.nativeValue(object), 0);
+        OBJECTS.incrementAndGet();
+        REFS.add(ref);
+        return ref;
+    }
+
+    /**
+     * Accounts native memory freed by JNA together with its owner
+     * @param owner the java object holding the memory
+     * @param bytes the number of bytes
+     * @return Ref
+     */
+    static Ref memory(Object owner, long bytes){
+        Ref ref = new Ref(owner, 0, bytes);
+        BYTES.addAndGet(bytes);
+        REFS.add(ref);
+        return ref;
+    }
+
+    /**
+     * @return long the number of GObject references currently owned by the bindings
+     */
+    public static long getObjectCount(){
+        return OBJECTS.get();
+    }
+
+    /**
+     * @return long the number of bytes of native memory currently allocated by the bindings
+     */
+    public static long getByteCount(){
+        return BYTES.get();
+    }
+
+    /**
+     * @return long the number of resources released because their owner was collected without being closed
+     */
+    public static long getCollectedCount(){
+        return COLLECTED.get();
+    }
+
+    /**
+     * A native resource bound to the lifetime of its owner, released at most once
+     */
+    static final class Ref extends PhantomReference<Object> {
+        private final long object;
+        private final long bytes;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Ref(Object owner, long object, long bytes) {
+            super(owner, QUEUE);
+            this.object = object;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Releases the resource unless this has been done before
+         * @return boolean true if this call released it
+         */
+        boolean release(){
+            if(!this.released.compareAndSet(false, true)){
+                return false;
+            }
+            REFS.remove(this);
+            this.clear();
+            if(this.object!=0){
+                OBJECTS.decrementAndGet();
+                Libtracker.GOBJECT.g_object_unref(Pointer.createConstant(this.object));
+            }
+            BYTES.addAndGet(-this.bytes);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package com.turnguard.libtracker.sparql;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.LongByReference;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerException;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlCursor;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlValueType;
+import java.nio.ByteBuffer;
+import java.lang.ref.WeakReference;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reusable columnar buffer filled by {@link Libtracker.TrackerSparqlCursor#fetch(int, ResultBatch)}.<br/>
+ * Every cell costs one native call for its value type and one for its value,
+ * unbound cells only the first. Integers, doubles and booleans go into primitive
+ * columns, all other bound cells are copied as UTF-8 bytes into a per column
+ * byte array. Once the arrays have grown to the batch size, fetching does not
+ * allocate on the java heap anymore (apart from JNA's Pointer for string cells).
+ * <pre>
+ * ResultBatch batch = new ResultBatch(1024);
+ * while(cursor.fetch(1024, batch) &gt; 0){
+ *   for(int row = 0; row &lt; batch.getRowCount(); row++){
+ *     if(batch.isBound(row, 0)){ ... batch.getLong(row, 0) ... }
+ *   }
+ * }
+ * </pre>
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public class ResultBatch {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int INITIAL_BYTES_PER_CELL = 64;
+
+    private final LongByReference length = new LongByReference();
+    private int capacity;
+    private int columns;
+    private int rows;
+    private WeakReference<TrackerSparqlCursor> filled = new WeakReference<>(null);
+    private String[] bindingNames = new String[0];
+    private byte[][] valueTypes = new byte[0][];
+    private long[][] bound = new long[0][];
+    private long[][] longs = new long[0][];
+    private double[][] doubles = new double[0][];
+    private boolean[][] booleans = new boolean[0][];
+    private byte[][] bytes = new byte[0][];
+    private int[][] offsets = new int[0][];
+
+    /**
+     * @param capacity the initial number of rows
+     */
+    public ResultBatch(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * Advances the cursor up to maxRows rows and copies them into this batch
+     * @param cursor
+     * @param maxRows
+     * @return int the number of rows fetched, 0 when the cursor is exhausted
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException
+     */
+    int fill(TrackerSparqlCursor cursor, int maxRows) throws TrackerException {
+        if(!cursor.isNative()){
+            return this.fillFrom(cursor, maxRows);
+        }
+        Libtracker.Sparql sparql = Libtracker.SPARQL;
+        this.reset(cursor, maxRows);
+        int row = 0;
+        while(row < maxRows && cursor.next()){
+            for(int column = 0; column < this.columns; column++){
+                int type = sparql.tracker_sparql_cursor_get_value_type(cursor, column).getIntValue();
+                this.valueTypes[column][row] = (byte)type;
+                int[] columnOffsets = this.offsets[column];
+                columnOffsets[row+1] = columnOffsets[row];
+                switch(type){
+                    case 0:
+                        continue;
+                    case 3:
+                        this.longs[column][row] = sparql.tracker_sparql_cursor_get_integer(cursor, column);
+                        break;
+                    case 4:
+                        this.doubles[column][row] = sparql.tracker_sparql_cursor_get_double(cursor, column);
+                        break;
+                    case 7:
+                        this.booleans[column][row] = sparql.tracker_sparql_cursor_get_boolean(cursor, column);
+                        break;
+                    default:
+                        this.copyString(sparql.tracker_sparql_cursor_get_string(cursor, column, this.length), column, row);
+                }
+                this.bound[column][row >>> 6] |= 1L << row;
+            }
+            row++;
+        }
+        this.rows = row;
+        return row;
+    }
+
+    /**
+     * Fills the batch through the cursor's wrapper methods, for cursors not backed by native memory
+     */
+    private int fillFrom(TrackerSparqlCursor cursor, int maxRows) throws TrackerException {
+        this.reset(cursor, maxRows);
+        int row = 0;
+        while(row < maxRows && cursor.next()){
+            for(int column = 0; column < this.columns; column++){
+                int type = cursor.getValueType(column).getIntValue();
+                this.valueTypes[column][row] = (byte)type;
+                int[] columnOffsets = this.offsets[column];
+                columnOffsets[row+1] = columnOffsets[row];
+                switch(type){
+                    case 0:
+                        continue;
+                    case 3:
+                        this.longs[column][row] = cursor.getLong(column);
+                        break;
+                    case 4:
+                        this.doubles[column][row] = cursor.getDouble(column);
+                        break;
+                    case 7:
+                        this.booleans[column][row] = cursor.getBoolean(column);
+                        break;
+                    default:
+                        ByteBuffer value = cursor.getStringBuffer(column);
+                        if(value!=null){
+                            int size = value.remaining();
+                            int start = columnOffsets[row];
+                            if(start + size > this.bytes[column].length){
+                                this.bytes[column] = Arrays.copyOf(this.bytes[column], Math.max(this.bytes[column].length << 1, start + size));
+                            }
+                            value.get(this.bytes[column], start, size);
+                            columnOffsets[row+1] = start + size;
+                        }
+                }
+                this.bound[column][row >>> 6] |= 1L << row;
+            }
+            row++;
+        }
+        this.rows = row;
+        return row;
+    }
+
+    private void reset(TrackerSparqlCursor cursor, int maxRows){
+        // columns and binding names are only read when the cursor changes
+        boolean same = this.filled.get()==cursor;
+        int count = same ? this.columns : cursor.getColumnsCount();
+        if(count != this.columns || this.bindingNames.length != count){
+            this.columns = count;
+            this.bindingNames = new String[count];
+            this.valueTypes = new byte[count][];
+            this.bound = new long[count][];
+            this.longs = new long[count][];
+            this.doubles = new double[count][];
+            this.booleans = new boolean[count][];
+            this.bytes = new byte[count][];
+            this.offsets = new int[count][];
+            this.capacity = Math.max(this.capacity, maxRows);
+            this.allocate(this.capacity);
+        } else if(maxRows > this.capacity){
+            this.capacity = maxRows;
+            this.allocate(this.capacity);
+        }
+        for(int column = 0; column < count; column++){
+            if(!same){
+                this.bindingNames[column] = cursor.getBindingName(column);
+            }
+            Arrays.fill(this.bound[column], 0L);
+            this.offsets[column][0] = 0;
+        }
+        if(!same){
+            this.filled = new WeakReference<>(cursor);
+        }
+        this.rows = 0;
+    }
+
+    private void allocate(int capacity){
+        for(int column = 0; column < this.columns; column++){
+            this.valueTypes[column] = new byte[capacity];
+            this.bound[column] = new long[(capacity + 63) >>> 6];
+            this.longs[column] = new long[capacity];
+            this.doubles[column] = new double[capacity];
+            this.booleans[column] = new boolean[capacity];
+            this.offsets[column] = new int[capacity + 1];
+            if(this.bytes[column] == null){
+                this.bytes[column] = new byte[capacity * INITIAL_BYTES_PER_CELL];
+            }
+        }
+    }
+
+    private void copyString(Pointer value, int column, int row){
+        if(value == null){
+            return;
+        }
+        int size = (int)this.length.getValue();
+        int start = this.offsets[column][row];
+        byte[] data = this.bytes[column];
+        if(start + size > data.length){
+            data = Arrays.copyOf(data, Math.max(data.length << 1, start + size));
+            this.bytes[column] = data;
+        }
+        value.read(0, data, start, size);
+        this.offsets[column][row+1] = start + size;
+    }
+
+    /**
+     * @return int the number of rows of the last fetch
+     */
+    public int getRowCount(){
+        return this.rows;
+    }
+    /**
+     * @return int the number of columns of the last fetch
+     */
+    public int getColumnsCount(){
+        return this.columns;
+    }
+    /**
+     * @param column
+     * @return String the binding name of the column
+     */
+    public String getBindingName(int column){
+        return this.bindingNames[column];
+    }
+    /**
+     * @param row
+     * @param column
+     * @return boolean
+     */
+    public boolean isBound(int row, int column){
+        return (this.bound[column][row >>> 6] & (1L << row)) != 0;
+    }
+    /**
+     * The bound bitmap of a column, bit (row &amp; 63) of word (row &gt;&gt;&gt; 6)
+     * @param column
+     * @return long[] backing array, do not modify
+     */
+    public long[] getBoundBitmap(int column){
+        return this.bound[column];
+    }
+    /**
+     * @param row
+     * @param column
+     * @return TrackerSparqlValueType
+     */
+    public TrackerSparqlValueType getValueType(int row, int column){
+        return TrackerSparqlValueType.fromIntValue(this.valueTypes[column][row]);
+    }
+    /**
+     * The native TrackerSparqlValueType values of a column
+     * @param column
+     * @return byte[] backing array, do not modify
+     */
+    public byte[] getValueTypes(int column){
+        return this.valueTypes[column];
+    }
+    /**
+     * @param row
+     * @param column
+     * @return long, only meaningful for TRACKER_SPARQL_VALUE_TYPE_INTEGER cells
+     */
+    public long getLong(int row, int column){
+        return this.longs[column][row];
+    }
+    /**
+     * @param column
+     * @return long[] backing array, do not modify
+     */
+    public long[] getLongs(int column){
+        return this.longs[column];
+    }
+    /**
+     * @param row
+     * @param column
+     * @return double, only meaningful for TRACKER_SPARQL_VALUE_TYPE_DOUBLE cells
+     */
+    public double getDouble(int row, int column){
+        return this.doubles[column][row];
+    }
+    /**
+     * @param column
+     * @return double[] backing array, do not modify
+     */
+    public double[] getDoubles(int column){
+        return this.doubles[column];
+    }
+    /**
+     * @param row
+     * @param column
+     * @return boolean, only meaningful for TRACKER_SPARQL_VALUE_TYPE_BOOLEAN cells
+     */
+    public boolean getBoolean(int row, int column){
+        return this.booleans[column][row];
+    }
+    /**
+     * @param column
+     * @return boolean[] backing array, do not modify
+     */
+    public boolean[] getBooleans(int column){
+        return this.booleans[column];
+    }
+    /**
+     * The UTF-8 bytes of all string-like cells of a column,
+     * cell (row, column) spans getStringOffsets(column)[row] to getStringOffsets(column)[row+1]
+     * @param column
+     * @return byte[] backing array, do not modify
+     */
+    public byte[] getStringData(int column){
+        return this.bytes[column];
+    }
+    /**
+     * @param column
+     * @return int[] backing array, do not modify
+     */
+    public int[] getStringOffsets(int column){
+        return this.offsets[column];
+    }
+    /**
+     * Decodes a cell, allocates a new String
+     * @param row
+     * @param column
+     * @return String or null if the cell is unbound
+     */
+    public String getString(int row, int column){
+        if(!this.isBound(row, column)){
+            return null;
+        }
+        switch(this.valueTypes[column][row]){
+            case 3:
+                return Long.toString(this.longs[column][row]);
+            case 4:
+                return Double.toString(this.doubles[column][row]);
+            case 7:
+                return this.booleans[column][row] ? "true" : "false";
+            default:
+                int start = this.offsets[column][row];
+                return new String(this.bytes[column], start, this.offsets[column][row+1] - start, UTF8);
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package com.turnguard.libtracker.sparql;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.LongByReference;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerException;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlCursor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Drains a cursor into a WritableByteChannel as CSV, TSV, N-Triples or
+ * SPARQL Query Results JSON.<br/>
+ * Cells are never decoded to Strings: the native UTF-8 bytes of every cell
+ * are escaped (as the format and the cell's TrackerSparqlValueType require)
+ * straight into a reusable direct buffer, which is written to the channel
+ * whenever it is full. Runs of bytes that need no escaping are copied in bulk.
+ * <pre>
+ * ResultWriter writer = new ResultWriter(ResultWriter.Format.JSON);
+ * try (TrackerSparqlCursor cursor = con.query("SELECT ...");
+ *      FileChannel out = new FileOutputStream(file).getChannel()) {
+ *   writer.write(cursor, out);
+ * }
+ * </pre>
+ * A writer can be reused for any number of cursors and is not thread-safe.
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public class ResultWriter {
+
+    /**
+     * the default size of the output buffer
+     */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Output formats
+     */
+    public enum Format {
+        /**
+         * SPARQL 1.1 Query Results CSV: plain values, quoted when needed, CRLF line ends
+         */
+        CSV,
+        /**
+         * SPARQL 1.1 Query Results TSV: values as RDF terms
+         */
+        TSV,
+        /**
+         * one triple per row, the cursor must have exactly three columns (subject, predicate, object)
+         */
+        NTRIPLES,
+        /**
+         * SPARQL 1.1 Query Results JSON
+         */
+        JSON
+    }
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String XSD = "http://www.w3.org/2001/XMLSchema#";
+    private static final byte[][] DATATYPES = new byte[8][];
+    private static final byte[] CRLF = bytes("\r\n");
+    private static final byte[] BLANK_PREFIX = bytes("_:");
+    private static final byte[] TYPED = bytes("\"^^<");
+    private static final byte[] TRIPLE_END = bytes(" .\n");
+    private static final byte[] JSON_HEAD = bytes("{\"head\":{\"vars\":[");
+    private static final byte[] JSON_RESULTS = bytes("]},\"results\":{\"bindings\":[");
+    private static final byte[] JSON_END = bytes("]}}\n");
+    private static final byte[] JSON_URI = bytes("\":{\"type\":\"uri\",\"value\":\"");
+    private static final byte[] JSON_BNODE = bytes("\":{\"type\":\"bnode\",\"value\":\"");
+    private static final byte[] JSON_LITERAL = bytes("\":{\"type\":\"literal\",\"value\":\"");
+    private static final byte[] JSON_DATATYPE = bytes("\",\"datatype\":\"");
+    private static final byte[] JSON_CELL_END = bytes("\"}");
+    private static final byte[][] LITERAL_ESCAPES = new byte[128][];
+    private static final byte[][] IRI_ESCAPES = new byte[128][];
+    private static final byte[][] JSON_ESCAPES = new byte[128][];
+    private static final byte[][] CSV_ESCAPES = new byte[128][];
+
+    static {
+        DATATYPES[3] = bytes(XSD + "integer");
+        DATATYPES[4] = bytes(XSD + "double");
+        DATATYPES[5] = bytes(XSD + "dateTime");
+        DATATYPES[7] = bytes(XSD + "boolean");
+        LITERAL_ESCAPES['"'] = bytes("\\\"");
+        LITERAL_ESCAPES['\\'] = bytes("\\\\");
+        LITERAL_ESCAPES['\n'] = bytes("\\n");
+        LITERAL_ESCAPES['\r'] = bytes("\\r");
+        LITERAL_ESCAPES['\t'] = bytes("\\t");
+        for(int c = 0; c <= ' '; c++){
+            IRI_ESCAPES[c] = bytes(String.format("\\u%04X", c));
+            JSON_ESCAPES[c] = bytes(String.format("\\u%04x", c));
+        }
+        for(char c : "<>\"{}|^`\\".toCharArray()){
+            IRI_ESCAPES[c] = bytes(String.format("\\u%04X", (int)c));
+        }
+        JSON_ESCAPES[' '] = null;
+        JSON_ESCAPES['"'] = bytes("\\\"");
+        JSON_ESCAPES['\\'] = bytes("\\\\");
+        JSON_ESCAPES['\n'] = bytes("\\n");
+        JSON_ESCAPES['\r'] = bytes("\\r");
+        JSON_ESCAPES['\t'] = bytes("\\t");
+        CSV_ESCAPES['"'] = bytes("\"\"");
+    }
+
+    private final Format format;
+    private final ByteBuffer out;
+    private final LongByReference length = new LongByReference();
+    private WritableByteChannel channel;
+    private long byteCount;
+
+    /**
+     * @param format
+     */
+    public ResultWriter(Format format) {
+        this(format, BUFFER_SIZE);
+    }
+
+    /**
+     * @param format
+     * @param bufferSize the size of the direct output buffer, at least 1024 bytes
+     */
+    public ResultWriter(Format format, int bufferSize) {
+        if(bufferSize < 1024){
+            throw new IllegalArgumentException("bufferSize must be at least 1024");
+        }
+        this.format = format;
+        this.out = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    private static byte[] bytes(String s){
+        return s.getBytes(UTF8);
+    }
+
+    /**
+     * @return Format
+     */
+    public Format getFormat(){
+        return this.format;
+    }
+
+    /**
+     * @return long the number of bytes written to channels so far
+     */
+    public long getByteCount(){
+        return this.byteCount;
+    }
+
+    /**
+     * Writes the cursor's remaining rows as one complete document and flushes
+     * the output buffer, neither the cursor nor the channel is closed
+     * @param cursor
+     * @param channel
+     * @return long the number of rows written
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException
+     * @throws IOException
+     * @throws IllegalArgumentException for N-Triples if the cursor has not three columns
+     */
+    public long write(TrackerSparqlCursor cursor, WritableByteChannel channel) throws TrackerException, IOException {
+        int columns = cursor.getColumnsCount();
+        if(this.format==Format.NTRIPLES && columns!=3){
+            throw new IllegalArgumentException("N-Triples needs three columns, the cursor has "+columns);
+        }
+        byte[][] names = new byte[columns][];
+        for(int column = 0; column < columns; column++){
+            names[column] = bytes(cursor.getBindingName(column));
+        }
+        this.channel = channel;
+        this.out.clear();
+        long rows = 0;
+        try {
+            this.header(names);
+            while(cursor.next()){
+                switch(this.format){
+                    case CSV:
+                        this.csvRow(cursor, columns);
+                        break;
+                    case TSV:
+                        this.tsvRow(cursor, columns);
+                        break;
+                    case NTRIPLES:
+                        this.triple(cursor);
+                        break;
+                    default:
+                        this.jsonRow(cursor, names, rows);
+                }
+                rows++;
+            }
+            if(this.format==Format.JSON){
+                this.put(JSON_END);
+            }
+            this.drain();
+        } finally {
+            this.out.clear();
+            this.channel = null;
+        }
+        return rows;
+    }
+
+    private void header(byte[][] names) throws IOException {
+        switch(this.format){
+            case CSV:
+                for(int column = 0; column < names.length; column++){
+                    if(column > 0){
+                        this.put((byte)',');
+                    }
+                    this.csv(ByteBuffer.wrap(names[column]));
+                }
+                this.put(CRLF);
+                break;
+            case TSV:
+                for(int column = 0; column < names.length; column++){
+                    if(column > 0){
+                        this.put((byte)'\t');
+                    }
+                    this.put((byte)'?');
+                    this.put(names[column]);
+                }
+                this.put((byte)'\n');
+                break;
+            case JSON:
+                this.put(JSON_HEAD);
+                for(int column = 0; column < names.length; column++){
+                    if(column > 0){
+                        this.put((byte)',');
+                    }
+                    this.put((byte)'"');
+                    this.escape(ByteBuffer.wrap(names[column]), JSON_ESCAPES);
+                    this.put((byte)'"');
+                }
+                this.put(JSON_RESULTS);
+                break;
+            default:
+        }
+    }
+
+    /**
+     * The raw UTF-8 bytes of a cell, only valid until the next call on the cursor
+     */
+    private ByteBuffer value(TrackerSparqlCursor cursor, int column){
+        if(!cursor.isNative()){
+            return cursor.getStringBuffer(column);
+        }
+        Pointer value = Libtracker.SPARQL.tracker_sparql_cursor_get_string(cursor, column, this.length);
+        return value==null ? null : value.getByteBuffer(0, this.length.getValue());
+    }
+
+    private void csvRow(TrackerSparqlCursor cursor, int columns) throws IOException {
+        for(int column = 0; column < columns; column++){
+            if(column > 0){
+                this.put((byte)',');
+            }
+            int type = cursor.getValueType(column).getIntValue();
+            if(type==0){
+                continue;
+            }
+            ByteBuffer value = this.value(cursor, column);
+            if(value==null){
+                continue;
+            }
+            if(type==6 && !isBlankLabel(value)){
+                this.put(BLANK_PREFIX);
+            }
+            this.csv(value);
+        }
+        this.put(CRLF);
+    }
+
+    private void csv(ByteBuffer value) throws IOException {
+        boolean quote = false;
+        for(int i = value.position(); i < value.limit(); i++){
+            byte b = value.get(i);
+            if(b=='"' || b==',' || b=='\n' || b=='\r'){
+                quote = true;
+                break;
+            }
+        }
+        if(quote){
+            this.put((byte)'"');
+            this.escape(value, CSV_ESCAPES);
+            this.put((byte)'"');
+        } else {
+            this.put(value);
+        }
+    }
+
+    private void tsvRow(TrackerSparqlCursor cursor, int columns) throws IOException {
+        for(int column = 0; column < columns; column++){
+            if(column > 0){
+                this.put((byte)'\t');
+            }
+            this.term(cursor, column);
+        }
+        this.put((byte)'\n');
+    }
+
+    private void triple(TrackerSparqlCursor cursor) throws IOException {
+        for(int column = 0; column < 3; column++){
+            if(cursor.getValueType(column).getIntValue()==0){
+                return;
+            }
+        }
+        this.term(cursor, 0);
+        this.put((byte)' ');
+        this.term(cursor, 1);
+        this.put((byte)' ');
+        this.term(cursor, 2);
+        this.put(TRIPLE_END);
+    }
+
+    /**
+     * Writes a cell as an N-Triples term, nothing if unbound
+     */
+    private void term(TrackerSparqlCursor cursor, int column) throws IOException {
+        int type = cursor.getValueType(column).getIntValue();
+        if(type==0){
+            return;
+        }
+        ByteBuffer value = this.value(cursor, column);
+        if(value==null){
+            return;
+        }
+        switch(type){
+            case 1:
+                this.put((byte)'<');
+                this.escape(value, IRI_ESCAPES);
+                this.put((byte)'>');
+                break;
+            case 6:
+                if(!isBlankLabel(value)){
+                    this.put(BLANK_PREFIX);
+                }
+                this.put(value);
+                break;
+            default:
+                this.put((byte)'"');
+                this.escape(value, LITERAL_ESCAPES);
+                if(type < DATATYPES.length && DATATYPES[type]!=null){
+                    this.put(TYPED);
+                    this.put(DATATYPES[type]);
+                    this.put((byte)'>');
+                } else {
+                    this.put((byte)'"');
+                }
+        }
+    }
+
+    private void jsonRow(TrackerSparqlCursor cursor, byte[][] names, long row) throws IOException {
+        if(row > 0){
+            this.put((byte)',');
+        }
+        this.put((byte)'{');
+        boolean first = true;
+        for(int column = 0; column < names.length; column++){
+            int type = cursor.getValueType(column).getIntValue();
+            if(type==0){
+                continue;
+            }
+            ByteBuffer value = this.value(cursor, column);
+            if(value==null){
+                continue;
+            }
+            if(!first){
+                this.put((byte)',');
+            }
+            first = false;
+            this.put((byte)'"');
+            this.escape(ByteBuffer.wrap(names[column]), JSON_ESCAPES);
+            switch(type){
+                case 1:
+                    this.put(JSON_URI);
+                    this.escape(value, JSON_ESCAPES);
+                    break;
+                case 6:
+                    this.put(JSON_BNODE);
+                    if(isBlankLabel(value)){
+                        value.position(value.position() + 2);
+                    }
+                    this.escape(value, JSON_ESCAPES);
+                    break;
+                default:
+                    this.put(JSON_LITERAL);
+                    this.escape(value, JSON_ESCAPES);
+                    if(type < DATATYPES.length && DATATYPES[type]!=null){
+                        this.put(JSON_DATATYPE);
+                        this.put(DATATYPES[type]);
+                    }
+            }
+            this.put(JSON_CELL_END);
+        }
+        this.put((byte)'}');
+    }
+
+    private static boolean isBlankLabel(ByteBuffer value){
+        return value.remaining() >= 2 && value.get(value.position())=='_' && value.get(value.position() + 1)==':';
+    }
+
+    /**
+     * Copies the value, replacing the ASCII bytes that have an entry in escapes
+     */
+    private void escape(ByteBuffer value, byte[][] escapes) throws IOException {
+        int start = value.position();
+        int end = value.limit();
+        for(int i = start; i < end; i++){
+            byte b = value.get(i);
+            if(b >= 0 && escapes[b]!=null){
+                if(i > start){
+                    value.limit(i);
+                    this.put(value);
+                    value.limit(end);
+                }
+                this.put(escapes[b]);
+                start = i + 1;
+                value.position(start);
+            }
+        }
+        this.put(value);
+    }
+
+    private void put(byte b) throws IOException {
+        if(!this.out.hasRemaining()){
+            this.drain();
+        }
+        this.out.put(b);
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        if(bytes.length > this.out.capacity()){
+            this.put(ByteBuffer.wrap(bytes));
+            return;
+        }
+        if(this.out.remaining() < bytes.length){
+            this.drain();
+        }
+        this.out.put(bytes);
+    }
+
+    /**
+     * Copies the remaining bytes of value, draining the output buffer as often as needed
+     */
+    private void put(ByteBuffer value) throws IOException {
+        int end = value.limit();
+        while(value.hasRemaining()){
+            if(!this.out.hasRemaining()){
+                this.drain();
+            }
+            if(value.remaining() > this.out.remaining()){
+                value.limit(value.position() + this.out.remaining());
+            }
+            this.out.put(value);
+            value.limit(end);
+        }
+    }
+
+    private void drain() throws IOException {
+        this.out.flip();
+        while(this.out.hasRemaining()){
+            this.byteCount += this.channel.write(this.out);
+        }
+        this.out.clear();
+    }
+}
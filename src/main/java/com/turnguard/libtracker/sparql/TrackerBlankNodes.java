@@ -0,0 +1,215 @@
+package com.turnguard.libtracker.sparql;
+
+import com.sun.jna.Pointer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The urns tracker generated for the blank nodes of an update, as returned
+ * by tracker_sparql_connection_update_blank.<br/>
+ * The GVariant (aaa{ss}) holds, per update of the request and per solution
+ * of its template, the blank node labels and their urns. They are copied into
+ * flat arrays: entry i maps label getLabel(i) to getUrn(i); the entries of a
+ * solution are contiguous and each label is stored once.
+ * <pre>
+ * TrackerBlankNodes urns = con.updateBlank("INSERT DATA { _:a a nfo:Document . _:b a nfo:Document }");
+ * String a = urns.getUrn(0, 0, "a");
+ * </pre>
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public final class TrackerBlankNodes {
+
+    private static final TrackerBlankNodes EMPTY = new TrackerBlankNodes(new String[0], new int[0], new String[0], new int[]{0}, new int[]{0});
+
+    private final String[] labels;
+    private final int[] entryLabels;
+    private final String[] urns;
+    private final int[] solutionStart;
+    private final int[] updateStart;
+
+    /**
+     * @param labels the distinct labels
+     * @param entryLabels per entry, the index of its label
+     * @param urns per entry, the generated urn
+     * @param solutionStart per solution, the index of its first entry, and the number of entries
+     * @param updateStart per update, the index of its first solution, and the number of solutions
+     */
+    TrackerBlankNodes(String[] labels, int[] entryLabels, String[] urns, int[] solutionStart, int[] updateStart) {
+        this.labels = labels;
+        this.entryLabels = entryLabels;
+        this.urns = urns;
+        this.solutionStart = solutionStart;
+        this.updateStart = updateStart;
+    }
+
+    /**
+     * Copies the result of tracker_sparql_connection_update_blank, the variant is not unref'd
+     * @param variant a GVariant of type aaa{ss}, may be null
+     * @return TrackerBlankNodes
+     */
+    static TrackerBlankNodes parse(Pointer variant){
+        if(variant==null){
+            return EMPTY;
+        }
+        Libtracker.GLib glib = Libtracker.GLIB;
+        Map<String, Integer> labelIndex = new HashMap<>();
+        List<String> labels = new ArrayList<>();
+        List<String> urns = new ArrayList<>();
+        int[] entryLabels = new int[16];
+        int[] solutionStart = new int[16];
+        int updates = (int)glib.g_variant_n_children(variant);
+        int[] updateStart = new int[updates + 1];
+        int solutions = 0;
+        for(int u = 0; u < updates; u++){
+            updateStart[u] = solutions;
+            Pointer update = glib.g_variant_get_child_value(variant, u);
+            try {
+                long count = glib.g_variant_n_children(update);
+                for(long s = 0; s < count; s++){
+                    if(solutions + 1 >= solutionStart.length){
+                        solutionStart = Arrays.copyOf(solutionStart, solutionStart.length << 1);
+                    }
+                    solutionStart[solutions++] = urns.size();
+                    Pointer solution = glib.g_variant_get_child_value(update, s);
+                    try {
+                        long entries = glib.g_variant_n_children(solution);
+                        for(long e = 0; e < entries; e++){
+                            Pointer entry = glib.g_variant_get_child_value(solution, e);
+                            Pointer key = glib.g_variant_get_child_value(entry, 0);
+                            Pointer value = glib.g_variant_get_child_value(entry, 1);
+                            try {
+                                String label = glib.g_variant_get_string(key, null);
+                                if(label.startsWith("_:")){
+                                    label = label.substring(2);
+                                }
+                                Integer index = labelIndex.get(label);
+                                if(index==null){
+                                    index = labels.size();
+                                    labels.add(label);
+                                    labelIndex.put(label, index);
+                                }
+                                if(urns.size() >= entryLabels.length){
+                                    entryLabels = Arrays.copyOf(entryLabels, entryLabels.length << 1);
+                                }
+                                entryLabels[urns.size()] = index;
+                                urns.add(glib.g_variant_get_string(value, null));
+                            } finally {
+                                glib.g_variant_unref(value);
+                                glib.g_variant_unref(key);
+                                glib.g_variant_unref(entry);
+                            }
+                        }
+                    } finally {
+                        glib.g_variant_unref(solution);
+                    }
+                }
+            } finally {
+                glib.g_variant_unref(update);
+            }
+        }
+        updateStart[updates] = solutions;
+        solutionStart[solutions] = urns.size();
+        return new TrackerBlankNodes(labels.toArray(new String[labels.size()]), Arrays.copyOf(entryLabels, urns.size()),
+                urns.toArray(new String[urns.size()]), Arrays.copyOf(solutionStart, solutions + 1), updateStart);
+    }
+
+    /**
+     * @return int the number of updates of the request
+     */
+    public int getUpdateCount(){
+        return this.updateStart.length - 1;
+    }
+
+    /**
+     * @param update
+     * @return int the number of solutions the update's template was applied to
+     */
+    public int getSolutionCount(int update){
+        return this.updateStart[update + 1] - this.updateStart[update];
+    }
+
+    /**
+     * @return int the number of blank nodes of all updates and solutions
+     */
+    public int size(){
+        return this.urns.length;
+    }
+
+    /**
+     * @param update
+     * @param solution
+     * @return int the index of the solution's first entry
+     */
+    public int getFirstEntry(int update, int solution){
+        return this.solutionStart[this.solution(update, solution)];
+    }
+
+    /**
+     * @param update
+     * @param solution
+     * @return int the index after the solution's last entry
+     */
+    public int getEndEntry(int update, int solution){
+        return this.solutionStart[this.solution(update, solution) + 1];
+    }
+
+    private int solution(int update, int solution){
+        if(solution < 0 || solution >= this.getSolutionCount(update)){
+            throw new IndexOutOfBoundsException("solution "+solution+" of "+this.getSolutionCount(update));
+        }
+        return this.updateStart[update] + solution;
+    }
+
+    /**
+     * @param entry
+     * @return String the blank node label of an entry, without "_:"
+     */
+    public String getLabel(int entry){
+        return this.labels[this.entryLabels[entry]];
+    }
+
+    /**
+     * @param entry
+     * @return String the urn generated for an entry
+     */
+    public String getUrn(int entry){
+        return this.urns[entry];
+    }
+
+    /**
+     * @param update
+     * @param solution
+     * @param label a blank node label, without "_:"
+     * @return String the urn generated for the label, null if there is none
+     */
+    public String getUrn(int update, int solution, String label){
+        for(int entry = this.getFirstEntry(update, solution), end = this.getEndEntry(update, solution); entry < end; entry++){
+            if(this.getLabel(entry).equals(label)){
+                return this.urns[entry];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param update
+     * @param solution
+     * @return Map label to urn of one solution
+     */
+    public Map<String, String> getUrns(int update, int solution){
+        Map<String, String> urns = new LinkedHashMap<>();
+        for(int entry = this.getFirstEntry(update, solution), end = this.getEndEntry(update, solution); entry < end; entry++){
+            urns.put(this.getLabel(entry), this.urns[entry]);
+        }
+        return urns;
+    }
+
+    @Override
+    public String toString() {
+        return "TrackerBlankNodes{" + "updates=" + this.getUpdateCount() + ", blankNodes=" + this.size() + '}';
+    }
+}
@@ -0,0 +1,712 @@
+package com.turnguard.libtracker.sparql;
+
+import com.turnguard.libtracker.sparql.Libtracker.TrackerException;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlConnection;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Loads N-Triples and Turtle files through INSERT DATA batches.<br/>
+ * Files are memory-mapped and scanned statement by statement without
+ * building a model: statements are copied as they are into batches of about
+ * batchBytes, prefix and base directives become the batches' SPARQL prologue.
+ * Relative IRIs of files without a base directive resolve against the file's URI.
+ * The batches are sent by a {@link TrackerUpdatePipeline}, batchesPerCall
+ * per tracker_sparql_connection_update_array call, while the next ones are
+ * scanned. At most maxPendingBatches batches are held in memory, scanning
+ * waits beyond that. Several files are scanned in parallel.<br/>
+ * Blank node labels are scoped per batch by INSERT DATA, so they are replaced
+ * by IRIs unique per file and label (&lt;urn:bnode:uuid:label&gt;) unless
+ * skolemization is disabled.<br/>
+ * With native load enabled the files are handed to tracker_sparql_connection_load
+ * instead, tracker-store then reads them itself, which requires Turtle files it can access.
+ * <pre>
+ * TrackerBulkLoader loader = new TrackerBulkLoader(con);
+ * loader.setListener(new TrackerBulkLoader.Listener() {
+ *   public void progress(File file, long bytes, long size, long statements) {
+ *     System.out.println(file + ": " + (100 * bytes / size) + "%");
+ *   }
+ * });
+ * long statements = loader.load(new File("dump-1.nt"), new File("dump-2.ttl"));
+ * </pre>
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public class TrackerBulkLoader {
+
+    /**
+     * default size of an INSERT DATA batch in bytes
+     */
+    public static final int BATCH_BYTES = 256 * 1024;
+    /**
+     * default number of batches per update_array call
+     */
+    public static final int BATCHES_PER_CALL = 4;
+    /**
+     * default number of batches queued or in flight
+     */
+    public static final int MAX_PENDING_BATCHES = 16;
+    /**
+     * size of the regions a file is mapped in
+     */
+    static final long MAP_REGION = 64L * 1024 * 1024;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Progress of a load, called from the scanning thread after every batch
+     */
+    public interface Listener {
+        /**
+         * @param file the file being loaded
+         * @param bytes the number of bytes scanned
+         * @param size the file's size
+         * @param statements the number of statements of this file queued
+         */
+        public void progress(File file, long bytes, long size, long statements);
+    }
+
+    /**
+     * Receives the scanned batches
+     */
+    interface Batches {
+        void add(String update) throws InterruptedException;
+    }
+
+    private final TrackerSparqlConnection connection;
+    private int batchBytes = BATCH_BYTES;
+    private int batchesPerCall = BATCHES_PER_CALL;
+    private int maxPendingBatches = MAX_PENDING_BATCHES;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private boolean skolemize = true;
+    private boolean nativeLoad = false;
+    private Listener listener;
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong statements = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+
+    /**
+     * @param connection the connection the batches are sent to
+     */
+    public TrackerBulkLoader(TrackerSparqlConnection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * @param batchBytes the size of an INSERT DATA batch in bytes, a batch holds at least one statement
+     */
+    public void setBatchBytes(int batchBytes){
+        if(batchBytes < 1){
+            throw new IllegalArgumentException("batchBytes must be positive");
+        }
+        this.batchBytes = batchBytes;
+    }
+    /**
+     * @param batchesPerCall the number of batches per update_array call
+     * @param maxPendingBatches the number of batches queued or in flight, bounds the memory used
+     */
+    public void setPipelining(int batchesPerCall, int maxPendingBatches){
+        if(batchesPerCall < 1 || maxPendingBatches < batchesPerCall){
+            throw new IllegalArgumentException("batchesPerCall must be positive and not exceed maxPendingBatches");
+        }
+        this.batchesPerCall = batchesPerCall;
+        this.maxPendingBatches = maxPendingBatches;
+    }
+    /**
+     * @param parallelism the number of files scanned at the same time
+     */
+    public void setParallelism(int parallelism){
+        if(parallelism < 1){
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+    }
+    /**
+     * @param skolemize false to keep blank node labels, they then only identify a node within a batch
+     */
+    public void setSkolemize(boolean skolemize){
+        this.skolemize = skolemize;
+    }
+    /**
+     * @param nativeLoad true to hand the files to tracker_sparql_connection_load
+     */
+    public void setNativeLoad(boolean nativeLoad){
+        this.nativeLoad = nativeLoad;
+    }
+    /**
+     * @param listener may be null
+     */
+    public void setListener(Listener listener){
+        this.listener = listener;
+    }
+
+    /**
+     * @return long the number of bytes scanned
+     */
+    public long getByteCount(){
+        return this.bytes.get();
+    }
+    /**
+     * @return long the number of statements queued
+     */
+    public long getStatementCount(){
+        return this.statements.get();
+    }
+    /**
+     * @return long the number of batches queued
+     */
+    public long getBatchCount(){
+        return this.batches.get();
+    }
+    /**
+     * @return long the number of batches tracker rejected
+     */
+    public long getFailedBatchCount(){
+        return this.failedBatches.get();
+    }
+
+    /**
+     * Loads the files and waits until all batches are done
+     * @param files N-Triples or Turtle files
+     * @return long the number of statements loaded, 0 for native loads
+     * @throws java.io.IOException if a file cannot be read
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException if a batch failed, after all others are done
+     * @throws InterruptedException
+     */
+    public long load(File... files) throws IOException, TrackerException, InterruptedException {
+        if(this.nativeLoad){
+            for(File file : files){
+                this.connection.load(file);
+                this.bytes.addAndGet(file.length());
+                if(this.listener!=null){
+                    this.listener.progress(file, file.length(), file.length(), 0);
+                }
+            }
+            return 0;
+        }
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        long failedBefore = this.failedBatches.get();
+        long loaded = 0;
+        final TrackerUpdatePipeline pipeline = new TrackerUpdatePipeline(this.connection, this.batchesPerCall, 10, this.maxPendingBatches);
+        final Batches batches = new Batches() {
+            @Override
+            public void add(String update) throws InterruptedException {
+                pipeline.submit(update).addCallback(new TrackerCallback<Void>() {
+                    @Override
+                    public void onSuccess(Void result) {}
+                    @Override
+                    public void onFailure(Throwable t) {
+                        TrackerBulkLoader.this.failedBatches.incrementAndGet();
+                        failure.compareAndSet(null, t);
+                    }
+                });
+            }
+        };
+        try {
+            int threads = Math.min(this.parallelism, files.length);
+            if(threads <= 1){
+                for(File file : files){
+                    loaded += this.scan(file, batches);
+                }
+            } else {
+                loaded = this.scanParallel(files, batches, threads);
+            }
+            pipeline.awaitCompletion();
+        } finally {
+            pipeline.close();
+        }
+        Throwable t = failure.get();
+        if(t!=null){
+            long failed = this.failedBatches.get() - failedBefore;
+            if(t instanceof TrackerException){
+                TrackerException e = new TrackerException(failed + " batches failed, first: " + t.getMessage(), ((TrackerException)t).getErrorCode());
+                e.initCause(t);
+                throw e;
+            }
+            throw new IllegalStateException(failed + " batches failed", t);
+        }
+        return loaded;
+    }
+
+    private long scanParallel(File[] files, final Batches batches, int threads) throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "libtracker-sparql-bulk-loader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<Future<Long>> scans = new ArrayList<>(files.length);
+            for(final File file : files){
+                scans.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        return TrackerBulkLoader.this.scan(file, batches);
+                    }
+                }));
+            }
+            long loaded = 0;
+            for(Future<Long> scan : scans){
+                try {
+                    loaded += scan.get();
+                } catch(ExecutionException e){
+                    Throwable cause = e.getCause();
+                    if(cause instanceof IOException){
+                        throw (IOException)cause;
+                    } else if(cause instanceof InterruptedException){
+                        throw (InterruptedException)cause;
+                    } else if(cause instanceof RuntimeException){
+                        throw (RuntimeException)cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+            return loaded;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Scans a file into batches
+     * @param file
+     * @param batches
+     * @return long the number of statements
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    long scan(File file, Batches batches) throws IOException, InterruptedException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r"); FileChannel channel = in.getChannel()) {
+            Scanner scanner = new Scanner(file, channel.size(), batches);
+            for(long position = 0; position < scanner.size; position += MAP_REGION){
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_REGION, scanner.size - position));
+                scanner.scan(region, position);
+            }
+            scanner.finish();
+            return scanner.count;
+        }
+    }
+
+    /**
+     * A growable byte array
+     */
+    private static final class Bytes {
+        private byte[] data;
+        private int size;
+
+        Bytes(int capacity) {
+            this.data = new byte[capacity];
+        }
+        void add(byte b){
+            if(this.size==this.data.length){
+                this.grow(this.size + 1);
+            }
+            this.data[this.size++] = b;
+        }
+        void add(byte[] bytes){
+            this.add(bytes, bytes.length);
+        }
+        void add(byte[] bytes, int length){
+            if(this.size + length > this.data.length){
+                this.grow(this.size + length);
+            }
+            System.arraycopy(bytes, 0, this.data, this.size, length);
+            this.size += length;
+        }
+        private void grow(int capacity){
+            byte[] grown = new byte[Math.max(capacity, this.data.length * 2)];
+            System.arraycopy(this.data, 0, grown, 0, this.size);
+            this.data = grown;
+        }
+        boolean isEmpty(){
+            return this.size==0;
+        }
+        void clear(){
+            this.size = 0;
+        }
+        @Override
+        public String toString(){
+            return new String(this.data, 0, this.size, UTF8);
+        }
+    }
+
+    private static final int DEFAULT = 0;
+    private static final int IRI = 1;
+    private static final int STRING = 2;
+    private static final int LONG_STRING = 3;
+    private static final int ESCAPE = 4;
+    private static final int COMMENT = 5;
+    private static final int QUOTE = 6;
+    private static final int DOT = 7;
+    private static final int UNDERSCORE = 8;
+    private static final int BLANK = 9;
+    private static final int BLANK_DOT = 10;
+
+    /**
+     * Splits Turtle into statements: a statement ends at a '.' outside IRIs,
+     * strings and comments that does not continue a name or number, or after
+     * the IRI of a SPARQL style PREFIX or BASE directive
+     */
+    private final class Scanner {
+        private final File file;
+        private final long size;
+        private final Batches batches;
+        private final byte[] skolem;
+        private final Map<String, String> prefixes = new LinkedHashMap<>();
+        private String base;
+        private byte[] prologue;
+        private final Bytes statement = new Bytes(1024);
+        private final Bytes batch;
+        private int batchStatements = 0;
+        private long count = 0;
+        private MappedByteBuffer region;
+        private long offset = 0;
+        private int state = DEFAULT;
+        private int escaped;
+        private byte quote;
+        private int quotes;
+        private boolean name = false;
+        private boolean iri = false;
+        private boolean directive = false;
+
+        Scanner(File file, long size, Batches batches) {
+            this.file = file;
+            this.size = size;
+            this.batches = batches;
+            this.skolem = ("<urn:bnode:" + UUID.randomUUID() + ":").getBytes(UTF8);
+            this.batch = new Bytes(TrackerBulkLoader.this.batchBytes + 1024);
+            this.base = "<" + file.toPath().toUri() + ">";
+            this.prologue();
+        }
+
+        void scan(MappedByteBuffer region, long offset) throws InterruptedException {
+            this.region = region;
+            this.offset = offset;
+            while(region.hasRemaining()){
+                this.next(region.get());
+            }
+        }
+
+        private void next(byte b) throws InterruptedException {
+            switch(this.state){
+                case IRI:
+                    this.statement.add(b);
+                    if(b=='>'){
+                        this.state = DEFAULT;
+                        this.name = false;
+                        if(this.directive){
+                            this.end();
+                        }
+                    }
+                    break;
+                case STRING:
+                    this.statement.add(b);
+                    if(b=='\\'){
+                        this.escaped = STRING;
+                        this.state = ESCAPE;
+                    } else if(b==this.quote){
+                        this.state = DEFAULT;
+                        this.name = false;
+                    }
+                    break;
+                case LONG_STRING:
+                    if(this.quotes >= 3 && b!=this.quote){
+                        this.state = DEFAULT;
+                        this.name = false;
+                        this.token(b);
+                        break;
+                    }
+                    this.statement.add(b);
+                    if(b==this.quote){
+                        this.quotes++;
+                    } else {
+                        this.quotes = 0;
+                        if(b=='\\'){
+                            this.escaped = LONG_STRING;
+                            this.state = ESCAPE;
+                        }
+                    }
+                    break;
+                case ESCAPE:
+                    this.statement.add(b);
+                    this.state = this.escaped;
+                    break;
+                case COMMENT:
+                    if(b=='\n' || b=='\r'){
+                        this.state = DEFAULT;
+                        this.name = false;
+                        if(!this.statement.isEmpty()){
+                            this.statement.add((byte)'\n');
+                        }
+                    }
+                    break;
+                case QUOTE:
+                    if(b==this.quote){
+                        this.statement.add(b);
+                        if(++this.quotes==3){
+                            this.state = LONG_STRING;
+                            this.quotes = 0;
+                        }
+                    } else if(this.quotes==2){
+                        // an empty string
+                        this.state = DEFAULT;
+                        this.name = false;
+                        this.token(b);
+                    } else {
+                        this.state = STRING;
+                        this.next(b);
+                    }
+                    break;
+                case DOT:
+                    this.state = DEFAULT;
+                    // continues a name or number, or starts a decimal such as .5
+                    if((this.name && isNameChar(b)) || (b >= '0' && b <= '9')){
+                        this.statement.add((byte)'.');
+                    } else {
+                        this.end();
+                    }
+                    this.token(b);
+                    break;
+                case UNDERSCORE:
+                    this.state = DEFAULT;
+                    if(b==':'){
+                        this.statement.add(this.skolem);
+                        this.state = BLANK;
+                    } else {
+                        this.statement.add((byte)'_');
+                        this.name = true;
+                        this.token(b);
+                    }
+                    break;
+                case BLANK:
+                    if(b=='.'){
+                        this.state = BLANK_DOT;
+                    } else if(isNameChar(b)){
+                        this.statement.add(b);
+                    } else {
+                        this.statement.add((byte)'>');
+                        this.state = DEFAULT;
+                        this.name = false;
+                        this.token(b);
+                    }
+                    break;
+                case BLANK_DOT:
+                    if(isNameChar(b)){
+                        this.statement.add((byte)'.');
+                        if(b!='.'){
+                            this.statement.add(b);
+                            this.state = BLANK;
+                        }
+                    } else {
+                        this.statement.add((byte)'>');
+                        this.state = DEFAULT;
+                        this.name = false;
+                        this.end();
+                        this.token(b);
+                    }
+                    break;
+                default:
+                    this.token(b);
+            }
+        }
+
+        private void token(byte b) throws InterruptedException {
+            switch(b){
+                case ' ':
+                case '\t':
+                case '\r':
+                case '\n':
+                    if(!this.statement.isEmpty()){
+                        this.statement.add(b);
+                    }
+                    this.name = false;
+                    break;
+                case '<':
+                    if(!this.iri){
+                        this.iri = true;
+                        this.directive = this.isSparqlDirective();
+                    }
+                    this.statement.add(b);
+                    this.state = IRI;
+                    break;
+                case '"':
+                case '\'':
+                    this.statement.add(b);
+                    this.quote = b;
+                    this.quotes = 1;
+                    this.state = QUOTE;
+                    break;
+                case '#':
+                    this.state = COMMENT;
+                    break;
+                case '.':
+                    this.state = DOT;
+                    break;
+                case '_':
+                    if(TrackerBulkLoader.this.skolemize && !this.name){
+                        this.state = UNDERSCORE;
+                        break;
+                    }
+                    this.statement.add(b);
+                    this.name = true;
+                    break;
+                default:
+                    this.statement.add(b);
+                    this.name = isNameChar(b);
+            }
+        }
+
+        /**
+         * @return boolean true if the statement starts with the keyword PREFIX or BASE
+         */
+        private boolean isSparqlDirective(){
+            return this.startsWith(PREFIX) || this.startsWith(BASE);
+        }
+
+        private boolean startsWith(byte[] keyword){
+            if(this.statement.size <= keyword.length){
+                return false;
+            }
+            for(int i = 0; i < keyword.length; i++){
+                if((this.statement.data[i] & 0xDF) != keyword[i]){
+                    return false;
+                }
+            }
+            return isWhitespace(this.statement.data[keyword.length]);
+        }
+
+        /**
+         * Ends the current statement
+         */
+        private void end() throws InterruptedException {
+            while(!this.statement.isEmpty() && isWhitespace(this.statement.data[this.statement.size - 1])){
+                this.statement.size--;
+            }
+            if(this.statement.isEmpty()){
+                return;
+            }
+            if(this.directive || this.statement.data[0]=='@'){
+                this.directive(this.statement.toString().trim());
+            } else {
+                if(this.batchStatements==0){
+                    this.batch.add(this.prologue);
+                }
+                this.batch.add(this.statement.data, this.statement.size);
+                this.batch.add(BATCH_STATEMENT_END);
+                this.batchStatements++;
+                this.count++;
+                if(this.batch.size >= TrackerBulkLoader.this.batchBytes){
+                    this.flush();
+                }
+            }
+            this.statement.clear();
+            this.iri = false;
+            this.directive = false;
+        }
+
+        private void directive(String text) throws InterruptedException {
+            String keyword = text.toLowerCase(Locale.ENGLISH);
+            int open = text.indexOf('<');
+            int close = text.lastIndexOf('>');
+            if(open < 0 || close < open){
+                throw new IllegalArgumentException("invalid directive in " + this.file + ": " + text);
+            }
+            String iri = text.substring(open, close + 1);
+            this.flush();
+            if(keyword.startsWith("@prefix") || keyword.startsWith("prefix")){
+                int start = keyword.startsWith("@") ? 7 : 6;
+                String prefix = text.substring(start, open).trim();
+                if(!prefix.endsWith(":")){
+                    throw new IllegalArgumentException("invalid directive in " + this.file + ": " + text);
+                }
+                this.prefixes.put(prefix, iri);
+            } else if(keyword.startsWith("@base") || keyword.startsWith("base")){
+                this.base = iri;
+            } else {
+                throw new IllegalArgumentException("invalid directive in " + this.file + ": " + text);
+            }
+            this.prologue();
+        }
+
+        private void prologue(){
+            StringBuilder prologue = new StringBuilder();
+            prologue.append("BASE ").append(this.base).append('\n');
+            for(Map.Entry<String, String> entry : this.prefixes.entrySet()){
+                prologue.append("PREFIX ").append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+            }
+            prologue.append("INSERT DATA {\n");
+            this.prologue = prologue.toString().getBytes(UTF8);
+        }
+
+        /**
+         * Sends the current batch
+         */
+        private void flush() throws InterruptedException {
+            if(this.batchStatements==0){
+                return;
+            }
+            this.batch.add((byte)'}');
+            String update = this.batch.toString();
+            this.batch.clear();
+            TrackerBulkLoader.this.statements.addAndGet(this.batchStatements);
+            TrackerBulkLoader.this.batches.incrementAndGet();
+            this.batchStatements = 0;
+            this.batches.add(update);
+            if(TrackerBulkLoader.this.listener!=null){
+                long position = this.region==null ? 0 : this.offset + this.region.position();
+                TrackerBulkLoader.this.listener.progress(this.file, position, this.size, this.count);
+            }
+        }
+
+        void finish() throws InterruptedException {
+            switch(this.state){
+                case UNDERSCORE:
+                    this.statement.add((byte)'_');
+                    break;
+                case BLANK:
+                    this.statement.add((byte)'>');
+                    break;
+                case BLANK_DOT:
+                    this.statement.add((byte)'>');
+                    break;
+                default:
+            }
+            this.state = DEFAULT;
+            this.end();
+            this.flush();
+            TrackerBulkLoader.this.bytes.addAndGet(this.size);
+        }
+    }
+
+    private static final byte[] BATCH_STATEMENT_END = " .\n".getBytes(UTF8);
+    private static final byte[] PREFIX = "PREFIX".getBytes(UTF8);
+    private static final byte[] BASE = "BASE".getBytes(UTF8);
+
+    private static boolean isWhitespace(byte b){
+        return b==' ' || b=='\t' || b=='\r' || b=='\n';
+    }
+
+    private static boolean isNameChar(byte b){
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                || b=='_' || b=='-' || b==':' || b=='%' || b=='.' || b < 0;
+    }
+}
@@ -0,0 +1,19 @@
+package com.turnguard.libtracker.sparql;
+
+/**
+ * Completion callback for {@link TrackerFuture}s
+ * @param <V> the result type
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public interface TrackerCallback<V> {
+    /**
+     * Called when the operation has completed successfully
+     * @param result
+     */
+    public void onSuccess(V result);
+    /**
+     * Called when the operation has failed or was cancelled
+     * @param failure a TrackerException, a CancellationException or a RuntimeException
+     */
+    public void onFailure(Throwable failure);
+}
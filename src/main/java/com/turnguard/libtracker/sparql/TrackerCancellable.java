@@ -0,0 +1,173 @@
+package com.turnguard.libtracker.sparql;
+
+import com.sun.jna.Pointer;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A GCancellable, passed to queries, updates and next() so they can be
+ * aborted from another thread or once a deadline has passed.<br/>
+ * Aborted calls throw a TrackerException with the error code
+ * {@link Libtracker.TrackerException#CANCELLED}, or
+ * {@link Libtracker.TrackerException#TIMED_OUT} if the deadline cancelled them.
+ * Deadlines are enforced by a daemon thread ("libtracker-sparql-deadline").
+ * <pre>
+ * try (TrackerCancellable cancellable = new TrackerCancellable(5, TimeUnit.SECONDS);
+ *      TrackerSparqlCursor cursor = con.query("SELECT ...", cancellable)) {
+ *   while(cursor.next()){ ... }
+ * } catch(TrackerException e){
+ *   if(e.getErrorCode()==TrackerException.TIMED_OUT){ ... }
+ * }
+ * </pre>
+ * A cancellable stays cancelled, use a new one for the next call.
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public final class TrackerCancellable implements AutoCloseable {
+
+    private static ScheduledThreadPoolExecutor timer;
+
+    private final Pointer cancellable;
+    private NativeResources.Ref resource;
+    private ScheduledFuture<?> deadline;
+    private long expiresAt;
+    private long remaining = -1;
+    private volatile boolean cancelled = false;
+    private volatile boolean timedOut = false;
+
+    /**
+     * Binding for: GCancellable * g_cancellable_new (void);
+     */
+    public TrackerCancellable() {
+        this.cancellable = Libtracker.GIO.g_cancellable_new();
+        this.resource = NativeResources.object(this, this.cancellable);
+    }
+
+    /**
+     * A cancellable cancelled once the timeout has elapsed
+     * @param timeout
+     * @param unit
+     */
+    public TrackerCancellable(long timeout, TimeUnit unit) {
+        this();
+        if(timeout <= 0){
+            throw new IllegalArgumentException("timeout must be positive");
+        }
+        this.schedule(unit.toNanos(timeout));
+    }
+
+    private void schedule(long nanos){
+        this.expiresAt = System.nanoTime() + nanos;
+        this.deadline = timer().schedule(new Runnable() {
+            @Override
+            public void run() {
+                TrackerCancellable.this.expire();
+            }
+        }, nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor timer(){
+        if(timer==null){
+            timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "libtracker-sparql-deadline");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            timer.setRemoveOnCancelPolicy(true);
+        }
+        return timer;
+    }
+
+    /**
+     * @return Pointer the GCancellable, null once closed
+     */
+    synchronized Pointer getPointer(){
+        return this.resource==null ? null : this.cancellable;
+    }
+
+    /**
+     * Stops the deadline's clock, until resume(), while the caller waits for
+     * something the deadline should not bound
+     */
+    synchronized void pause(){
+        if(this.deadline==null || this.remaining >= 0 || this.cancelled || this.resource==null){
+            return;
+        }
+        this.deadline.cancel(false);
+        this.remaining = Math.max(0, this.expiresAt - System.nanoTime());
+    }
+
+    /**
+     * Restarts the deadline's clock with the time left when pause() was called
+     */
+    synchronized void resume(){
+        if(this.remaining < 0){
+            return;
+        }
+        long nanos = this.remaining;
+        this.remaining = -1;
+        if(!this.cancelled && this.resource!=null){
+            this.schedule(nanos);
+        }
+    }
+
+    private synchronized void expire(){
+        if(!this.cancelled && this.remaining < 0 && System.nanoTime() - this.expiresAt >= 0){
+            this.timedOut = true;
+            this.cancel();
+        }
+    }
+
+    /**
+     * Wrapper for library method g_cancellable_cancel, thread-safe.<br/>
+     * Calls in flight fail with {@link Libtracker.TrackerException#CANCELLED},
+     * later calls fail right away. Does nothing once closed.
+     */
+    public synchronized void cancel(){
+        if(this.resource==null || this.cancelled){
+            return;
+        }
+        this.cancelled = true;
+        if(this.deadline!=null && !this.timedOut){
+            this.deadline.cancel(false);
+        }
+        Libtracker.GIO.g_cancellable_cancel(this.cancellable);
+    }
+
+    /**
+     * @return boolean true once cancel() was called or the deadline has passed
+     */
+    public boolean isCancelled(){
+        return this.cancelled;
+    }
+
+    /**
+     * @return boolean true if the deadline has cancelled this cancellable
+     */
+    public boolean isTimedOut(){
+        return this.timedOut;
+    }
+
+    /**
+     * Disarms the deadline and releases the GCancellable (g_object_unref),
+     * must not be called while a call using it is in flight
+     */
+    @Override
+    public void close(){
+        NativeResources.Ref owned;
+        synchronized(this){
+            if(this.deadline!=null){
+                this.deadline.cancel(false);
+            }
+            owned = this.resource;
+            this.resource = null;
+        }
+        if(owned!=null){
+            owned.release();
+        }
+    }
+}
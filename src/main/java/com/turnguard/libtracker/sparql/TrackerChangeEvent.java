@@ -0,0 +1,135 @@
+package com.turnguard.libtracker.sparql;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A GraphUpdated signal of tracker-store, emitted for classes annotated with tracker:notify.<br/>
+ * Deletes and inserts are given as flat arrays of quadruples of tracker
+ * resource ids (graph, subject, predicate, object), as in the signal's
+ * a(iiii) arguments; the subject ids are those returned by tracker:id(?s).
+ * The arrays are shared and must not be modified.
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public class TrackerChangeEvent {
+
+    /**
+     * offsets within a quadruple
+     */
+    public static final int GRAPH = 0, SUBJECT = 1, PREDICATE = 2, OBJECT = 3;
+
+    private static final int[] NONE = new int[0];
+
+    private final String className;
+    private final int[] deletes;
+    private final int[] inserts;
+
+    public TrackerChangeEvent(String className) {
+        this(className, NONE, NONE);
+    }
+
+    /**
+     * @param className
+     * @param deletes quadruples of graph, subject, predicate and object ids
+     * @param inserts quadruples of graph, subject, predicate and object ids
+     */
+    public TrackerChangeEvent(String className, int[] deletes, int[] inserts) {
+        if(deletes.length % 4 != 0 || inserts.length % 4 != 0){
+            throw new IllegalArgumentException("deletes and inserts must be quadruples");
+        }
+        this.className = className;
+        this.deletes = deletes;
+        this.inserts = inserts;
+    }
+
+    /**
+     * Concatenates the deletes and inserts of events of the same class, in order
+     * @param className
+     * @param events
+     * @return TrackerChangeEvent
+     */
+    public static TrackerChangeEvent merge(String className, List<TrackerChangeEvent> events){
+        if(events.size()==1){
+            return events.get(0);
+        }
+        int deleted = 0;
+        int inserted = 0;
+        for(TrackerChangeEvent event : events){
+            deleted += event.deletes.length;
+            inserted += event.inserts.length;
+        }
+        int[] deletes = new int[deleted];
+        int[] inserts = new int[inserted];
+        deleted = 0;
+        inserted = 0;
+        for(TrackerChangeEvent event : events){
+            System.arraycopy(event.deletes, 0, deletes, deleted, event.deletes.length);
+            System.arraycopy(event.inserts, 0, inserts, inserted, event.inserts.length);
+            deleted += event.deletes.length;
+            inserted += event.inserts.length;
+        }
+        return new TrackerChangeEvent(className, deletes, inserts);
+    }
+
+    /**
+     * @return String the IRI of the class whose instances changed
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * @return int the number of deleted statements
+     */
+    public int getDeleteCount(){
+        return this.deletes.length / 4;
+    }
+
+    /**
+     * @return int the number of inserted statements
+     */
+    public int getInsertCount(){
+        return this.inserts.length / 4;
+    }
+
+    /**
+     * @return int[] quadruples of graph, subject, predicate and object ids
+     */
+    public int[] getDeletes(){
+        return this.deletes;
+    }
+
+    /**
+     * @return int[] quadruples of graph, subject, predicate and object ids
+     */
+    public int[] getInserts(){
+        return this.inserts;
+    }
+
+    /**
+     * @return int[] the ids of all subjects with deleted or inserted statements, sorted and distinct
+     */
+    public int[] getSubjects(){
+        int[] subjects = new int[(this.deletes.length + this.inserts.length) / 4];
+        int n = 0;
+        for(int i = SUBJECT; i < this.deletes.length; i += 4){
+            subjects[n++] = this.deletes[i];
+        }
+        for(int i = SUBJECT; i < this.inserts.length; i += 4){
+            subjects[n++] = this.inserts[i];
+        }
+        Arrays.sort(subjects);
+        int distinct = 0;
+        for(int i = 0; i < subjects.length; i++){
+            if(i==0 || subjects[i]!=subjects[i - 1]){
+                subjects[distinct++] = subjects[i];
+            }
+        }
+        return Arrays.copyOf(subjects, distinct);
+    }
+
+    @Override
+    public String toString() {
+        return "TrackerChangeEvent{" + "className=" + className + ", deletes=" + this.getDeleteCount() + ", inserts=" + this.getInsertCount() + '}';
+    }
+}
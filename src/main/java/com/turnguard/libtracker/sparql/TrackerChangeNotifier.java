@@ -0,0 +1,335 @@
+package com.turnguard.libtracker.sparql;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.LongByReference;
+import com.sun.jna.ptr.PointerByReference;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Subscription to tracker-store's GraphUpdated D-Bus signal on the session bus.<br/>
+ * GraphUpdated is specific to libtracker-sparql 1.0 and 2.0: 3.0 stores,
+ * private ones in particular, report changes through TrackerNotifier, whose
+ * events carry no class name, so getInstance() fails with
+ * G_IO_ERROR_NOT_SUPPORTED there.<br/>
+ * The signal is received on the {@link TrackerMainLoop} thread, listeners are
+ * called there and must not block. Listeners that need to block or query,
+ * or want bursts of signals merged, use {@link #subscribe(String, long, TimeUnit, Listener)}.
+ * <pre>
+ * try (TrackerChangeNotifier.Subscription subscription = TrackerChangeNotifier.getInstance().subscribe(
+ *         "http://www.tracker-project.org/temp/nmm#MusicPiece", 50, TimeUnit.MILLISECONDS, listener)) {
+ *   ...
+ * }
+ * </pre>
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public final class TrackerChangeNotifier {
+
+    public static final String TRACKER_SERVICE = "org.freedesktop.Tracker1";
+    public static final String RESOURCES_INTERFACE = "org.freedesktop.Tracker1.Resources";
+    public static final String RESOURCES_PATH = "/org/freedesktop/Tracker1/Resources";
+    public static final String GRAPH_UPDATED = "GraphUpdated";
+
+    /**
+     * Receives GraphUpdated signals
+     */
+    public interface Listener {
+        public void graphUpdated(TrackerChangeEvent event);
+    }
+
+    private static TrackerChangeNotifier instance;
+    private static ScheduledThreadPoolExecutor dispatcher;
+
+    /**
+     * The GDBusSignalCallback, static so it is never collected
+     */
+    private static final Libtracker.GDBusSignalCallback CALLBACK = new Libtracker.GDBusSignalCallback() {
+        @Override
+        public void invoke(Pointer connection, String sender, String objectPath, String interfaceName, String signalName, Pointer parameters, Pointer userData) {
+            TrackerChangeNotifier notifier = TrackerChangeNotifier.current();
+            if(notifier!=null){
+                notifier.dispatch(parameters);
+            }
+        }
+    };
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private Pointer bus;
+    private int subscription;
+
+    /**
+     * A notifier not subscribed to the bus yet, see getInstance()
+     */
+    TrackerChangeNotifier() {}
+
+    /**
+     * Returns the shared notifier, subscribing to GraphUpdated on first use
+     * @return TrackerChangeNotifier
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException if the session bus is not available,
+     * with code G_IO_ERROR_NOT_SUPPORTED on libtracker-sparql 3.0
+     */
+    public static synchronized TrackerChangeNotifier getInstance() throws TrackerException {
+        if(instance==null){
+            checkSupported(Libtracker.VERSION);
+            TrackerChangeNotifier notifier = new TrackerChangeNotifier();
+            notifier.subscribe();
+            instance = notifier;
+        }
+        return instance;
+    }
+
+    /**
+     * @param version the major version of the loaded libtracker-sparql
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException if that version emits no GraphUpdated signals
+     */
+    static void checkSupported(int version) throws TrackerException {
+        if(version >= 3){
+            throw new TrackerException(GRAPH_UPDATED + " is not emitted by libtracker-sparql-" + version + ".0, "
+                    + "change notifications are not available", Libtracker.GError.G_IO_ERROR_NOT_SUPPORTED);
+        }
+    }
+
+    private static synchronized TrackerChangeNotifier current(){
+        return instance;
+    }
+
+    private void subscribe() throws TrackerException {
+        final TrackerFuture<Void> subscribed = new TrackerFuture<>();
+        TrackerMainLoop.getInstance().invoke(new Runnable() {
+            @Override
+            public void run() {
+                PointerByReference error = Libtracker.error();
+                Pointer connection = Libtracker.GIO.g_bus_get_sync(Libtracker.Gio.G_BUS_TYPE_SESSION, null, error);
+                try {
+                    Libtracker.checkError(error);
+                } catch(TrackerException e){
+                    subscribed.fail(e);
+                    return;
+                }
+                TrackerChangeNotifier.this.bus = connection;
+                TrackerChangeNotifier.this.subscription = Libtracker.GIO.g_dbus_connection_signal_subscribe(connection,
+                        TRACKER_SERVICE, RESOURCES_INTERFACE, GRAPH_UPDATED, RESOURCES_PATH, null, 0, CALLBACK, null, null);
+                subscribed.complete(null);
+            }
+        });
+        await(subscribed);
+    }
+
+    private static void await(TrackerFuture<Void> future) throws TrackerException {
+        try {
+            future.get();
+        } catch(ExecutionException e){
+            if(e.getCause() instanceof TrackerException){
+                throw (TrackerException)e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void dispatch(Pointer parameters){
+        if(this.listeners.isEmpty()){
+            return;
+        }
+        TrackerChangeEvent event = parse(parameters);
+        for(Listener listener : this.listeners){
+            try {
+                listener.graphUpdated(event);
+            } catch(RuntimeException e){
+                Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+            }
+        }
+    }
+
+    /**
+     * Reads the (s a(iiii) a(iiii)) parameters of GraphUpdated: the class name, 
+     * the deletes and the inserts
+     * @param parameters
+     * @return TrackerChangeEvent
+     */
+    static TrackerChangeEvent parse(Pointer parameters){
+        Pointer child = Libtracker.GLIB.g_variant_get_child_value(parameters, 0);
+        String className;
+        try {
+            className = Libtracker.GLIB.g_variant_get_string(child, null);
+        } finally {
+            Libtracker.GLIB.g_variant_unref(child);
+        }
+        if(Libtracker.GLIB.g_variant_n_children(parameters) < 3){
+            return new TrackerChangeEvent(className);
+        }
+        return new TrackerChangeEvent(className, quadruples(parameters, 1), quadruples(parameters, 2));
+    }
+
+    /**
+     * Copies an a(iiii) child with one call to g_variant_get_fixed_array
+     */
+    private static int[] quadruples(Pointer parameters, long index){
+        Pointer child = Libtracker.GLIB.g_variant_get_child_value(parameters, index);
+        try {
+            LongByReference count = new LongByReference();
+            Pointer elements = Libtracker.GLIB.g_variant_get_fixed_array(child, count, 16);
+            int[] quadruples = new int[(int)count.getValue() * 4];
+            if(elements!=null && quadruples.length > 0){
+                elements.read(0, quadruples, 0, quadruples.length);
+            }
+            return quadruples;
+        } finally {
+            Libtracker.GLIB.g_variant_unref(child);
+        }
+    }
+
+    /**
+     * Delivers the events of a class, or of all classes, to listener on the
+     * "libtracker-sparql-changes" thread instead of the main loop, so the 
+     * listener may block and run queries. Events arriving within window of 
+     * the first undelivered one are merged into one event per class.
+     * @param className the IRI of a class annotated with tracker:notify, null for all classes
+     * @param window how long to collect events, 0 to deliver every signal on its own
+     * @param unit
+     * @param listener
+     * @return Subscription, close it to unsubscribe
+     */
+    public Subscription subscribe(String className, long window, TimeUnit unit, Listener listener){
+        Subscription subscription = new Subscription(className, unit.toNanos(window), listener);
+        this.addListener(subscription);
+        return subscription;
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor dispatcher(){
+        if(dispatcher==null){
+            dispatcher = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "libtracker-sparql-changes");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return dispatcher;
+    }
+
+    /**
+     * @param listener
+     */
+    public void addListener(Listener listener){
+        this.listeners.add(listener);
+    }
+    /**
+     * @param listener
+     */
+    public void removeListener(Listener listener){
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Unsubscribes from GraphUpdated, a later call to getInstance() subscribes again
+     */
+    public static void shutdown(){
+        final TrackerChangeNotifier notifier;
+        synchronized(TrackerChangeNotifier.class){
+            notifier = instance;
+            instance = null;
+        }
+        if(notifier!=null){
+            TrackerMainLoop.getInstance().invoke(new Runnable() {
+                @Override
+                public void run() {
+                    Libtracker.GIO.g_dbus_connection_signal_unsubscribe(notifier.bus, notifier.subscription);
+                    Libtracker.GOBJECT.g_object_unref(notifier.bus);
+                }
+            });
+        }
+    }
+
+    /**
+     * A listener fed through {@link #subscribe(String, long, TimeUnit, Listener)}
+     */
+    public final class Subscription implements Listener, AutoCloseable {
+
+        private final String className;
+        private final long window;
+        private final Listener listener;
+        private Map<String, List<TrackerChangeEvent>> pending = new LinkedHashMap<>();
+        private boolean scheduled = false;
+        private volatile boolean closed = false;
+
+        private Subscription(String className, long window, Listener listener) {
+            this.className = className;
+            this.window = Math.max(0, window);
+            this.listener = listener;
+        }
+
+        @Override
+        public void graphUpdated(TrackerChangeEvent event) {
+            if(this.closed || (this.className!=null && !this.className.equals(event.getClassName()))){
+                return;
+            }
+            synchronized(this){
+                List<TrackerChangeEvent> events = this.pending.get(event.getClassName());
+                if(events==null){
+                    events = new ArrayList<>(1);
+                    this.pending.put(event.getClassName(), events);
+                }
+                events.add(event);
+                if(this.scheduled){
+                    return;
+                }
+                this.scheduled = true;
+            }
+            Runnable flush = new Runnable() {
+                @Override
+                public void run() {
+                    Subscription.this.flush();
+                }
+            };
+            if(this.window==0){
+                dispatcher().execute(flush);
+            } else {
+                dispatcher().schedule(flush, this.window, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /**
+         * Delivers the collected events, one per class
+         */
+        void flush(){
+            Map<String, List<TrackerChangeEvent>> events;
+            synchronized(this){
+                events = this.pending;
+                this.pending = new LinkedHashMap<>();
+                this.scheduled = false;
+            }
+            for(Map.Entry<String, List<TrackerChangeEvent>> entry : events.entrySet()){
+                if(this.closed){
+                    return;
+                }
+                try {
+                    this.listener.graphUpdated(TrackerChangeEvent.merge(entry.getKey(), entry.getValue()));
+                } catch(RuntimeException e){
+                    Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+                }
+            }
+        }
+
+        /**
+         * Unsubscribes, events not delivered yet are dropped
+         */
+        @Override
+        public void close(){
+            this.closed = true;
+            TrackerChangeNotifier.this.removeListener(this);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.turnguard.libtracker.sparql;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Names the binding a field is mapped from by a {@link TrackerRowMapper},
+ * fields without it are mapped from the binding of the same name
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface TrackerColumn {
+    /**
+     * @return String the binding name without ?
+     */
+    String value();
+}
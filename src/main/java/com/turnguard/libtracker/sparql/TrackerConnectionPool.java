@@ -0,0 +1,345 @@
+package com.turnguard.libtracker.sparql;
+
+import com.turnguard.libtracker.sparql.Libtracker.TrackerException;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlConnection;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlCursor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed set of connections shared by many threads.<br/>
+ * Every connection is leased to at most maxLeasesPerConnection threads at a
+ * time (1 means exclusive use), threads waiting for a lease are served in
+ * FIFO order. A thread gets the connection it used last whenever that one
+ * has a free lease. Connections are opened lazily through the
+ * {@link ConnectionFactory} and, if idle for longer than the health check
+ * interval, checked with a small query before they are handed out; a failing
+ * connection is replaced. Replaced connections, and all connections once the
+ * pool is closed, are closed as soon as their last lease is released.<br/>
+ * Note that tracker_sparql_connection_get hands out one shared connection per
+ * process, so for bus connections the pool mainly bounds concurrency.
+ * <pre>
+ * TrackerConnectionPool pool = new TrackerConnectionPool(TrackerConnectionPool.BUS, 4, 1);
+ * try (TrackerConnectionPool.Lease lease = pool.acquire()) {
+ *   cursor = lease.getConnection().query("SELECT ...");
+ *   ...
+ * }
+ * </pre>
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public class TrackerConnectionPool implements AutoCloseable {
+
+    /**
+     * Opens connections for the pool
+     */
+    public interface ConnectionFactory {
+        public TrackerSparqlConnection open() throws TrackerException;
+    }
+
+    /**
+     * Factory for bus connections (tracker_sparql_connection_get)
+     */
+    public static final ConnectionFactory BUS = new ConnectionFactory() {
+        @Override
+        public TrackerSparqlConnection open() throws TrackerException {
+            return Libtracker.getTrackerSparqlConnection();
+        }
+    };
+
+    /**
+     * Factory for read-only direct connections (tracker_sparql_connection_get_direct)
+     */
+    public static final ConnectionFactory DIRECT = new ConnectionFactory() {
+        @Override
+        public TrackerSparqlConnection open() throws TrackerException {
+            return Libtracker.getTrackerSparqlDirectConnection();
+        }
+    };
+
+    /**
+     * Factory for connections querying direct and updating over the bus, see {@link TrackerRoutingConnection}
+     */
+    public static final ConnectionFactory ROUTING = new ConnectionFactory() {
+        @Override
+        public TrackerSparqlConnection open() throws TrackerException {
+            return Libtracker.getTrackerSparqlRoutingConnection();
+        }
+    };
+
+    /**
+     * default health check query
+     */
+    public static final String HEALTH_CHECK_QUERY = "SELECT ?c WHERE { ?c a rdfs:Class . } LIMIT 1";
+    /**
+     * default milliseconds a connection may be idle before it is checked again
+     */
+    public static final long HEALTH_CHECK_INTERVAL = 30000;
+
+    private final ConnectionFactory factory;
+    private final int maxLeasesPerConnection;
+    private final Slot[] slots;
+    private final Semaphore permits;
+    private final ThreadLocal<Slot> affinity = new ThreadLocal<>();
+    private volatile String healthCheckQuery = HEALTH_CHECK_QUERY;
+    private volatile long healthCheckInterval = HEALTH_CHECK_INTERVAL;
+    private volatile boolean closed = false;
+
+    /**
+     * @param factory opens the pooled connections
+     * @param size the number of connections
+     * @param maxLeasesPerConnection the number of threads that may use one connection at the same time
+     */
+    public TrackerConnectionPool(ConnectionFactory factory, int size, int maxLeasesPerConnection) {
+        if(size < 1 || maxLeasesPerConnection < 1){
+            throw new IllegalArgumentException("size and maxLeasesPerConnection must be positive");
+        }
+        this.factory = factory;
+        this.maxLeasesPerConnection = maxLeasesPerConnection;
+        this.slots = new Slot[size];
+        for(int i = 0; i < size; i++){
+            this.slots[i] = new Slot();
+        }
+        this.permits = new Semaphore(size * maxLeasesPerConnection, true);
+    }
+
+    /**
+     * @param query the query run by health checks, null disables them
+     * @param interval milliseconds a connection may be idle before it is checked
+     */
+    public void setHealthCheck(String query, long interval){
+        this.healthCheckQuery = query;
+        this.healthCheckInterval = interval;
+    }
+
+    /**
+     * Leases a connection, waits until one is available
+     * @return Lease
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException if a connection cannot be opened
+     * @throws InterruptedException
+     */
+    public Lease acquire() throws TrackerException, InterruptedException {
+        this.permits.acquire();
+        return this.lease();
+    }
+
+    /**
+     * Leases a connection, waits at most timeout
+     * @param timeout
+     * @param unit
+     * @return Lease or null if no connection became available
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException if a connection cannot be opened
+     * @throws InterruptedException
+     */
+    public Lease acquire(long timeout, TimeUnit unit) throws TrackerException, InterruptedException {
+        if(!this.permits.tryAcquire(timeout, unit)){
+            return null;
+        }
+        return this.lease();
+    }
+
+    private Lease lease() throws TrackerException {
+        Slot slot = null;
+        try {
+            if(this.closed){
+                throw new IllegalStateException("pool is closed");
+            }
+            slot = this.pick();
+            Pooled pooled = this.prepare(slot);
+            this.affinity.set(slot);
+            return new Lease(slot, pooled);
+        } catch(TrackerException | RuntimeException e){
+            if(slot!=null){
+                this.release(slot, null);
+            } else {
+                this.permits.release();
+            }
+            throw e;
+        }
+    }
+
+    private synchronized Slot pick(){
+        Slot preferred = this.affinity.get();
+        if(preferred!=null && preferred.leases < this.maxLeasesPerConnection){
+            preferred.leases++;
+            return preferred;
+        }
+        Slot best = null;
+        for(Slot slot : this.slots){
+            if(slot.leases < this.maxLeasesPerConnection && (best==null || slot.leases < best.leases)){
+                best = slot;
+            }
+        }
+        // a permit guarantees a free lease
+        best.leases++;
+        return best;
+    }
+
+    /**
+     * Opens or checks the slot's connection and counts a lease on it
+     */
+    private Pooled prepare(Slot slot) throws TrackerException {
+        Pooled retired = null;
+        try {
+            synchronized(slot){
+                if(this.closed){
+                    throw new IllegalStateException("pool is closed");
+                }
+                if(slot.current==null){
+                    slot.current = new Pooled(this.factory.open());
+                    slot.checked = System.currentTimeMillis();
+                } else {
+                    String query = this.healthCheckQuery;
+                    long now = System.currentTimeMillis();
+                    if(query!=null && now - slot.checked > this.healthCheckInterval){
+                        if(!this.isHealthy(slot.current.connection, query)){
+                            Pooled replacement = new Pooled(this.factory.open());
+                            retired = this.retire(slot.current);
+                            slot.current = replacement;
+                        }
+                        slot.checked = now;
+                    }
+                }
+                synchronized(this){
+                    slot.current.leases++;
+                }
+                return slot.current;
+            }
+        } finally {
+            if(retired!=null){
+                retired.connection.close();
+            }
+        }
+    }
+
+    /**
+     * @return Pooled the connection if no lease holds it, it is then closed by the caller
+     */
+    private synchronized Pooled retire(Pooled pooled){
+        pooled.retired = true;
+        return pooled.leases==0 ? pooled : null;
+    }
+
+    private boolean isHealthy(TrackerSparqlConnection connection, String query){
+        TrackerSparqlCursor cursor = null;
+        try {
+            cursor = connection.query(query);
+            cursor.next();
+            return true;
+        } catch(TrackerException e){
+            return false;
+        } finally {
+            if(cursor!=null){
+                cursor.close();
+            }
+        }
+    }
+
+    private void release(Slot slot, Pooled pooled){
+        boolean close = false;
+        synchronized(this){
+            slot.leases--;
+            if(pooled!=null){
+                pooled.leases--;
+                close = pooled.retired && pooled.leases==0;
+            }
+        }
+        if(close){
+            pooled.connection.close();
+        }
+        this.permits.release();
+    }
+
+    /**
+     * @return int the number of leases currently held
+     */
+    public synchronized int getActiveCount(){
+        int active = 0;
+        for(Slot slot : this.slots){
+            active += slot.leases;
+        }
+        return active;
+    }
+
+    /**
+     * @return int the number of threads waiting for a lease
+     */
+    public int getWaitingCount(){
+        return this.permits.getQueueLength();
+    }
+
+    /**
+     * Refuses further leases and closes the pooled connections, connections
+     * of leases still held are closed when the lease is released
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        for(Slot slot : this.slots){
+            Pooled retired = null;
+            synchronized(slot){
+                if(slot.current!=null){
+                    retired = this.retire(slot.current);
+                    slot.current = null;
+                }
+            }
+            if(retired!=null){
+                retired.connection.close();
+            }
+        }
+    }
+
+    private static final class Slot {
+        Pooled current;
+        int leases;
+        long checked;
+    }
+
+    /**
+     * A connection and its leases, guarded by the pool
+     */
+    private static final class Pooled {
+        final TrackerSparqlConnection connection;
+        int leases;
+        boolean retired;
+
+        Pooled(TrackerSparqlConnection connection) {
+            this.connection = connection;
+        }
+    }
+
+    /**
+     * A leased connection, close() hands it back to the pool
+     */
+    public final class Lease implements AutoCloseable {
+        private final Slot slot;
+        private final Pooled pooled;
+        private volatile boolean released = false;
+
+        private Lease(Slot slot, Pooled pooled) {
+            this.slot = slot;
+            this.pooled = pooled;
+        }
+        /**
+         * @return TrackerSparqlConnection
+         */
+        public TrackerSparqlConnection getConnection(){
+            if(this.released){
+                throw new IllegalStateException("lease has been released");
+            }
+            return this.pooled.connection;
+        }
+        @Override
+        public void close() {
+            synchronized(TrackerConnectionPool.this){
+                if(this.released){
+                    return;
+                }
+                this.released = true;
+            }
+            synchronized(this.slot){
+                this.slot.checked = System.currentTimeMillis();
+            }
+            TrackerConnectionPool.this.release(this.slot, this.pooled);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.turnguard.libtracker.sparql;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.SimpleTimeZone;
+
+/**
+ * An xsd:dateTime as returned for TRACKER_SPARQL_VALUE_TYPE_DATETIME cells:
+ * an instant in milliseconds since the epoch together with its UTC offset.<br/>
+ * Parsed without regular expressions or SimpleDateFormat straight from the
+ * cell's UTF-8 bytes, formats "yyyy-MM-ddTHH:mm:ss", optionally followed by
+ * fractional seconds (kept to the millisecond) and "Z" or "+HH:mm"/"-HH:mm".
+ * A missing offset is read as UTC.
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public final class TrackerDateTime implements Comparable<TrackerDateTime> {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    private final long time;
+    private final int offsetSeconds;
+
+    /**
+     * @param time milliseconds since 1970-01-01T00:00:00Z
+     * @param offsetSeconds the UTC offset the value was written with
+     */
+    public TrackerDateTime(long time, int offsetSeconds) {
+        this.time = time;
+        this.offsetSeconds = offsetSeconds;
+    }
+
+    /**
+     * @return long milliseconds since 1970-01-01T00:00:00Z
+     */
+    public long getTime(){
+        return this.time;
+    }
+    /**
+     * @return int the UTC offset in seconds
+     */
+    public int getOffsetSeconds(){
+        return this.offsetSeconds;
+    }
+    /**
+     * @return Date the instant
+     */
+    public Date toDate(){
+        return new Date(this.time);
+    }
+    /**
+     * @return Calendar the instant in a time zone with this value's offset
+     */
+    public Calendar toCalendar(){
+        Calendar calendar = new GregorianCalendar(new SimpleTimeZone(this.offsetSeconds * 1000, this.offsetSeconds == 0 ? "UTC" : "GMT"));
+        calendar.setTimeInMillis(this.time);
+        return calendar;
+    }
+
+    /**
+     * @param value e.g. "2014-01-01T10:00:00.5+01:00"
+     * @return TrackerDateTime
+     * @throws IllegalArgumentException if value is not an xsd:dateTime
+     */
+    public static TrackerDateTime parse(String value){
+        return parse(ByteBuffer.wrap(value.getBytes(UTF8)));
+    }
+
+    /**
+     * @param value the UTF-8 bytes between position and limit, the buffer is not modified
+     * @return TrackerDateTime
+     * @throws IllegalArgumentException if value is not an xsd:dateTime
+     */
+    public static TrackerDateTime parse(ByteBuffer value){
+        int start = value.position();
+        return parse(value, start, epochDay(value, start));
+    }
+
+    private static TrackerDateTime parse(ByteBuffer value, int start, long epochDay){
+        int end = value.limit();
+        if(end - start < 19 || value.get(start + 10) != 'T' || value.get(start + 13) != ':' || value.get(start + 16) != ':'){
+            throw invalid(value);
+        }
+        int hour = digits(value, start + 11, 2);
+        int minute = digits(value, start + 14, 2);
+        int second = digits(value, start + 17, 2);
+        int i = start + 19;
+        int millis = 0;
+        if(i < end && value.get(i) == '.'){
+            i++;
+            int scale = 100;
+            int first = i;
+            while(i < end && isDigit(value.get(i))){
+                millis += (value.get(i) - '0') * scale;
+                scale /= 10;
+                i++;
+            }
+            if(i == first){
+                throw invalid(value);
+            }
+        }
+        int offset = 0;
+        if(i < end){
+            byte sign = value.get(i);
+            if(sign == 'Z' && i + 1 == end){
+                offset = 0;
+            } else if((sign == '+' || sign == '-') && i + 6 == end && value.get(i + 3) == ':'){
+                offset = digits(value, i + 1, 2) * 3600 + digits(value, i + 4, 2) * 60;
+                if(sign == '-'){
+                    offset = -offset;
+                }
+            } else {
+                throw invalid(value);
+            }
+        }
+        if(hour > 24 || minute > 59 || second > 60){
+            throw invalid(value);
+        }
+        long time = epochDay * MILLIS_PER_DAY + (hour * 3600L + minute * 60L + second - offset) * 1000L + millis;
+        return new TrackerDateTime(time, offset);
+    }
+
+    private static long epochDay(ByteBuffer value, int start){
+        if(value.limit() - start < 10 || value.get(start + 4) != '-' || value.get(start + 7) != '-'){
+            throw invalid(value);
+        }
+        int year = digits(value, start, 4);
+        int month = digits(value, start + 5, 2);
+        int day = digits(value, start + 8, 2);
+        if(month < 1 || month > 12 || day < 1 || day > 31){
+            throw invalid(value);
+        }
+        return epochDay(year, month, day);
+    }
+
+    /**
+     * Days since 1970-01-01 of a proleptic gregorian date
+     */
+    static long epochDay(int year, int month, int day){
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int digits(ByteBuffer value, int index, int count){
+        int result = 0;
+        for(int i = index; i < index + count; i++){
+            byte b = value.get(i);
+            if(!isDigit(b)){
+                throw invalid(value);
+            }
+            result = result * 10 + (b - '0');
+        }
+        return result;
+    }
+
+    private static boolean isDigit(byte b){
+        return b >= '0' && b <= '9';
+    }
+
+    private static IllegalArgumentException invalid(ByteBuffer value){
+        ByteBuffer copy = value.duplicate();
+        byte[] bytes = new byte[copy.remaining()];
+        copy.get(bytes);
+        return new IllegalArgumentException("not an xsd:dateTime: " + new String(bytes, UTF8));
+    }
+
+    @Override
+    public int compareTo(TrackerDateTime other) {
+        return this.time < other.time ? -1 : (this.time == other.time ? 0 : 1);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(!(obj instanceof TrackerDateTime)){
+            return false;
+        }
+        TrackerDateTime other = (TrackerDateTime)obj;
+        return this.time == other.time && this.offsetSeconds == other.offsetSeconds;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int)(this.time ^ (this.time >>> 32)) * 31 + this.offsetSeconds;
+    }
+
+    /**
+     * @return String the value in xsd:dateTime format, with the original offset
+     */
+    @Override
+    public String toString() {
+        long local = this.time + this.offsetSeconds * 1000L;
+        long epochDay = local / MILLIS_PER_DAY;
+        if(local % MILLIS_PER_DAY < 0){
+            epochDay--;
+        }
+        long millisOfDay = local - epochDay * MILLIS_PER_DAY;
+        // civil date from days since 1970-01-01
+        long z = epochDay + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        long month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        StringBuilder builder = new StringBuilder(29);
+        pad(builder, year, 4).append('-');
+        pad(builder, month, 2).append('-');
+        pad(builder, day, 2).append('T');
+        pad(builder, millisOfDay / 3600000, 2).append(':');
+        pad(builder, millisOfDay / 60000 % 60, 2).append(':');
+        pad(builder, millisOfDay / 1000 % 60, 2);
+        if(millisOfDay % 1000 != 0){
+            pad(builder.append('.'), millisOfDay % 1000, 3);
+        }
+        if(this.offsetSeconds == 0){
+            builder.append('Z');
+        } else {
+            int offset = Math.abs(this.offsetSeconds);
+            builder.append(this.offsetSeconds < 0 ? '-' : '+');
+            pad(builder, offset / 3600, 2).append(':');
+            pad(builder, offset / 60 % 60, 2);
+        }
+        return builder.toString();
+    }
+
+    private static StringBuilder pad(StringBuilder builder, long value, int width){
+        String digits = Long.toString(value);
+        for(int i = digits.length(); i < width; i++){
+            builder.append('0');
+        }
+        return builder.append(digits);
+    }
+
+    /**
+     * Parser remembering the date of the last value, consecutive values of
+     * the same day (the common case in a result column) skip the date part.
+     * Not thread-safe.
+     */
+    public static final class Parser {
+        private final byte[] lastDate = new byte[10];
+        private long lastEpochDay;
+        private boolean cached = false;
+
+        /**
+         * @param value the UTF-8 bytes between position and limit, the buffer is not modified
+         * @return TrackerDateTime
+         * @throws IllegalArgumentException if value is not an xsd:dateTime
+         */
+        public TrackerDateTime parse(ByteBuffer value){
+            int start = value.position();
+            if(value.limit() - start < 10){
+                throw invalid(value);
+            }
+            boolean same = this.cached;
+            for(int i = 0; same && i < 10; i++){
+                same = this.lastDate[i] == value.get(start + i);
+            }
+            if(!same){
+                this.lastEpochDay = epochDay(value, start);
+                for(int i = 0; i < 10; i++){
+                    this.lastDate[i] = value.get(start + i);
+                }
+                this.cached = true;
+            }
+            return TrackerDateTime.parse(value, start, this.lastEpochDay);
+        }
+    }
+}
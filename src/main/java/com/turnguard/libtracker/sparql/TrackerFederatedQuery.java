@@ -0,0 +1,610 @@
+package com.turnguard.libtracker.sparql;
+
+import com.turnguard.libtracker.sparql.Libtracker.TrackerException;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlConnection;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlCursor;
+import com.turnguard.libtracker.sparql.Libtracker.UncheckedTrackerException;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs one SELECT against several stores at once and merges their rows into
+ * one stream of {@link TrackerRow}s, so a lookup over all stores takes as long
+ * as the slowest store instead of the sum of all.<br/>
+ * Every source is read on a thread of its own, in chunks of {@link #CHUNK_SIZE}
+ * rows, a few chunks ahead of the caller.
+ * <ul>
+ * <li>If the query ends with an ORDER BY over projected variables
+ * (<code>?a</code>, <code>ASC(?a)</code>, <code>DESC(?a)</code>), the sources'
+ * ordered rows are merged k-way, keeping the order. Otherwise, or with
+ * ordered set to false, chunks are handed out as they arrive.</li>
+ * <li>{@link #setLimit(long)} is pushed down to every source and cuts the
+ * merged stream, the sources still running are cancelled.</li>
+ * <li>{@link #setDistinct(boolean)} adds DISTINCT to the sources' query and
+ * drops rows already returned by another source. To do so the stream keeps
+ * the values of every row it has returned until it is closed, so its memory
+ * grows with the number of rows read.</li>
+ * <li>{@link #setTimeout(long, TimeUnit)} bounds every source's query and
+ * reading of its rows, the time a source waits for the caller to take its
+ * chunks does not count. With partial results enabled a failed or timed out
+ * source is skipped and reported by {@link Rows#getFailures()}, otherwise
+ * it fails the stream.</li>
+ * </ul>
+ * <pre>
+ * TrackerFederatedQuery query = new TrackerFederatedQuery("SELECT ?s ?title WHERE { ?s nie:title ?title } ORDER BY ?title");
+ * query.addSource("session", bus);
+ * query.addSource("shard-1", shard1);
+ * query.setLimit(100);
+ * query.setTimeout(2, TimeUnit.SECONDS);
+ * query.setPartialResults(true);
+ * try (TrackerFederatedQuery.Rows rows = query.rows()) {
+ *   for(TrackerRow row : rows){ ... }
+ *   ... rows.getFailures() ...
+ * }
+ * </pre>
+ * The merge compares strings with the default locale's Collator; where it
+ * disagrees with a store's collation the merged order, and with a LIMIT the
+ * rows selected, may differ in detail from running the query on one store.
+ * The query must not have a LIMIT or OFFSET of its own.
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public class TrackerFederatedQuery {
+
+    /**
+     * the number of rows fetched from a source at a time
+     */
+    public static final int CHUNK_SIZE = 256;
+    /**
+     * the number of chunks a source reads ahead of the caller
+     */
+    public static final int READ_AHEAD = 4;
+
+    private static final Pattern LIMIT = Pattern.compile("(?i)\\b(LIMIT|OFFSET)\\b");
+    private static final Pattern ORDER_BY = Pattern.compile("(?i)\\bORDER\\s+BY\\b");
+    private static final Pattern ORDER_CONDITION = Pattern.compile("(?i)\\G\\s*(?:(ASC|DESC)\\s*\\(\\s*\\?(\\w+)\\s*\\)|\\?(\\w+))");
+    private static final Pattern SELECT = Pattern.compile("(?i)\\bSELECT\\b(\\s+(DISTINCT|REDUCED)\\b)?");
+    private static final Object END = new Object();
+
+    private final String query;
+    private final List<String> names = new ArrayList<>();
+    private final List<TrackerSparqlConnection> connections = new ArrayList<>();
+    private final String[] orderVariables;
+    private final boolean[] descending;
+    private boolean ordered = true;
+    private boolean distinct = false;
+    private boolean partialResults = false;
+    private long limit = -1;
+    private long timeout = 0;
+
+    /**
+     * @param query a SELECT, ordered by projected variables if the rows should be merged in order
+     */
+    public TrackerFederatedQuery(String query) {
+        this.query = query.trim();
+        int end = this.query.lastIndexOf('}');
+        if(end < 0){
+            throw new IllegalArgumentException("not a SELECT with a group graph pattern: "+query);
+        }
+        String modifiers = this.query.substring(end + 1);
+        if(LIMIT.matcher(modifiers).find()){
+            throw new IllegalArgumentException("the query must not have a LIMIT or OFFSET, see setLimit: "+query);
+        }
+        List<String> variables = new ArrayList<>();
+        List<Boolean> directions = new ArrayList<>();
+        Matcher orderBy = ORDER_BY.matcher(modifiers);
+        if(orderBy.find()){
+            Matcher condition = ORDER_CONDITION.matcher(modifiers);
+            int position = orderBy.end();
+            while(condition.find(position) && condition.start()==position){
+                variables.add(condition.group(2)!=null ? condition.group(2) : condition.group(3));
+                directions.add("DESC".equalsIgnoreCase(condition.group(1)));
+                position = condition.end();
+            }
+            if(variables.isEmpty() || !modifiers.substring(position).trim().isEmpty()){
+                // ordered by expressions, the rows can only be merged as they arrive
+                variables.clear();
+                this.ordered = false;
+            }
+        }
+        this.orderVariables = variables.toArray(new String[variables.size()]);
+        this.descending = new boolean[directions.size()];
+        for(int i = 0; i < this.descending.length; i++){
+            this.descending[i] = directions.get(i);
+        }
+    }
+
+    /**
+     * @param name names the source in {@link Rows#getFailures()}
+     * @param connection
+     */
+    public void addSource(String name, TrackerSparqlConnection connection){
+        if(this.names.contains(name)){
+            throw new IllegalArgumentException("duplicate source "+name);
+        }
+        this.names.add(name);
+        this.connections.add(connection);
+    }
+
+    /**
+     * @return List the names of the sources
+     */
+    public List<String> getSources(){
+        return Collections.unmodifiableList(this.names);
+    }
+
+    /**
+     * @param ordered false to hand out chunks as they arrive even if the query is ordered
+     */
+    public void setOrdered(boolean ordered){
+        if(ordered && this.orderVariables.length==0){
+            throw new IllegalArgumentException("the query is not ordered by projected variables");
+        }
+        this.ordered = ordered;
+    }
+
+    /**
+     * @return boolean true if the rows are merged in the query's order
+     */
+    public boolean isOrdered(){
+        return this.ordered && this.orderVariables.length > 0;
+    }
+
+    /**
+     * @param distinct true to drop rows equal to one returned before, of any source,
+     * keeps the values of every returned row until the stream is closed
+     */
+    public void setDistinct(boolean distinct){
+        this.distinct = distinct;
+    }
+
+    public boolean isDistinct(){
+        return this.distinct;
+    }
+
+    /**
+     * @param limit the most rows returned, pushed down to every source, -1 for all rows
+     */
+    public void setLimit(long limit){
+        if(limit < -1){
+            throw new IllegalArgumentException("limit must be -1 or positive");
+        }
+        this.limit = limit;
+    }
+
+    public long getLimit(){
+        return this.limit;
+    }
+
+    /**
+     * @param timeout bounds every source's query and the reading of its rows,
+     * not counting the time spent waiting for the caller, 0 for none
+     * @param unit
+     */
+    public void setTimeout(long timeout, TimeUnit unit){
+        if(timeout < 0){
+            throw new IllegalArgumentException("timeout must not be negative");
+        }
+        this.timeout = unit.toMillis(timeout);
+    }
+
+    /**
+     * @param partialResults true to skip failed sources instead of failing the stream
+     */
+    public void setPartialResults(boolean partialResults){
+        this.partialResults = partialResults;
+    }
+
+    public boolean isPartialResults(){
+        return this.partialResults;
+    }
+
+    /**
+     * @return String the query sent to every source
+     */
+    String sourceQuery(){
+        StringBuilder source = new StringBuilder(this.query.length() + 32).append(this.query);
+        if(this.distinct){
+            Matcher select = SELECT.matcher(this.query);
+            if(select.find() && select.group(1)==null){
+                source.insert(select.end(), " DISTINCT");
+            }
+        }
+        if(this.limit >= 0){
+            source.append(" LIMIT ").append(this.limit);
+        }
+        return source.toString();
+    }
+
+    /**
+     * Compares the cells of a column the way ORDER BY does: unbound before
+     * blank nodes before IRIs before literals; numbers by value, strings
+     * with the collator, everything else by its lexical form
+     * @return int
+     */
+    static int compare(ResultBatch a, int rowA, ResultBatch b, int rowB, int column, Collator collator){
+        byte typeA = a.isBound(rowA, column) ? a.getValueTypes(column)[rowA] : 0;
+        byte typeB = b.isBound(rowB, column) ? b.getValueTypes(column)[rowB] : 0;
+        int rank = Integer.compare(rank(typeA), rank(typeB));
+        if(rank!=0 || typeA==0){
+            return rank;
+        }
+        switch(typeA){
+            case 3:
+            case 4:
+                if(typeA==3 && typeB==3){
+                    return Long.compare(a.getLong(rowA, column), b.getLong(rowB, column));
+                }
+                return Double.compare(typeA==3 ? a.getLong(rowA, column) : a.getDouble(rowA, column),
+                        typeB==3 ? b.getLong(rowB, column) : b.getDouble(rowB, column));
+            case 7:
+                return Boolean.compare(a.getBoolean(rowA, column), b.getBoolean(rowB, column));
+            case 2:
+                return collator.compare(a.getString(rowA, column), b.getString(rowB, column));
+            default:
+                return a.getString(rowA, column).compareTo(b.getString(rowB, column));
+        }
+    }
+
+    private static int rank(byte type){
+        switch(type){
+            case 0:
+                return 0;
+            case 6:
+                return 1;
+            case 1:
+                return 2;
+            case 3:
+            case 4:
+                return 3;
+            case 7:
+                return 4;
+            case 5:
+                return 5;
+            default:
+                return 6;
+        }
+    }
+
+    /**
+     * Starts reading all sources
+     * @return Rows, close it if not iterated to the end
+     */
+    public Rows rows(){
+        if(this.connections.isEmpty()){
+            throw new IllegalStateException("no sources");
+        }
+        return new Rows();
+    }
+
+    /**
+     * The merged rows, the row returned by next() is only valid until the
+     * next call to next(). Source errors surface as {@link UncheckedTrackerException}
+     * unless partial results are enabled.
+     */
+    public final class Rows implements Iterator<TrackerRow>, Iterable<TrackerRow>, AutoCloseable {
+
+        private final TrackerRow row = new TrackerRow();
+        private final Source[] sources;
+        private final ExecutorService executor;
+        private final boolean ordered = TrackerFederatedQuery.this.isOrdered();
+        private final long limit = TrackerFederatedQuery.this.limit;
+        private final BlockingQueue<Source> arrived = new LinkedBlockingQueue<>();
+        private final Map<String, TrackerException> failures = new LinkedHashMap<>();
+        private final Set<String> seen = TrackerFederatedQuery.this.distinct ? new HashSet<String>() : null;
+        private final StringBuilder key = new StringBuilder();
+        private final Collator collator = Collator.getInstance();
+        private PriorityQueue<Source> heads;
+        private int[] orderColumns;
+        private Source current;
+        private int running;
+        private long returned = 0;
+        private boolean peeked = false;
+        private boolean closed = false;
+
+        private Rows() {
+            String query = TrackerFederatedQuery.this.sourceQuery();
+            this.sources = new Source[TrackerFederatedQuery.this.connections.size()];
+            this.running = this.sources.length;
+            this.executor = Executors.newFixedThreadPool(this.sources.length, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "libtracker-sparql-federation");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            for(int i = 0; i < this.sources.length; i++){
+                this.sources[i] = new Source(i, TrackerFederatedQuery.this.names.get(i), TrackerFederatedQuery.this.connections.get(i), query);
+                this.executor.execute(this.sources[i]);
+            }
+        }
+
+        /**
+         * @return Map the failed and timed out sources' errors by source name, so far
+         */
+        public Map<String, TrackerException> getFailures(){
+            return Collections.unmodifiableMap(this.failures);
+        }
+
+        /**
+         * @return boolean true if a source has failed, the rows are incomplete
+         */
+        public boolean isPartial(){
+            return !this.failures.isEmpty();
+        }
+
+        /**
+         * Takes a source's next chunk, or records its end
+         * @return boolean true if the source has a chunk
+         */
+        private boolean load(Source source, Object item) throws TrackerException {
+            if(item instanceof ResultBatch){
+                source.batch = (ResultBatch)item;
+                source.position = 0;
+                return true;
+            }
+            source.batch = null;
+            this.running--;
+            if(item instanceof TrackerException){
+                TrackerException e = (TrackerException)item;
+                this.failures.put(source.name, e);
+                if(!TrackerFederatedQuery.this.partialResults){
+                    throw new TrackerException(source.name + ": " + e.getMessage(), e.getErrorCode());
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Moves to the next row of any source
+         * @return boolean false once all sources are exhausted
+         */
+        private boolean advance() throws TrackerException, InterruptedException {
+            Source source = this.current;
+            this.current = null;
+            if(source!=null && ++source.position >= source.batch.getRowCount()){
+                source.free.add(source.batch);
+                source.batch = null;
+            }
+            if(!this.ordered){
+                if(source!=null && source.batch!=null){
+                    this.current = source;
+                    return true;
+                }
+                while(this.running > 0){
+                    Source next = this.arrived.take();
+                    if(this.load(next, next.chunks.poll())){
+                        this.current = next;
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if(this.heads==null){
+                this.heads = new PriorityQueue<>(this.sources.length, new Comparator<Source>() {
+                    @Override
+                    public int compare(Source a, Source b) {
+                        return Rows.this.compare(a, b);
+                    }
+                });
+                for(Source s : this.sources){
+                    this.offer(s);
+                }
+            } else if(source!=null){
+                if(source.batch!=null){
+                    this.heads.add(source);
+                } else {
+                    this.offer(source);
+                }
+            }
+            this.current = this.heads.poll();
+            return this.current!=null;
+        }
+
+        /**
+         * Waits for a source's next chunk and adds it to the heads
+         */
+        private void offer(Source source) throws TrackerException, InterruptedException {
+            if(this.load(source, source.chunks.take())){
+                if(this.orderColumns==null){
+                    this.orderColumns = new int[TrackerFederatedQuery.this.orderVariables.length];
+                    for(int i = 0; i < this.orderColumns.length; i++){
+                        this.orderColumns[i] = this.column(source.batch, TrackerFederatedQuery.this.orderVariables[i]);
+                    }
+                }
+                this.heads.add(source);
+            }
+        }
+
+        private int column(ResultBatch batch, String variable){
+            for(int column = 0; column < batch.getColumnsCount(); column++){
+                if(variable.equals(batch.getBindingName(column))){
+                    return column;
+                }
+            }
+            throw new IllegalArgumentException("the order variable ?"+variable+" is not projected");
+        }
+
+        private int compare(Source a, Source b){
+            for(int i = 0; i < this.orderColumns.length; i++){
+                int c = TrackerFederatedQuery.compare(a.batch, a.position, b.batch, b.position, this.orderColumns[i], this.collator);
+                if(c!=0){
+                    return TrackerFederatedQuery.this.descending[i] ? -c : c;
+                }
+            }
+            return Integer.compare(a.index, b.index);
+        }
+
+        /**
+         * @return boolean true if the current row has not been returned before
+         */
+        private boolean unseen(){
+            if(this.seen==null){
+                return true;
+            }
+            ResultBatch batch = this.current.batch;
+            int position = this.current.position;
+            this.key.setLength(0);
+            for(int column = 0; column < batch.getColumnsCount(); column++){
+                if(batch.isBound(position, column)){
+                    this.key.append((char)('0' + batch.getValueTypes(column)[position])).append(batch.getString(position, column));
+                }
+                this.key.append('\u0000');
+            }
+            return this.seen.add(this.key.toString());
+        }
+
+        @Override
+        public boolean hasNext() {
+            if(this.peeked){
+                return true;
+            }
+            if(this.closed){
+                return false;
+            }
+            try {
+                while(this.limit < 0 || this.returned < this.limit){
+                    if(!this.advance()){
+                        break;
+                    }
+                    if(this.unseen()){
+                        this.peeked = true;
+                        return true;
+                    }
+                }
+            } catch(TrackerException e){
+                this.close();
+                throw new UncheckedTrackerException(e);
+            } catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                this.close();
+                throw new IllegalStateException(e);
+            }
+            this.close();
+            return false;
+        }
+
+        @Override
+        public TrackerRow next() {
+            if(!this.hasNext()){
+                throw new NoSuchElementException();
+            }
+            this.peeked = false;
+            this.returned++;
+            this.row.set(this.current.batch, this.current.position);
+            return this.row;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Iterator<TrackerRow> iterator() {
+            return this;
+        }
+
+        /**
+         * Cancels the sources still running
+         */
+        @Override
+        public void close() {
+            if(this.closed){
+                return;
+            }
+            this.closed = true;
+            this.peeked = false;
+            for(Source source : this.sources){
+                source.cancellable.cancel();
+            }
+            this.executor.shutdownNow();
+        }
+
+        /**
+         * Reads one source's rows into chunks, on a thread of the executor
+         */
+        private final class Source implements Runnable {
+            private final int index;
+            private final String name;
+            private final TrackerSparqlConnection connection;
+            private final String query;
+            private final TrackerCancellable cancellable;
+            private final BlockingQueue<Object> chunks = new ArrayBlockingQueue<>(READ_AHEAD + 1);
+            private final BlockingQueue<ResultBatch> free = new LinkedBlockingQueue<>();
+            private ResultBatch batch;
+            private int position;
+
+            Source(int index, String name, TrackerSparqlConnection connection, String query) {
+                this.index = index;
+                this.name = name;
+                this.connection = connection;
+                this.query = query;
+                this.cancellable = TrackerFederatedQuery.this.timeout > 0 ? new TrackerCancellable(TrackerFederatedQuery.this.timeout, TimeUnit.MILLISECONDS) : new TrackerCancellable();
+            }
+
+            private void put(Object item) throws InterruptedException {
+                this.cancellable.pause();
+                try {
+                    this.chunks.put(item);
+                } finally {
+                    this.cancellable.resume();
+                }
+                if(!Rows.this.ordered){
+                    Rows.this.arrived.add(this);
+                }
+            }
+
+            @Override
+            public void run() {
+                try {
+                    try (TrackerSparqlCursor cursor = this.connection.query(this.query, this.cancellable)) {
+                        int rows;
+                        do {
+                            ResultBatch target = this.free.poll();
+                            if(target==null){
+                                target = new ResultBatch(CHUNK_SIZE);
+                            }
+                            rows = cursor.fetch(CHUNK_SIZE, target);
+                            if(rows > 0){
+                                this.put(target);
+                            }
+                        } while(rows==CHUNK_SIZE);
+                    } catch(TrackerException e){
+                        this.put(e);
+                        return;
+                    } catch(RuntimeException e){
+                        TrackerException failure = new TrackerException(e.toString());
+                        failure.initCause(e);
+                        this.put(failure);
+                        return;
+                    } finally {
+                        this.cancellable.close();
+                    }
+                    this.put(END);
+                } catch(InterruptedException e){
+                    // closed, nobody is waiting for the rest
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.turnguard.libtracker.sparql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Result of an asynchronous libtracker-sparql operation.<br/>
+ * Callbacks added without an Executor run on the thread completing the future,
+ * which for native operations is the {@link TrackerMainLoop} thread, so they
+ * must not block.
+ * @param <V> the result type
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public class TrackerFuture<V> implements Future<V> {
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final List<Runnable> listeners = new ArrayList<>();
+    private boolean completed = false;
+    private boolean cancelled = false;
+    private V value;
+    private Throwable failure;
+    private TrackerCancellable cancellable;
+
+    /**
+     * @param cancellable cancelled by cancel(), may be null
+     */
+    void cancellable(TrackerCancellable cancellable){
+        this.cancellable = cancellable;
+    }
+
+    /**
+     * Completes this future with a value
+     * @param value
+     * @return boolean false if the future was already completed
+     */
+    public boolean complete(V value){
+        synchronized(this){
+            if(this.completed){
+                return false;
+            }
+            this.value = value;
+            this.completed = true;
+        }
+        this.finish();
+        return true;
+    }
+    /**
+     * Completes this future with a failure
+     * @param failure
+     * @return boolean false if the future was already completed
+     */
+    public boolean fail(Throwable failure){
+        synchronized(this){
+            if(this.completed){
+                return false;
+            }
+            this.failure = failure;
+            this.completed = true;
+        }
+        this.finish();
+        return true;
+    }
+    /**
+     * Cancels this future and, for native operations, the GCancellable passed 
+     * to them, so tracker stops working on them. mayInterruptIfRunning is ignored.
+     * @param mayInterruptIfRunning
+     * @return boolean false if the future was already completed
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        TrackerCancellable c;
+        synchronized(this){
+            if(this.completed){
+                return false;
+            }
+            this.failure = new CancellationException();
+            this.cancelled = true;
+            this.completed = true;
+            c = this.cancellable;
+        }
+        if(c!=null){
+            c.cancel();
+        }
+        this.finish();
+        return true;
+    }
+    private void finish(){
+        List<Runnable> pending;
+        synchronized(this){
+            pending = new ArrayList<>(this.listeners);
+            this.listeners.clear();
+        }
+        this.done.countDown();
+        for(Runnable listener : pending){
+            listener.run();
+        }
+    }
+    /**
+     * Adds a callback, run on the completing thread or immediately if already done
+     * @param callback
+     */
+    public void addCallback(final TrackerCallback<? super V> callback){
+        this.addListener(new Runnable() {
+            @Override
+            public void run() {
+                TrackerFuture.this.notify(callback);
+            }
+        });
+    }
+    /**
+     * Adds a callback, run by the given executor
+     * @param callback
+     * @param executor
+     */
+    public void addCallback(final TrackerCallback<? super V> callback, final Executor executor){
+        this.addListener(new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        TrackerFuture.this.notify(callback);
+                    }
+                });
+            }
+        });
+    }
+    private void addListener(Runnable listener){
+        synchronized(this){
+            if(!this.completed){
+                this.listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+    private void notify(TrackerCallback<? super V> callback){
+        Throwable t;
+        V v;
+        synchronized(this){
+            t = this.failure;
+            v = this.value;
+        }
+        if(t!=null){
+            callback.onFailure(t);
+        } else {
+            callback.onSuccess(v);
+        }
+    }
+    @Override
+    public synchronized boolean isCancelled() {
+        return this.cancelled;
+    }
+    @Override
+    public synchronized boolean isDone() {
+        return this.completed;
+    }
+    @Override
+    public V get() throws InterruptedException, ExecutionException {
+        this.done.await();
+        return this.result();
+    }
+    @Override
+    public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if(!this.done.await(timeout, unit)){
+            throw new TimeoutException();
+        }
+        return this.result();
+    }
+    private synchronized V result() throws ExecutionException {
+        if(this.cancelled){
+            throw (CancellationException)this.failure;
+        }
+        if(this.failure!=null){
+            throw new ExecutionException(this.failure);
+        }
+        return this.value;
+    }
+}
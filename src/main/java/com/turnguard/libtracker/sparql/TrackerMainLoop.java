@@ -0,0 +1,286 @@
+package com.turnguard.libtracker.sparql;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.PointerByReference;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A dedicated thread running a GMainLoop on its own GMainContext.<br/>
+ * Asynchronous libtracker-sparql operations are started on this thread, so
+ * their GAsyncReadyCallbacks are dispatched here as well. A single native
+ * callback instance serves all operations, the user_data pointer carries the
+ * id of the pending {@link AsyncCall}.
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public final class TrackerMainLoop {
+
+    private static TrackerMainLoop instance;
+
+    /**
+     * The GAsyncReadyCallback passed to all *_async functions, static so it is never collected
+     */
+    static final Libtracker.GAsyncReadyCallback CALLBACK = new Libtracker.GAsyncReadyCallback() {
+        @Override
+        public void invoke(Pointer source, Pointer result, Pointer userData) {
+            TrackerMainLoop loop = TrackerMainLoop.current();
+            if(loop!=null){
+                loop.ready(Pointer.nativeValue(userData), result);
+            }
+        }
+    };
+    /**
+     * The GSourceFunc draining the task queue, static so it is never collected
+     */
+    private static final Libtracker.GSourceFunc DISPATCH = new Libtracker.GSourceFunc() {
+        @Override
+        public boolean invoke(Pointer data) {
+            TrackerMainLoop loop = TrackerMainLoop.current();
+            if(loop!=null){
+                loop.dispatch();
+            }
+            return false;
+        }
+    };
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final ConcurrentHashMap<Long, AsyncCall<?>> pending = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final Pointer context;
+    private final Pointer loop;
+    private final Thread thread;
+
+    private TrackerMainLoop() {
+        this.context = Libtracker.GLIB.g_main_context_new();
+        this.loop = Libtracker.GLIB.g_main_loop_new(this.context, false);
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                TrackerMainLoop.this.run();
+            }
+        }, "libtracker-sparql-mainloop");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Returns the shared main loop, starting its thread on first use
+     * @return TrackerMainLoop
+     */
+    public static synchronized TrackerMainLoop getInstance(){
+        if(instance==null){
+            instance = new TrackerMainLoop();
+            instance.thread.start();
+        }
+        return instance;
+    }
+
+    private static synchronized TrackerMainLoop current(){
+        return instance;
+    }
+
+    private void run(){
+        Libtracker.GLIB.g_main_context_push_thread_default(this.context);
+        try {
+            Libtracker.GLIB.g_main_loop_run(this.loop);
+        } finally {
+            Libtracker.GLIB.g_main_context_pop_thread_default(this.context);
+            this.stopped.countDown();
+        }
+    }
+
+    /**
+     * Runs the task on the main loop thread
+     * @param task
+     */
+    public void invoke(Runnable task){
+        this.tasks.add(task);
+        if(this.scheduled.compareAndSet(false, true)){
+            Libtracker.GLIB.g_main_context_invoke(this.context, DISPATCH, null);
+        }
+    }
+
+    private void dispatch(){
+        this.scheduled.set(false);
+        Runnable task;
+        while((task = this.tasks.poll())!=null){
+            try {
+                task.run();
+            } catch(RuntimeException e){
+                Thread.UncaughtExceptionHandler handler = this.thread.getUncaughtExceptionHandler();
+                handler.uncaughtException(this.thread, e);
+            }
+        }
+    }
+
+    /**
+     * Starts an asynchronous operation on the main loop thread
+     * @param <V>
+     * @param call
+     * @return TrackerFuture completed once the operation has finished
+     */
+    public <V> TrackerFuture<V> submit(final AsyncCall<V> call){
+        final long id = this.ids.incrementAndGet();
+        this.pending.put(id, call);
+        this.invoke(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    call.start(Pointer.createConstant(id));
+                } catch(RuntimeException e){
+                    TrackerMainLoop.this.pending.remove(id);
+                    call.future.fail(e);
+                }
+            }
+        });
+        return call.future;
+    }
+
+    private void ready(long id, Pointer result){
+        AsyncCall<?> call = this.pending.remove(id);
+        if(call!=null){
+            call.ready(result);
+        }
+    }
+
+    /**
+     * @return boolean true if called from the main loop thread
+     */
+    public boolean isMainLoopThread(){
+        return Thread.currentThread()==this.thread;
+    }
+
+    /**
+     * @return int the number of started operations not yet finished
+     */
+    public int getPendingCount(){
+        return this.pending.size();
+    }
+
+    /**
+     * Quits the main loop and waits for its thread to finish, operations
+     * still pending fail with TrackerException.CANCELLED.<br/>
+     * A later call to getInstance() starts a new one.
+     * @throws InterruptedException
+     */
+    public static void shutdown() throws InterruptedException{
+        TrackerMainLoop loop;
+        synchronized(TrackerMainLoop.class){
+            loop = instance;
+            instance = null;
+        }
+        if(loop!=null){
+            Libtracker.GLIB.g_main_loop_quit(loop.loop);
+            loop.stopped.await();
+            for(Long id : loop.pending.keySet()){
+                AsyncCall<?> call = loop.pending.remove(id);
+                if(call!=null){
+                    call.abandon();
+                }
+            }
+            Libtracker.GLIB.g_main_loop_unref(loop.loop);
+            Libtracker.GLIB.g_main_context_unref(loop.context);
+        }
+    }
+
+    /**
+     * An asynchronous operation: start() calls the *_async function passing
+     * {@link TrackerMainLoop#CALLBACK} and the given user_data, finish() calls
+     * the matching *_finish function. Both run on the main loop thread.<br/>
+     * Operations given a {@link TrackerCancellable} pass cancellable() to the 
+     * *_async function, TrackerFuture.cancel() cancels it.
+     * @param <V> the result type
+     */
+    public static abstract class AsyncCall<V> {
+        final TrackerFuture<V> future = new TrackerFuture<>();
+        private final TrackerCancellable cancellable;
+        private boolean owned;
+
+        public AsyncCall() {
+            this(null, false);
+        }
+        /**
+         * @param cancellable may be null
+         * @param owned true if the cancellable is closed once the operation has finished
+         */
+        public AsyncCall(TrackerCancellable cancellable, boolean owned) {
+            this.cancellable = cancellable;
+            this.owned = owned;
+            this.future.cancellable(cancellable);
+        }
+
+        /**
+         * @return Pointer the GCancellable to pass to the *_async function, may be null
+         */
+        protected Pointer cancellable(){
+            return Libtracker.pointer(this.cancellable);
+        }
+        /**
+         * Passes the cancellable on to the returned cursor, whose next() uses it 
+         * and whose close() closes it if this operation owned it
+         * @param cursor
+         */
+        protected void handOver(Libtracker.TrackerSparqlCursor cursor){
+            cursor.cancellable(this.cancellable, this.owned);
+            this.owned = false;
+        }
+
+        /**
+         * @param userData to be passed to the *_async function
+         */
+        protected abstract void start(Pointer userData);
+        /**
+         * @param result the GAsyncResult
+         * @param error the GError** out-parameter
+         * @return V
+         */
+        protected abstract V finish(Pointer result, PointerByReference error);
+
+        private void ready(Pointer result){
+            try {
+                PointerByReference error = Libtracker.error();
+                V value = this.finish(result, error);
+                Libtracker.checkError(error, null, this.cancellable);
+                if(!this.future.complete(value)){
+                    // cancelled while the operation finished
+                    discard(value);
+                }
+            } catch(TrackerException | RuntimeException e){
+                this.future.fail(e);
+            } finally {
+                if(this.owned){
+                    this.cancellable.close();
+                }
+            }
+        }
+
+        /**
+         * Fails an operation whose callback will never be dispatched
+         */
+        private void abandon(){
+            try {
+                this.future.fail(new TrackerException("main loop shut down", TrackerException.CANCELLED));
+            } finally {
+                if(this.owned){
+                    this.cancellable.close();
+                }
+            }
+        }
+
+        private static void discard(Object value){
+            if(value instanceof AutoCloseable){
+                try {
+                    ((AutoCloseable)value).close();
+                } catch(Exception e){
+                    // nobody waits for the value any more
+                }
+            }
+        }
+    }
+}
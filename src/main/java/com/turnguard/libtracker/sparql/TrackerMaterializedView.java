@@ -0,0 +1,274 @@
+package com.turnguard.libtracker.sparql;
+
+import com.turnguard.libtracker.sparql.Libtracker.TrackerException;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlConnection;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlCursor;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A query result kept up to date from GraphUpdated signals instead of by
+ * re-running the query.<br/>
+ * The query selects the instances of a class annotated with tracker:notify
+ * and projects their tracker:id as the key. It is run once in full by
+ * {@link #start()}; afterwards only the subjects named by the class's change
+ * events are queried again, with <code>FILTER(?key IN (...))</code> added to
+ * the query, and their rows replaced or removed. Rows are mapped with a
+ * {@link TrackerRowMapper}, one row per key.
+ * <pre>
+ * TrackerMaterializedView&lt;Song&gt; songs = new TrackerMaterializedView&lt;&gt;(con,
+ *     "http://www.tracker-project.org/temp/nmm#MusicPiece",
+ *     "SELECT ?id ?title WHERE { ?s a nmm:MusicPiece ; nie:title ?title . BIND(tracker:id(?s) AS ?id) }",
+ *     "id", Song.class);
+ * songs.start();
+ * ... songs.get(id), songs.values() ...
+ * songs.close();
+ * </pre>
+ * Refreshes run on the notifier's dispatcher thread, readers on other
+ * threads see every row either before or after its refresh. A failed
+ * refresh leaves the rows of its keys as they were and is reported to the
+ * listeners, or logged if there are none.
+ * @param <T> the mapped row type
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public class TrackerMaterializedView<T> implements TrackerChangeNotifier.Listener, AutoCloseable {
+
+    /**
+     * default time to collect change events before refreshing
+     */
+    public static final long WINDOW_MILLIS = 20;
+    /**
+     * the most keys per refresh query
+     */
+    public static final int KEYS_PER_QUERY = 500;
+
+    /**
+     * Notified after rows have been refreshed, or failed to
+     * @param <T>
+     */
+    public interface Listener<T> {
+        /**
+         * @param view
+         * @param keys the refreshed keys, each one is now either in the view or not
+         */
+        public void viewChanged(TrackerMaterializedView<T> view, long[] keys);
+        /**
+         * Called on the dispatcher thread when a change event could not be applied,
+         * {@link TrackerMaterializedView#refresh()} brings the view up to date again
+         * @param view
+         * @param keys the keys whose rows may be stale
+         * @param error
+         */
+        public void refreshFailed(TrackerMaterializedView<T> view, long[] keys, TrackerException error);
+    }
+
+    private static final Logger LOG = Logger.getLogger(TrackerMaterializedView.class.getName());
+
+    private final TrackerSparqlConnection connection;
+    private final String className;
+    private final String query;
+    private final String key;
+    private final TrackerRowMapper<T> mapper;
+    private final Map<Long, T> rows = new ConcurrentHashMap<>();
+    private final List<Listener<T>> listeners = new CopyOnWriteArrayList<>();
+    private long window = WINDOW_MILLIS;
+    private TrackerChangeNotifier.Subscription subscription;
+    private volatile long refreshCount;
+
+    /**
+     * @param connection
+     * @param className the IRI of the class whose change events refresh the view
+     * @param query a SELECT projecting tracker:id of the class's instances as key
+     * @param key the name of the key variable, without '?'
+     * @param type the mapped row type, see {@link TrackerRowMapper}
+     */
+    public TrackerMaterializedView(TrackerSparqlConnection connection, String className, String query, String key, Class<T> type) {
+        this.connection = connection;
+        this.className = className;
+        this.query = query.trim();
+        this.key = key.startsWith("?") ? key.substring(1) : key;
+        this.mapper = TrackerRowMapper.of(type);
+        if(this.query.lastIndexOf('}') < 0){
+            throw new IllegalArgumentException("not a SELECT with a group graph pattern: "+query);
+        }
+    }
+
+    /**
+     * @param window how long change events are collected before refreshing
+     * @param unit
+     */
+    public void setWindow(long window, TimeUnit unit){
+        this.window = unit.toMillis(window);
+    }
+
+    /**
+     * Subscribes to the class's change events, then loads the full result
+     * @return TrackerMaterializedView this
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException with code 
+     * G_IO_ERROR_NOT_SUPPORTED on libtracker-sparql 3.0, see {@link TrackerChangeNotifier}
+     */
+    public synchronized TrackerMaterializedView<T> start() throws TrackerException {
+        if(this.subscription==null){
+            this.subscription = TrackerChangeNotifier.getInstance().subscribe(this.className, this.window, TimeUnit.MILLISECONDS, this);
+        }
+        this.refresh();
+        return this;
+    }
+
+    /**
+     * Runs the full query again and replaces all rows
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException
+     */
+    public synchronized void refresh() throws TrackerException {
+        Map<Long, T> loaded = this.load(this.query);
+        this.rows.keySet().retainAll(loaded.keySet());
+        this.rows.putAll(loaded);
+        this.refreshCount++;
+    }
+
+    /**
+     * Queries the rows of the given keys again, nothing is queried or notified for no keys
+     * @param keys
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException
+     */
+    public synchronized void refresh(long[] keys) throws TrackerException {
+        if(keys.length==0){
+            return;
+        }
+        for(int from = 0; from < keys.length; from += KEYS_PER_QUERY){
+            int to = Math.min(keys.length, from + KEYS_PER_QUERY);
+            Map<Long, T> loaded = this.load(this.restrict(keys, from, to));
+            for(int i = from; i < to; i++){
+                T row = loaded.get(keys[i]);
+                if(row!=null){
+                    this.rows.put(keys[i], row);
+                } else {
+                    this.rows.remove(keys[i]);
+                }
+            }
+        }
+        this.refreshCount++;
+        for(Listener<T> listener : this.listeners){
+            listener.viewChanged(this, keys);
+        }
+    }
+
+    /**
+     * @return String the query restricted to keys[from] .. keys[to - 1]
+     */
+    String restrict(long[] keys, int from, int to){
+        int end = this.query.lastIndexOf('}');
+        StringBuilder restricted = new StringBuilder(this.query.length() + 16 + (to - from) * 8);
+        restricted.append(this.query, 0, end).append(" FILTER(?").append(this.key).append(" IN (");
+        for(int i = from; i < to; i++){
+            if(i > from){
+                restricted.append(',');
+            }
+            restricted.append(keys[i]);
+        }
+        restricted.append(")) ").append(this.query, end, this.query.length());
+        return restricted.toString();
+    }
+
+    private Map<Long, T> load(String query) throws TrackerException {
+        Map<Long, T> loaded = new HashMap<>();
+        try (TrackerSparqlCursor cursor = this.connection.query(query)) {
+            int column = -1;
+            for(int i = 0; i < cursor.getColumnsCount(); i++){
+                if(this.key.equals(cursor.getBindingName(i))){
+                    column = i;
+                }
+            }
+            if(column < 0){
+                throw new IllegalArgumentException("the key ?"+this.key+" is not projected");
+            }
+            while(cursor.next()){
+                loaded.put(cursor.getLong(column), this.mapper.map(cursor));
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Refreshes the subjects of a change event, called on the dispatcher thread.<br/>
+     * Failures are passed to the listeners instead of being thrown on the dispatcher thread.
+     * @param event
+     */
+    @Override
+    public void graphUpdated(TrackerChangeEvent event) {
+        int[] subjects = event.getSubjects();
+        long[] keys = new long[subjects.length];
+        for(int i = 0; i < subjects.length; i++){
+            keys[i] = subjects[i];
+        }
+        try {
+            this.refresh(keys);
+        } catch(TrackerException e){
+            if(this.listeners.isEmpty()){
+                LOG.log(Level.WARNING, "refreshing "+this.className+" failed", e);
+            }
+            for(Listener<T> listener : this.listeners){
+                listener.refreshFailed(this, keys, e);
+            }
+        }
+    }
+
+    /**
+     * @param key
+     * @return T the row of key, or null
+     */
+    public T get(long key){
+        return this.rows.get(key);
+    }
+
+    /**
+     * @return Collection a live, unmodifiable view of the rows
+     */
+    public Collection<T> values(){
+        return Collections.unmodifiableCollection(this.rows.values());
+    }
+
+    public int size(){
+        return this.rows.size();
+    }
+
+    /**
+     * @return long the number of full and incremental refreshes so far
+     */
+    public long getRefreshCount(){
+        return this.refreshCount;
+    }
+
+    /**
+     * @param listener
+     */
+    public void addListener(Listener<T> listener){
+        this.listeners.add(listener);
+    }
+
+    /**
+     * @param listener
+     */
+    public void removeListener(Listener<T> listener){
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Unsubscribes, the rows stay as they are
+     */
+    @Override
+    public synchronized void close(){
+        if(this.subscription!=null){
+            this.subscription.close();
+            this.subscription = null;
+        }
+    }
+}
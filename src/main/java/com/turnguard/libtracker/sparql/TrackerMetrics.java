@@ -0,0 +1,407 @@
+package com.turnguard.libtracker.sparql;
+
+import com.turnguard.libtracker.sparql.Libtracker.TrackerException;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlCursor;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Instrumentation of queries, updates and native calls.<br/>
+ * Disabled by default, enable it with -Dcom.turnguard.libtracker.sparql.metrics=true
+ * (which also counts the calls into libtracker-sparql and registers the MXBean)
+ * or at runtime with {@link #setEnabled(boolean)}. While disabled a query costs
+ * one volatile read and a cursor one field check per row.<br/>
+ * Per query the time to the cursor, the time to the first row and the drain
+ * time (cursor returned until exhausted or closed) are recorded, rows and
+ * cells (rows * columns) are counted. Queries and updates taking longer than
+ * the slow query threshold are logged at WARNING to the logger
+ * "com.turnguard.libtracker.sparql.TrackerMetrics". Listeners receive every
+ * finished query and update.
+ * <pre>
+ * TrackerMetrics metrics = TrackerMetrics.getInstance();
+ * metrics.setEnabled(true);
+ * TrackerMetrics.registerMBean();
+ * ...
+ * System.out.println(metrics.getTimeToFirstRow().getP99());
+ * </pre>
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public final class TrackerMetrics implements TrackerMetricsMXBean {
+
+    /**
+     * system property enabling the metrics at startup
+     */
+    public static final String METRICS_PROPERTY = "com.turnguard.libtracker.sparql.metrics";
+    /**
+     * the MXBean's name
+     */
+    public static final String OBJECT_NAME = "com.turnguard.libtracker.sparql:type=TrackerMetrics";
+    /**
+     * default slow query threshold in milliseconds
+     */
+    public static final long SLOW_QUERY_THRESHOLD = 1000;
+    /**
+     * number of slow queries kept for {@link #getSlowQueries()}
+     */
+    public static final int SLOW_QUERY_LOG_SIZE = 32;
+
+    /**
+     * Receives finished queries and updates, called on the thread that finished them
+     */
+    public interface Listener {
+        /**
+         * @param sparql
+         * @param timeToCursor nanoseconds
+         * @param timeToFirstRow nanoseconds, -1 if there was no row
+         * @param total nanoseconds from the query call until the cursor was exhausted or closed
+         * @param rows
+         * @param cells
+         */
+        public void queryFinished(String sparql, long timeToCursor, long timeToFirstRow, long total, long rows, long cells);
+        /**
+         * @param sparql
+         * @param time nanoseconds
+         */
+        public void updateFinished(String sparql, long time);
+        /**
+         * @param sparql
+         * @param error
+         */
+        public void failed(String sparql, TrackerException error);
+    }
+
+    private static final Logger LOG = Logger.getLogger(TrackerMetrics.class.getName());
+    private static final TrackerMetrics INSTANCE = new TrackerMetrics();
+
+    /**
+     * read on every instrumented call
+     */
+    static volatile boolean enabled = Boolean.getBoolean(METRICS_PROPERTY);
+
+    private final LatencyHistogram timeToCursor = new LatencyHistogram();
+    private final LatencyHistogram timeToFirstRow = new LatencyHistogram();
+    private final LatencyHistogram drainTime = new LatencyHistogram();
+    private final LatencyHistogram updateTime = new LatencyHistogram();
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong cells = new AtomicLong();
+    private final AtomicLong drainNanos = new AtomicLong();
+    private final Map<String, AtomicLong> nativeCalls = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, AtomicLong> errors = new ConcurrentHashMap<>();
+    private final ArrayDeque<String> slowQueries = new ArrayDeque<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile long slowQueryThreshold = SLOW_QUERY_THRESHOLD;
+
+    private TrackerMetrics() {}
+
+    /**
+     * @return TrackerMetrics
+     */
+    public static TrackerMetrics getInstance(){
+        return INSTANCE;
+    }
+
+    /**
+     * Registers the MXBean with the platform MBeanServer, does nothing if it is already registered
+     */
+    public static void registerMBean(){
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+        } catch(InstanceAlreadyExistsException e){
+            // registered before
+        } catch(JMException e){
+            throw new IllegalStateException("cannot register "+OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * Wraps a binding, counting the calls per function
+     * @param binding
+     * @return Libtracker.Sparql
+     */
+    static Libtracker.Sparql count(final Libtracker.Sparql binding){
+        for(Method method : Libtracker.Sparql.class.getMethods()){
+            INSTANCE.nativeCalls.put(method.getName(), new AtomicLong());
+        }
+        return (Libtracker.Sparql)Proxy.newProxyInstance(Libtracker.Sparql.class.getClassLoader(), new Class<?>[]{Libtracker.Sparql.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                AtomicLong calls = INSTANCE.nativeCalls.get(method.getName());
+                if(calls!=null && enabled){
+                    calls.incrementAndGet();
+                }
+                try {
+                    return method.invoke(binding, args);
+                } catch(InvocationTargetException e){
+                    throw e.getCause();
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts tracing a query or update
+     * @param sparql
+     * @return Trace or null if the metrics are disabled
+     */
+    static Trace trace(String sparql){
+        return enabled ? new Trace(sparql) : null;
+    }
+
+    /**
+     * Counts a TrackerException by its error code
+     * @param code
+     */
+    static void error(int code){
+        AtomicLong count = INSTANCE.errors.get(code);
+        if(count==null){
+            AtomicLong created = new AtomicLong();
+            count = INSTANCE.errors.putIfAbsent(code, created);
+            if(count==null){
+                count = created;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * @param listener
+     */
+    public void addListener(Listener listener){
+        this.listeners.add(listener);
+    }
+    /**
+     * @param listener
+     */
+    public void removeListener(Listener listener){
+        this.listeners.remove(listener);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+    @Override
+    public void setEnabled(boolean enabled) {
+        TrackerMetrics.enabled = enabled;
+    }
+    @Override
+    public long getSlowQueryThreshold() {
+        return this.slowQueryThreshold;
+    }
+    @Override
+    public void setSlowQueryThreshold(long millis) {
+        this.slowQueryThreshold = millis;
+    }
+    @Override
+    public LatencyHistogram getTimeToCursor() {
+        return this.timeToCursor;
+    }
+    @Override
+    public LatencyHistogram getTimeToFirstRow() {
+        return this.timeToFirstRow;
+    }
+    @Override
+    public LatencyHistogram getDrainTime() {
+        return this.drainTime;
+    }
+    @Override
+    public LatencyHistogram getUpdateTime() {
+        return this.updateTime;
+    }
+    @Override
+    public long getQueryCount() {
+        return this.queries.get();
+    }
+    @Override
+    public long getUpdateCount() {
+        return this.updates.get();
+    }
+    @Override
+    public long getRowCount() {
+        return this.rows.get();
+    }
+    @Override
+    public long getCellCount() {
+        return this.cells.get();
+    }
+    @Override
+    public double getRowsPerSecond() {
+        long nanos = this.drainNanos.get();
+        return nanos == 0 ? 0 : this.rows.get() * 1e9 / nanos;
+    }
+    @Override
+    public double getCellsPerSecond() {
+        long nanos = this.drainNanos.get();
+        return nanos == 0 ? 0 : this.cells.get() * 1e9 / nanos;
+    }
+    @Override
+    public Map<String, Long> getNativeCallCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for(Map.Entry<String, AtomicLong> entry : this.nativeCalls.entrySet()){
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        return counts;
+    }
+    @Override
+    public Map<Integer, Long> getErrorCounts() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        for(Map.Entry<Integer, AtomicLong> entry : this.errors.entrySet()){
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        return counts;
+    }
+    @Override
+    public String[] getSlowQueries() {
+        synchronized(this.slowQueries){
+            return this.slowQueries.toArray(new String[this.slowQueries.size()]);
+        }
+    }
+    @Override
+    public void reset() {
+        this.timeToCursor.reset();
+        this.timeToFirstRow.reset();
+        this.drainTime.reset();
+        this.updateTime.reset();
+        this.queries.set(0);
+        this.updates.set(0);
+        this.rows.set(0);
+        this.cells.set(0);
+        this.drainNanos.set(0);
+        for(AtomicLong calls : this.nativeCalls.values()){
+            calls.set(0);
+        }
+        this.errors.clear();
+        synchronized(this.slowQueries){
+            this.slowQueries.clear();
+        }
+    }
+
+    private void slow(String kind, String sparql, long nanos){
+        long threshold = this.slowQueryThreshold;
+        if(threshold < 0 || nanos < threshold * 1000000L){
+            return;
+        }
+        String entry = kind + " took " + (nanos / 1000000L) + " ms: " + sparql;
+        LOG.log(Level.WARNING, entry);
+        synchronized(this.slowQueries){
+            if(this.slowQueries.size() == SLOW_QUERY_LOG_SIZE){
+                this.slowQueries.removeLast();
+            }
+            this.slowQueries.addFirst(entry);
+        }
+    }
+
+    /**
+     * Timing of one query or update.<br/>
+     * A query's trace is attached to its cursor and finished when the cursor
+     * is exhausted or closed.
+     */
+    static final class Trace {
+        private final String sparql;
+        private final long start = System.nanoTime();
+        private long timeToCursor;
+        private long timeToFirstRow = -1;
+        private long rows;
+        private int columns;
+        private boolean finished = false;
+
+        private Trace(String sparql) {
+            this.sparql = sparql;
+        }
+
+        /**
+         * The query returned its cursor
+         * @param cursor
+         * @return TrackerSparqlCursor the traced cursor
+         */
+        TrackerSparqlCursor opened(TrackerSparqlCursor cursor){
+            this.timeToCursor = System.nanoTime() - this.start;
+            INSTANCE.timeToCursor.record(this.timeToCursor);
+            this.columns = cursor.getColumnsCount();
+            cursor.trace(this);
+            return cursor;
+        }
+
+        /**
+         * The cursor advanced
+         * @param row false if the cursor is exhausted
+         */
+        void next(boolean row){
+            if(row){
+                if(++this.rows == 1){
+                    this.timeToFirstRow = System.nanoTime() - this.start;
+                }
+            } else {
+                this.finished();
+            }
+        }
+
+        /**
+         * The cursor is exhausted or closed
+         */
+        void finished(){
+            if(this.finished){
+                return;
+            }
+            this.finished = true;
+            long total = System.nanoTime() - this.start;
+            long drain = total - this.timeToCursor;
+            long cells = this.rows * this.columns;
+            TrackerMetrics metrics = INSTANCE;
+            if(this.timeToFirstRow >= 0){
+                metrics.timeToFirstRow.record(this.timeToFirstRow);
+            }
+            metrics.drainTime.record(drain);
+            metrics.queries.incrementAndGet();
+            metrics.rows.addAndGet(this.rows);
+            metrics.cells.addAndGet(cells);
+            metrics.drainNanos.addAndGet(drain);
+            metrics.slow("query", this.sparql, total);
+            for(Listener listener : metrics.listeners){
+                listener.queryFinished(this.sparql, this.timeToCursor, this.timeToFirstRow, total, this.rows, cells);
+            }
+        }
+
+        /**
+         * The update is done
+         */
+        void updated(){
+            long time = System.nanoTime() - this.start;
+            TrackerMetrics metrics = INSTANCE;
+            metrics.updateTime.record(time);
+            metrics.updates.incrementAndGet();
+            metrics.slow("update", this.sparql, time);
+            for(Listener listener : metrics.listeners){
+                listener.updateFinished(this.sparql, time);
+            }
+        }
+
+        /**
+         * The query, update or a cursor call failed
+         * @param error
+         */
+        void failed(TrackerException error){
+            this.finished = true;
+            for(Listener listener : INSTANCE.listeners){
+                listener.failed(this.sparql, error);
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.turnguard.libtracker.sparql;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link TrackerMetrics}, registered as {@link TrackerMetrics#OBJECT_NAME}.<br/>
+ * Durations are in nanoseconds unless noted otherwise.
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public interface TrackerMetricsMXBean {
+
+    public boolean isEnabled();
+    public void setEnabled(boolean enabled);
+
+    /**
+     * @return long milliseconds a query or update may take before it is logged as slow, negative if disabled
+     */
+    public long getSlowQueryThreshold();
+    public void setSlowQueryThreshold(long millis);
+
+    /**
+     * @return LatencyHistogram from the query call until the cursor is returned
+     */
+    public LatencyHistogram getTimeToCursor();
+    /**
+     * @return LatencyHistogram from the query call until the first row is available
+     */
+    public LatencyHistogram getTimeToFirstRow();
+    /**
+     * @return LatencyHistogram from the returned cursor until it is exhausted or closed
+     */
+    public LatencyHistogram getDrainTime();
+    /**
+     * @return LatencyHistogram of updates
+     */
+    public LatencyHistogram getUpdateTime();
+
+    public long getQueryCount();
+    public long getUpdateCount();
+    public long getRowCount();
+    public long getCellCount();
+    /**
+     * @return double rows read per second of drain time
+     */
+    public double getRowsPerSecond();
+    /**
+     * @return double cells read per second of drain time
+     */
+    public double getCellsPerSecond();
+
+    /**
+     * @return Map calls per libtracker-sparql function, empty unless metrics were enabled at startup
+     */
+    public Map<String, Long> getNativeCallCounts();
+    /**
+     * @return Map TrackerExceptions per error code
+     */
+    public Map<Integer, Long> getErrorCounts();
+    /**
+     * @return String[] the most recent slow queries, newest first
+     */
+    public String[] getSlowQueries();
+
+    /**
+     * Clears all histograms and counters
+     */
+    public void reset();
+}
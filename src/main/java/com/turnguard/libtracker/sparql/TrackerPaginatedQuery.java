@@ -0,0 +1,455 @@
+package com.turnguard.libtracker.sparql;
+
+import com.turnguard.libtracker.sparql.Libtracker.TrackerException;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlConnection;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlCursor;
+import com.turnguard.libtracker.sparql.Libtracker.UncheckedTrackerException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Pattern;
+
+/**
+ * Runs a large SELECT as a sequence of bounded pages, so tracker-store never
+ * holds one long cursor and neither side buffers more than a few pages.<br/>
+ * Every page is a query of its own, fetched into a {@link ResultBatch} and
+ * closed right away; the pages are exposed as one stream of {@link TrackerRow}s.
+ * Two ways of splitting are supported:
+ * <ul>
+ * <li>keyset ({@link #setKey(String)}): the query is ordered by the key
+ * variable and every page starts after the last key of the page before
+ * (<code>FILTER(?key &gt; last)</code>). The key must be projected, bound,
+ * not a blank node and unique in every row, tracker:id(?s) is a good choice. Each page
+ * depends on the one before, so pages are fetched one ahead of the caller.</li>
+ * <li>LIMIT/OFFSET (no key): pages are independent and up to parallelism
+ * of them are fetched concurrently over the pool's connections. For pages to
+ * split the result consistently the query should have an ORDER BY. Until
+ * the first short page comes back, up to parallelism - 1 (empty) pages past
+ * the end may be requested.</li>
+ * </ul>
+ * With ordered set to false, LIMIT/OFFSET pages are handed out in the order
+ * they complete instead of in page order.
+ * <pre>
+ * TrackerPaginatedQuery query = new TrackerPaginatedQuery(pool,
+ *     "SELECT ?id ?title WHERE { ?s nie:title ?title . BIND(tracker:id(?s) AS ?id) }");
+ * query.setKey("id");
+ * try (TrackerPaginatedQuery.Rows rows = query.rows()) {
+ *   for(TrackerRow row : rows){ ... }
+ * }
+ * </pre>
+ * The query must not have a LIMIT or OFFSET of its own and, with a key, no ORDER BY.
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public class TrackerPaginatedQuery {
+
+    /**
+     * the default number of rows per page
+     */
+    public static final int PAGE_SIZE = 1000;
+
+    private static final Pattern LIMIT = Pattern.compile("(?i)\\b(LIMIT|OFFSET)\\b");
+    private static final Pattern ORDER_BY = Pattern.compile("(?i)\\bORDER\\s+BY\\b");
+    private static final String XSD_DATETIME = "<http://www.w3.org/2001/XMLSchema#dateTime>";
+
+    private final TrackerConnectionPool pool;
+    private final TrackerSparqlConnection connection;
+    private final String query;
+    private int pageSize = PAGE_SIZE;
+    private int parallelism = 1;
+    private boolean ordered = true;
+    private String key;
+
+    /**
+     * Pages are fetched on the calling thread over one connection
+     * @param connection
+     * @param query a SELECT
+     */
+    public TrackerPaginatedQuery(TrackerSparqlConnection connection, String query) {
+        this(null, connection, query);
+    }
+
+    /**
+     * Pages are fetched over leases of the pool, with parallelism &gt; 1 on background threads
+     * @param pool
+     * @param query a SELECT
+     */
+    public TrackerPaginatedQuery(TrackerConnectionPool pool, String query) {
+        this(pool, null, query);
+    }
+
+    private TrackerPaginatedQuery(TrackerConnectionPool pool, TrackerSparqlConnection connection, String query) {
+        this.pool = pool;
+        this.connection = connection;
+        this.query = query.trim();
+        int end = this.query.lastIndexOf('}');
+        if(end < 0){
+            throw new IllegalArgumentException("not a SELECT with a group graph pattern: "+query);
+        }
+        if(LIMIT.matcher(this.query.substring(end + 1)).find()){
+            throw new IllegalArgumentException("the query must not have a LIMIT or OFFSET: "+query);
+        }
+    }
+
+    /**
+     * @param pageSize rows per page
+     */
+    public void setPageSize(int pageSize){
+        if(pageSize < 1){
+            throw new IllegalArgumentException("pageSize must be positive");
+        }
+        this.pageSize = pageSize;
+    }
+
+    public int getPageSize(){
+        return this.pageSize;
+    }
+
+    /**
+     * @param parallelism the number of LIMIT/OFFSET pages fetched concurrently,
+     * only used with a pool, keyset pages are always fetched one ahead
+     */
+    public void setParallelism(int parallelism){
+        if(parallelism < 1){
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism(){
+        return this.parallelism;
+    }
+
+    /**
+     * @param ordered false to hand out LIMIT/OFFSET pages as they complete
+     */
+    public void setOrdered(boolean ordered){
+        this.ordered = ordered;
+    }
+
+    public boolean isOrdered(){
+        return this.ordered;
+    }
+
+    /**
+     * @param key the name of a projected, unique variable (without '?') to page by, null for LIMIT/OFFSET
+     */
+    public void setKey(String key){
+        if(key!=null && this.key==null && ORDER_BY.matcher(this.query.substring(this.query.lastIndexOf('}') + 1)).find()){
+            throw new IllegalArgumentException("keyset pagination orders by the key, the query must not have an ORDER BY");
+        }
+        this.key = key!=null && key.startsWith("?") ? key.substring(1) : key;
+    }
+
+    public String getKey(){
+        return this.key;
+    }
+
+    /**
+     * @param page the page index
+     * @return String the query of a LIMIT/OFFSET page
+     */
+    String offsetPage(long page){
+        return this.query + " LIMIT " + this.pageSize + " OFFSET " + (page * this.pageSize);
+    }
+
+    /**
+     * @param after the last key of the page before as a SPARQL term, null for the first page
+     * @return String the query of a keyset page
+     */
+    String keysetPage(String after){
+        int end = this.query.lastIndexOf('}');
+        StringBuilder page = new StringBuilder(this.query.length() + 64);
+        page.append(this.query, 0, end);
+        if(after!=null){
+            page.append(" FILTER(?").append(this.key).append(" > ").append(after).append(") ");
+        }
+        page.append(this.query, end, this.query.length());
+        page.append(" ORDER BY ?").append(this.key).append(" LIMIT ").append(this.pageSize);
+        return page.toString();
+    }
+
+    /**
+     * Renders the key of a batch row as a SPARQL term
+     * @param batch
+     * @param row
+     * @param column
+     * @return String
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException if the key is unbound or a blank node
+     */
+    static String term(ResultBatch batch, int row, int column) throws TrackerException {
+        StringBuilder term = new StringBuilder();
+        switch(batch.getValueType(row, column).getIntValue()){
+            case 0:
+                throw new TrackerException("key ?"+batch.getBindingName(column)+" is unbound");
+            case 1:
+                return term.append('<').append(batch.getString(row, column)).append('>').toString();
+            case 3:
+                return Long.toString(batch.getLong(row, column));
+            case 4:
+                return Double.toString(batch.getDouble(row, column));
+            case 5:
+                TrackerSparqlStatement.appendLiteral(term, batch.getString(row, column));
+                return term.append("^^").append(XSD_DATETIME).toString();
+            case 6:
+                throw new TrackerException("key ?"+batch.getBindingName(column)+" is a blank node, blank nodes cannot be compared");
+            case 7:
+                return Boolean.toString(batch.getBoolean(row, column));
+            default:
+                TrackerSparqlStatement.appendLiteral(term, batch.getString(row, column));
+                return term.toString();
+        }
+    }
+
+    /**
+     * Starts fetching pages
+     * @return Rows, close it if not iterated to the end
+     */
+    public Rows rows(){
+        return new Rows();
+    }
+
+    /**
+     * Fetches a page over a lease of the pool, or over the connection
+     */
+    private ResultBatch fetch(String page, ResultBatch batch) throws TrackerException, InterruptedException {
+        if(this.pool==null){
+            return this.fetch(this.connection, page, batch);
+        }
+        try (TrackerConnectionPool.Lease lease = this.pool.acquire()) {
+            return this.fetch(lease.getConnection(), page, batch);
+        }
+    }
+
+    private ResultBatch fetch(TrackerSparqlConnection connection, String page, ResultBatch batch) throws TrackerException {
+        try (TrackerSparqlCursor cursor = connection.query(page)) {
+            cursor.fetch(this.pageSize, batch);
+        }
+        return batch;
+    }
+
+    /**
+     * The rows of all pages, the row returned by next() is only valid until
+     * the next call to next(). Fetch errors surface as {@link UncheckedTrackerException}.
+     */
+    public final class Rows implements Iterator<TrackerRow>, Iterable<TrackerRow>, AutoCloseable {
+
+        private final TrackerRow row = new TrackerRow();
+        private final boolean keyset = TrackerPaginatedQuery.this.key!=null;
+        private final int inFlight = TrackerPaginatedQuery.this.pool==null ? 1 : (this.keyset ? 1 : TrackerPaginatedQuery.this.parallelism);
+        private final boolean unordered = !this.keyset && !TrackerPaginatedQuery.this.ordered;
+        private final ExecutorService executor;
+        private final Deque<Page> pending = new ArrayDeque<>();
+        private final BlockingQueue<Page> completed = new LinkedBlockingQueue<>();
+        private final BlockingQueue<ResultBatch> free = new LinkedBlockingQueue<>();
+        private ResultBatch current;
+        private int position = 0;
+        private long nextPage = 0;
+        private long lastPage = Long.MAX_VALUE;
+        private int keyColumn = -1;
+        private boolean exhausted = false;
+        private boolean closed = false;
+
+        private Rows() {
+            this.executor = TrackerPaginatedQuery.this.pool==null ? null : Executors.newFixedThreadPool(this.inFlight, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "libtracker-sparql-pages");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            if(this.keyset){
+                this.submit(TrackerPaginatedQuery.this.keysetPage(null));
+            } else {
+                this.fill();
+            }
+        }
+
+        /**
+         * Keeps up to inFlight LIMIT/OFFSET pages in flight
+         */
+        private void fill(){
+            while(this.pending.size() < this.inFlight && this.nextPage <= this.lastPage){
+                this.submit(TrackerPaginatedQuery.this.offsetPage(this.nextPage));
+            }
+        }
+
+        private void submit(final String query){
+            ResultBatch batch = this.free.poll();
+            final ResultBatch target = batch!=null ? batch : new ResultBatch(TrackerPaginatedQuery.this.pageSize);
+            Page page = new Page(this.nextPage++, new Callable<ResultBatch>() {
+                @Override
+                public ResultBatch call() throws Exception {
+                    return TrackerPaginatedQuery.this.fetch(query, target);
+                }
+            });
+            this.pending.add(page);
+            if(this.executor==null){
+                page.run();
+            } else {
+                this.executor.execute(page);
+            }
+        }
+
+        /**
+         * @return Page the next page to hand out
+         */
+        private Page take() throws InterruptedException {
+            if(!this.unordered){
+                return this.pending.poll();
+            }
+            Page page = this.completed.take();
+            this.pending.remove(page);
+            return page;
+        }
+
+        private boolean nextPage() throws TrackerException, InterruptedException {
+            while(!this.pending.isEmpty()){
+                Page page = this.take();
+                ResultBatch batch;
+                try {
+                    batch = page.get();
+                } catch(ExecutionException e){
+                    Throwable cause = e.getCause();
+                    if(cause instanceof TrackerException){
+                        throw (TrackerException)cause;
+                    } else if(cause instanceof InterruptedException){
+                        throw (InterruptedException)cause;
+                    }
+                    TrackerException failure = new TrackerException(cause.toString());
+                    failure.initCause(cause);
+                    throw failure;
+                }
+                if(page.index > this.lastPage){
+                    this.free.add(batch);
+                    continue;
+                }
+                int rows = batch.getRowCount();
+                if(rows < TrackerPaginatedQuery.this.pageSize){
+                    this.lastPage = page.index;
+                }
+                if(this.keyset){
+                    if(rows > 0 && page.index < this.lastPage){
+                        if(this.keyColumn < 0){
+                            this.keyColumn = this.column(batch);
+                        }
+                        this.submit(TrackerPaginatedQuery.this.keysetPage(term(batch, rows - 1, this.keyColumn)));
+                    }
+                } else {
+                    this.fill();
+                }
+                if(this.current!=null){
+                    this.free.add(this.current);
+                }
+                this.current = batch;
+                this.position = 0;
+                if(rows > 0){
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int column(ResultBatch batch){
+            for(int column = 0; column < batch.getColumnsCount(); column++){
+                if(TrackerPaginatedQuery.this.key.equals(batch.getBindingName(column))){
+                    return column;
+                }
+            }
+            throw new IllegalArgumentException("the key ?"+TrackerPaginatedQuery.this.key+" is not projected");
+        }
+
+        @Override
+        public boolean hasNext() {
+            if(this.closed){
+                return false;
+            }
+            if(this.current!=null && this.position < this.current.getRowCount()){
+                return true;
+            }
+            if(this.exhausted){
+                return false;
+            }
+            try {
+                if(this.nextPage()){
+                    return true;
+                }
+            } catch(TrackerException e){
+                this.close();
+                throw new UncheckedTrackerException(e);
+            } catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                this.close();
+                throw new IllegalStateException(e);
+            }
+            this.exhausted = true;
+            this.close();
+            return false;
+        }
+
+        @Override
+        public TrackerRow next() {
+            if(!this.hasNext()){
+                throw new NoSuchElementException();
+            }
+            this.row.set(this.current, this.position++);
+            return this.row;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Iterator<TrackerRow> iterator() {
+            return this;
+        }
+
+        /**
+         * Drops the pages in flight, queries already running finish on their own
+         */
+        @Override
+        public void close() {
+            if(this.closed){
+                return;
+            }
+            this.closed = true;
+            for(Page page : this.pending){
+                page.cancel(false);
+            }
+            this.pending.clear();
+            if(this.executor!=null){
+                this.executor.shutdown();
+            }
+        }
+
+        /**
+         * A page in flight
+         */
+        private final class Page extends FutureTask<ResultBatch> {
+            private final long index;
+
+            Page(long index, Callable<ResultBatch> fetch) {
+                super(fetch);
+                this.index = index;
+            }
+
+            @Override
+            protected void done() {
+                if(Rows.this.unordered){
+                    Rows.this.completed.add(this);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,595 @@
+package com.turnguard.libtracker.sparql;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.LongByReference;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerException;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlConnection;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlCursor;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlValueType;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opt-in cache of materialized query results, bounded by memory with LRU eviction.<br/>
+ * Enable it per connection with {@link Libtracker.TrackerSparqlConnection#setQueryCache(TrackerQueryCache)},
+ * query() then serves repeated queries from memory and every update through
+ * that connection clears the cache. With {@link #listenForChanges()} tracker-store's
+ * GraphUpdated signals invalidate entries as well: entries cached with a set of
+ * classes only when one of those classes changed, all others on any change.<br/>
+ * Results are stored as one UTF-8 byte array per query plus offsets and value
+ * types. A result is only copied while it may still be cached: once it grows
+ * beyond half of maxBytes the copy stops, the rows copied so far are replayed
+ * and the rest is read from the native cursor. One cache should only serve
+ * connections to the same store.
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public class TrackerQueryCache implements TrackerChangeNotifier.Listener {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final byte[] TRUE = "true".getBytes(UTF8);
+    private static final byte[] FALSE = "false".getBytes(UTF8);
+    /**
+     * the largest result copied, offsets are ints
+     */
+    static final long MAX_RESULT_BYTES = Integer.MAX_VALUE / 2;
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Fetch> fetching = new HashSet<>();
+    private long bytes = 0;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param maxBytes the approximate memory the cached results may use
+     */
+    public TrackerQueryCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Subscribes to tracker-store's GraphUpdated signals
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException if the session bus is not available, 
+     * or with code G_IO_ERROR_NOT_SUPPORTED on libtracker-sparql 3.0, see {@link TrackerChangeNotifier}
+     */
+    public void listenForChanges() throws TrackerException {
+        TrackerChangeNotifier.getInstance().addListener(this);
+    }
+
+    /**
+     * Returns a cursor over the cached result of the query, running it on a miss
+     * @param connection
+     * @param sparql a SPARQL 1.1 SelectQueryString
+     * @return TrackerSparqlCursor
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException
+     */
+    public TrackerSparqlCursor query(TrackerSparqlConnection connection, String sparql) throws TrackerException {
+        return this.query(connection, sparql, (String[])null);
+    }
+
+    /**
+     * Returns a cursor over the cached result of the query, running it on a miss
+     * @param connection
+     * @param sparql a SPARQL 1.1 SelectQueryString
+     * @param classes the class IRIs the result depends on, null for any class
+     * @return TrackerSparqlCursor
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException
+     */
+    public TrackerSparqlCursor query(TrackerSparqlConnection connection, String sparql, String... classes) throws TrackerException {
+        Fetch fetch;
+        synchronized(this){
+            Entry entry = this.entries.get(sparql);
+            if(entry!=null){
+                this.hits.incrementAndGet();
+                return new CachedCursor(entry.result);
+            }
+            fetch = new Fetch(classes);
+            this.fetching.add(fetch);
+        }
+        this.misses.incrementAndGet();
+        Result result;
+        try {
+            TrackerSparqlCursor cursor = connection.queryNative(sparql);
+            boolean open = false;
+            try {
+                result = Result.materialize(cursor, Math.min(this.maxBytes / 2, MAX_RESULT_BYTES));
+                if(result.truncated){
+                    open = true;
+                    return new ContinuedCursor(result, cursor);
+                }
+            } finally {
+                if(!open){
+                    cursor.close();
+                }
+            }
+            this.put(sparql, new Entry(result, classes), fetch);
+        } finally {
+            synchronized(this){
+                this.fetching.remove(fetch);
+            }
+        }
+        return new CachedCursor(result);
+    }
+
+    private synchronized void put(String sparql, Entry entry, Fetch fetch){
+        // an invalidation of its classes while the query ran may have made the result stale
+        if(fetch.stale || entry.result.bytes > this.maxBytes / 2){
+            return;
+        }
+        Entry previous = this.entries.put(sparql, entry);
+        if(previous!=null){
+            this.bytes -= previous.result.bytes;
+        }
+        this.bytes += entry.result.bytes;
+        Iterator<Entry> eldest = this.entries.values().iterator();
+        while(this.bytes > this.maxBytes && eldest.hasNext()){
+            this.bytes -= eldest.next().result.bytes;
+            eldest.remove();
+            this.evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes all entries
+     */
+    public synchronized void invalidateAll(){
+        for(Fetch fetch : this.fetching){
+            fetch.stale = true;
+        }
+        this.invalidations.addAndGet(this.entries.size());
+        this.entries.clear();
+        this.bytes = 0;
+    }
+
+    /**
+     * Removes all entries depending on the given class
+     * @param className
+     */
+    public synchronized void invalidate(String className){
+        for(Fetch fetch : this.fetching){
+            if(dependsOn(fetch.classes, className)){
+                fetch.stale = true;
+            }
+        }
+        Iterator<Entry> iterator = this.entries.values().iterator();
+        while(iterator.hasNext()){
+            Entry entry = iterator.next();
+            if(entry.dependsOn(className)){
+                this.bytes -= entry.result.bytes;
+                iterator.remove();
+                this.invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public void graphUpdated(TrackerChangeEvent event) {
+        this.invalidate(event.getClassName());
+    }
+
+    public long getHitCount(){
+        return this.hits.get();
+    }
+    public long getMissCount(){
+        return this.misses.get();
+    }
+    public long getEvictionCount(){
+        return this.evictions.get();
+    }
+    public long getInvalidationCount(){
+        return this.invalidations.get();
+    }
+    public synchronized int getSize(){
+        return this.entries.size();
+    }
+    public synchronized long getBytes(){
+        return this.bytes;
+    }
+
+    private static final class Entry {
+        final Result result;
+        final String[] classes;
+
+        Entry(Result result, String[] classes) {
+            this.result = result;
+            this.classes = classes;
+        }
+
+        boolean dependsOn(String className){
+            return TrackerQueryCache.dependsOn(this.classes, className);
+        }
+    }
+
+    /**
+     * A query running on a miss, stale once one of its classes was invalidated
+     */
+    private static final class Fetch {
+        final String[] classes;
+        boolean stale;
+
+        Fetch(String[] classes) {
+            this.classes = classes;
+        }
+    }
+
+    /**
+     * @param classes the classes a result depends on, null or empty for any class
+     * @param className
+     * @return boolean true if a change of className invalidates the result
+     */
+    private static boolean dependsOn(String[] classes, String className){
+        if(classes==null || classes.length==0){
+            return true;
+        }
+        for(String c : classes){
+            if(c.equals(className)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A materialized result, cell (row, column) is index row * columns + column
+     * into types and offsets, its UTF-8 bytes span offsets[index] to offsets[index+1].
+     * A truncated result holds the first rows only, the cursor it was read from
+     * is positioned on the first row not copied.
+     */
+    static final class Result {
+        final String[] names;
+        final int columns;
+        final int rows;
+        final byte[] types;
+        final byte[] data;
+        final int[] offsets;
+        final long bytes;
+        final boolean truncated;
+
+        Result(String[] names, int rows, byte[] types, byte[] data, int[] offsets) {
+            this(names, rows, types, data, offsets, false);
+        }
+
+        Result(String[] names, int rows, byte[] types, byte[] data, int[] offsets, boolean truncated) {
+            this.names = names;
+            this.columns = names.length;
+            this.rows = rows;
+            this.types = types;
+            this.data = data;
+            this.offsets = offsets;
+            this.truncated = truncated;
+            this.bytes = size(names, data.length, types.length);
+        }
+
+        /**
+         * @return long the approximate memory of a result
+         */
+        private static long size(String[] names, long data, int cells){
+            long size = 64 + data + 5L * cells + 4;
+            for(String name : names){
+                size += 40 + 2 * name.length();
+            }
+            return size;
+        }
+
+        /**
+         * Copies the rows of the cursor until their size exceeds maxBytes
+         * @param cursor
+         * @param maxBytes
+         * @return Result all rows, or the rows before the one exceeding maxBytes (truncated)
+         * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException
+         */
+        static Result materialize(TrackerSparqlCursor cursor, long maxBytes) throws TrackerException {
+            if(cursor instanceof CachedCursor){
+                // already materialized, results are immutable
+                return ((CachedCursor)cursor).result;
+            }
+            // cursors not backed by a native cursor are read through their methods
+            boolean direct = cursor.isNative();
+            Libtracker.Sparql sparql = Libtracker.SPARQL;
+            LongByReference length = Libtracker.length();
+            int columns = cursor.getColumnsCount();
+            String[] names = new String[columns];
+            for(int column = 0; column < columns; column++){
+                names[column] = cursor.getBindingName(column);
+            }
+            byte[] types = new byte[16 * Math.max(1, columns)];
+            int[] offsets = new int[types.length + 1];
+            byte[] data = new byte[types.length * 32];
+            long base = size(names, 0, 0);
+            int cell = 0;
+            int rows = 0;
+            while(cursor.next()){
+                if(cell + columns > types.length){
+                    types = Arrays.copyOf(types, types.length << 1);
+                    offsets = Arrays.copyOf(offsets, types.length + 1);
+                }
+                for(int column = 0; column < columns; column++, cell++){
+                    int type = (direct ? sparql.tracker_sparql_cursor_get_value_type(cursor, column) : cursor.getValueType(column)).getIntValue();
+                    types[cell] = (byte)type;
+                    int start = offsets[cell];
+                    byte[] value = null;
+                    Pointer string = null;
+                    ByteBuffer buffer = null;
+                    long size = 0;
+                    if(type==7){
+                        value = (direct ? sparql.tracker_sparql_cursor_get_boolean(cursor, column) : cursor.getBoolean(column)) ? TRUE : FALSE;
+                        size = value.length;
+                    } else if(type!=0 && direct){
+                        string = sparql.tracker_sparql_cursor_get_string(cursor, column, length);
+                        size = string==null ? 0 : length.getValue();
+                    } else if(type!=0){
+                        buffer = cursor.getStringBuffer(column);
+                        size = buffer==null ? 0 : buffer.remaining();
+                    }
+                    if(base + start + size + 5L * (cell + 1) > maxBytes){
+                        cell -= column;
+                        return new Result(names, rows, Arrays.copyOf(types, cell),
+                                Arrays.copyOf(data, offsets[cell]), Arrays.copyOf(offsets, cell + 1), true);
+                    }
+                    // below maxBytes, fits an int
+                    int end = start + (int)size;
+                    if(end > data.length){
+                        data = Arrays.copyOf(data, Math.max(data.length << 1, end));
+                    }
+                    if(value!=null){
+                        System.arraycopy(value, 0, data, start, value.length);
+                    } else if(string!=null){
+                        string.read(0, data, start, end - start);
+                    } else if(buffer!=null){
+                        buffer.get(data, start, end - start);
+                    }
+                    offsets[cell+1] = end;
+                }
+                rows++;
+            }
+            return new Result(names, rows,
+                    Arrays.copyOf(types, cell),
+                    Arrays.copyOf(data, offsets[cell]),
+                    Arrays.copyOf(offsets, cell + 1));
+        }
+    }
+
+    /**
+     * A cursor over a cached result, it holds no native resources
+     */
+    static final class CachedCursor extends TrackerSparqlCursor {
+        private final Result result;
+        private int row = -1;
+
+        CachedCursor(Result result) {
+            this.result = result;
+        }
+
+        @Override
+        boolean isNative() {
+            return false;
+        }
+        private int cell(int column){
+            if(this.row < 0 || this.row >= this.result.rows || column < 0 || column >= this.result.columns){
+                return -1;
+            }
+            return this.row * this.result.columns + column;
+        }
+        @Override
+        public boolean next() {
+            if(this.row < this.result.rows){
+                this.row++;
+            }
+            return this.row < this.result.rows;
+        }
+        @Override
+        public TrackerFuture<Boolean> nextAsync() {
+            TrackerFuture<Boolean> future = new TrackerFuture<>();
+            future.complete(this.next());
+            return future;
+        }
+        @Override
+        public void rewind() {
+            this.row = -1;
+        }
+        @Override
+        public void close() {
+            this.row = this.result.rows;
+        }
+        @Override
+        public int getColumnsCount() {
+            return this.result.columns;
+        }
+        @Override
+        public String getBindingName(int column) {
+            return column >= 0 && column < this.result.columns ? this.result.names[column] : null;
+        }
+        @Override
+        public TrackerSparqlValueType getValueType(int column) {
+            int cell = this.cell(column);
+            return TrackerSparqlValueType.fromIntValue(cell < 0 ? 0 : this.result.types[cell]);
+        }
+        @Override
+        public boolean isBound(int column) {
+            int cell = this.cell(column);
+            return cell >= 0 && this.result.types[cell]!=0;
+        }
+        @Override
+        public String getString(int column) {
+            int cell = this.cell(column);
+            if(cell < 0 || this.result.types[cell]==0){
+                return null;
+            }
+            int start = this.result.offsets[cell];
+            return new String(this.result.data, start, this.result.offsets[cell+1] - start, UTF8);
+        }
+        @Override
+        public ByteBuffer getStringBuffer(int column) {
+            int cell = this.cell(column);
+            if(cell < 0 || this.result.types[cell]==0){
+                return null;
+            }
+            int start = this.result.offsets[cell];
+            return ByteBuffer.wrap(this.result.data, start, this.result.offsets[cell+1] - start).slice().asReadOnlyBuffer();
+        }
+        @Override
+        public int getString(int column, ByteBuffer target) {
+            int cell = this.cell(column);
+            if(cell < 0 || this.result.types[cell]==0){
+                return -1;
+            }
+            int start = this.result.offsets[cell];
+            int size = this.result.offsets[cell+1] - start;
+            if(target.remaining() < size){
+                throw new BufferOverflowException();
+            }
+            target.put(this.result.data, start, size);
+            return size;
+        }
+        @Override
+        public long getStringLength(int column) {
+            int cell = this.cell(column);
+            return cell < 0 || this.result.types[cell]==0 ? -1 : this.result.offsets[cell+1] - this.result.offsets[cell];
+        }
+        @Override
+        public long getLong(int column) {
+            String value = this.getString(column);
+            return value==null ? 0 : Long.parseLong(value);
+        }
+        @Override
+        public double getDouble(int column) {
+            String value = this.getString(column);
+            return value==null ? 0 : Double.parseDouble(value);
+        }
+        @Override
+        public boolean getBoolean(int column) {
+            String value = this.getString(column);
+            return "true".equals(value) || "1".equals(value);
+        }
+    }
+
+    /**
+     * A cursor over a result too large to cache: replays the rows copied
+     * before the copy stopped, then reads on from the native cursor
+     */
+    static final class ContinuedCursor extends TrackerSparqlCursor {
+        private CachedCursor head;
+        private final TrackerSparqlCursor tail;
+        /**
+         * the tail is positioned on a row not yet returned by next()
+         */
+        private boolean pending = true;
+
+        ContinuedCursor(Result head, TrackerSparqlCursor tail) {
+            this.head = new CachedCursor(head);
+            this.tail = tail;
+        }
+
+        @Override
+        boolean isNative() {
+            return false;
+        }
+        private TrackerSparqlCursor current(){
+            return this.head!=null ? this.head : this.tail;
+        }
+        @Override
+        public boolean next() throws TrackerException {
+            if(this.head!=null){
+                if(this.head.next()){
+                    return true;
+                }
+                this.head = null;
+            }
+            if(this.pending){
+                this.pending = false;
+                return true;
+            }
+            return this.tail.next();
+        }
+        @Override
+        public TrackerFuture<Boolean> nextAsync() {
+            if(this.head!=null || this.pending){
+                TrackerFuture<Boolean> future = new TrackerFuture<>();
+                try {
+                    future.complete(this.next());
+                } catch(TrackerException e){
+                    future.fail(e);
+                }
+                return future;
+            }
+            return this.tail.nextAsync();
+        }
+        @Override
+        public boolean cancel() {
+            return this.tail.cancel();
+        }
+        /**
+         * Rewinds the native cursor, all rows are read from it again
+         */
+        @Override
+        public void rewind() {
+            this.head = null;
+            this.pending = false;
+            this.tail.rewind();
+        }
+        @Override
+        public void close() {
+            this.head = null;
+            this.pending = false;
+            this.tail.close();
+        }
+        @Override
+        public int getColumnsCount() {
+            return this.current().getColumnsCount();
+        }
+        @Override
+        public String getBindingName(int column) {
+            return this.current().getBindingName(column);
+        }
+        @Override
+        public TrackerSparqlValueType getValueType(int column) {
+            return this.current().getValueType(column);
+        }
+        @Override
+        public boolean isBound(int column) {
+            return this.current().isBound(column);
+        }
+        @Override
+        public String getString(int column) {
+            return this.current().getString(column);
+        }
+        @Override
+        public ByteBuffer getStringBuffer(int column) {
+            return this.current().getStringBuffer(column);
+        }
+        @Override
+        public int getString(int column, ByteBuffer target) {
+            return this.current().getString(column, target);
+        }
+        @Override
+        public long getStringLength(int column) {
+            return this.current().getStringLength(column);
+        }
+        @Override
+        public long getLong(int column) {
+            return this.current().getLong(column);
+        }
+        @Override
+        public double getDouble(int column) {
+            return this.current().getDouble(column);
+        }
+        @Override
+        public boolean getBoolean(int column) {
+            return this.current().getBoolean(column);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TrackerQueryCache{" + "size=" + this.getSize() + ", bytes=" + this.getBytes() + ", hits=" + this.hits + ", misses=" + this.misses + ", evictions=" + this.evictions + ", invalidations=" + this.invalidations + '}';
+    }
+}
@@ -0,0 +1,59 @@
+package com.turnguard.libtracker.sparql;
+
+/**
+ * A resource cell (TRACKER_SPARQL_VALUE_TYPE_URI or TRACKER_SPARQL_VALUE_TYPE_BLANK_NODE)
+ * decoded by a {@link TrackerRowMapper}
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public final class TrackerResource {
+
+    private final String value;
+    private final boolean blank;
+
+    /**
+     * @param value the URI or blank node label
+     * @param blank true for blank nodes
+     */
+    public TrackerResource(String value, boolean blank) {
+        if(value==null){
+            throw new IllegalArgumentException("value must not be null");
+        }
+        this.value = value;
+        this.blank = blank;
+    }
+
+    /**
+     * @return String the URI or blank node label
+     */
+    public String getValue(){
+        return this.value;
+    }
+    /**
+     * @return boolean true for blank nodes
+     */
+    public boolean isBlank(){
+        return this.blank;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(!(obj instanceof TrackerResource)){
+            return false;
+        }
+        TrackerResource other = (TrackerResource)obj;
+        return this.blank == other.blank && this.value.equals(other.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.value.hashCode() * 31 + (this.blank ? 1 : 0);
+    }
+
+    /**
+     * @return String &lt;uri&gt; or _:label
+     */
+    @Override
+    public String toString() {
+        return this.blank ? "_:" + this.value : "<" + this.value + ">";
+    }
+}
@@ -0,0 +1,212 @@
+package com.turnguard.libtracker.sparql;
+
+import com.turnguard.libtracker.sparql.Libtracker.TrackerException;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates many resources with few updates.<br/>
+ * Every resource is added as a Turtle predicate-object list and inserted in
+ * INSERT DATA batches of about batchBytes. {@link #insert(TrackerSparqlConnection)}
+ * names the resources with urns from a {@link TrackerUrnGenerator}, without
+ * any native call per resource. {@link #insertBlank(TrackerSparqlConnection)}
+ * inserts them as blank nodes through tracker_sparql_connection_update_blank
+ * and lets tracker generate the urns. Both return the urns in the order the
+ * resources were added. The blank node labels starting with {@link #LABEL}
+ * are reserved for the batch's resources.
+ * <pre>
+ * TrackerResourceBatch batch = new TrackerResourceBatch();
+ * for(String title : titles){
+ *   batch.add("a nfo:Document ; nie:title \"" + title + "\"");
+ * }
+ * String[] urns = batch.insert(con);
+ * </pre>
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public class TrackerResourceBatch {
+
+    /**
+     * default size of an INSERT DATA batch in bytes
+     */
+    public static final int BATCH_BYTES = 256 * 1024;
+    /**
+     * prefix of the blank node labels, resource i is _:resourcebatch&lt;i&gt;
+     */
+    public static final String LABEL = "resourcebatch";
+
+    private final List<String> resources = new ArrayList<>();
+    private final TrackerUrnGenerator generator;
+    private int batchBytes = BATCH_BYTES;
+    private String prologue = "";
+
+    /**
+     * A batch naming resources with the shared TrackerUrnGenerator
+     */
+    public TrackerResourceBatch() {
+        this(TrackerUrnGenerator.getInstance());
+    }
+
+    /**
+     * @param generator the generator of the urns used by insert
+     */
+    public TrackerResourceBatch(TrackerUrnGenerator generator) {
+        this.generator = generator;
+    }
+
+    /**
+     * @param batchBytes the approximate size of an INSERT DATA batch in UTF-8 bytes, a batch holds at least one resource
+     */
+    public void setBatchBytes(int batchBytes){
+        if(batchBytes < 1){
+            throw new IllegalArgumentException("batchBytes must be positive");
+        }
+        this.batchBytes = batchBytes;
+    }
+
+    /**
+     * @param prologue PREFIX or BASE declarations prepended to every batch, may be null
+     */
+    public void setPrologue(String prologue){
+        this.prologue = prologue==null ? "" : prologue;
+    }
+
+    /**
+     * @param properties the resource's Turtle predicate-object list, e.g. "a nfo:Document ; nie:title \"x\"",
+     * must not contain a blank node label starting with {@link #LABEL}
+     * @return int the resource's index in the urns returned by insert
+     */
+    public int add(String properties){
+        if(properties==null || properties.trim().isEmpty()){
+            throw new IllegalArgumentException("properties must not be empty");
+        }
+        if(properties.contains("_:" + LABEL)){
+            throw new IllegalArgumentException("blank node labels starting with " + LABEL + " are reserved");
+        }
+        this.resources.add(properties);
+        return this.resources.size() - 1;
+    }
+
+    /**
+     * @return int the number of resources added
+     */
+    public int size(){
+        return this.resources.size();
+    }
+
+    /**
+     * Removes all resources
+     */
+    public void clear(){
+        this.resources.clear();
+    }
+
+    /**
+     * Inserts the resources named with generated urns.<br/>
+     * Batches are sent one by one, if one fails the resources of the previous batches remain inserted.
+     * @param connection
+     * @return String[] the urns, in the order the resources were added
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException
+     */
+    public String[] insert(TrackerSparqlConnection connection) throws TrackerException {
+        String[] urns = this.generator.next(this.resources.size());
+        StringBuilder update = new StringBuilder();
+        long bytes = 0;
+        for(int i = 0; i < urns.length; i++){
+            int start = this.begin(update);
+            update.append('<').append(urns[i]).append("> ").append(this.resources.get(i)).append(" .\n");
+            bytes += utf8Length(update, start);
+            if(bytes >= this.batchBytes){
+                connection.update(update.append('}').toString());
+                update.setLength(0);
+                bytes = 0;
+            }
+        }
+        if(update.length() > 0){
+            connection.update(update.append('}').toString());
+        }
+        return urns;
+    }
+
+    /**
+     * Inserts the resources as blank nodes, tracker generates their urns.<br/>
+     * Batches are sent one by one, if one fails the resources of the previous batches remain inserted.
+     * @param connection
+     * @return String[] the urns, in the order the resources were added
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException if tracker did not return an urn for every resource
+     */
+    public String[] insertBlank(TrackerSparqlConnection connection) throws TrackerException {
+        String[] urns = new String[this.resources.size()];
+        StringBuilder update = new StringBuilder();
+        long bytes = 0;
+        for(int i = 0; i < urns.length; i++){
+            int start = this.begin(update);
+            update.append("_:").append(LABEL).append(i).append(' ').append(this.resources.get(i)).append(" .\n");
+            bytes += utf8Length(update, start);
+            if(bytes >= this.batchBytes){
+                assign(connection.updateBlank(update.append('}').toString()), urns);
+                update.setLength(0);
+                bytes = 0;
+            }
+        }
+        if(update.length() > 0){
+            assign(connection.updateBlank(update.append('}').toString()), urns);
+        }
+        for(int i = 0; i < urns.length; i++){
+            if(urns[i]==null){
+                throw new TrackerException("no urn returned for resource "+i);
+            }
+        }
+        return urns;
+    }
+
+    /**
+     * @return int where the next resource starts, after the prologue if the batch was empty
+     */
+    private int begin(StringBuilder update){
+        int start = update.length();
+        if(start==0){
+            if(!this.prologue.isEmpty()){
+                update.append(this.prologue).append('\n');
+            }
+            update.append("INSERT DATA {\n");
+        }
+        return start;
+    }
+
+    /**
+     * @return int the UTF-8 length of the chars from start to the end, without encoding them
+     */
+    static int utf8Length(CharSequence chars, int start){
+        int length = 0;
+        for(int i = start; i < chars.length(); i++){
+            char c = chars.charAt(i);
+            if(c < 0x80){
+                length++;
+            } else if(c < 0x800){
+                length += 2;
+            } else if(Character.isHighSurrogate(c) && i + 1 < chars.length() && Character.isLowSurrogate(chars.charAt(i + 1))){
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static void assign(TrackerBlankNodes blankNodes, String[] urns){
+        for(int entry = 0; entry < blankNodes.size(); entry++){
+            String label = blankNodes.getLabel(entry);
+            if(label.startsWith(LABEL)){
+                try {
+                    int index = Integer.parseInt(label.substring(LABEL.length()));
+                    if(index >= 0 && index < urns.length){
+                        urns[index] = blankNodes.getUrn(entry);
+                    }
+                } catch(NumberFormatException e){
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.turnguard.libtracker.sparql;
+
+import com.turnguard.libtracker.sparql.Libtracker.TrackerException;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlConnection;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlCursor;
+
+/**
+ * A bus connection whose read-only queries are answered by a direct connection
+ * (tracker_sparql_connection_get_direct), skipping D-Bus and tracker-store.<br/>
+ * Queries and prepared statements go to the direct connection, updates and
+ * statistics to the bus connection this handle points to.
+ * Obtained from {@link Libtracker#getTrackerSparqlRoutingConnection()}.
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public class TrackerRoutingConnection extends TrackerSparqlConnection {
+
+    private final TrackerSparqlConnection bus;
+    private final TrackerSparqlConnection direct;
+
+    /**
+     * @param bus the connection for updates
+     * @param direct the connection for queries, null to query the bus connection
+     */
+    public TrackerRoutingConnection(TrackerSparqlConnection bus, TrackerSparqlConnection direct) {
+        super(bus.getPointer());
+        this.bus = bus;
+        this.direct = direct;
+    }
+
+    /**
+     * @return boolean true if queries are answered by a direct connection
+     */
+    public boolean isDirect(){
+        return this.direct!=null;
+    }
+    /**
+     * @return TrackerSparqlConnection the connection updates are sent to
+     */
+    public TrackerSparqlConnection getBusConnection(){
+        return this.bus;
+    }
+    /**
+     * @return TrackerSparqlConnection the connection queries are sent to
+     */
+    public TrackerSparqlConnection getQueryConnection(){
+        return this.direct!=null ? this.direct : this.bus;
+    }
+
+    /**
+     * Prepares the query on the query connection, the statement runs with
+     * this connection's timeout
+     * @param sparql a SPARQL 1.1 SelectQueryString with ~name parameters
+     * @return TrackerSparqlStatement
+     */
+    @Override
+    public TrackerSparqlStatement prepare(String sparql) {
+        return new TrackerSparqlStatement(this, this.getQueryConnection().statements(), sparql);
+    }
+
+    @Override
+    TrackerSparqlCursor queryNative(String query, TrackerCancellable cancellable, boolean owned) throws TrackerException {
+        return this.getQueryConnection().queryNative(query, cancellable, owned);
+    }
+
+    @Override
+    TrackerFuture<TrackerSparqlCursor> queryAsync(String query, TrackerCancellable cancellable, boolean owned) {
+        return this.getQueryConnection().queryAsync(query, cancellable, owned);
+    }
+
+    /**
+     * Closes the bus and the direct connection
+     */
+    @Override
+    public void close() {
+        super.close();
+        this.setPointer(null);
+        this.bus.close();
+        if(this.direct!=null){
+            this.direct.close();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.turnguard.libtracker.sparql;
+
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlValueType;
+
+/**
+ * One row of a {@link TrackerRowIterator}.<br/>
+ * A row is a view into the iterator's current chunk and is reused,
+ * it is only valid until the next call to next().
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public final class TrackerRow {
+
+    private ResultBatch batch;
+    private int row;
+
+    void set(ResultBatch batch, int row){
+        this.batch = batch;
+        this.row = row;
+    }
+
+    public int getColumnsCount(){
+        return this.batch.getColumnsCount();
+    }
+    public String getBindingName(int column){
+        return this.batch.getBindingName(column);
+    }
+    /**
+     * @param name a binding name
+     * @return int the column index, -1 if there is no such binding
+     */
+    public int getColumn(String name){
+        for(int column = 0; column < this.batch.getColumnsCount(); column++){
+            if(name.equals(this.batch.getBindingName(column))){
+                return column;
+            }
+        }
+        return -1;
+    }
+    public boolean isBound(int column){
+        return this.batch.isBound(this.row, column);
+    }
+    public TrackerSparqlValueType getValueType(int column){
+        return this.batch.getValueType(this.row, column);
+    }
+    public String getString(int column){
+        return this.batch.getString(this.row, column);
+    }
+    public long getLong(int column){
+        return this.batch.getLong(this.row, column);
+    }
+    public double getDouble(int column){
+        return this.batch.getDouble(this.row, column);
+    }
+    public boolean getBoolean(int column){
+        return this.batch.getBoolean(this.row, column);
+    }
+}
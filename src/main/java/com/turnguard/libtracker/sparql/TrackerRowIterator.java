@@ -0,0 +1,184 @@
+package com.turnguard.libtracker.sparql;
+
+import com.turnguard.libtracker.sparql.Libtracker.TrackerException;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlCursor;
+import com.turnguard.libtracker.sparql.Libtracker.UncheckedTrackerException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+/**
+ * Iterates a cursor's rows in chunks fetched with {@link TrackerSparqlCursor#fetch(int, ResultBatch)}
+ * and closes the cursor when it is exhausted or when the iterator is closed.<br/>
+ * With a read-ahead executor a background task fetches the next chunk while
+ * the caller processes the current one, two chunks take turns.
+ * Fetch errors surface as {@link UncheckedTrackerException}.
+ * <pre>
+ * try (TrackerRowIterator rows = con.query("SELECT ?s ?title WHERE { ... }").rows()) {
+ *   for(TrackerRow row : rows){
+ *     System.out.println(row.getString(0));
+ *   }
+ * }
+ * </pre>
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public class TrackerRowIterator implements Iterator<TrackerRow>, Iterable<TrackerRow>, AutoCloseable {
+
+    private final TrackerSparqlCursor cursor;
+    private final int chunkSize;
+    private final TrackerRow row = new TrackerRow();
+    private final boolean readAhead;
+    private final BlockingQueue<ResultBatch> empty = new ArrayBlockingQueue<>(2);
+    private final BlockingQueue<ResultBatch> full = new ArrayBlockingQueue<>(2);
+    private final CountDownLatch fetcherDone = new CountDownLatch(1);
+    private volatile boolean closed = false;
+    private volatile TrackerException error;
+    private ResultBatch current;
+    private int position = 0;
+    private boolean exhausted = false;
+
+    /**
+     * @param cursor
+     * @param chunkSize the number of rows fetched at a time
+     * @param readAhead runs the background fetch, null to fetch on the calling thread
+     */
+    public TrackerRowIterator(TrackerSparqlCursor cursor, int chunkSize, Executor readAhead) {
+        this.cursor = cursor;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.readAhead = readAhead!=null;
+        if(this.readAhead){
+            this.empty.add(new ResultBatch(this.chunkSize));
+            this.empty.add(new ResultBatch(this.chunkSize));
+            readAhead.execute(new Runnable() {
+                @Override
+                public void run() {
+                    TrackerRowIterator.this.fetchAhead();
+                }
+            });
+        } else {
+            this.current = new ResultBatch(this.chunkSize);
+            this.fetcherDone.countDown();
+        }
+    }
+
+    private void fetchAhead(){
+        try {
+            while(!this.closed){
+                ResultBatch batch = this.empty.take();
+                if(this.closed){
+                    break;
+                }
+                int rows;
+                try {
+                    rows = this.cursor.fetch(this.chunkSize, batch);
+                } catch(TrackerException e){
+                    this.error = e;
+                    rows = 0;
+                } catch(RuntimeException e){
+                    TrackerException error = new TrackerException(e.toString());
+                    error.initCause(e);
+                    this.error = error;
+                    rows = 0;
+                }
+                this.full.put(batch);
+                if(rows==0 && batch.getRowCount()==0){
+                    break;
+                }
+            }
+        } catch(InterruptedException e){
+            TrackerException error = new TrackerException("read-ahead interrupted");
+            error.initCause(e);
+            this.error = error;
+            this.full.offer(new ResultBatch(1));
+        } finally {
+            this.fetcherDone.countDown();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(this.closed){
+            return false;
+        }
+        if(this.current!=null && this.position < this.current.getRowCount()){
+            return true;
+        }
+        if(this.exhausted){
+            return false;
+        }
+        try {
+            if(this.readAhead){
+                if(this.current!=null){
+                    this.empty.put(this.current);
+                }
+                this.current = this.full.take();
+            } else {
+                this.cursor.fetch(this.chunkSize, this.current);
+            }
+        } catch(TrackerException e){
+            this.error = e;
+        } catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            this.close();
+            throw new IllegalStateException(e);
+        }
+        this.position = 0;
+        if(this.current.getRowCount()==0){
+            this.exhausted = true;
+            TrackerException e = this.error;
+            this.close();
+            if(e!=null){
+                throw new UncheckedTrackerException(e);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public TrackerRow next() {
+        if(!this.hasNext()){
+            throw new NoSuchElementException();
+        }
+        this.row.set(this.current, this.position++);
+        return this.row;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterator<TrackerRow> iterator() {
+        return this;
+    }
+
+    /**
+     * Stops the read-ahead and closes the cursor
+     */
+    @Override
+    public void close() {
+        if(this.closed){
+            return;
+        }
+        this.closed = true;
+        if(this.readAhead){
+            // hand all chunks back so a fetcher waiting for one wakes up and sees closed
+            this.full.drainTo(this.empty);
+            if(this.current!=null){
+                this.empty.offer(this.current);
+            }
+            this.empty.offer(new ResultBatch(1));
+            try {
+                this.fetcherDone.await();
+            } catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.cursor.close();
+    }
+}
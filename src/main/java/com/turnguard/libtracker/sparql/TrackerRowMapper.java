@@ -0,0 +1,331 @@
+package com.turnguard.libtracker.sparql;
+
+import com.turnguard.libtracker.sparql.Libtracker.TrackerException;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlCursor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps cursor rows to instances of a class with a no-arg constructor.<br/>
+ * Every non-static, non-transient field is mapped from the binding of the
+ * same name (or the one named by {@link TrackerColumn}). The columns are
+ * resolved once per cursor, every cell is decoded by its
+ * TrackerSparqlValueType straight into the field, without boxing primitives
+ * and without going through strings for numbers and booleans. Instances are
+ * created and fields set through method handles resolved once per mapper,
+ * not through reflection per row.<br/>
+ * Supported field types: long, int, double, boolean (and their wrappers),
+ * String, {@link TrackerDateTime}, java.util.Date, {@link TrackerResource},
+ * java.net.URI and Object (Long, Double, Boolean, TrackerDateTime,
+ * TrackerResource or String, by value type). Unbound cells leave primitive
+ * fields at their default and set object fields to null.<br/>
+ * A mapper remembers the cursor it was last used with and is not thread-safe.
+ * <pre>
+ * public class Document {
+ *   TrackerResource s;
+ *   String title;
+ *   &#64;TrackerColumn("size") long bytes;
+ *   TrackerDateTime created;
+ * }
+ * TrackerRowMapper&lt;Document&gt; mapper = TrackerRowMapper.of(Document.class);
+ * try (TrackerSparqlCursor cursor = con.query("SELECT ?s ?title ?size ?created WHERE { ... }")) {
+ *   List&lt;Document&gt; documents = mapper.mapAll(cursor);
+ * }
+ * </pre>
+ * @param <T> the mapped type
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public class TrackerRowMapper<T> {
+
+    private enum Kind { LONG, INT, DOUBLE, BOOLEAN, STRING, DATETIME, DATE, RESOURCE, URI, OBJECT }
+
+    private static final MethodType CONSTRUCTOR = MethodType.methodType(Object.class);
+
+    private final Class<T> type;
+    private final MethodHandle constructor;
+    private final Map<String, Field> fields = new HashMap<>();
+    private final Map<Field, Kind> kinds = new HashMap<>();
+    private final Map<Field, MethodHandle> setters = new HashMap<>();
+    private final TrackerDateTime.Parser parser = new TrackerDateTime.Parser();
+    private TrackerSparqlCursor cursor;
+    private Column[] columns;
+
+    private TrackerRowMapper(Class<T> type) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        this.type = type;
+        try {
+            Constructor<T> c = type.getDeclaredConstructor();
+            c.setAccessible(true);
+            this.constructor = lookup.unreflectConstructor(c).asType(CONSTRUCTOR);
+        } catch(NoSuchMethodException e){
+            throw new IllegalArgumentException(type.getName()+" has no no-arg constructor", e);
+        } catch(IllegalAccessException e){
+            throw new IllegalArgumentException("cannot access the constructor of "+type.getName(), e);
+        }
+        for(Class<?> c = type; c!=null && c!=Object.class; c = c.getSuperclass()){
+            for(Field field : c.getDeclaredFields()){
+                int modifiers = field.getModifiers();
+                if(Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()){
+                    continue;
+                }
+                TrackerColumn annotation = field.getAnnotation(TrackerColumn.class);
+                String name = annotation!=null ? annotation.value() : field.getName();
+                if(this.fields.containsKey(name)){
+                    continue;
+                }
+                Kind kind = kind(field.getType());
+                if(kind==null){
+                    throw new IllegalArgumentException("unsupported type "+field.getType().getName()+" of field "+field.getName());
+                }
+                field.setAccessible(true);
+                try {
+                    this.setters.put(field, setter(lookup.unreflectSetter(field), kind, field.getType().isPrimitive()));
+                } catch(IllegalAccessException e){
+                    throw new IllegalArgumentException("cannot set field "+field.getName(), e);
+                }
+                this.fields.put(name, field);
+                this.kinds.put(field, kind);
+            }
+        }
+    }
+
+    /**
+     * @param <T>
+     * @param type a class with a no-arg constructor
+     * @return TrackerRowMapper
+     * @throws IllegalArgumentException if a field has an unsupported type
+     */
+    public static <T> TrackerRowMapper<T> of(Class<T> type){
+        return new TrackerRowMapper<>(type);
+    }
+
+    private static Kind kind(Class<?> type){
+        if(type==long.class || type==Long.class){
+            return Kind.LONG;
+        } else if(type==int.class || type==Integer.class){
+            return Kind.INT;
+        } else if(type==double.class || type==Double.class){
+            return Kind.DOUBLE;
+        } else if(type==boolean.class || type==Boolean.class){
+            return Kind.BOOLEAN;
+        } else if(type==String.class){
+            return Kind.STRING;
+        } else if(type==TrackerDateTime.class){
+            return Kind.DATETIME;
+        } else if(type==Date.class){
+            return Kind.DATE;
+        } else if(type==TrackerResource.class){
+            return Kind.RESOURCE;
+        } else if(type==URI.class){
+            return Kind.URI;
+        } else if(type==Object.class){
+            return Kind.OBJECT;
+        }
+        return null;
+    }
+
+    /**
+     * Adapts a field's setter to (Object, long|int|double|boolean) for 
+     * primitive fields and to (Object, Object) for all others, so it can be
+     * called with invokeExact
+     */
+    private static MethodHandle setter(MethodHandle setter, Kind kind, boolean primitive){
+        Class<?> value = Object.class;
+        if(primitive){
+            switch(kind){
+                case LONG:
+                    value = long.class;
+                    break;
+                case INT:
+                    value = int.class;
+                    break;
+                case DOUBLE:
+                    value = double.class;
+                    break;
+                default:
+                    value = boolean.class;
+            }
+        }
+        return setter.asType(MethodType.methodType(void.class, Object.class, value));
+    }
+
+    private void bind(TrackerSparqlCursor cursor){
+        int count = cursor.getColumnsCount();
+        List<Column> bound = new ArrayList<>(count);
+        for(int column = 0; column < count; column++){
+            Field field = this.fields.get(cursor.getBindingName(column));
+            if(field!=null){
+                bound.add(new Column(field, this.kinds.get(field), this.setters.get(field), column));
+            }
+        }
+        this.columns = bound.toArray(new Column[bound.size()]);
+        this.cursor = cursor;
+    }
+
+    /**
+     * Maps the cursor's current row
+     * @param cursor positioned on a row
+     * @return T
+     */
+    public T map(TrackerSparqlCursor cursor){
+        if(cursor!=this.cursor){
+            this.bind(cursor);
+        }
+        Object target;
+        try {
+            target = (Object)this.constructor.invokeExact();
+            for(Column column : this.columns){
+                column.set(target, cursor, this.parser);
+            }
+        } catch(RuntimeException | Error e){
+            throw e;
+        } catch(Throwable e){
+            throw new IllegalStateException("cannot map row to "+this.type.getName(), e);
+        }
+        return this.type.cast(target);
+    }
+
+    /**
+     * Maps the cursor's remaining rows, the cursor is not closed
+     * @param cursor
+     * @return List
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException
+     */
+    public List<T> mapAll(TrackerSparqlCursor cursor) throws TrackerException {
+        List<T> rows = new ArrayList<>();
+        while(cursor.next()){
+            rows.add(this.map(cursor));
+        }
+        return rows;
+    }
+
+    /**
+     * A field bound to a column
+     */
+    private static final class Column {
+        private final String name;
+        private final Kind kind;
+        private final MethodHandle setter;
+        private final int column;
+        private final boolean primitive;
+
+        Column(Field field, Kind kind, MethodHandle setter, int column) {
+            this.name = field.getName();
+            this.kind = kind;
+            this.setter = setter;
+            this.column = column;
+            this.primitive = field.getType().isPrimitive();
+        }
+
+        void set(Object target, TrackerSparqlCursor cursor, TrackerDateTime.Parser parser) throws Throwable {
+            int type = cursor.getValueType(this.column).getIntValue();
+            if(type == 0){
+                if(!this.primitive){
+                    this.setter.invokeExact(target, (Object)null);
+                }
+                return;
+            }
+            switch(this.kind){
+                case LONG:
+                    long l = this.longValue(cursor, type);
+                    if(this.primitive){
+                        this.setter.invokeExact(target, l);
+                    } else {
+                        this.setter.invokeExact(target, (Object)Long.valueOf(l));
+                    }
+                    break;
+                case INT:
+                    long i = this.longValue(cursor, type);
+                    if(i < Integer.MIN_VALUE || i > Integer.MAX_VALUE){
+                        throw new ArithmeticException(i+" does not fit field "+this.name);
+                    }
+                    if(this.primitive){
+                        this.setter.invokeExact(target, (int)i);
+                    } else {
+                        this.setter.invokeExact(target, (Object)Integer.valueOf((int)i));
+                    }
+                    break;
+                case DOUBLE:
+                    double d = type == 4 ? cursor.getDouble(this.column) : (type == 3 ? cursor.getLong(this.column) : Double.parseDouble(cursor.getString(this.column)));
+                    if(this.primitive){
+                        this.setter.invokeExact(target, d);
+                    } else {
+                        this.setter.invokeExact(target, (Object)Double.valueOf(d));
+                    }
+                    break;
+                case BOOLEAN:
+                    boolean b = type == 7 ? cursor.getBoolean(this.column) : parseBoolean(cursor.getString(this.column));
+                    if(this.primitive){
+                        this.setter.invokeExact(target, b);
+                    } else {
+                        this.setter.invokeExact(target, (Object)Boolean.valueOf(b));
+                    }
+                    break;
+                case STRING:
+                    this.setter.invokeExact(target, (Object)cursor.getString(this.column));
+                    break;
+                case DATETIME:
+                    this.setter.invokeExact(target, (Object)parser.parse(cursor.getStringBuffer(this.column)));
+                    break;
+                case DATE:
+                    this.setter.invokeExact(target, (Object)parser.parse(cursor.getStringBuffer(this.column)).toDate());
+                    break;
+                case RESOURCE:
+                    this.setter.invokeExact(target, (Object)new TrackerResource(cursor.getString(this.column), type == 6));
+                    break;
+                case URI:
+                    this.setter.invokeExact(target, (Object)java.net.URI.create(cursor.getString(this.column)));
+                    break;
+                default:
+                    this.setter.invokeExact(target, natural(cursor, this.column, type, parser));
+            }
+        }
+
+        private long longValue(TrackerSparqlCursor cursor, int type){
+            switch(type){
+                case 3:
+                    return cursor.getLong(this.column);
+                case 4:
+                    return (long)cursor.getDouble(this.column);
+                case 7:
+                    return cursor.getBoolean(this.column) ? 1 : 0;
+                default:
+                    return Long.parseLong(cursor.getString(this.column));
+            }
+        }
+
+        private static boolean parseBoolean(String value){
+            return "true".equals(value) || "1".equals(value);
+        }
+
+        private static Object natural(TrackerSparqlCursor cursor, int column, int type, TrackerDateTime.Parser parser){
+            switch(type){
+                case 1:
+                case 6:
+                    return new TrackerResource(cursor.getString(column), type == 6);
+                case 3:
+                    return cursor.getLong(column);
+                case 4:
+                    return cursor.getDouble(column);
+                case 5:
+                    ByteBuffer value = cursor.getStringBuffer(column);
+                    return parser.parse(value);
+                case 7:
+                    return cursor.getBoolean(column);
+                default:
+                    return cursor.getString(column);
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.turnguard.libtracker.sparql;
+
+import com.sun.jna.ptr.PointerByReference;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerException;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlConnection;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlCursor;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A prepared SPARQL query with ~name parameters, obtained from
+ * {@link Libtracker.TrackerSparqlConnection#prepare(String)}.<br/>
+ * When the loaded libtracker-sparql provides TrackerSparqlStatement
+ * (libtracker-sparql-2.0 and later) the values are bound natively and the
+ * query is parsed once per connection. Otherwise the cached template is
+ * rendered with properly escaped literals, so values can never change the
+ * structure of the query.<br/>
+ * Instances are cheap and not thread-safe, the cached template is shared.
+ * <pre>
+ * TrackerSparqlStatement statement = con.prepare("SELECT ?s WHERE { ?s nie:title ~title }");
+ * statement.bindString("title", "sample");
+ * cursor = statement.execute();
+ * </pre>
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public class TrackerSparqlStatement {
+
+    private final TrackerSparqlConnection connection;
+    private final TrackerStatementCache cache;
+    private final String sparql;
+    private final Map<String, Object> bindings = new HashMap<>();
+
+    TrackerSparqlStatement(TrackerSparqlConnection connection, TrackerStatementCache cache, String sparql) {
+        this.connection = connection;
+        this.cache = cache;
+        this.sparql = sparql;
+    }
+
+    /**
+     * @return String the query template
+     */
+    public String getSparql(){
+        return this.sparql;
+    }
+    /**
+     * Binding for: void tracker_sparql_statement_bind_string (TrackerSparqlStatement *stmt, const gchar *name, const gchar *value);
+     * @param name the parameter name without ~
+     * @param value
+     */
+    public void bindString(String name, String value){
+        if(value==null){
+            throw new IllegalArgumentException("value must not be null");
+        }
+        this.bindings.put(name, value);
+    }
+    /**
+     * Binding for: void tracker_sparql_statement_bind_int (TrackerSparqlStatement *stmt, const gchar *name, gint64 value);
+     * @param name the parameter name without ~
+     * @param value
+     */
+    public void bindInt(String name, long value){
+        this.bindings.put(name, value);
+    }
+    /**
+     * Binding for: void tracker_sparql_statement_bind_double (TrackerSparqlStatement *stmt, const gchar *name, gdouble value);
+     * @param name the parameter name without ~
+     * @param value
+     */
+    public void bindDouble(String name, double value){
+        this.bindings.put(name, value);
+    }
+    /**
+     * Binding for: void tracker_sparql_statement_bind_boolean (TrackerSparqlStatement *stmt, const gchar *name, gboolean value);
+     * @param name the parameter name without ~
+     * @param value
+     */
+    public void bindBoolean(String name, boolean value){
+        this.bindings.put(name, value);
+    }
+    /**
+     * Removes all bound values
+     */
+    public void clearBindings(){
+        this.bindings.clear();
+    }
+
+    /**
+     * Wrapper for library method tracker_sparql_statement_execute, with the connection's timeout
+     * @return Libtracker.TrackerSparqlCursor
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException
+     * @throws IllegalStateException if a parameter of the template is not bound
+     */
+    public TrackerSparqlCursor execute() throws TrackerException {
+        while(true){
+            TrackerStatementCache.Template template = this.cache.get(this.sparql);
+            synchronized(template){
+                if(template.closed){
+                    continue;
+                }
+                if(template.statement==null){
+                    return this.connection.query(this.render(template));
+                }
+                for(String name : template.names){
+                    this.bind(template, name);
+                }
+                TrackerMetrics.Trace trace = TrackerMetrics.trace(this.sparql);
+                TrackerCancellable cancellable = this.connection.deadline();
+                PointerByReference error = Libtracker.error();
+                TrackerSparqlCursor cursor;
+                try {
+                    cursor = Libtracker.SPARQL.tracker_sparql_statement_execute(template.statement, Libtracker.pointer(cancellable), error);
+                    Libtracker.checkError(error, trace, cancellable);
+                } catch(TrackerException | RuntimeException e){
+                    if(cancellable!=null){
+                        cancellable.close();
+                    }
+                    throw e;
+                }
+                cursor.own();
+                cursor.cancellable(cancellable, true);
+                return trace==null ? cursor : trace.opened(cursor);
+            }
+        }
+    }
+
+    private void bind(TrackerStatementCache.Template template, String name){
+        Object value = this.value(name);
+        if(value instanceof String){
+            Libtracker.SPARQL.tracker_sparql_statement_bind_string(template.statement, name, (String)value);
+        } else if(value instanceof Long){
+            Libtracker.SPARQL.tracker_sparql_statement_bind_int(template.statement, name, (Long)value);
+        } else if(value instanceof Double){
+            Libtracker.SPARQL.tracker_sparql_statement_bind_double(template.statement, name, (Double)value);
+        } else {
+            Libtracker.SPARQL.tracker_sparql_statement_bind_boolean(template.statement, name, (Boolean)value);
+        }
+    }
+
+    private Object value(String name){
+        Object value = this.bindings.get(name);
+        if(value==null){
+            throw new IllegalStateException("parameter ~"+name+" is not bound");
+        }
+        return value;
+    }
+
+    String render(TrackerStatementCache.Template template){
+        StringBuilder query = new StringBuilder(this.sparql.length() + 16 * template.names.length);
+        for(int i = 0; i < template.names.length; i++){
+            query.append(template.parts[i]);
+            Object value = this.value(template.names[i]);
+            if(value instanceof String){
+                appendLiteral(query, (String)value);
+            } else if(value instanceof Double && (((Double)value).isNaN() || ((Double)value).isInfinite())){
+                query.append('"').append(value.toString().replace("Infinity", "INF")).append("\"^^xsd:double");
+            } else {
+                query.append(value);
+            }
+        }
+        query.append(template.parts[template.names.length]);
+        return query.toString();
+    }
+
+    /**
+     * Appends value as a double quoted SPARQL string literal
+     * @param query
+     * @param value
+     */
+    static void appendLiteral(StringBuilder query, String value){
+        query.append('"');
+        for(int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            switch(c){
+                case '"': query.append("\\\""); break;
+                case '\\': query.append("\\\\"); break;
+                case '\n': query.append("\\n"); break;
+                case '\r': query.append("\\r"); break;
+                case '\t': query.append("\\t"); break;
+                case '\b': query.append("\\b"); break;
+                case '\f': query.append("\\f"); break;
+                default: query.append(c);
+            }
+        }
+        query.append('"');
+    }
+}
@@ -0,0 +1,175 @@
+package com.turnguard.libtracker.sparql;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.PointerByReference;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerException;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlConnection;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of prepared query templates of one connection.<br/>
+ * A template is parsed once into its literal parts and ~parameters. If the
+ * loaded libtracker-sparql provides TrackerSparqlStatement, the native
+ * statement is created once as well and unref'd on eviction, or once the
+ * template is garbage collected.
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+class TrackerStatementCache {
+
+    private final TrackerSparqlConnection connection;
+    private final LinkedHashMap<String, Template> templates;
+
+    TrackerStatementCache(TrackerSparqlConnection connection, final int maxSize) {
+        this.connection = connection;
+        this.templates = new LinkedHashMap<String, Template>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Template> eldest) {
+                if(this.size() > maxSize){
+                    eldest.getValue().close();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached template, preparing it on a miss
+     * @param sparql
+     * @return Template
+     * @throws com.turnguard.libtracker.sparql.Libtracker.TrackerException
+     */
+    synchronized Template get(String sparql) throws TrackerException {
+        Template template = this.templates.get(sparql);
+        if(template==null){
+            template = new Template(sparql);
+            if(Libtracker.isStatementSupported()){
+                PointerByReference error = Libtracker.error();
+                template.statement = Libtracker.SPARQL.tracker_sparql_connection_query_statement(this.connection, sparql, null, error);
+                Libtracker.checkError(error);
+                template.resource = NativeResources.object(template, template.statement);
+            }
+            this.templates.put(sparql, template);
+        }
+        return template;
+    }
+
+    synchronized int size(){
+        return this.templates.size();
+    }
+
+    synchronized void clear(){
+        for(Template template : this.templates.values()){
+            template.close();
+        }
+        this.templates.clear();
+    }
+
+    /**
+     * A parsed query template, parts holds the literal text between the
+     * parameters, names[i] follows parts[i]. Parameters are not looked for
+     * in strings, IRIs and # comments; a '<' directly after an operand is
+     * the less-than operator, not the start of an IRI.
+     */
+    static final class Template {
+        final String sparql;
+        final String[] parts;
+        final String[] names;
+        Pointer statement;
+        NativeResources.Ref resource;
+        boolean closed = false;
+
+        Template(String sparql) {
+            this.sparql = sparql;
+            List<String> partList = new ArrayList<>();
+            List<String> nameList = new ArrayList<>();
+            int start = 0;
+            int i = 0;
+            int length = sparql.length();
+            while(i < length){
+                char c = sparql.charAt(i);
+                if(c=='"' || c=='\''){
+                    i = skipString(sparql, i, c);
+                } else if(c=='#'){
+                    i = skipComment(sparql, i);
+                } else if(c=='<' && (i==0 || !isOperandEnd(sparql.charAt(i-1)))){
+                    i = skipIri(sparql, i);
+                } else if(c=='~' && i+1 < length && isNameChar(sparql.charAt(i+1))){
+                    int end = i + 1;
+                    while(end < length && isNameChar(sparql.charAt(end))){
+                        end++;
+                    }
+                    partList.add(sparql.substring(start, i));
+                    nameList.add(sparql.substring(i+1, end));
+                    start = end;
+                    i = end;
+                } else {
+                    i++;
+                }
+            }
+            partList.add(sparql.substring(start));
+            this.parts = partList.toArray(new String[partList.size()]);
+            this.names = nameList.toArray(new String[nameList.size()]);
+        }
+
+        private static boolean isNameChar(char c){
+            return Character.isLetterOrDigit(c) || c=='_';
+        }
+
+        /**
+         * @return boolean true if c may end a variable, literal, name or bracketed expression
+         */
+        private static boolean isOperandEnd(char c){
+            return isNameChar(c) || c==')' || c==']' || c=='"' || c=='\'';
+        }
+
+        private static int skipComment(String sparql, int i){
+            while(i < sparql.length() && sparql.charAt(i)!='\n' && sparql.charAt(i)!='\r'){
+                i++;
+            }
+            return i;
+        }
+
+        private static int skipString(String sparql, int i, char quote){
+            i++;
+            while(i < sparql.length()){
+                char c = sparql.charAt(i);
+                if(c=='\\'){
+                    i += 2;
+                } else if(c==quote){
+                    return i + 1;
+                } else {
+                    i++;
+                }
+            }
+            return i;
+        }
+
+        private static int skipIri(String sparql, int i){
+            for(int end = i + 1; end < sparql.length(); end++){
+                char c = sparql.charAt(end);
+                if(c=='>'){
+                    return end + 1;
+                }
+                if(Character.isWhitespace(c) || "<\"{}|^`\\".indexOf(c) >= 0){
+                    break;
+                }
+            }
+            return i + 1;
+        }
+
+        synchronized void close(){
+            if(!this.closed){
+                this.closed = true;
+                if(this.resource!=null){
+                    this.resource.release();
+                    this.resource = null;
+                }
+                this.statement = null;
+            }
+        }
+    }
+}
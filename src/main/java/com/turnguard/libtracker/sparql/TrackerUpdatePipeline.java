@@ -0,0 +1,232 @@
+package com.turnguard.libtracker.sparql;
+
+import com.turnguard.libtracker.sparql.Libtracker.TrackerException;
+import com.turnguard.libtracker.sparql.Libtracker.TrackerSparqlConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces single update statements into tracker_sparql_connection_update_array calls.<br/>
+ * A batch is flushed as soon as it holds maxBatchSize statements or maxDelay
+ * milliseconds after its first statement was queued, whichever comes first.
+ * Every statement gets its own {@link TrackerFuture}, failed with the
+ * TrackerException tracker reported for that statement.
+ * At most capacity statements may be queued or in flight, submit() blocks
+ * beyond that.
+ * <pre>
+ * TrackerUpdatePipeline pipeline = new TrackerUpdatePipeline(con, 500, 50, 10000, 0);
+ * try {
+ *   for(String insert : inserts){
+ *     pipeline.submit(insert);
+ *   }
+ * } finally {
+ *   pipeline.close();
+ * }
+ * </pre>
+ * @author <a href="http://www.turnguard.com/turnguard" target="_blank">http://www.turnguard.com/turnguard</a>
+ */
+public class TrackerUpdatePipeline implements AutoCloseable {
+
+    private final TrackerSparqlConnection connection;
+    private final int maxBatchSize;
+    private final long maxDelay;
+    private final int glibPriority;
+    private final Semaphore permits;
+    private final int capacity;
+    private final ScheduledExecutorService scheduler;
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            TrackerUpdatePipeline.this.flush();
+        }
+    };
+    private List<String> statements = new ArrayList<>();
+    private List<TrackerFuture<Void>> futures = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean closed = false;
+
+    /**
+     * @param connection
+     * @param maxBatchSize the number of statements per update_array call
+     * @param maxDelay milliseconds a statement may wait for its batch to fill up
+     * @param capacity the number of statements that may be queued or in flight
+     * @param glibPriority the GLib priority of the update_array calls
+     */
+    public TrackerUpdatePipeline(TrackerSparqlConnection connection, int maxBatchSize, long maxDelay, int capacity, int glibPriority) {
+        if(maxBatchSize < 1 || capacity < maxBatchSize){
+            throw new IllegalArgumentException("maxBatchSize must be positive and not exceed capacity");
+        }
+        this.connection = connection;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelay = maxDelay;
+        this.capacity = capacity;
+        this.glibPriority = glibPriority;
+        this.permits = new Semaphore(capacity, true);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "libtracker-sparql-update-pipeline");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Pipeline with G_PRIORITY_DEFAULT
+     * @param connection
+     * @param maxBatchSize
+     * @param maxDelay
+     * @param capacity
+     */
+    public TrackerUpdatePipeline(TrackerSparqlConnection connection, int maxBatchSize, long maxDelay, int capacity) {
+        this(connection, maxBatchSize, maxDelay, capacity, 0);
+    }
+
+    /**
+     * Queues an update statement, blocks while the pipeline is full
+     * @param query a SPARQL 1.1 UpdateQueryString
+     * @return TrackerFuture completed once the statement's batch is done
+     * @throws InterruptedException
+     */
+    public TrackerFuture<Void> submit(String query) throws InterruptedException {
+        this.permits.acquire();
+        return this.enqueue(query);
+    }
+
+    /**
+     * Queues an update statement, waits at most timeout for space in the pipeline
+     * @param query a SPARQL 1.1 UpdateQueryString
+     * @param timeout
+     * @param unit
+     * @return TrackerFuture or null if the pipeline stayed full
+     * @throws InterruptedException
+     */
+    public TrackerFuture<Void> offer(String query, long timeout, TimeUnit unit) throws InterruptedException {
+        if(!this.permits.tryAcquire(timeout, unit)){
+            return null;
+        }
+        return this.enqueue(query);
+    }
+
+    private TrackerFuture<Void> enqueue(String query){
+        TrackerFuture<Void> future = new TrackerFuture<>();
+        boolean full;
+        synchronized(this){
+            if(this.closed){
+                this.permits.release();
+                throw new IllegalStateException("pipeline is closed");
+            }
+            this.statements.add(query);
+            this.futures.add(future);
+            full = this.statements.size() >= this.maxBatchSize;
+            if(!full && this.scheduledFlush==null){
+                this.scheduledFlush = this.scheduler.schedule(this.flushTask, this.maxDelay, TimeUnit.MILLISECONDS);
+            }
+        }
+        if(full){
+            this.flush();
+        }
+        return future;
+    }
+
+    /**
+     * Sends all queued statements now
+     */
+    public void flush(){
+        final List<String> batch;
+        final List<TrackerFuture<Void>> pending;
+        synchronized(this){
+            if(this.scheduledFlush!=null){
+                this.scheduledFlush.cancel(false);
+                this.scheduledFlush = null;
+            }
+            if(this.statements.isEmpty()){
+                return;
+            }
+            batch = this.statements;
+            pending = this.futures;
+            this.statements = new ArrayList<>(this.maxBatchSize);
+            this.futures = new ArrayList<>(this.maxBatchSize);
+        }
+        TrackerFuture<TrackerException[]> result;
+        try {
+            result = this.connection.updateArrayAsync(batch.toArray(new String[batch.size()]), this.glibPriority);
+        } catch(RuntimeException e){
+            this.complete(pending, null, e);
+            return;
+        }
+        result.addCallback(new TrackerCallback<TrackerException[]>() {
+            @Override
+            public void onSuccess(TrackerException[] errors) {
+                TrackerUpdatePipeline.this.complete(pending, errors, null);
+            }
+            @Override
+            public void onFailure(Throwable failure) {
+                TrackerUpdatePipeline.this.complete(pending, null, failure);
+            }
+        });
+    }
+
+    private void complete(List<TrackerFuture<Void>> pending, TrackerException[] errors, Throwable failure){
+        try {
+            for(int i = 0; i < pending.size(); i++){
+                if(failure!=null){
+                    pending.get(i).fail(failure);
+                } else if(errors[i]!=null){
+                    pending.get(i).fail(errors[i]);
+                } else {
+                    pending.get(i).complete(null);
+                }
+            }
+        } finally {
+            this.permits.release(pending.size());
+        }
+    }
+
+    /**
+     * @return int the number of statements queued or in flight
+     */
+    public int getPendingCount(){
+        return this.capacity - this.permits.availablePermits();
+    }
+
+    /**
+     * Flushes the queued statements and waits until all statements are done,
+     * statements may still be submitted
+     * @throws InterruptedException
+     */
+    public void awaitCompletion() throws InterruptedException {
+        this.flush();
+        this.permits.acquire(this.capacity);
+        this.permits.release(this.capacity);
+    }
+
+    /**
+     * Flushes the queued statements and waits until all statements are done.<br/>
+     * If the calling thread is interrupted it stops waiting and keeps its
+     * interrupt status, the statements in flight still complete their futures.
+     */
+    @Override
+    public void close() {
+        synchronized(this){
+            if(this.closed){
+                return;
+            }
+            this.closed = true;
+        }
+        try {
+            this.awaitCompletion();
+        } catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        } finally {
+            this.scheduler.shutdown();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.turnguard.libtracker.sparql;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * Library detection, no libtracker-sparql needed
+ * @author turnguard
+ */
+public class LibtrackerLibraryTest {
+
+    @Test
+    public void test_001_version() {
+        System.out.println("test_001_version");
+        TestCase.assertEquals(1, Libtracker.version(Libtracker.LIBTRACKER_SPARQL));
+        TestCase.assertEquals(2, Libtracker.version(Libtracker.LIBTRACKER_SPARQL_2));
+        TestCase.assertEquals(3, Libtracker.version(Libtracker.LIBTRACKER_SPARQL_3));
+        TestCase.assertEquals(3, Libtracker.version("/usr/lib/x86_64-linux-gnu/libtracker-sparql-3.0.so.0"));
+        TestCase.assertEquals(1, Libtracker.version("tracker-stand-in"));
+        TestCase.assertEquals(Libtracker.version(Libtracker.LIBRARY), Libtracker.VERSION);
+    }
+
+    @Test
+    public void test_002_detect() {
+        System.out.println("test_002_detect");
+        TestCase.assertEquals(Libtracker.LIBGLIB, Libtracker.detectLibrary("no-such-library-1.0", Libtracker.LIBGLIB, Libtracker.LIBGIO));
+        TestCase.assertEquals("no-such-library-1.0", Libtracker.detectLibrary("no-such-library-1.0", "no-such-library-2.0"));
+    }
+
+    @Test
+    public void test_003_requires_tracker_3() throws Exception {
+        System.out.println("test_003_requires_tracker_3");
+        if(Libtracker.VERSION >= 3){
+            return;
+        }
+        try {
+            Libtracker.newTrackerSparqlMemoryConnection(null);
+            TestCase.fail();
+        } catch(Libtracker.TrackerException e){
+            TestCase.assertTrue(e.getMessage().contains("tracker_sparql_connection_new"));
+        }
+    }
+}
@@ -1,7 +1,15 @@
 package com.turnguard.libtracker.sparql;
 
 import com.turnguard.libtracker.sparql.Libtracker;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import junit.framework.TestCase;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -78,6 +86,221 @@ public class LibtrackerSparqlTest {
         con.update("DELETE DATA { "+test_subject+" a rdfs:Resource }");              
     }
     
+    @Test
+    public void test_004_fetch_batch() throws Libtracker.TrackerException {
+        System.out.println("test_fetch_batch");
+        Libtracker.TrackerSparqlCursor cursor = null;
+        ResultBatch batch = new ResultBatch(16);
+        int rows = 0;
+        try {
+            cursor = con.query("SELECT ?s ?p ?o WHERE { ?s ?p ?o . } LIMIT 100");
+            while(cursor.fetch(16, batch) > 0){
+                for(int row = 0; row < batch.getRowCount(); row++){
+                    for(int column = 0; column < batch.getColumnsCount(); column++){
+                        System.out.print(batch.getString(row, column) + " ");
+                    }
+                    System.out.println();
+                }
+                rows += batch.getRowCount();
+            }
+            TestCase.assertTrue(rows <= 100);
+        } finally {
+            if(cursor!=null){
+                try {cursor.close();} catch(Exception ee){}
+            }
+        }
+    }
+    
+    @Test
+    public void test_005_string_buffer() throws Libtracker.TrackerException {
+        System.out.println("test_string_buffer");
+        Libtracker.TrackerSparqlCursor cursor = null;
+        ByteBuffer target = ByteBuffer.allocate(4096);
+        try {
+            cursor = con.query("SELECT ?s WHERE { ?s a rdfs:Class . } LIMIT 10");
+            while(cursor.next()){
+                ByteBuffer view = cursor.getStringBuffer(0);
+                target.clear();
+                int length = cursor.getString(0, target);
+                TestCase.assertEquals(view.remaining(), length);
+                TestCase.assertEquals(cursor.getString(0), new String(target.array(), 0, length, Charset.forName("UTF-8")));
+            }
+        } finally {
+            if(cursor!=null){
+                try {cursor.close();} catch(Exception ee){}
+            }
+        }
+    }
+    
+    @Test
+    public void test_006_query_async() throws Exception {
+        System.out.println("test_query_async");
+        Libtracker.TrackerSparqlCursor cursor = null;
+        try {
+            cursor = con.queryAsync("SELECT ?s WHERE { ?s a rdfs:Class . } LIMIT 10").get(10, TimeUnit.SECONDS);
+            while(cursor.nextAsync().get(10, TimeUnit.SECONDS)){
+                System.out.println(cursor.getString(0));
+            }
+        } finally {
+            if(cursor!=null){
+                try {cursor.close();} catch(Exception ee){}
+            }
+        }
+    }
+    
+    @Test
+    public void test_007_update_pipeline() throws Exception {
+        System.out.println("test_update_pipeline");
+        List<TrackerFuture<Void>> futures = new ArrayList<>();
+        try (TrackerUpdatePipeline pipeline = new TrackerUpdatePipeline(con, 4, 50, 16)) {
+            for(int i = 0; i < 10; i++){
+                futures.add(pipeline.submit("INSERT DATA { <urn:uuid:"+uuid+"-"+i+"> a rdfs:Resource }"));
+            }
+            futures.add(pipeline.submit("INSERT DATA { this is not sparql }"));
+            for(int i = 0; i < 10; i++){
+                pipeline.submit("DELETE DATA { <urn:uuid:"+uuid+"-"+i+"> a rdfs:Resource }");
+            }
+        }
+        for(int i = 0; i < 10; i++){
+            futures.get(i).get();
+        }
+        try {
+            futures.get(10).get();
+            TestCase.fail("invalid statement must fail");
+        } catch(ExecutionException e){
+            TestCase.assertTrue(e.getCause() instanceof Libtracker.TrackerException);
+        }
+    }
+    
+    @Test
+    public void test_008_prepared_statement() throws Libtracker.TrackerException {
+        System.out.println("test_prepared_statement");
+        Libtracker.TrackerSparqlCursor cursor = null;
+        TrackerSparqlStatement statement = con.prepare("SELECT ?s WHERE { ?s a rdfs:Class . FILTER(str(?s) = ~iri) }");
+        try {
+            statement.bindString("iri", "http://www.w3.org/2000/01/rdf-schema#Class");
+            cursor = statement.execute();
+            TestCase.assertTrue(cursor.next());
+            TestCase.assertEquals("http://www.w3.org/2000/01/rdf-schema#Class", cursor.getString(0));
+        } finally {
+            if(cursor!=null){
+                try {cursor.close();} catch(Exception ee){}
+            }
+        }
+    }
+    
+    @Test
+    public void test_009_routing_connection() throws Libtracker.TrackerException {
+        System.out.println("test_routing_connection");
+        TrackerRoutingConnection routing = Libtracker.getTrackerSparqlRoutingConnection();
+        Libtracker.TrackerSparqlCursor cursor = null;
+        System.out.println("direct: " + routing.isDirect());
+        try {
+            routing.update("INSERT DATA { "+test_subject+" a rdfs:Resource }");
+            cursor = routing.query("SELECT ?type WHERE { "+test_subject+" a ?type . }");
+            TestCase.assertTrue(cursor.next());
+        } finally {
+            if(cursor!=null){
+                try {cursor.close();} catch(Exception ee){}
+            }
+            routing.update("DELETE DATA { "+test_subject+" a rdfs:Resource }");
+        }
+    }
+    
+    @Test
+    public void test_010_query_cache() throws Libtracker.TrackerException {
+        System.out.println("test_query_cache");
+        Libtracker.TrackerSparqlConnection cached = Libtracker.getTrackerSparqlConnection();
+        TrackerQueryCache cache = new TrackerQueryCache(1 << 20);
+        cached.setQueryCache(cache);
+        String query = "SELECT ?s WHERE { ?s a rdfs:Class . } LIMIT 10";
+        for(int i = 0; i < 3; i++){
+            Libtracker.TrackerSparqlCursor cursor = cached.query(query);
+            while(cursor.next()){}
+            cursor.close();
+        }
+        TestCase.assertEquals(1, cache.getMissCount());
+        TestCase.assertEquals(2, cache.getHitCount());
+        cached.update("INSERT DATA { "+test_subject+" a rdfs:Resource }");
+        cached.update("DELETE DATA { "+test_subject+" a rdfs:Resource }");
+        TestCase.assertEquals(0, cache.getSize());
+        cached.setQueryCache(null);
+    }
+
+    @Test
+    public void test_011_native_resources() throws Libtracker.TrackerException {
+        System.out.println("test_native_resources");
+        long objects = NativeResources.getObjectCount();
+        Libtracker.TrackerSparqlCursor cursor = con.query("SELECT ?s WHERE { ?s a rdfs:Class . } LIMIT 1");
+        TestCase.assertEquals(objects + 1, NativeResources.getObjectCount());
+        cursor.close();
+        cursor.close();
+        TestCase.assertEquals(objects, NativeResources.getObjectCount());
+        try {
+            con.query("SELECT ?s WHERE { ?s a nonexistent:Class }");
+            TestCase.fail();
+        } catch(Libtracker.TrackerException e){
+            TestCase.assertNotNull(e.getMessage());
+        }
+        TestCase.assertEquals(objects, NativeResources.getObjectCount());
+    }
+
+    @Test
+    public void test_012_cancellation() throws Exception {
+        System.out.println("test_cancellation");
+        try (TrackerCancellable cancellable = new TrackerCancellable()) {
+            cancellable.cancel();
+            try {
+                con.query("SELECT ?s WHERE { ?s a rdfs:Resource . }", cancellable);
+                TestCase.fail();
+            } catch(Libtracker.TrackerException e){
+                TestCase.assertEquals(Libtracker.TrackerException.CANCELLED, e.getErrorCode());
+            }
+        }
+        try (Libtracker.TrackerSparqlCursor cursor = con.query("SELECT ?s WHERE { ?s a rdfs:Resource . }", 1, TimeUnit.MINUTES)) {
+            TestCase.assertTrue(cursor.next());
+            TestCase.assertTrue(cursor.cancel());
+            cursor.next();
+            TestCase.fail();
+        } catch(Libtracker.TrackerException e){
+            TestCase.assertEquals(Libtracker.TrackerException.CANCELLED, e.getErrorCode());
+        }
+        TrackerFuture<Void> update = con.updateAsync("DELETE { <urn:test:cancel> a rdfs:Resource } WHERE { <urn:test:cancel> a rdfs:Resource }");
+        update.cancel(false);
+        TestCase.assertTrue(update.isCancelled());
+    }
+
+    @Test
+    public void test_013_bulk_load() throws Exception {
+        File file = File.createTempFile("libtracker-sparql", ".ttl");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(("@prefix test: <urn:uuid:"+uuid+"-bulk-> .\n"
+                    + "test:1 a rdfs:Resource .\ntest:2 a rdfs:Resource .\ntest:3 a rdfs:Resource .\n").getBytes(Charset.forName("UTF-8")));
+        }
+        TestCase.assertEquals(3, con.bulkLoad(file));
+        try (Libtracker.TrackerSparqlCursor cursor = con.query("SELECT COUNT(?s) WHERE { ?s a rdfs:Resource . FILTER(STRSTARTS(STR(?s), \"urn:uuid:"+uuid+"-bulk-\")) }")) {
+            TestCase.assertTrue(cursor.next());
+            TestCase.assertEquals(3, cursor.getLong(0));
+        }
+        con.update("DELETE { ?s a rdfs:Resource } WHERE { ?s a rdfs:Resource . FILTER(STRSTARTS(STR(?s), \"urn:uuid:"+uuid+"-bulk-\")) }");
+    }
+
+    @Test
+    public void test_014_memory_store() throws Exception {
+        System.out.println("test_memory_store");
+        if(Libtracker.VERSION < 3){
+            return;
+        }
+        try (Libtracker.TrackerSparqlConnection memory = Libtracker.newTrackerSparqlMemoryConnection(null)) {
+            memory.update("INSERT DATA { <urn:uuid:"+uuid+"-memory> a rdfs:Resource . }");
+            try (Libtracker.TrackerSparqlCursor cursor = memory.query("ASK { <urn:uuid:"+uuid+"-memory> a rdfs:Resource . }")) {
+                TestCase.assertTrue(cursor.next());
+                TestCase.assertTrue(cursor.getBoolean(0));
+            }
+        }
+    }
+
     @Test
     public void test2() {}
 }
@@ -0,0 +1,129 @@
+package com.turnguard.libtracker.sparql;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * Off-heap materialization of cached cursors, no running tracker-store needed
+ * @author turnguard
+ */
+public class MaterializedResultTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String[] CLASSES = {"http://www.w3.org/2000/01/rdf-schema#Resource", "http://www.tracker-project.org/temp/nmm#MusicPiece", "http://www.semanticdesktop.org/ontologies/2007/03/22/nfo#Document"};
+
+    /**
+     * rows of ?s (uri), ?type (uri), ?size (integer), ?rating (double), ?title (string), ?flag (boolean or unbound)
+     */
+    private static Libtracker.TrackerSparqlCursor cursor(int rows){
+        TestCursors.Builder cursor = new TestCursors.Builder("s", "type", "size", "rating", "title", "flag");
+        for(int row = 0; row < rows; row++){
+            cursor.cell(1, "urn:resource:"+row)
+                    .cell(1, CLASSES[row % CLASSES.length])
+                    .cell(3, Integer.toString(row * 10))
+                    .cell(4, (row / 4)+".5")
+                    .cell(2, "title é "+(row % 7))
+                    .cell(row % 5==0 ? 0 : 7, row % 5==0 ? null : Boolean.toString(row % 2==0));
+        }
+        return cursor.cursor();
+    }
+
+    private static void verify(MaterializedResult result, int row){
+        TestCase.assertEquals("urn:resource:"+row, result.getString(row, 0));
+        TestCase.assertEquals(CLASSES[row % CLASSES.length], result.getString(row, 1));
+        TestCase.assertEquals(Libtracker.TrackerSparqlValueType.TRACKER_SPARQL_VALUE_TYPE_INTEGER, result.getValueType(row, 2));
+        TestCase.assertEquals(row * 10L, result.getLong(row, 2));
+        TestCase.assertEquals(row / 4 + 0.5, result.getDouble(row, 3));
+        TestCase.assertEquals("title é "+(row % 7), result.getString(row, 4));
+        if(row % 5==0){
+            TestCase.assertFalse(result.isBound(row, 5));
+            TestCase.assertNull(result.getString(row, 5));
+        } else {
+            TestCase.assertEquals(row % 2==0, result.getBoolean(row, 5));
+        }
+    }
+
+    @Test
+    public void test_001_materialize() throws Exception {
+        System.out.println("test_001_materialize");
+        try (MaterializedResult result = MaterializedResult.of(cursor(5000))) {
+            TestCase.assertEquals(5000, result.getRowCount());
+            TestCase.assertEquals(6, result.getColumnsCount());
+            TestCase.assertEquals("title", result.getBindingName(4));
+            TestCase.assertEquals(4, result.getColumn("title"));
+            TestCase.assertEquals(-1, result.getColumn("missing"));
+            for(int row = result.getRowCount() - 1; row >= 0; row--){
+                verify(result, row);
+            }
+            TestCase.assertFalse(result.isSpilled());
+        }
+    }
+
+    @Test
+    public void test_002_dictionaries() throws Exception {
+        System.out.println("test_002_dictionaries");
+        try (MaterializedResult result = MaterializedResult.of(cursor(5000))) {
+            TestCase.assertEquals(5000 + CLASSES.length, result.getDistinctUriCount());
+            TestCase.assertEquals(7, result.getDistinctCount(4));
+            TestCase.assertEquals(0, result.getDistinctCount(2));
+            TestCase.assertEquals(result.getCode(0, 1), result.getCode(3, 1));
+            TestCase.assertFalse(result.getCode(0, 1)==result.getCode(1, 1));
+            TestCase.assertEquals(result.getCode(2, 4), result.getCode(9, 4));
+            TestCase.assertEquals(-1, result.getCode(2, 2));
+            TestCase.assertEquals("title é 3".getBytes(UTF8).length, result.getStringBuffer(3, 4).remaining());
+            TestCase.assertTrue(result.getStringBuffer(3, 4).isReadOnly());
+            TestCase.assertNull(result.getStringBuffer(3, 2));
+        }
+    }
+
+    @Test
+    public void test_003_concurrent_access() throws Exception {
+        System.out.println("test_003_concurrent_access");
+        final MaterializedResult result = MaterializedResult.of(cursor(5000));
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] readers = new Thread[4];
+        for(int i = 0; i < readers.length; i++){
+            final int seed = i;
+            readers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for(int n = 0; n < 5000; n++){
+                            verify(result, (n * 7919 + seed * 31) % result.getRowCount());
+                        }
+                    } catch(Throwable e){
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            readers[i].start();
+        }
+        for(Thread reader : readers){
+            reader.join();
+        }
+        result.close();
+        TestCase.assertEquals(0, failures.get());
+    }
+
+    @Test
+    public void test_004_spill() throws Exception {
+        System.out.println("test_004_spill");
+        try (MaterializedResult result = MaterializedResult.of(cursor(5000), 0, null)) {
+            TestCase.assertTrue(result.isSpilled());
+            TestCase.assertTrue(result.getStorageSize() > 0);
+            for(int row = 0; row < result.getRowCount(); row++){
+                verify(result, row);
+            }
+        }
+        try (MaterializedResult result = MaterializedResult.of(cursor(0))) {
+            TestCase.assertEquals(0, result.getRowCount());
+            try {
+                result.getString(0, 0);
+                TestCase.fail();
+            } catch(IndexOutOfBoundsException e){
+            }
+        }
+    }
+}
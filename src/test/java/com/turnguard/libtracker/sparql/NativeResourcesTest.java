@@ -0,0 +1,54 @@
+package com.turnguard.libtracker.sparql;
+
+import com.sun.jna.ptr.PointerByReference;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * Accounting of native resources, no running tracker-store needed
+ * @author turnguard
+ */
+public class NativeResourcesTest {
+
+    @Test
+    public void test_001_release_once() {
+        System.out.println("test_001_release_once");
+        long bytes = NativeResources.getByteCount();
+        Object owner = new Object();
+        NativeResources.Ref ref = NativeResources.memory(owner, 128);
+        TestCase.assertEquals(bytes + 128, NativeResources.getByteCount());
+        TestCase.assertTrue(ref.release());
+        TestCase.assertFalse(ref.release());
+        TestCase.assertEquals(bytes, NativeResources.getByteCount());
+    }
+
+    @Test
+    public void test_002_release_collected() throws InterruptedException {
+        System.out.println("test_002_release_collected");
+        long bytes = NativeResources.getByteCount();
+        long collected = NativeResources.getCollectedCount();
+        NativeResources.memory(new Object(), 256);
+        TestCase.assertEquals(bytes + 256, NativeResources.getByteCount());
+        for(int i = 0; i < 100 && NativeResources.getCollectedCount() == collected; i++){
+            System.gc();
+            Thread.sleep(50);
+        }
+        TestCase.assertEquals(collected + 1, NativeResources.getCollectedCount());
+        TestCase.assertEquals(bytes, NativeResources.getByteCount());
+    }
+
+    @Test
+    public void test_003_check_error() {
+        System.out.println("test_003_check_error");
+        PointerByReference error = Libtracker.error();
+        error.setValue(Libtracker.GLIB.g_error_new_literal(Libtracker.GLIB.g_quark_from_string("libtracker-sparql-test"), 7, "test error"));
+        try {
+            Libtracker.checkError(error);
+            TestCase.fail();
+        } catch(Libtracker.TrackerException e){
+            TestCase.assertEquals(7, e.getErrorCode());
+            TestCase.assertEquals("test error", e.getMessage());
+        }
+        TestCase.assertNull(error.getValue());
+    }
+}
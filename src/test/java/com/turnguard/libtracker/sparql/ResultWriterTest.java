@@ -0,0 +1,108 @@
+package com.turnguard.libtracker.sparql;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * Result export over cached cursors, no running tracker-store needed
+ * @author turnguard
+ */
+public class ResultWriterTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static Libtracker.TrackerSparqlCursor cursor(){
+        return TestCursors.of(new String[]{"s", "p", "o"},
+                new byte[]{
+                    1, 1, 2,
+                    1, 1, 3,
+                    6, 1, 5,
+                    1, 1, 0},
+                "urn:a", "urn:title", "say \"hi\",\tthen\nbye é",
+                "urn:a", "urn:size", "42",
+                "b1", "urn:created", "2014-03-01T10:30:15Z",
+                "urn:a b", "urn:flag", null);
+    }
+
+    private static String write(ResultWriter writer, Libtracker.TrackerSparqlCursor cursor) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(cursor, Channels.newChannel(out));
+        return new String(out.toByteArray(), UTF8);
+    }
+
+    @Test
+    public void test_001_csv() throws Exception {
+        System.out.println("test_001_csv");
+        ResultWriter writer = new ResultWriter(ResultWriter.Format.CSV);
+        TestCase.assertEquals(
+                "s,p,o\r\n"
+                + "urn:a,urn:title,\"say \"\"hi\"\",\tthen\nbye é\"\r\n"
+                + "urn:a,urn:size,42\r\n"
+                + "_:b1,urn:created,2014-03-01T10:30:15Z\r\n"
+                + "urn:a b,urn:flag,\r\n", write(writer, cursor()));
+    }
+
+    @Test
+    public void test_002_tsv() throws Exception {
+        System.out.println("test_002_tsv");
+        ResultWriter writer = new ResultWriter(ResultWriter.Format.TSV);
+        TestCase.assertEquals(
+                "?s\t?p\t?o\n"
+                + "<urn:a>\t<urn:title>\t\"say \\\"hi\\\",\\tthen\\nbye é\"\n"
+                + "<urn:a>\t<urn:size>\t\"42\"^^<http://www.w3.org/2001/XMLSchema#integer>\n"
+                + "_:b1\t<urn:created>\t\"2014-03-01T10:30:15Z\"^^<http://www.w3.org/2001/XMLSchema#dateTime>\n"
+                + "<urn:a\\u0020b>\t<urn:flag>\t\n", write(writer, cursor()));
+    }
+
+    @Test
+    public void test_003_ntriples() throws Exception {
+        System.out.println("test_003_ntriples");
+        ResultWriter writer = new ResultWriter(ResultWriter.Format.NTRIPLES);
+        TestCase.assertEquals(
+                "<urn:a> <urn:title> \"say \\\"hi\\\",\\tthen\\nbye é\" .\n"
+                + "<urn:a> <urn:size> \"42\"^^<http://www.w3.org/2001/XMLSchema#integer> .\n"
+                + "_:b1 <urn:created> \"2014-03-01T10:30:15Z\"^^<http://www.w3.org/2001/XMLSchema#dateTime> .\n", write(writer, cursor()));
+        try {
+            write(writer, TestCursors.of(new String[]{"s"}, new byte[]{1}, "urn:a"));
+            TestCase.fail();
+        } catch(IllegalArgumentException e){
+        }
+    }
+
+    @Test
+    public void test_004_json() throws Exception {
+        System.out.println("test_004_json");
+        ResultWriter writer = new ResultWriter(ResultWriter.Format.JSON);
+        TestCase.assertEquals(
+                "{\"head\":{\"vars\":[\"s\",\"p\",\"o\"]},\"results\":{\"bindings\":["
+                + "{\"s\":{\"type\":\"uri\",\"value\":\"urn:a\"},\"p\":{\"type\":\"uri\",\"value\":\"urn:title\"},"
+                + "\"o\":{\"type\":\"literal\",\"value\":\"say \\\"hi\\\",\\tthen\\nbye é\"}},"
+                + "{\"s\":{\"type\":\"uri\",\"value\":\"urn:a\"},\"p\":{\"type\":\"uri\",\"value\":\"urn:size\"},"
+                + "\"o\":{\"type\":\"literal\",\"value\":\"42\",\"datatype\":\"http://www.w3.org/2001/XMLSchema#integer\"}},"
+                + "{\"s\":{\"type\":\"bnode\",\"value\":\"b1\"},\"p\":{\"type\":\"uri\",\"value\":\"urn:created\"},"
+                + "\"o\":{\"type\":\"literal\",\"value\":\"2014-03-01T10:30:15Z\",\"datatype\":\"http://www.w3.org/2001/XMLSchema#dateTime\"}},"
+                + "{\"s\":{\"type\":\"uri\",\"value\":\"urn:a b\"},\"p\":{\"type\":\"uri\",\"value\":\"urn:flag\"}}"
+                + "]}}\n", write(writer, cursor()));
+        TestCase.assertEquals("{\"head\":{\"vars\":[\"s\"]},\"results\":{\"bindings\":[]}}\n",
+                write(writer, TestCursors.of(new String[]{"s"}, new byte[0])));
+    }
+
+    @Test
+    public void test_005_large_cells() throws Exception {
+        System.out.println("test_005_large_cells");
+        StringBuilder large = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for(int i = 0; i < 5000; i++){
+            large.append("ab\"");
+            expected.append("ab\\\"");
+        }
+        ResultWriter writer = new ResultWriter(ResultWriter.Format.TSV, 1024);
+        String written = write(writer, TestCursors.of(new String[]{"o"}, new byte[]{2, 2}, large.toString(), large.toString()));
+        String row = "\"" + expected + "\"\n";
+        TestCase.assertEquals("?o\n" + row + row, written);
+        TestCase.assertEquals(written.length(), writer.getByteCount());
+    }
+}
@@ -0,0 +1,100 @@
+package com.turnguard.libtracker.sparql;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Builds cached cursors from cells, for tests without a running tracker-store.<br/>
+ * Cells are encoded one by one, building a result is linear in its size.
+ * <pre>
+ * Libtracker.TrackerSparqlCursor cursor = TestCursors.of(new String[]{"s", "n"}, new byte[]{1, 3}, "urn:a", "42");
+ * </pre>
+ * @author turnguard
+ */
+final class TestCursors {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private TestCursors() {
+    }
+
+    /**
+     * @param names the binding names
+     * @param types row major value types
+     * @param cells row major, null for unbound
+     * @return TrackerQueryCache.Result
+     */
+    static TrackerQueryCache.Result result(String[] names, byte[] types, String... cells){
+        if(types.length!=cells.length){
+            throw new IllegalArgumentException("one type per cell");
+        }
+        Builder builder = new Builder(names);
+        for(int i = 0; i < cells.length; i++){
+            builder.cell(types[i], cells[i]);
+        }
+        return builder.result();
+    }
+
+    /**
+     * @param names the binding names
+     * @param types row major value types
+     * @param cells row major, null for unbound
+     * @return Libtracker.TrackerSparqlCursor
+     */
+    static Libtracker.TrackerSparqlCursor of(String[] names, byte[] types, String... cells){
+        return new TrackerQueryCache.CachedCursor(result(names, types, cells));
+    }
+
+    /**
+     * Appends cells row by row
+     */
+    static final class Builder {
+        private final String[] names;
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        private byte[] types = new byte[16];
+        private int[] offsets = new int[17];
+        private int cells;
+
+        Builder(String... names) {
+            this.names = names;
+        }
+
+        /**
+         * @param type the value type, 0 for unbound
+         * @param cell the cell's value, null for unbound
+         * @return Builder this
+         */
+        Builder cell(int type, String cell){
+            if(this.cells==this.types.length){
+                this.types = Arrays.copyOf(this.types, this.cells << 1);
+                this.offsets = Arrays.copyOf(this.offsets, (this.cells << 1) + 1);
+            }
+            if(cell!=null){
+                byte[] bytes = cell.getBytes(UTF8);
+                this.data.write(bytes, 0, bytes.length);
+            }
+            this.types[this.cells++] = (byte)type;
+            this.offsets[this.cells] = this.data.size();
+            return this;
+        }
+
+        /**
+         * @return TrackerQueryCache.Result the cells appended so far
+         */
+        TrackerQueryCache.Result result(){
+            if(this.cells % this.names.length!=0){
+                throw new IllegalStateException("incomplete row");
+            }
+            return new TrackerQueryCache.Result(this.names, this.cells / this.names.length, Arrays.copyOf(this.types, this.cells),
+                    this.data.toByteArray(), Arrays.copyOf(this.offsets, this.cells + 1));
+        }
+
+        /**
+         * @return Libtracker.TrackerSparqlCursor over the cells appended so far
+         */
+        Libtracker.TrackerSparqlCursor cursor(){
+            return new TrackerQueryCache.CachedCursor(this.result());
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.turnguard.libtracker.sparql;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * Scanning N-Triples and Turtle into INSERT DATA batches, no running tracker-store needed
+ * @author turnguard
+ */
+public class TrackerBulkLoaderTest {
+
+    private static File file(String content) throws IOException {
+        File file = File.createTempFile("libtracker-sparql", ".ttl");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes(Charset.forName("UTF-8")));
+        }
+        return file;
+    }
+
+    /**
+     * @return the updates, without the BASE of files without a base directive
+     */
+    private static List<String> scan(TrackerBulkLoader loader, String content) throws Exception {
+        File file = file(content);
+        final String base = "BASE <" + file.toPath().toUri() + ">\n";
+        final List<String> updates = new ArrayList<>();
+        loader.scan(file, new TrackerBulkLoader.Batches() {
+            @Override
+            public void add(String update) {
+                updates.add(update.startsWith(base) ? update.substring(base.length()) : update);
+            }
+        });
+        return updates;
+    }
+
+    @Test
+    public void test_001_ntriples() throws Exception {
+        System.out.println("test_001_ntriples");
+        TrackerBulkLoader loader = new TrackerBulkLoader(null);
+        List<String> updates = scan(loader,
+                "# a comment\n"
+                + "<urn:a> <urn:p> \"a . b\" .\n"
+                + "<urn:b> <urn:p> \"x\\\" # .\"@en-US .\n"
+                + "<urn:c> <urn:p> \"1.5\"^^<http://www.w3.org/2001/XMLSchema#decimal> . # trailing\n");
+        TestCase.assertEquals(1, updates.size());
+        TestCase.assertEquals("INSERT DATA {\n"
+                + "<urn:a> <urn:p> \"a . b\" .\n"
+                + "<urn:b> <urn:p> \"x\\\" # .\"@en-US .\n"
+                + "<urn:c> <urn:p> \"1.5\"^^<http://www.w3.org/2001/XMLSchema#decimal> .\n"
+                + "}", updates.get(0));
+        TestCase.assertEquals(3, loader.getStatementCount());
+        TestCase.assertEquals(1, loader.getBatchCount());
+    }
+
+    @Test
+    public void test_002_turtle() throws Exception {
+        System.out.println("test_002_turtle");
+        TrackerBulkLoader loader = new TrackerBulkLoader(null);
+        List<String> updates = scan(loader,
+                "@prefix ex: <http://example.org/> .\n"
+                + "PREFIX foaf: <http://xmlns.com/foaf/0.1/>\n"
+                + "ex:a.b a foaf:Person ; ex:n 1.5, 2. ex:c ex:d \"\"\"long \"\" . \"\"\"\"\"\" .\n"
+                + "ex:e ex:f '' .\n"
+                + "@base <http://example.org/base/> .\n"
+                + "<x> ex:g [ ex:h \"i\" ] .\n");
+        TestCase.assertEquals(2, updates.size());
+        TestCase.assertEquals("PREFIX ex: <http://example.org/>\n"
+                + "PREFIX foaf: <http://xmlns.com/foaf/0.1/>\n"
+                + "INSERT DATA {\n"
+                + "ex:a.b a foaf:Person ; ex:n 1.5, 2 .\n"
+                + "ex:c ex:d \"\"\"long \"\" . \"\"\"\"\"\" .\n"
+                + "ex:e ex:f '' .\n"
+                + "}", updates.get(0));
+        TestCase.assertEquals("BASE <http://example.org/base/>\n"
+                + "PREFIX ex: <http://example.org/>\n"
+                + "PREFIX foaf: <http://xmlns.com/foaf/0.1/>\n"
+                + "INSERT DATA {\n"
+                + "<x> ex:g [ ex:h \"i\" ] .\n"
+                + "}", updates.get(1));
+    }
+
+    @Test
+    public void test_003_blank_nodes() throws Exception {
+        System.out.println("test_003_blank_nodes");
+        TrackerBulkLoader loader = new TrackerBulkLoader(null);
+        String update = scan(loader, "_:b1 <urn:p> _:b.2.\n<urn:a_b> <urn:p> \"_:x\" .").get(0);
+        String[] lines = update.split("\n");
+        TestCase.assertTrue(lines[1].matches("<urn:bnode:[-0-9a-f]+:b1> <urn:p> <urn:bnode:[-0-9a-f]+:b\\.2> \\."));
+        TestCase.assertEquals("<urn:a_b> <urn:p> \"_:x\" .", lines[2]);
+        loader.setSkolemize(false);
+        TestCase.assertEquals("INSERT DATA {\n_:b1 <urn:p> _:b.2 .\n}", scan(loader, "_:b1 <urn:p> _:b.2.").get(0));
+    }
+
+    @Test
+    public void test_004_batches() throws Exception {
+        System.out.println("test_004_batches");
+        TrackerBulkLoader loader = new TrackerBulkLoader(null);
+        loader.setBatchBytes(64);
+        StringBuilder content = new StringBuilder();
+        for(int i = 0; i < 100; i++){
+            content.append("<urn:s").append(i).append("> <urn:p> \"").append(i).append("\" .\n");
+        }
+        final List<Long> progress = new ArrayList<>();
+        loader.setListener(new TrackerBulkLoader.Listener() {
+            @Override
+            public void progress(File file, long bytes, long size, long statements) {
+                progress.add(bytes);
+            }
+        });
+        List<String> updates = scan(loader, content.toString());
+        TestCase.assertEquals(100, loader.getStatementCount());
+        TestCase.assertEquals(updates.size(), loader.getBatchCount());
+        TestCase.assertTrue(updates.size() > 10);
+        for(String update : updates){
+            TestCase.assertTrue(update.startsWith("INSERT DATA {\n<urn:s") && update.endsWith(" .\n}"));
+        }
+        TestCase.assertEquals(updates.size(), progress.size());
+        TestCase.assertEquals(content.length(), (long)progress.get(progress.size() - 1));
+        TestCase.assertEquals(content.length(), loader.getByteCount());
+    }
+
+    @Test
+    public void test_005_leading_dot_decimal_and_file_base() throws Exception {
+        System.out.println("test_005_leading_dot_decimal_and_file_base");
+        TrackerBulkLoader loader = new TrackerBulkLoader(null);
+        File file = file("<x> <urn:v> .5 .\n<urn:s> <urn:v> -.25.\n");
+        final List<String> updates = new ArrayList<>();
+        loader.scan(file, new TrackerBulkLoader.Batches() {
+            @Override
+            public void add(String update) {
+                updates.add(update);
+            }
+        });
+        TestCase.assertEquals(1, updates.size());
+        TestCase.assertEquals("BASE <" + file.toPath().toUri() + ">\n"
+                + "INSERT DATA {\n"
+                + "<x> <urn:v> .5 .\n"
+                + "<urn:s> <urn:v> -.25 .\n"
+                + "}", updates.get(0));
+        TestCase.assertEquals(2, loader.getStatementCount());
+    }
+}
@@ -0,0 +1,127 @@
+package com.turnguard.libtracker.sparql;
+
+import com.sun.jna.ptr.PointerByReference;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * GCancellables, deadlines and cancelled GErrors, no running tracker-store needed
+ * @author turnguard
+ */
+public class TrackerCancellableTest {
+
+    private static void cancelledError(PointerByReference error){
+        error.setValue(Libtracker.GLIB.g_error_new_literal(Libtracker.ioErrorQuark(), Libtracker.GError.G_IO_ERROR_CANCELLED, "Operation was cancelled"));
+    }
+
+    @Test
+    public void test_001_cancel() {
+        System.out.println("test_001_cancel");
+        long objects = NativeResources.getObjectCount();
+        TrackerCancellable cancellable = new TrackerCancellable();
+        TestCase.assertEquals(objects + 1, NativeResources.getObjectCount());
+        TestCase.assertNotNull(cancellable.getPointer());
+        TestCase.assertFalse(cancellable.isCancelled());
+        cancellable.cancel();
+        cancellable.cancel();
+        TestCase.assertTrue(cancellable.isCancelled());
+        TestCase.assertFalse(cancellable.isTimedOut());
+        cancellable.close();
+        cancellable.close();
+        cancellable.cancel();
+        TestCase.assertNull(cancellable.getPointer());
+        TestCase.assertEquals(objects, NativeResources.getObjectCount());
+    }
+
+    @Test
+    public void test_002_deadline() throws InterruptedException {
+        System.out.println("test_002_deadline");
+        try (TrackerCancellable cancellable = new TrackerCancellable(20, TimeUnit.MILLISECONDS)) {
+            long end = System.currentTimeMillis() + 5000;
+            while(!cancellable.isCancelled() && System.currentTimeMillis() < end){
+                Thread.sleep(5);
+            }
+            TestCase.assertTrue(cancellable.isCancelled());
+            TestCase.assertTrue(cancellable.isTimedOut());
+        }
+        try (TrackerCancellable cancellable = new TrackerCancellable(20, TimeUnit.MILLISECONDS)) {
+            cancellable.cancel();
+            Thread.sleep(50);
+            TestCase.assertFalse(cancellable.isTimedOut());
+        }
+        try {
+            new TrackerCancellable(0, TimeUnit.SECONDS);
+            TestCase.fail();
+        } catch(IllegalArgumentException e){
+        }
+    }
+
+    @Test
+    public void test_003_error_codes() throws InterruptedException {
+        System.out.println("test_003_error_codes");
+        PointerByReference error = Libtracker.error();
+        cancelledError(error);
+        try {
+            Libtracker.checkError(error);
+            TestCase.fail();
+        } catch(Libtracker.TrackerException e){
+            TestCase.assertEquals(Libtracker.TrackerException.CANCELLED, e.getErrorCode());
+            TestCase.assertTrue(e.isCancelled());
+        }
+        try (TrackerCancellable cancellable = new TrackerCancellable(1, TimeUnit.MILLISECONDS)) {
+            while(!cancellable.isTimedOut()){
+                Thread.sleep(5);
+            }
+            cancelledError(error);
+            try {
+                Libtracker.checkError(error, null, cancellable);
+                TestCase.fail();
+            } catch(Libtracker.TrackerException e){
+                TestCase.assertEquals(Libtracker.TrackerException.TIMED_OUT, e.getErrorCode());
+                TestCase.assertTrue(e.isCancelled());
+            }
+        }
+        error.setValue(Libtracker.GLIB.g_error_new_literal(Libtracker.GLIB.g_quark_from_string("libtracker-sparql-test"), Libtracker.GError.G_IO_ERROR_CANCELLED, "not cancelled"));
+        try {
+            Libtracker.checkError(error);
+            TestCase.fail();
+        } catch(Libtracker.TrackerException e){
+            TestCase.assertEquals(Libtracker.GError.G_IO_ERROR_CANCELLED, e.getErrorCode());
+            TestCase.assertFalse(e.isCancelled());
+        }
+    }
+
+    @Test
+    public void test_004_future() throws Exception {
+        System.out.println("test_004_future");
+        TrackerCancellable cancellable = new TrackerCancellable();
+        TrackerFuture<Void> future = new TrackerFuture<>();
+        future.cancellable(cancellable);
+        TestCase.assertTrue(future.cancel(false));
+        TestCase.assertTrue(cancellable.isCancelled());
+        try {
+            future.get();
+            TestCase.fail();
+        } catch(CancellationException e){
+        }
+        cancellable.close();
+    }
+
+    @Test
+    public void test_005_paused_deadline() throws InterruptedException {
+        System.out.println("test_005_paused_deadline");
+        try (TrackerCancellable cancellable = new TrackerCancellable(50, TimeUnit.MILLISECONDS)) {
+            cancellable.pause();
+            Thread.sleep(150);
+            TestCase.assertFalse(cancellable.isCancelled());
+            cancellable.resume();
+            long end = System.currentTimeMillis() + 5000;
+            while(!cancellable.isCancelled() && System.currentTimeMillis() < end){
+                Thread.sleep(5);
+            }
+            TestCase.assertTrue(cancellable.isTimedOut());
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.turnguard.libtracker.sparql;
+
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.PointerByReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * GraphUpdated parsing, subscriptions and materialized views without a
+ * session bus, events are fed in directly
+ * @author turnguard
+ */
+public class TrackerChangeNotifierTest {
+
+    private static final String CLASS = "http://www.tracker-project.org/temp/nmm#MusicPiece";
+
+    /**
+     * glib functions only needed to build signal parameters
+     */
+    public interface VariantParser extends Library {
+        public Pointer g_variant_parse(Pointer type, String text, Pointer limit, Pointer endptr, PointerByReference error);
+    }
+
+    public static class Song {
+        long id;
+        String title;
+    }
+
+    /**
+     * Answers the view's queries from a map of id to title
+     */
+    private static final class Songs extends Libtracker.TrackerSparqlConnection {
+        private static final Pattern IN = Pattern.compile("IN \\(([0-9,]+)\\)");
+        private final Map<Long, String> titles = new TreeMap<>();
+        private final List<String> queries = new ArrayList<>();
+        private Libtracker.TrackerException failure;
+
+        Songs() {
+            super(Pointer.createConstant(1));
+        }
+
+        @Override
+        public Libtracker.TrackerSparqlCursor query(String query) throws Libtracker.TrackerException {
+            this.queries.add(query);
+            if(this.failure!=null){
+                throw this.failure;
+            }
+            List<Long> ids = new ArrayList<>();
+            Matcher in = IN.matcher(query);
+            if(in.find()){
+                for(String id : in.group(1).split(",")){
+                    if(this.titles.containsKey(Long.parseLong(id))){
+                        ids.add(Long.parseLong(id));
+                    }
+                }
+            } else {
+                ids.addAll(this.titles.keySet());
+            }
+            TestCursors.Builder cursor = new TestCursors.Builder("id", "title");
+            for(Long id : ids){
+                cursor.cell(3, id.toString()).cell(2, this.titles.get(id));
+            }
+            return cursor.cursor();
+        }
+    }
+
+    @Test
+    public void test_001_parse() {
+        System.out.println("test_001_parse");
+        VariantParser glib = (VariantParser)Native.loadLibrary(Libtracker.LIBGLIB, VariantParser.class);
+        Pointer parameters = glib.g_variant_parse(null, "('"+CLASS+"', [(1, 100, 7, 8)], [(1, 101, 7, 9), (1, 102, 7, 10)])", null, null, null);
+        TestCase.assertNotNull(parameters);
+        TrackerChangeEvent event;
+        try {
+            event = TrackerChangeNotifier.parse(parameters);
+        } finally {
+            Libtracker.GLIB.g_variant_unref(parameters);
+        }
+        TestCase.assertEquals(CLASS, event.getClassName());
+        TestCase.assertEquals(1, event.getDeleteCount());
+        TestCase.assertEquals(2, event.getInsertCount());
+        TestCase.assertTrue(Arrays.equals(new int[]{1, 100, 7, 8}, event.getDeletes()));
+        TestCase.assertTrue(Arrays.equals(new int[]{1, 101, 7, 9, 1, 102, 7, 10}, event.getInserts()));
+        Pointer empty = glib.g_variant_parse(null, "('"+CLASS+"', @a(iiii) [], @a(iiii) [])", null, null, null);
+        try {
+            TestCase.assertEquals(0, TrackerChangeNotifier.parse(empty).getInsertCount());
+        } finally {
+            Libtracker.GLIB.g_variant_unref(empty);
+        }
+    }
+
+    @Test
+    public void test_002_subjects_and_merge() {
+        System.out.println("test_002_subjects_and_merge");
+        TrackerChangeEvent a = new TrackerChangeEvent(CLASS, new int[]{1, 5, 7, 8}, new int[]{1, 3, 7, 9, 1, 5, 7, 10});
+        TrackerChangeEvent b = new TrackerChangeEvent(CLASS, new int[0], new int[]{1, 4, 7, 9});
+        TestCase.assertTrue(Arrays.equals(new int[]{3, 5}, a.getSubjects()));
+        TrackerChangeEvent merged = TrackerChangeEvent.merge(CLASS, Arrays.asList(a, b));
+        TestCase.assertEquals(1, merged.getDeleteCount());
+        TestCase.assertEquals(3, merged.getInsertCount());
+        TestCase.assertTrue(Arrays.equals(new int[]{3, 4, 5}, merged.getSubjects()));
+        try {
+            new TrackerChangeEvent(CLASS, new int[3], new int[0]);
+            TestCase.fail();
+        } catch(IllegalArgumentException e){
+        }
+    }
+
+    @Test
+    public void test_003_subscription() throws Exception {
+        System.out.println("test_003_subscription");
+        final List<TrackerChangeEvent> delivered = new ArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        TrackerChangeNotifier notifier = new TrackerChangeNotifier();
+        TrackerChangeNotifier.Subscription subscription = notifier.subscribe(CLASS, 100, TimeUnit.MILLISECONDS, new TrackerChangeNotifier.Listener() {
+            @Override
+            public void graphUpdated(TrackerChangeEvent event) {
+                TestCase.assertEquals("libtracker-sparql-changes", Thread.currentThread().getName());
+                delivered.add(event);
+                latch.countDown();
+            }
+        });
+        subscription.graphUpdated(new TrackerChangeEvent(CLASS, new int[0], new int[]{1, 3, 7, 9}));
+        subscription.graphUpdated(new TrackerChangeEvent("urn:other", new int[0], new int[]{1, 4, 7, 9}));
+        subscription.graphUpdated(new TrackerChangeEvent(CLASS, new int[]{1, 5, 7, 9}, new int[0]));
+        TestCase.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        subscription.close();
+        TestCase.assertEquals(1, delivered.size());
+        TestCase.assertTrue(Arrays.equals(new int[]{3, 5}, delivered.get(0).getSubjects()));
+    }
+
+    @Test
+    public void test_004_materialized_view() throws Exception {
+        System.out.println("test_004_materialized_view");
+        Songs songs = new Songs();
+        songs.titles.put(1L, "one");
+        songs.titles.put(2L, "two");
+        TrackerMaterializedView<Song> view = new TrackerMaterializedView<>(songs, CLASS,
+                "SELECT ?id ?title WHERE { ?s a nmm:MusicPiece ; nie:title ?title . BIND(tracker:id(?s) AS ?id) }", "id", Song.class);
+        TestCase.assertEquals("SELECT ?id ?title WHERE { ?s a nmm:MusicPiece ; nie:title ?title . BIND(tracker:id(?s) AS ?id)  FILTER(?id IN (3,4)) }",
+                view.restrict(new long[]{3, 4}, 0, 2));
+        view.refresh();
+        TestCase.assertEquals(2, view.size());
+        TestCase.assertEquals("two", view.get(2).title);
+        final List<long[]> changed = new ArrayList<>();
+        view.addListener(new TrackerMaterializedView.Listener<Song>() {
+            @Override
+            public void viewChanged(TrackerMaterializedView<Song> view, long[] keys) {
+                changed.add(keys);
+            }
+            @Override
+            public void refreshFailed(TrackerMaterializedView<Song> view, long[] keys, Libtracker.TrackerException error) {
+                TestCase.fail(error.getMessage());
+            }
+        });
+        songs.titles.remove(1L);
+        songs.titles.put(2L, "zwei");
+        songs.titles.put(3L, "drei");
+        view.graphUpdated(new TrackerChangeEvent(CLASS, new int[]{1, 1, 7, 8, 1, 2, 7, 8}, new int[]{1, 2, 7, 9, 1, 3, 7, 9}));
+        TestCase.assertEquals(2, songs.queries.size());
+        TestCase.assertNull(view.get(1));
+        TestCase.assertEquals("zwei", view.get(2).title);
+        TestCase.assertEquals("drei", view.get(3).title);
+        TestCase.assertEquals(2, view.size());
+        TestCase.assertTrue(Arrays.equals(new long[]{1, 2, 3}, changed.get(0)));
+        TestCase.assertEquals(2, view.getRefreshCount());
+        view.graphUpdated(new TrackerChangeEvent(CLASS, new int[0], new int[0]));
+        view.refresh(new long[0]);
+        TestCase.assertEquals(2, songs.queries.size());
+        TestCase.assertEquals(1, changed.size());
+        TestCase.assertEquals(2, view.getRefreshCount());
+    }
+
+    @Test
+    public void test_005_not_supported_on_3() throws Exception {
+        System.out.println("test_005_not_supported_on_3");
+        TrackerChangeNotifier.checkSupported(1);
+        TrackerChangeNotifier.checkSupported(2);
+        try {
+            TrackerChangeNotifier.checkSupported(3);
+            TestCase.fail();
+        } catch(Libtracker.TrackerException e){
+            TestCase.assertEquals(Libtracker.GError.G_IO_ERROR_NOT_SUPPORTED, e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void test_006_view_refresh_failed() throws Exception {
+        System.out.println("test_006_view_refresh_failed");
+        Songs songs = new Songs();
+        songs.titles.put(1L, "one");
+        TrackerMaterializedView<Song> view = new TrackerMaterializedView<>(songs, CLASS,
+                "SELECT ?id ?title WHERE { ?s a nmm:MusicPiece ; nie:title ?title . BIND(tracker:id(?s) AS ?id) }", "id", Song.class);
+        view.refresh();
+        final List<long[]> failed = new ArrayList<>();
+        view.addListener(new TrackerMaterializedView.Listener<Song>() {
+            @Override
+            public void viewChanged(TrackerMaterializedView<Song> view, long[] keys) {
+                TestCase.fail();
+            }
+            @Override
+            public void refreshFailed(TrackerMaterializedView<Song> view, long[] keys, Libtracker.TrackerException error) {
+                TestCase.assertEquals("store gone", error.getMessage());
+                failed.add(keys);
+            }
+        });
+        songs.failure = new Libtracker.TrackerException("store gone");
+        songs.titles.put(1L, "eins");
+        view.graphUpdated(new TrackerChangeEvent(CLASS, new int[0], new int[]{1, 1, 7, 9}));
+        TestCase.assertEquals(1, failed.size());
+        TestCase.assertTrue(Arrays.equals(new long[]{1}, failed.get(0)));
+        TestCase.assertEquals("one", view.get(1).title);
+        TestCase.assertEquals(1, view.getRefreshCount());
+    }
+}
@@ -0,0 +1,128 @@
+package com.turnguard.libtracker.sparql;
+
+import com.sun.jna.Pointer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * Lease bookkeeping with placeholder connections, no running tracker-store needed
+ * @author turnguard
+ */
+public class TrackerConnectionPoolTest {
+
+    /**
+     * Fails health checks on demand and counts close() calls
+     */
+    private static final class Connection extends Libtracker.TrackerSparqlConnection {
+        volatile boolean healthy = true;
+        final AtomicInteger closed = new AtomicInteger();
+
+        Connection(long address) {
+            super(Pointer.createConstant(address));
+        }
+
+        @Override
+        public Libtracker.TrackerSparqlCursor query(String query) throws Libtracker.TrackerException {
+            if(!this.healthy){
+                throw new Libtracker.TrackerException("broken");
+            }
+            return TestCursors.of(new String[]{"c"}, new byte[]{1}, "urn:class");
+        }
+
+        @Override
+        public void close() {
+            this.closed.incrementAndGet();
+        }
+    }
+
+    private static TrackerConnectionPool pool(int size, int maxLeases){
+        TrackerConnectionPool pool = new TrackerConnectionPool(new TrackerConnectionPool.ConnectionFactory() {
+            private long next = 1;
+            @Override
+            public synchronized Libtracker.TrackerSparqlConnection open() {
+                return new Connection(next++);
+            }
+        }, size, maxLeases);
+        pool.setHealthCheck(null, 0);
+        return pool;
+    }
+
+    @Test
+    public void test_001_exclusive_leases() throws Exception {
+        TrackerConnectionPool pool = pool(2, 1);
+        TrackerConnectionPool.Lease a = pool.acquire();
+        TrackerConnectionPool.Lease b = pool.acquire();
+        TestCase.assertFalse(a.getConnection().equals(b.getConnection()));
+        TestCase.assertNull(pool.acquire(10, TimeUnit.MILLISECONDS));
+        TestCase.assertEquals(2, pool.getActiveCount());
+        b.close();
+        TrackerConnectionPool.Lease c = pool.acquire(10, TimeUnit.MILLISECONDS);
+        TestCase.assertNotNull(c);
+        a.close();
+        c.close();
+        TestCase.assertEquals(0, pool.getActiveCount());
+    }
+
+    @Test
+    public void test_002_thread_affinity() throws Exception {
+        TrackerConnectionPool pool = pool(4, 1);
+        Libtracker.TrackerSparqlConnection first;
+        try (TrackerConnectionPool.Lease lease = pool.acquire()) {
+            first = lease.getConnection();
+        }
+        for(int i = 0; i < 10; i++){
+            try (TrackerConnectionPool.Lease lease = pool.acquire()) {
+                TestCase.assertEquals(first, lease.getConnection());
+            }
+        }
+    }
+
+    @Test
+    public void test_003_replaced_connection_closed() throws Exception {
+        TrackerConnectionPool pool = pool(1, 2);
+        pool.setHealthCheck(TrackerConnectionPool.HEALTH_CHECK_QUERY, -1);
+        TrackerConnectionPool.Lease a = pool.acquire();
+        Connection first = (Connection)a.getConnection();
+        first.healthy = false;
+        TrackerConnectionPool.Lease b = pool.acquire();
+        Connection second = (Connection)b.getConnection();
+        TestCase.assertNotSame(first, second);
+        TestCase.assertSame(first, a.getConnection());
+        TestCase.assertEquals(0, first.closed.get());
+        a.close();
+        a.close();
+        TestCase.assertEquals(1, first.closed.get());
+        b.close();
+        TestCase.assertEquals(0, second.closed.get());
+        pool.close();
+        TestCase.assertEquals(1, second.closed.get());
+    }
+
+    @Test
+    public void test_004_close() throws Exception {
+        TrackerConnectionPool pool = pool(2, 1);
+        TrackerConnectionPool.Lease a = pool.acquire();
+        TrackerConnectionPool.Lease b = pool.acquire();
+        Connection idle = (Connection)b.getConnection();
+        b.close();
+        pool.close();
+        TestCase.assertEquals(1, idle.closed.get());
+        Connection held = (Connection)a.getConnection();
+        TestCase.assertEquals(0, held.closed.get());
+        a.close();
+        TestCase.assertEquals(1, held.closed.get());
+        try {
+            a.getConnection();
+            TestCase.fail();
+        } catch(IllegalStateException e){
+        }
+        try {
+            pool.acquire();
+            TestCase.fail();
+        } catch(IllegalStateException e){
+        }
+        TestCase.assertEquals(0, pool.getActiveCount());
+    }
+}
@@ -0,0 +1,68 @@
+package com.turnguard.libtracker.sparql;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * xsd:dateTime parsing and formatting, no running tracker-store needed
+ * @author turnguard
+ */
+public class TrackerDateTimeTest {
+
+    @Test
+    public void test_001_parse() {
+        System.out.println("test_001_parse");
+        Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(2014, Calendar.MARCH, 1, 10, 30, 15);
+        TestCase.assertEquals(calendar.getTimeInMillis(), TrackerDateTime.parse("2014-03-01T10:30:15Z").getTime());
+        TestCase.assertEquals(calendar.getTimeInMillis(), TrackerDateTime.parse("2014-03-01T10:30:15").getTime());
+        TestCase.assertEquals(calendar.getTimeInMillis() + 500, TrackerDateTime.parse("2014-03-01T10:30:15.5Z").getTime());
+        TestCase.assertEquals(calendar.getTimeInMillis() + 123, TrackerDateTime.parse("2014-03-01T10:30:15.123456Z").getTime());
+        TrackerDateTime offset = TrackerDateTime.parse("2014-03-01T11:30:15+01:00");
+        TestCase.assertEquals(calendar.getTimeInMillis(), offset.getTime());
+        TestCase.assertEquals(3600, offset.getOffsetSeconds());
+        TestCase.assertEquals(calendar.getTimeInMillis(), TrackerDateTime.parse("2014-03-01T05:00:15-05:30").getTime());
+        TestCase.assertEquals(0, TrackerDateTime.parse("1970-01-01T00:00:00Z").getTime());
+        TestCase.assertEquals(-1000, TrackerDateTime.parse("1969-12-31T23:59:59Z").getTime());
+        for(String invalid : new String[]{"2014-03-01", "2014-13-01T00:00:00Z", "2014-03-01 10:30:15Z", "2014-03-01T10:30:15+0100", "2014-03-01T10:30:15.Z"}){
+            try {
+                TrackerDateTime.parse(invalid);
+                TestCase.fail(invalid);
+            } catch(IllegalArgumentException e){
+            }
+        }
+    }
+
+    @Test
+    public void test_002_round_trip() {
+        System.out.println("test_002_round_trip");
+        for(String value : new String[]{"2014-03-01T10:30:15Z", "2000-02-29T23:59:59.999+14:00", "1969-07-20T20:17:40-04:00", "1600-01-01T00:00:00Z"}){
+            TestCase.assertEquals(value, TrackerDateTime.parse(value).toString());
+        }
+        TrackerDateTime value = TrackerDateTime.parse("2014-03-01T11:30:15+01:00");
+        TestCase.assertEquals(11, value.toCalendar().get(Calendar.HOUR_OF_DAY));
+        TestCase.assertEquals(value.getTime(), value.toDate().getTime());
+        TestCase.assertEquals(0, value.compareTo(TrackerDateTime.parse("2014-03-01T10:30:15Z")));
+        TestCase.assertFalse(value.equals(TrackerDateTime.parse("2014-03-01T10:30:15Z")));
+    }
+
+    @Test
+    public void test_003_parser() {
+        System.out.println("test_003_parser");
+        Charset utf8 = Charset.forName("UTF-8");
+        TrackerDateTime.Parser parser = new TrackerDateTime.Parser();
+        String[] values = {"2014-03-01T10:30:15Z", "2014-03-01T23:00:00+02:00", "2014-03-02T00:00:00Z", "2014-03-01T00:00:00Z"};
+        for(String value : values){
+            ByteBuffer buffer = ByteBuffer.wrap(("xx" + value).getBytes(utf8));
+            buffer.position(2);
+            TestCase.assertEquals(TrackerDateTime.parse(value), parser.parse(buffer));
+            TestCase.assertEquals(2, buffer.position());
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.turnguard.libtracker.sparql;
+
+import com.sun.jna.Pointer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * Fan-out and merge over fake connections, no running tracker-store needed
+ * @author turnguard
+ */
+public class TrackerFederatedQueryTest {
+
+    /**
+     * Answers every query with rows of ?n (integer) and ?title (string),
+     * optionally hanging until the query is cancelled
+     */
+    private static class Store extends Libtracker.TrackerSparqlConnection {
+        private final long[] numbers;
+        private final boolean hang;
+        private final List<String> queries = Collections.synchronizedList(new ArrayList<String>());
+        private volatile TrackerCancellable cancellable;
+
+        Store(boolean hang, long... numbers) {
+            super(Pointer.createConstant(1));
+            this.numbers = numbers;
+            this.hang = hang;
+        }
+
+        @Override
+        public Libtracker.TrackerSparqlCursor query(String query, TrackerCancellable cancellable) throws Libtracker.TrackerException {
+            this.queries.add(query);
+            this.cancellable = cancellable;
+            while(this.hang){
+                if(cancellable.isCancelled()){
+                    throw new Libtracker.TrackerException("cancelled", cancellable.isTimedOut() ? Libtracker.TrackerException.TIMED_OUT : Libtracker.TrackerException.CANCELLED);
+                }
+                try {
+                    Thread.sleep(5);
+                } catch(InterruptedException e){
+                    throw new Libtracker.TrackerException("interrupted");
+                }
+            }
+            TestCursors.Builder cursor = new TestCursors.Builder("n", "title");
+            for(long n : this.numbers){
+                cursor.cell(3, Long.toString(n)).cell(2, "title "+n);
+            }
+            return cursor.cursor();
+        }
+    }
+
+    private static long[] range(long from, long step, int count){
+        long[] numbers = new long[count];
+        for(int i = 0; i < count; i++){
+            numbers[i] = from + i * step;
+        }
+        return numbers;
+    }
+
+    private static List<Long> collect(TrackerFederatedQuery query){
+        List<Long> numbers = new ArrayList<>();
+        try (TrackerFederatedQuery.Rows rows = query.rows()) {
+            for(TrackerRow row : rows){
+                numbers.add(row.getLong(0));
+                TestCase.assertEquals("title "+row.getLong(0), row.getString(1));
+            }
+        }
+        return numbers;
+    }
+
+    @Test
+    public void test_001_source_query() {
+        System.out.println("test_001_source_query");
+        TrackerFederatedQuery query = new TrackerFederatedQuery("SELECT ?n ?title WHERE { ?s ?p ?n } ORDER BY DESC(?n) ?title");
+        TestCase.assertTrue(query.isOrdered());
+        query.setDistinct(true);
+        query.setLimit(10);
+        TestCase.assertEquals("SELECT DISTINCT ?n ?title WHERE { ?s ?p ?n } ORDER BY DESC(?n) ?title LIMIT 10", query.sourceQuery());
+        TestCase.assertFalse(new TrackerFederatedQuery("SELECT ?n WHERE { ?s ?p ?n } ORDER BY STRLEN(?n)").isOrdered());
+        TestCase.assertFalse(new TrackerFederatedQuery("SELECT ?n WHERE { ?s ?p ?n }").isOrdered());
+        TrackerFederatedQuery distinct = new TrackerFederatedQuery("SELECT DISTINCT ?n WHERE { ?s ?p ?n }");
+        distinct.setDistinct(true);
+        TestCase.assertEquals("SELECT DISTINCT ?n WHERE { ?s ?p ?n }", distinct.sourceQuery());
+        try {
+            new TrackerFederatedQuery("SELECT ?n WHERE { ?s ?p ?n } LIMIT 5");
+            TestCase.fail();
+        } catch(IllegalArgumentException e){
+        }
+    }
+
+    @Test
+    public void test_002_ordered_merge() {
+        System.out.println("test_002_ordered_merge");
+        TrackerFederatedQuery query = new TrackerFederatedQuery("SELECT ?n ?title WHERE { ?s ?p ?n } ORDER BY ?n");
+        query.addSource("a", new Store(false, range(0, 3, 400)));
+        query.addSource("b", new Store(false, range(1, 3, 400)));
+        query.addSource("c", new Store(false, range(2, 3, 300)));
+        query.addSource("empty", new Store(false));
+        List<Long> numbers = collect(query);
+        TestCase.assertEquals(1100, numbers.size());
+        for(int i = 0; i < 900; i++){
+            TestCase.assertEquals((long)i, (long)numbers.get(i));
+        }
+        for(int i = 900; i < numbers.size(); i++){
+            TestCase.assertTrue(numbers.get(i - 1) < numbers.get(i));
+        }
+        TrackerFederatedQuery descending = new TrackerFederatedQuery("SELECT ?n ?title WHERE { ?s ?p ?n } ORDER BY DESC(?n)");
+        descending.addSource("a", new Store(false, 9, 5, 1));
+        descending.addSource("b", new Store(false, 8, 7, 2));
+        TestCase.assertEquals(Arrays.asList(9L, 8L, 7L, 5L, 2L, 1L), collect(descending));
+    }
+
+    @Test
+    public void test_003_limit_and_distinct() {
+        System.out.println("test_003_limit_and_distinct");
+        Store a = new Store(false, 1, 2, 4, 6);
+        Store b = new Store(false, 2, 3, 4, 5);
+        TrackerFederatedQuery query = new TrackerFederatedQuery("SELECT ?n ?title WHERE { ?s ?p ?n } ORDER BY ?n");
+        query.addSource("a", a);
+        query.addSource("b", b);
+        query.setDistinct(true);
+        query.setLimit(4);
+        TestCase.assertEquals(Arrays.asList(1L, 2L, 3L, 4L), collect(query));
+        TestCase.assertEquals("SELECT DISTINCT ?n ?title WHERE { ?s ?p ?n } ORDER BY ?n LIMIT 4", a.queries.get(0));
+        TestCase.assertEquals(a.queries.get(0), b.queries.get(0));
+    }
+
+    @Test
+    public void test_004_unordered() {
+        System.out.println("test_004_unordered");
+        TrackerFederatedQuery query = new TrackerFederatedQuery("SELECT ?n ?title WHERE { ?s ?p ?n }");
+        query.addSource("a", new Store(false, range(0, 1, 1000)));
+        query.addSource("b", new Store(false, range(1000, 1, 1000)));
+        List<Long> numbers = collect(query);
+        Collections.sort(numbers);
+        TestCase.assertEquals(2000, numbers.size());
+        for(int i = 0; i < numbers.size(); i++){
+            TestCase.assertEquals((long)i, (long)numbers.get(i));
+        }
+    }
+
+    @Test
+    public void test_005_partial_results() {
+        System.out.println("test_005_partial_results");
+        TrackerFederatedQuery query = new TrackerFederatedQuery("SELECT ?n ?title WHERE { ?s ?p ?n } ORDER BY ?n");
+        query.addSource("fast", new Store(false, 1, 2, 3));
+        query.addSource("slow", new Store(true));
+        query.setTimeout(200, TimeUnit.MILLISECONDS);
+        query.setPartialResults(true);
+        try (TrackerFederatedQuery.Rows rows = query.rows()) {
+            int count = 0;
+            for(TrackerRow row : rows){
+                count++;
+            }
+            TestCase.assertEquals(3, count);
+            TestCase.assertTrue(rows.isPartial());
+            TestCase.assertEquals(Libtracker.TrackerException.TIMED_OUT, rows.getFailures().get("slow").getErrorCode());
+            TestCase.assertFalse(rows.getFailures().containsKey("fast"));
+        }
+        query.setPartialResults(false);
+        try {
+            collect(query);
+            TestCase.fail();
+        } catch(Libtracker.UncheckedTrackerException e){
+            TestCase.assertTrue(e.getMessage().contains("slow"));
+        }
+    }
+
+    @Test
+    public void test_006_failure_keeps_cause() {
+        System.out.println("test_006_failure_keeps_cause");
+        final IllegalStateException error = new IllegalStateException("store gone");
+        TrackerFederatedQuery query = new TrackerFederatedQuery("SELECT ?n ?title WHERE { ?s ?p ?n } ORDER BY ?n");
+        query.addSource("fast", new Store(false, 1, 2, 3));
+        query.addSource("broken", new Store(false) {
+            @Override
+            public Libtracker.TrackerSparqlCursor query(String query, TrackerCancellable cancellable) {
+                throw error;
+            }
+        });
+        query.setPartialResults(true);
+        try (TrackerFederatedQuery.Rows rows = query.rows()) {
+            int count = 0;
+            for(TrackerRow row : rows){
+                count++;
+            }
+            TestCase.assertEquals(3, count);
+            TestCase.assertSame(error, rows.getFailures().get("broken").getCause());
+        }
+    }
+
+    @Test
+    public void test_007_slow_caller_not_timed_out() throws InterruptedException {
+        System.out.println("test_007_slow_caller_not_timed_out");
+        Store store = new Store(false, range(0, 1, 10 * TrackerFederatedQuery.CHUNK_SIZE));
+        TrackerFederatedQuery query = new TrackerFederatedQuery("SELECT ?n ?title WHERE { ?s ?p ?n }");
+        query.addSource("a", store);
+        query.setTimeout(100, TimeUnit.MILLISECONDS);
+        try (TrackerFederatedQuery.Rows rows = query.rows()) {
+            TestCase.assertTrue(rows.hasNext());
+            rows.next();
+            Thread.sleep(300);
+            int count = 1;
+            while(rows.hasNext()){
+                rows.next();
+                count++;
+            }
+            TestCase.assertEquals(10 * TrackerFederatedQuery.CHUNK_SIZE, count);
+            TestCase.assertFalse(rows.isPartial());
+        }
+        TestCase.assertFalse(store.cancellable.isTimedOut());
+    }
+}
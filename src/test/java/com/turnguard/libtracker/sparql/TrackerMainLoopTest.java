@@ -0,0 +1,116 @@
+package com.turnguard.libtracker.sparql;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.PointerByReference;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import junit.framework.TestCase;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+/**
+ * Needs glib only, no running tracker-store
+ * @author turnguard
+ */
+public class TrackerMainLoopTest {
+
+    @AfterClass
+    public static void tearDownClass() throws InterruptedException {
+        TrackerMainLoop.shutdown();
+    }
+
+    @Test
+    public void test_001_invoke_runs_on_main_loop_thread() throws InterruptedException {
+        final TrackerMainLoop loop = TrackerMainLoop.getInstance();
+        final CountDownLatch done = new CountDownLatch(100);
+        final AtomicBoolean onLoop = new AtomicBoolean(true);
+        for(int i = 0; i < 100; i++){
+            loop.invoke(new Runnable() {
+                @Override
+                public void run() {
+                    if(!loop.isMainLoopThread()){
+                        onLoop.set(false);
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        TestCase.assertTrue(done.await(10, TimeUnit.SECONDS));
+        TestCase.assertTrue(onLoop.get());
+    }
+
+    @Test
+    public void test_002_future_callbacks() throws Exception {
+        TrackerFuture<String> future = new TrackerFuture<>();
+        final StringBuilder seen = new StringBuilder();
+        future.addCallback(new TrackerCallback<String>() {
+            @Override
+            public void onSuccess(String result) {
+                seen.append(result);
+            }
+            @Override
+            public void onFailure(Throwable failure) {
+                seen.append("failure");
+            }
+        });
+        TestCase.assertTrue(future.complete("done"));
+        TestCase.assertFalse(future.fail(new RuntimeException()));
+        TestCase.assertEquals("done", future.get());
+        TestCase.assertEquals("done", seen.toString());
+    }
+
+    @Test
+    public void test_003_result_of_cancelled_call_closed() throws Exception {
+        final AtomicBoolean closed = new AtomicBoolean(false);
+        TrackerFuture<AutoCloseable> future = TrackerMainLoop.getInstance().submit(new TrackerMainLoop.AsyncCall<AutoCloseable>() {
+            @Override
+            protected void start(Pointer userData) {
+                // the caller cancels just before the operation finishes
+                this.future.cancel(false);
+                TrackerMainLoop.CALLBACK.invoke(null, null, userData);
+            }
+            @Override
+            protected AutoCloseable finish(Pointer result, PointerByReference error) {
+                return new AutoCloseable() {
+                    @Override
+                    public void close() {
+                        closed.set(true);
+                    }
+                };
+            }
+        });
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            TestCase.fail();
+        } catch(CancellationException e){
+        }
+        for(int i = 0; i < 100 && !closed.get(); i++){
+            Thread.sleep(10);
+        }
+        TestCase.assertTrue(closed.get());
+    }
+
+    @Test
+    public void test_004_shutdown_fails_pending() throws Exception {
+        TrackerFuture<String> future = TrackerMainLoop.getInstance().submit(new TrackerMainLoop.AsyncCall<String>() {
+            @Override
+            protected void start(Pointer userData) {
+                // never calls back
+            }
+            @Override
+            protected String finish(Pointer result, PointerByReference error) {
+                return "finished";
+            }
+        });
+        TrackerMainLoop.shutdown();
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            TestCase.fail();
+        } catch(ExecutionException e){
+            TestCase.assertEquals(Libtracker.TrackerException.CANCELLED, ((Libtracker.TrackerException)e.getCause()).getErrorCode());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.turnguard.libtracker.sparql;
+
+import com.sun.jna.ptr.PointerByReference;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Histograms, traces and the MXBean, no running tracker-store needed
+ * @author turnguard
+ */
+public class TrackerMetricsTest {
+
+    @After
+    public void tearDown() {
+        TrackerMetrics.getInstance().setEnabled(false);
+        TrackerMetrics.getInstance().setSlowQueryThreshold(TrackerMetrics.SLOW_QUERY_THRESHOLD);
+        TrackerMetrics.getInstance().reset();
+    }
+
+    @Test
+    public void test_001_histogram() {
+        System.out.println("test_001_histogram");
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(long i = 1; i <= 1000; i++){
+            histogram.record(i * 1000);
+        }
+        TestCase.assertEquals(1000, histogram.getCount());
+        TestCase.assertEquals(500500, histogram.getMean());
+        TestCase.assertEquals(1000000, histogram.getMax());
+        long p50 = histogram.getP50();
+        TestCase.assertTrue(p50 >= 500000 && p50 <= 500000 * 5 / 4);
+        long p99 = histogram.getP99();
+        TestCase.assertTrue(p99 >= 990000 && p99 <= 1000000);
+        for(int i = 0; i < 248; i++){
+            TestCase.assertEquals(i, LatencyHistogram.index(LatencyHistogram.lowerBound(i)));
+        }
+        histogram.reset();
+        TestCase.assertEquals(0, histogram.getP99());
+    }
+
+    @Test
+    public void test_002_query_trace() throws Libtracker.TrackerException {
+        System.out.println("test_002_query_trace");
+        TrackerMetrics metrics = TrackerMetrics.getInstance();
+        TestCase.assertNull(TrackerMetrics.trace("SELECT 1"));
+        metrics.setEnabled(true);
+        metrics.setSlowQueryThreshold(0);
+        final AtomicLong listened = new AtomicLong();
+        TrackerMetrics.Listener listener = new TrackerMetrics.Listener() {
+            @Override
+            public void queryFinished(String sparql, long timeToCursor, long timeToFirstRow, long total, long rows, long cells) {
+                listened.set(cells);
+            }
+            @Override
+            public void updateFinished(String sparql, long time) {}
+            @Override
+            public void failed(String sparql, Libtracker.TrackerException error) {}
+        };
+        metrics.addListener(listener);
+        Libtracker.TrackerSparqlCursor cursor = TestCursors.of(new String[]{"s"}, new byte[]{1, 1}, "urn:a", "urn:b");
+        TrackerMetrics.Trace trace = TrackerMetrics.trace("SELECT ?s");
+        trace.opened(cursor);
+        trace.next(true);
+        trace.next(true);
+        trace.next(false);
+        trace.finished();
+        metrics.removeListener(listener);
+        TestCase.assertEquals(1, metrics.getQueryCount());
+        TestCase.assertEquals(2, metrics.getRowCount());
+        TestCase.assertEquals(2, metrics.getCellCount());
+        TestCase.assertEquals(2, listened.get());
+        TestCase.assertEquals(1, metrics.getTimeToFirstRow().getCount());
+        TestCase.assertEquals(1, metrics.getSlowQueries().length);
+        TestCase.assertTrue(metrics.getSlowQueries()[0].endsWith("SELECT ?s"));
+        TrackerMetrics.error(3);
+        TrackerMetrics.error(3);
+        TestCase.assertEquals(Long.valueOf(2), metrics.getErrorCounts().get(3));
+    }
+
+    @Test
+    public void test_003_mxbean() throws Exception {
+        System.out.println("test_003_mxbean");
+        TrackerMetrics.registerMBean();
+        TrackerMetrics.registerMBean();
+        TrackerMetrics.getInstance().getUpdateTime().record(42);
+        TrackerMetrics.error(1);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(TrackerMetrics.OBJECT_NAME);
+        CompositeData updateTime = (CompositeData)server.getAttribute(name, "UpdateTime");
+        TestCase.assertEquals(1L, updateTime.get("count"));
+        TestCase.assertEquals(42L, updateTime.get("max"));
+        TestCase.assertEquals(1, ((TabularData)server.getAttribute(name, "ErrorCounts")).size());
+        TestCase.assertEquals(Boolean.FALSE, server.getAttribute(name, "Enabled"));
+    }
+
+    @Test
+    public void test_004_timed_out_error_count() throws Exception {
+        System.out.println("test_004_timed_out_error_count");
+        TrackerMetrics metrics = TrackerMetrics.getInstance();
+        metrics.setEnabled(true);
+        try (TrackerCancellable cancellable = new TrackerCancellable(1, TimeUnit.MILLISECONDS)) {
+            for(int i = 0; i < 100 && !cancellable.isTimedOut(); i++){
+                Thread.sleep(10);
+            }
+            TestCase.assertTrue(cancellable.isTimedOut());
+            PointerByReference error = new PointerByReference(Libtracker.GLIB.g_error_new_literal(Libtracker.ioErrorQuark(), Libtracker.GError.G_IO_ERROR_CANCELLED, "cancelled"));
+            try {
+                Libtracker.checkError(error, null, cancellable);
+                TestCase.fail();
+            } catch(Libtracker.TrackerException e){
+            }
+        }
+        TestCase.assertEquals(Long.valueOf(1), metrics.getErrorCounts().get(Libtracker.TrackerException.TIMED_OUT));
+        TestCase.assertNull(metrics.getErrorCounts().get(Libtracker.TrackerException.CANCELLED));
+    }
+}
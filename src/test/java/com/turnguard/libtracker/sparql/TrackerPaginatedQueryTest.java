@@ -0,0 +1,214 @@
+package com.turnguard.libtracker.sparql;
+
+import com.sun.jna.Pointer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * Page splitting over placeholder connections serving a table of cached
+ * rows, no running tracker-store needed
+ * @author turnguard
+ */
+public class TrackerPaginatedQueryTest {
+
+    private static final String QUERY = "SELECT ?id ?title WHERE { ?s nie:title ?title . BIND(tracker:id(?s) AS ?id) }";
+    private static final Pattern LIMIT = Pattern.compile("LIMIT (\\d+)(?: OFFSET (\\d+))?$");
+    private static final Pattern AFTER = Pattern.compile("FILTER\\(\\?id > (\\d+)\\)");
+
+    /**
+     * Answers page queries from the rows id = 0 .. rows-1, fails on OFFSET failAt,
+     * with error if it is not null
+     */
+    private static final class Table extends Libtracker.TrackerSparqlConnection {
+        private final int rows;
+        private final long failAt;
+        private final RuntimeException error;
+        private final List<String> queries;
+
+        Table(long address, int rows, long failAt, RuntimeException error, List<String> queries) {
+            super(Pointer.createConstant(address));
+            this.rows = rows;
+            this.failAt = failAt;
+            this.error = error;
+            this.queries = queries;
+        }
+
+        @Override
+        public Libtracker.TrackerSparqlCursor query(String query) throws Libtracker.TrackerException {
+            this.queries.add(query);
+            Matcher limit = LIMIT.matcher(query);
+            TestCase.assertTrue(query, limit.find());
+            int from = limit.group(2)==null ? 0 : Integer.parseInt(limit.group(2));
+            if(from==this.failAt){
+                if(this.error!=null){
+                    throw this.error;
+                }
+                throw new Libtracker.TrackerException("page failed");
+            }
+            Matcher after = AFTER.matcher(query);
+            if(after.find()){
+                from = Integer.parseInt(after.group(1)) + 1;
+            }
+            int to = Math.min(this.rows, from + Integer.parseInt(limit.group(1)));
+            int count = Math.max(0, to - from);
+            TestCursors.Builder cursor = new TestCursors.Builder("id", "title");
+            for(int i = 0; i < count; i++){
+                cursor.cell(3, Integer.toString(from + i)).cell(2, "title "+(from + i));
+            }
+            return cursor.cursor();
+        }
+    }
+
+    private static TrackerConnectionPool pool(int rows, long failAt, List<String> queries){
+        return pool(rows, failAt, null, queries);
+    }
+
+    private static TrackerConnectionPool pool(final int rows, final long failAt, final RuntimeException error, final List<String> queries){
+        TrackerConnectionPool pool = new TrackerConnectionPool(new TrackerConnectionPool.ConnectionFactory() {
+            private long next = 1;
+            @Override
+            public synchronized Libtracker.TrackerSparqlConnection open() {
+                return new Table(next++, rows, failAt, error, queries);
+            }
+        }, 4, 1);
+        pool.setHealthCheck(null, 0);
+        return pool;
+    }
+
+    @Test
+    public void test_001_page_queries() {
+        System.out.println("test_001_page_queries");
+        TrackerPaginatedQuery query = new TrackerPaginatedQuery((TrackerConnectionPool)null, QUERY);
+        query.setPageSize(100);
+        TestCase.assertEquals(QUERY + " LIMIT 100 OFFSET 200", query.offsetPage(2));
+        query.setKey("?id");
+        TestCase.assertEquals("id", query.getKey());
+        TestCase.assertEquals(QUERY + " ORDER BY ?id LIMIT 100", query.keysetPage(null));
+        TestCase.assertEquals("SELECT ?id ?title WHERE { ?s nie:title ?title . BIND(tracker:id(?s) AS ?id)  FILTER(?id > 99) } ORDER BY ?id LIMIT 100",
+                query.keysetPage("99"));
+        try {
+            new TrackerPaginatedQuery((TrackerConnectionPool)null, QUERY + " LIMIT 10");
+            TestCase.fail();
+        } catch(IllegalArgumentException e){
+        }
+        try {
+            new TrackerPaginatedQuery((TrackerConnectionPool)null, QUERY + " ORDER BY ?title").setKey("id");
+            TestCase.fail();
+        } catch(IllegalArgumentException e){
+        }
+    }
+
+    @Test
+    public void test_002_offset_ordered() {
+        System.out.println("test_002_offset_ordered");
+        List<String> queries = Collections.synchronizedList(new ArrayList<String>());
+        TrackerPaginatedQuery query = new TrackerPaginatedQuery(pool(2500, -1, queries), QUERY);
+        query.setPageSize(1000);
+        query.setParallelism(3);
+        int expected = 0;
+        try (TrackerPaginatedQuery.Rows rows = query.rows()) {
+            for(TrackerRow row : rows){
+                TestCase.assertEquals(expected, row.getLong(0));
+                TestCase.assertEquals("title " + expected, row.getString(1));
+                expected++;
+            }
+        }
+        TestCase.assertEquals(2500, expected);
+        // pages past the end are requested until the short page is seen
+        TestCase.assertTrue(queries.size() >= 3 && queries.size() <= 5);
+    }
+
+    @Test
+    public void test_003_offset_unordered() {
+        System.out.println("test_003_offset_unordered");
+        TrackerPaginatedQuery query = new TrackerPaginatedQuery(pool(3000, -1, new ArrayList<String>()), QUERY);
+        query.setPageSize(100);
+        query.setParallelism(4);
+        query.setOrdered(false);
+        BitSet seen = new BitSet();
+        for(TrackerRow row : query.rows()){
+            TestCase.assertFalse(seen.get((int)row.getLong(0)));
+            seen.set((int)row.getLong(0));
+        }
+        TestCase.assertEquals(3000, seen.cardinality());
+    }
+
+    @Test
+    public void test_004_keyset() throws Exception {
+        System.out.println("test_004_keyset");
+        List<String> queries = new ArrayList<>();
+        TrackerPaginatedQuery query = new TrackerPaginatedQuery(new Table(1, 2000, -1, null, queries), QUERY);
+        query.setPageSize(1000);
+        query.setKey("id");
+        int expected = 0;
+        for(TrackerRow row : query.rows()){
+            TestCase.assertEquals(expected++, row.getLong(0));
+        }
+        TestCase.assertEquals(2000, expected);
+        TestCase.assertEquals(3, queries.size());
+        TestCase.assertTrue(queries.get(2).contains("FILTER(?id > 1999)"));
+    }
+
+    @Test
+    public void test_005_failed_page() {
+        System.out.println("test_005_failed_page");
+        TrackerPaginatedQuery query = new TrackerPaginatedQuery(pool(5000, 2000, new ArrayList<String>()), QUERY);
+        query.setPageSize(1000);
+        query.setParallelism(2);
+        int rows = 0;
+        try {
+            for(TrackerRow row : query.rows()){
+                rows++;
+            }
+            TestCase.fail();
+        } catch(Libtracker.UncheckedTrackerException e){
+            TestCase.assertEquals("page failed", e.getMessage());
+        }
+        TestCase.assertEquals(2000, rows);
+    }
+
+    @Test
+    public void test_006_failed_page_keeps_cause() {
+        System.out.println("test_006_failed_page_keeps_cause");
+        IllegalStateException error = new IllegalStateException("store gone");
+        TrackerPaginatedQuery query = new TrackerPaginatedQuery(pool(5000, 1000, error, new ArrayList<String>()), QUERY);
+        query.setPageSize(1000);
+        query.setParallelism(2);
+        try {
+            for(TrackerRow row : query.rows()){
+            }
+            TestCase.fail();
+        } catch(Libtracker.UncheckedTrackerException e){
+            TestCase.assertSame(error, e.getCause().getCause());
+        }
+    }
+
+    @Test
+    public void test_007_unorderable_keys() throws Exception {
+        System.out.println("test_007_unorderable_keys");
+        ResultBatch batch = new ResultBatch(4);
+        try (Libtracker.TrackerSparqlCursor cursor = TestCursors.of(new String[]{"id"}, new byte[]{6, 0, 3, 1}, "_:b1", null, "7", "urn:a")) {
+            TestCase.assertEquals(4, cursor.fetch(4, batch));
+        }
+        try {
+            TrackerPaginatedQuery.term(batch, 0, 0);
+            TestCase.fail();
+        } catch(Libtracker.TrackerException e){
+            TestCase.assertTrue(e.getMessage().contains("blank node"));
+        }
+        try {
+            TrackerPaginatedQuery.term(batch, 1, 0);
+            TestCase.fail();
+        } catch(Libtracker.TrackerException e){
+            TestCase.assertTrue(e.getMessage().contains("unbound"));
+        }
+        TestCase.assertEquals("7", TrackerPaginatedQuery.term(batch, 2, 0));
+        TestCase.assertEquals("<urn:a>", TrackerPaginatedQuery.term(batch, 3, 0));
+    }
+}
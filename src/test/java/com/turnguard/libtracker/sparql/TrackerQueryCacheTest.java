@@ -0,0 +1,288 @@
+package com.turnguard.libtracker.sparql;
+
+import com.sun.jna.Pointer;
+import java.nio.ByteBuffer;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * Cached cursors over hand-built results, no running tracker-store needed
+ * @author turnguard
+ */
+public class TrackerQueryCacheTest {
+
+    /**
+     * Answers every query with one row per character of the query string,
+     * running a hook while the query is being answered
+     */
+    private static final class Store extends Libtracker.TrackerSparqlConnection {
+        int queries;
+        Runnable during;
+        boolean stream;
+        Streaming streamed;
+
+        Store() {
+            super(Pointer.createConstant(1));
+        }
+
+        @Override
+        Libtracker.TrackerSparqlCursor queryNative(String query) {
+            this.queries++;
+            if(this.during!=null){
+                this.during.run();
+            }
+            TestCursors.Builder cursor = new TestCursors.Builder("s");
+            for(int i = 0; i < query.length(); i++){
+                cursor.cell(1, "urn:resource:"+i);
+            }
+            if(this.stream){
+                this.streamed = new Streaming(cursor.cursor());
+                return this.streamed;
+            }
+            return cursor.cursor();
+        }
+    }
+
+    /**
+     * Stands in for a native cursor, reads cannot be repeated
+     */
+    private static final class Streaming extends Libtracker.TrackerSparqlCursor {
+        private final Libtracker.TrackerSparqlCursor rows;
+        int read;
+        boolean closed;
+
+        Streaming(Libtracker.TrackerSparqlCursor rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        boolean isNative() {
+            return false;
+        }
+        @Override
+        public boolean next() throws Libtracker.TrackerException {
+            TestCase.assertFalse(this.closed);
+            boolean next = this.rows.next();
+            if(next){
+                this.read++;
+            }
+            return next;
+        }
+        @Override
+        public void close() {
+            this.closed = true;
+        }
+        @Override
+        public int getColumnsCount() {
+            return this.rows.getColumnsCount();
+        }
+        @Override
+        public String getBindingName(int column) {
+            return this.rows.getBindingName(column);
+        }
+        @Override
+        public Libtracker.TrackerSparqlValueType getValueType(int column) {
+            return this.rows.getValueType(column);
+        }
+        @Override
+        public String getString(int column) {
+            return this.rows.getString(column);
+        }
+        @Override
+        public ByteBuffer getStringBuffer(int column) {
+            return this.rows.getStringBuffer(column);
+        }
+    }
+
+    /**
+     * @return long the bytes a cached result of a one char query uses
+     */
+    private static long entryBytes() throws Libtracker.TrackerException {
+        TrackerQueryCache cache = new TrackerQueryCache(1L << 20);
+        cache.query(new Store(), "a");
+        return cache.getBytes();
+    }
+
+    private static TrackerQueryCache.Result result(){
+        return TestCursors.result(new String[]{"s", "n"}, new byte[]{1, 3, 1, 0}, "urn:a", "42", "urn:b", null);
+    }
+
+    @Test
+    public void test_001_cached_cursor() throws Libtracker.TrackerException {
+        Libtracker.TrackerSparqlCursor cursor = new TrackerQueryCache.CachedCursor(result());
+        TestCase.assertEquals(2, cursor.getColumnsCount());
+        TestCase.assertEquals("n", cursor.getBindingName(1));
+        TestCase.assertTrue(cursor.next());
+        TestCase.assertEquals("urn:a", cursor.getString(0));
+        TestCase.assertEquals(42, cursor.getInteger(1));
+        TestCase.assertEquals(Libtracker.TrackerSparqlValueType.TRACKER_SPARQL_VALUE_TYPE_INTEGER, cursor.getValueType(1));
+        TestCase.assertTrue(cursor.next());
+        TestCase.assertFalse(cursor.isBound(1));
+        TestCase.assertNull(cursor.getString(1));
+        TestCase.assertFalse(cursor.next());
+        cursor.rewind();
+        TestCase.assertTrue(cursor.next());
+        TestCase.assertEquals(5, cursor.getStringLength(0));
+    }
+
+    @Test
+    public void test_002_batch_from_cached_cursor() throws Libtracker.TrackerException {
+        Libtracker.TrackerSparqlCursor cursor = new TrackerQueryCache.CachedCursor(result());
+        ResultBatch batch = new ResultBatch(1);
+        TestCase.assertEquals(1, cursor.fetch(1, batch));
+        TestCase.assertEquals(42L, batch.getLong(0, 1));
+        TestCase.assertEquals(1, cursor.fetch(1, batch));
+        TestCase.assertEquals("urn:b", batch.getString(0, 0));
+        TestCase.assertFalse(batch.isBound(0, 1));
+        TestCase.assertEquals(0, cursor.fetch(1, batch));
+    }
+
+    @Test
+    public void test_003_lru_eviction() throws Libtracker.TrackerException {
+        long bytes = entryBytes();
+        TrackerQueryCache cache = new TrackerQueryCache(3 * bytes + bytes / 2);
+        Store store = new Store();
+        cache.query(store, "a");
+        cache.query(store, "b");
+        cache.query(store, "c");
+        TestCase.assertEquals(3, cache.getSize());
+        TestCase.assertEquals(3 * bytes, cache.getBytes());
+        cache.query(store, "a");
+        TestCase.assertEquals(1, cache.getHitCount());
+        cache.query(store, "d");
+        TestCase.assertEquals(3, cache.getSize());
+        TestCase.assertEquals(1, cache.getEvictionCount());
+        TestCase.assertTrue(cache.getBytes() <= 3 * bytes + bytes / 2);
+        // b was the least recently used
+        cache.query(store, "a");
+        cache.query(store, "c");
+        TestCase.assertEquals(4, store.queries);
+        cache.query(store, "b");
+        TestCase.assertEquals(5, store.queries);
+        TestCase.assertEquals(3, cache.getHitCount());
+        TestCase.assertEquals(5, cache.getMissCount());
+    }
+
+    @Test
+    public void test_004_large_results_not_cached() throws Libtracker.TrackerException {
+        long bytes = entryBytes();
+        TrackerQueryCache cache = new TrackerQueryCache(4 * bytes);
+        Store store = new Store();
+        String large = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa";
+        Libtracker.TrackerSparqlCursor cursor = cache.query(store, large);
+        int rows = 0;
+        while(cursor.next()){
+            rows++;
+        }
+        TestCase.assertEquals(large.length(), rows);
+        TestCase.assertEquals(0, cache.getSize());
+        TestCase.assertEquals(0, cache.getBytes());
+        cache.query(store, large);
+        TestCase.assertEquals(2, store.queries);
+        cache.query(store, "a");
+        cache.query(store, "a");
+        TestCase.assertEquals(3, store.queries);
+    }
+
+    @Test
+    public void test_005_invalidate() throws Libtracker.TrackerException {
+        TrackerQueryCache cache = new TrackerQueryCache(1L << 20);
+        Store store = new Store();
+        cache.query(store, "a", "urn:class:X");
+        cache.query(store, "b", "urn:class:Y");
+        cache.query(store, "c");
+        cache.invalidate("urn:class:X");
+        TestCase.assertEquals(1, cache.getSize());
+        TestCase.assertEquals(2, cache.getInvalidationCount());
+        cache.query(store, "b", "urn:class:Y");
+        TestCase.assertEquals(3, store.queries);
+        cache.graphUpdated(new TrackerChangeEvent("urn:class:Z"));
+        TestCase.assertEquals(1, cache.getSize());
+        cache.query(store, "a", "urn:class:X");
+        cache.invalidateAll();
+        TestCase.assertEquals(0, cache.getSize());
+        TestCase.assertEquals(0, cache.getBytes());
+        TestCase.assertEquals(4, cache.getInvalidationCount());
+    }
+
+    @Test
+    public void test_006_invalidation_while_fetching() throws Libtracker.TrackerException {
+        final TrackerQueryCache cache = new TrackerQueryCache(1L << 20);
+        Store store = new Store();
+        store.during = new Runnable() {
+            @Override
+            public void run() {
+                cache.invalidate("urn:class:Y");
+            }
+        };
+        cache.query(store, "a", "urn:class:X");
+        TestCase.assertEquals(1, cache.getSize());
+        cache.query(store, "b");
+        TestCase.assertEquals(1, cache.getSize());
+        store.during = new Runnable() {
+            @Override
+            public void run() {
+                cache.invalidate("urn:class:X");
+            }
+        };
+        cache.query(store, "c", "urn:class:X", "urn:class:Y");
+        TestCase.assertEquals(0, cache.getSize());
+        store.during = new Runnable() {
+            @Override
+            public void run() {
+                cache.invalidateAll();
+            }
+        };
+        cache.query(store, "d", "urn:class:Z");
+        TestCase.assertEquals(0, cache.getSize());
+        store.during = null;
+        cache.query(store, "d", "urn:class:Z");
+        TestCase.assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void test_007_batch_binding_names() throws Libtracker.TrackerException {
+        ResultBatch batch = new ResultBatch(1);
+        Libtracker.TrackerSparqlCursor first = new TrackerQueryCache.CachedCursor(result());
+        first.fetch(1, batch);
+        TestCase.assertEquals("n", batch.getBindingName(1));
+        String name = batch.getBindingName(0);
+        first.fetch(1, batch);
+        TestCase.assertSame(name, batch.getBindingName(0));
+        Libtracker.TrackerSparqlCursor second = TestCursors.of(new String[]{"o", "p"}, new byte[]{2, 2}, "x", "y");
+        TestCase.assertEquals(1, second.fetch(1, batch));
+        TestCase.assertEquals("o", batch.getBindingName(0));
+        TestCase.assertEquals("p", batch.getBindingName(1));
+        TestCase.assertEquals("y", batch.getString(0, 1));
+    }
+
+    @Test
+    public void test_008_large_results_not_copied() throws Libtracker.TrackerException {
+        long bytes = entryBytes();
+        TrackerQueryCache cache = new TrackerQueryCache(4 * bytes);
+        Store store = new Store();
+        store.stream = true;
+        cache.query(store, "a");
+        TestCase.assertTrue(store.streamed.closed);
+        TestCase.assertEquals(1, cache.getSize());
+        String large = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa";
+        Libtracker.TrackerSparqlCursor cursor = cache.query(store, large);
+        Streaming streaming = store.streamed;
+        TestCase.assertFalse(streaming.closed);
+        TestCase.assertTrue(streaming.read < large.length());
+        int rows = 0;
+        while(cursor.next()){
+            TestCase.assertEquals("urn:resource:"+rows, cursor.getString(0));
+            TestCase.assertEquals("s", cursor.getBindingName(0));
+            rows++;
+        }
+        TestCase.assertEquals(large.length(), rows);
+        TestCase.assertEquals(large.length(), streaming.read);
+        cursor.close();
+        TestCase.assertTrue(streaming.closed);
+        TestCase.assertEquals(1, cache.getSize());
+        ResultBatch batch = new ResultBatch(large.length());
+        TestCase.assertEquals(large.length(), cache.query(store, large).fetch(large.length(), batch));
+        TestCase.assertEquals("urn:resource:"+(large.length() - 1), batch.getString(large.length() - 1, 0));
+    }
+}
@@ -0,0 +1,173 @@
+package com.turnguard.libtracker.sparql;
+
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.PointerByReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * update_blank results and bulk resource creation over a fake connection,
+ * no running tracker-store needed
+ * @author turnguard
+ */
+public class TrackerResourceBatchTest {
+
+    /**
+     * glib functions only needed to build update_blank results
+     */
+    public interface VariantParser extends Library {
+        public Pointer g_variant_parse(Pointer type, String text, Pointer limit, Pointer endptr, PointerByReference error);
+    }
+
+    private static final VariantParser GLIB = (VariantParser)Native.loadLibrary(Libtracker.LIBGLIB, VariantParser.class);
+
+    /**
+     * Records updates and answers update_blank like tracker, with an urn per blank node label
+     */
+    private static final class Store extends Libtracker.TrackerSparqlConnection {
+        private static final Pattern BLANK = Pattern.compile("_:(\\w+)");
+        private final List<String> updates = new ArrayList<>();
+
+        Store() {
+            super(Pointer.createConstant(1));
+        }
+
+        @Override
+        public void update(String query) {
+            this.updates.add(query);
+        }
+
+        @Override
+        public TrackerBlankNodes updateBlank(String query) {
+            this.updates.add(query);
+            StringBuilder text = new StringBuilder("[[{");
+            Matcher blank = BLANK.matcher(query);
+            for(int i = 0; blank.find(); i++){
+                text.append(i > 0 ? ", " : "").append("'").append(blank.group(1)).append("': 'urn:blank:").append(blank.group(1)).append("'");
+            }
+            Pointer variant = GLIB.g_variant_parse(null, text.append("}]]").toString(), null, null, null);
+            try {
+                return TrackerBlankNodes.parse(variant);
+            } finally {
+                Libtracker.GLIB.g_variant_unref(variant);
+            }
+        }
+    }
+
+    @Test
+    public void test_001_parse() {
+        System.out.println("test_001_parse");
+        Pointer variant = GLIB.g_variant_parse(null, "[[{'_:a': 'urn:1', '_:b': 'urn:2'}, {'_:a': 'urn:3'}], @aa{ss} [], [{'c': 'urn:4'}]]", null, null, null);
+        TrackerBlankNodes blankNodes;
+        try {
+            blankNodes = TrackerBlankNodes.parse(variant);
+        } finally {
+            Libtracker.GLIB.g_variant_unref(variant);
+        }
+        TestCase.assertEquals(3, blankNodes.getUpdateCount());
+        TestCase.assertEquals(2, blankNodes.getSolutionCount(0));
+        TestCase.assertEquals(0, blankNodes.getSolutionCount(1));
+        TestCase.assertEquals(1, blankNodes.getSolutionCount(2));
+        TestCase.assertEquals(4, blankNodes.size());
+        TestCase.assertEquals("urn:2", blankNodes.getUrn(0, 0, "b"));
+        TestCase.assertEquals("urn:3", blankNodes.getUrn(0, 1, "a"));
+        TestCase.assertNull(blankNodes.getUrn(0, 1, "b"));
+        TestCase.assertEquals("urn:4", blankNodes.getUrn(2, 0, "c"));
+        Map<String, String> urns = blankNodes.getUrns(0, 0);
+        TestCase.assertEquals(2, urns.size());
+        TestCase.assertEquals("urn:1", urns.get("a"));
+        TestCase.assertEquals("a", blankNodes.getLabel(2));
+        try {
+            blankNodes.getUrns(1, 0);
+            TestCase.fail();
+        } catch(IndexOutOfBoundsException e){
+        }
+        TestCase.assertEquals(0, TrackerBlankNodes.parse(null).size());
+    }
+
+    @Test
+    public void test_002_insert() throws Exception {
+        System.out.println("test_002_insert");
+        Store store = new Store();
+        TrackerResourceBatch batch = new TrackerResourceBatch();
+        batch.setBatchBytes(4096);
+        batch.setPrologue("PREFIX ex: <http://example.org/>");
+        for(int i = 0; i < 1000; i++){
+            TestCase.assertEquals(i, batch.add("a ex:Thing ; ex:n "+i));
+        }
+        String[] urns = batch.insert(store);
+        TestCase.assertEquals(1000, urns.length);
+        TestCase.assertEquals(1000, new HashSet<>(Arrays.asList(urns)).size());
+        TestCase.assertTrue(store.updates.size() > 1);
+        StringBuilder all = new StringBuilder();
+        for(String update : store.updates){
+            TestCase.assertTrue(update.startsWith("PREFIX ex: <http://example.org/>\nINSERT DATA {\n"));
+            TestCase.assertTrue(update.endsWith(" .\n}"));
+            all.append(update);
+        }
+        for(int i = 0; i < urns.length; i += 97){
+            TestCase.assertTrue(all.indexOf("<"+urns[i]+"> a ex:Thing ; ex:n "+i+" .\n") >= 0);
+        }
+        try {
+            batch.add(" ");
+            TestCase.fail();
+        } catch(IllegalArgumentException e){
+        }
+    }
+
+    @Test
+    public void test_003_insert_blank() throws Exception {
+        System.out.println("test_003_insert_blank");
+        Store store = new Store();
+        TrackerResourceBatch batch = new TrackerResourceBatch();
+        batch.setBatchBytes(2048);
+        for(int i = 0; i < 500; i++){
+            batch.add("a nfo:Document ; nie:title \"doc "+i+"\"");
+        }
+        String[] urns = batch.insertBlank(store);
+        TestCase.assertTrue(store.updates.size() > 1);
+        for(int i = 0; i < urns.length; i++){
+            TestCase.assertEquals("urn:blank:"+TrackerResourceBatch.LABEL+i, urns[i]);
+        }
+        batch.clear();
+        TestCase.assertEquals(0, batch.size());
+        TestCase.assertEquals(0, batch.insertBlank(store).length);
+    }
+
+    @Test
+    public void test_004_reserved_labels_and_bytes() throws Exception {
+        System.out.println("test_004_reserved_labels_and_bytes");
+        Store store = new Store();
+        TrackerResourceBatch batch = new TrackerResourceBatch();
+        try {
+            batch.add("ex:p _:"+TrackerResourceBatch.LABEL+"1");
+            TestCase.fail();
+        } catch(IllegalArgumentException e){
+        }
+        batch.add("ex:p _:r1");
+        TestCase.assertEquals("urn:blank:"+TrackerResourceBatch.LABEL+"0", batch.insertBlank(store)[0]);
+        batch.clear();
+        StringBuilder title = new StringBuilder();
+        for(int i = 0; i < 60; i++){
+            title.append('\u00e4');
+        }
+        for(int i = 0; i < 10; i++){
+            batch.add("ex:t \""+title+"\"");
+        }
+        store.updates.clear();
+        batch.setBatchBytes(500);
+        batch.insertBlank(store);
+        TestCase.assertEquals(3, store.updates.size());
+        TestCase.assertEquals(6, TrackerResourceBatch.utf8Length("a\u00e4\u20ac", 0));
+        TestCase.assertEquals(4, TrackerResourceBatch.utf8Length(new String(Character.toChars(0x1F600)), 0));
+    }
+}
@@ -0,0 +1,60 @@
+package com.turnguard.libtracker.sparql;
+
+import com.sun.jna.Pointer;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * Routing of queries and prepared statements, no running tracker-store needed
+ * @author turnguard
+ */
+public class TrackerRoutingConnectionTest {
+
+    /**
+     * Records the queries it answers
+     */
+    private static final class Store extends Libtracker.TrackerSparqlConnection {
+        private final List<String> queries = new ArrayList<>();
+
+        Store(long address) {
+            super(Pointer.createConstant(address));
+        }
+
+        @Override
+        Libtracker.TrackerSparqlCursor queryNative(String query, TrackerCancellable cancellable, boolean owned) {
+            this.queries.add(query);
+            return TestCursors.of(new String[]{"s"}, new byte[]{1}, "urn:a");
+        }
+    }
+
+    @Test
+    public void test_001_prepared_select_runs_on_direct() throws Exception {
+        System.out.println("test_001_prepared_select_runs_on_direct");
+        Store bus = new Store(1);
+        Store direct = new Store(2);
+        TrackerRoutingConnection routing = new TrackerRoutingConnection(bus, direct);
+        TrackerSparqlStatement statement = routing.prepare("SELECT ?s WHERE { ?s nie:title ~title }");
+        statement.bindString("title", "a");
+        try (Libtracker.TrackerSparqlCursor cursor = statement.execute()) {
+            TestCase.assertTrue(cursor.next());
+        }
+        TestCase.assertEquals(0, bus.queries.size());
+        TestCase.assertEquals(1, direct.queries.size());
+        TestCase.assertEquals("SELECT ?s WHERE { ?s nie:title \"a\" }", direct.queries.get(0));
+        TestCase.assertEquals(1, direct.statements().size());
+        TestCase.assertEquals(0, bus.statements().size());
+    }
+
+    @Test
+    public void test_002_bus_without_direct() throws Exception {
+        System.out.println("test_002_bus_without_direct");
+        Store bus = new Store(1);
+        TrackerRoutingConnection routing = new TrackerRoutingConnection(bus, null);
+        routing.prepare("SELECT ?s WHERE { ?s a nfo:Document }").execute().close();
+        routing.query("SELECT ?s WHERE { ?s a nfo:Folder }").close();
+        TestCase.assertEquals(2, bus.queries.size());
+        TestCase.assertEquals(1, bus.statements().size());
+    }
+}
@@ -0,0 +1,78 @@
+package com.turnguard.libtracker.sparql;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import junit.framework.TestCase;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+/**
+ * Row iteration over cached cursors, no running tracker-store needed
+ * @author turnguard
+ */
+public class TrackerRowIteratorTest {
+
+    private static final ExecutorService readAhead = Executors.newCachedThreadPool();
+
+    @AfterClass
+    public static void tearDownClass() {
+        readAhead.shutdown();
+    }
+
+    private static Libtracker.TrackerSparqlCursor cursor(int rows){
+        TestCursors.Builder cursor = new TestCursors.Builder("n");
+        for(int i = 0; i < rows; i++){
+            cursor.cell(3, Integer.toString(i));
+        }
+        return cursor.cursor();
+    }
+
+    private static long sum(TrackerRowIterator rows){
+        long sum = 0;
+        try {
+            for(TrackerRow row : rows){
+                sum += row.getLong(row.getColumn("n"));
+            }
+        } finally {
+            rows.close();
+        }
+        return sum;
+    }
+
+    @Test
+    public void test_001_rows() {
+        TestCase.assertEquals(999L * 1000 / 2, sum(cursor(1000).rows()));
+    }
+
+    @Test
+    public void test_002_rows_read_ahead() {
+        TestCase.assertEquals(999L * 1000 / 2, sum(cursor(1000).rows(7, readAhead)));
+        TestCase.assertEquals(0L, sum(cursor(0).rows(7, readAhead)));
+    }
+
+    @Test
+    public void test_003_early_close() {
+        Libtracker.TrackerSparqlCursor cursor = cursor(1000);
+        try (TrackerRowIterator rows = cursor.rows(10, readAhead)) {
+            TestCase.assertEquals(0L, rows.next().getLong(0));
+        }
+        TestCase.assertFalse(cursor.rows().hasNext());
+    }
+
+    @Test
+    public void test_004_read_ahead_failure_keeps_cause() {
+        final IllegalStateException failure = new IllegalStateException("decoding failed");
+        Libtracker.TrackerSparqlCursor cursor = new Libtracker.TrackerSparqlCursor() {
+            @Override
+            public int fetch(int maxRows, ResultBatch batch) {
+                throw failure;
+            }
+        };
+        try (TrackerRowIterator rows = cursor.rows(10, readAhead)) {
+            rows.hasNext();
+            TestCase.fail();
+        } catch(Libtracker.UncheckedTrackerException e){
+            TestCase.assertSame(failure, e.getCause().getCause());
+        }
+    }
+}
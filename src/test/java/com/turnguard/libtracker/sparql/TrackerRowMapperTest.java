@@ -0,0 +1,84 @@
+package com.turnguard.libtracker.sparql;
+
+import java.net.URI;
+import java.util.Date;
+import java.util.List;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * Row mapping over cached cursors, no running tracker-store needed
+ * @author turnguard
+ */
+public class TrackerRowMapperTest {
+
+    public static class Document {
+        TrackerResource s;
+        String title;
+        @TrackerColumn("size") long bytes;
+        Integer count;
+        double score;
+        boolean flag;
+        TrackerDateTime created;
+        Object any;
+        transient String ignored = "ignored";
+    }
+
+    public static class Link {
+        URI s;
+        Date created;
+    }
+
+    public static class Unsupported {
+        StringBuilder s;
+    }
+
+    @Test
+    public void test_001_map() throws Libtracker.TrackerException {
+        System.out.println("test_001_map");
+        String[] names = {"s", "title", "size", "count", "score", "flag", "created", "any", "extra"};
+        Libtracker.TrackerSparqlCursor cursor = TestCursors.of(names,
+                new byte[]{
+                    1, 2, 3, 3, 4, 7, 5, 3, 2,
+                    6, 0, 3, 0, 3, 7, 0, 5, 0},
+                "urn:a", "A", "8589934592", "7", "0.5", "true", "2014-03-01T10:30:15Z", "42", "x",
+                "b1", null, "1", null, "2", "false", null, "2014-03-01T11:00:00+01:00", null);
+        List<Document> documents = TrackerRowMapper.of(Document.class).mapAll(cursor);
+        TestCase.assertEquals(2, documents.size());
+        Document a = documents.get(0);
+        TestCase.assertEquals(new TrackerResource("urn:a", false), a.s);
+        TestCase.assertEquals("A", a.title);
+        TestCase.assertEquals(8589934592L, a.bytes);
+        TestCase.assertEquals(Integer.valueOf(7), a.count);
+        TestCase.assertEquals(0.5, a.score);
+        TestCase.assertTrue(a.flag);
+        TestCase.assertEquals(TrackerDateTime.parse("2014-03-01T10:30:15Z"), a.created);
+        TestCase.assertEquals(42L, a.any);
+        TestCase.assertEquals("ignored", a.ignored);
+        Document b = documents.get(1);
+        TestCase.assertTrue(b.s.isBlank());
+        TestCase.assertNull(b.title);
+        TestCase.assertNull(b.count);
+        TestCase.assertEquals(2.0, b.score);
+        TestCase.assertFalse(b.flag);
+        TestCase.assertNull(b.created);
+        TestCase.assertTrue(b.any instanceof TrackerDateTime);
+    }
+
+    @Test
+    public void test_002_rebind() throws Libtracker.TrackerException {
+        System.out.println("test_002_rebind");
+        TrackerRowMapper<Link> mapper = TrackerRowMapper.of(Link.class);
+        Libtracker.TrackerSparqlCursor first = TestCursors.of(new String[]{"s", "created"}, new byte[]{1, 5}, "urn:a", "1970-01-01T00:00:01Z");
+        TestCase.assertEquals(1000, mapper.mapAll(first).get(0).created.getTime());
+        Libtracker.TrackerSparqlCursor second = TestCursors.of(new String[]{"created", "s"}, new byte[]{5, 1}, "1970-01-01T00:00:02Z", "urn:b");
+        Link link = mapper.mapAll(second).get(0);
+        TestCase.assertEquals(URI.create("urn:b"), link.s);
+        TestCase.assertEquals(2000, link.created.getTime());
+        try {
+            TrackerRowMapper.of(Unsupported.class);
+            TestCase.fail();
+        } catch(IllegalArgumentException e){
+        }
+    }
+}
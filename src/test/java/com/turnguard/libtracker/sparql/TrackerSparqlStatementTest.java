@@ -0,0 +1,57 @@
+package com.turnguard.libtracker.sparql;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * Template parsing and rendering, no running tracker-store needed
+ * @author turnguard
+ */
+public class TrackerSparqlStatementTest {
+
+    private static String render(TrackerSparqlStatement statement){
+        return statement.render(new TrackerStatementCache.Template(statement.getSparql()));
+    }
+
+    @Test
+    public void test_001_parameters_are_found_outside_strings_and_iris() {
+        TrackerStatementCache.Template template = new TrackerStatementCache.Template(
+                "SELECT ?s WHERE { ?s nie:title ~title ; nie:url <file:///home/~user> ; nie:comment \"~not\" . FILTER(?x > ~min) }");
+        TestCase.assertEquals(2, template.names.length);
+        TestCase.assertEquals("title", template.names[0]);
+        TestCase.assertEquals("min", template.names[1]);
+        TestCase.assertEquals(3, template.parts.length);
+    }
+
+    @Test
+    public void test_002_values_are_rendered_as_escaped_literals() {
+        TrackerSparqlStatement statement = new TrackerSparqlStatement(null, null, "SELECT ?s WHERE { ?s nie:title ~title ; nfo:count ~count ; nfo:ok ~ok . }");
+        statement.bindString("title", "a \"quoted\"\n} DROP");
+        statement.bindInt("count", 1L << 40);
+        statement.bindBoolean("ok", true);
+        TestCase.assertEquals("SELECT ?s WHERE { ?s nie:title \"a \\\"quoted\\\"\\n} DROP\" ; nfo:count 1099511627776 ; nfo:ok true . }", render(statement));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_003_unbound_parameter() {
+        render(new TrackerSparqlStatement(null, null, "SELECT ?s WHERE { ?s nie:title ~title }"));
+    }
+
+    @Test
+    public void test_004_parameters_are_not_found_in_comments() {
+        TrackerStatementCache.Template template = new TrackerStatementCache.Template(
+                "SELECT ?s WHERE { # filtered by ~title, not ~url\n ?s nie:title ~title . # ~ignored\r\n ?s nie:url ~url }");
+        TestCase.assertEquals(2, template.names.length);
+        TestCase.assertEquals("title", template.names[0]);
+        TestCase.assertEquals("url", template.names[1]);
+    }
+
+    @Test
+    public void test_005_less_than_is_not_an_iri() {
+        TrackerStatementCache.Template template = new TrackerStatementCache.Template(
+                "SELECT ?x ?y WHERE { ?s nfo:x ?x ; nfo:y ?y ; nie:url <file:///~user> . FILTER(?x<~max&&?y>~min) }");
+        TestCase.assertEquals(2, template.names.length);
+        TestCase.assertEquals("max", template.names[0]);
+        TestCase.assertEquals("min", template.names[1]);
+    }
+}
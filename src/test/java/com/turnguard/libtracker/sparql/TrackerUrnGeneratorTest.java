@@ -0,0 +1,82 @@
+package com.turnguard.libtracker.sparql;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * Local urn:uuid: generation
+ * @author turnguard
+ */
+public class TrackerUrnGeneratorTest {
+
+    @Test
+    public void test_001_format() {
+        System.out.println("test_001_format");
+        TrackerUrnGenerator generator = new TrackerUrnGenerator();
+        for(int i = 0; i < 1000; i++){
+            String urn = generator.next();
+            TestCase.assertEquals(TrackerUrnGenerator.LENGTH, urn.length());
+            TestCase.assertTrue(urn.startsWith(TrackerUrnGenerator.PREFIX));
+            UUID uuid = UUID.fromString(urn.substring(TrackerUrnGenerator.PREFIX.length()));
+            TestCase.assertEquals(4, uuid.version());
+            TestCase.assertEquals(2, uuid.variant());
+            TestCase.assertEquals(urn, TrackerUrnGenerator.PREFIX + uuid);
+        }
+        TestCase.assertEquals(TrackerUrnGenerator.LENGTH + 1, generator.append(new StringBuilder("<")).length());
+    }
+
+    @Test
+    public void test_002_unique() {
+        System.out.println("test_002_unique");
+        TrackerUrnGenerator generator = new TrackerUrnGenerator();
+        Set<String> urns = new HashSet<>(Arrays.asList(generator.next(100000)));
+        for(int i = 0; i < 1000; i++){
+            urns.add(generator.next());
+        }
+        TestCase.assertEquals(101000, urns.size());
+        TestCase.assertEquals(0, generator.next(0).length);
+    }
+
+    @Test
+    public void test_003_seeded() {
+        System.out.println("test_003_seeded");
+        String[] a = new TrackerUrnGenerator(new Random(42)).next(100);
+        String[] b = new TrackerUrnGenerator(new Random(42)).next(100);
+        TestCase.assertTrue(Arrays.equals(a, b));
+        TestCase.assertFalse(Arrays.equals(a, new TrackerUrnGenerator(new Random(43)).next(100)));
+    }
+
+    @Test
+    public void test_004_concurrent() throws Exception {
+        System.out.println("test_004_concurrent");
+        final TrackerUrnGenerator generator = TrackerUrnGenerator.getInstance();
+        final Set<String> urns = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final AtomicInteger generated = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for(int i = 0; i < threads.length; i++){
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for(int n = 0; n < 10000; n++){
+                        urns.add(generator.next());
+                        urns.addAll(Arrays.asList(generator.next(3)));
+                        generated.addAndGet(4);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for(Thread thread : threads){
+            thread.join();
+        }
+        TestCase.assertEquals(generated.get(), urns.size());
+    }
+}